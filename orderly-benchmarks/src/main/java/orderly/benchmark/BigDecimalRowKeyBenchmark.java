@@ -0,0 +1,59 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.benchmark;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import orderly.RowKey;
+
+import org.openjdk.jmh.annotations.Param;
+
+/** Benchmarks the BigDecimal row keys.
+ *
+ * <p>The <code>monetary</code> distribution generates values with two 
+ * fractional digits and up to eight significant digits, <code>long</code> 
+ * generates values with up to 18 significant digits (an unscaled value that 
+ * fits in a long), and <code>highprecision</code> generates values with 
+ * around 60 significant digits and a wide range of exponents.</p>
+ */
+public class BigDecimalRowKeyBenchmark extends RowKeyBenchmark
+{
+  private static final long LONG_DIGITS = 1000000000000000000L;
+
+  @Param({"BigDecimalRowKey", "LazyBigDecimalRowKey"})
+  public String type;
+
+  @Param({"monetary", "long", "highprecision"})
+  public String distribution;
+
+  @Override
+  protected RowKey createRowKey() { return newRowKey(type); }
+
+  @Override
+  protected Object createValue(Random r) {
+    if ("monetary".equals(distribution))
+      return BigDecimal.valueOf(r.nextInt(200000000) - 100000000, 2);
+    else if ("long".equals(distribution))
+      return BigDecimal.valueOf(r.nextLong() % LONG_DIGITS, r.nextInt(19));
+    return new BigDecimal(new BigInteger(200, r).subtract(BigInteger.ONE
+          .shiftLeft(199)), r.nextInt(200) - 100);
+  }
+}
@@ -0,0 +1,66 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.benchmark;
+
+import java.util.Random;
+
+import orderly.FixedByteArrayRowKey;
+import orderly.FixedBytesWritableRowKey;
+import orderly.RowKey;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.openjdk.jmh.annotations.Param;
+
+/** Benchmarks the fixed and variable-length byte array row keys. 
+ *
+ * <p>The <code>short</code> distribution generates 16 byte arrays (the size of 
+ * a typical binary identifier such as a UUID), while <code>long</code> 
+ * generates 256 byte arrays. Fixed-length row keys are created with the 
+ * exact length of the generated arrays.</p>
+ */
+public class BytesRowKeyBenchmark extends RowKeyBenchmark
+{
+  @Param({"VariableLengthBytesWritableRowKey", "VariableLengthByteArrayRowKey", 
+    "EscapedBytesWritableRowKey", "EscapedByteArrayRowKey",
+    "FixedBytesWritableRowKey", "FixedByteArrayRowKey"})
+  public String type;
+
+  @Param({"short", "long"})
+  public String distribution;
+
+  private int getLength() { return "short".equals(distribution) ? 16 : 256; }
+
+  @Override
+  protected RowKey createRowKey() { 
+    if ("FixedBytesWritableRowKey".equals(type))
+      return new FixedBytesWritableRowKey(getLength());
+    else if ("FixedByteArrayRowKey".equals(type))
+      return new FixedByteArrayRowKey(getLength());
+    return newRowKey(type); 
+  }
+
+  @Override
+  protected Object createValue(Random r) {
+    byte[] b = new byte[getLength()];
+    r.nextBytes(b);
+    if (key.getSerializedClass() == byte[].class)
+      return b;
+    return new BytesWritable(b);
+  }
+}
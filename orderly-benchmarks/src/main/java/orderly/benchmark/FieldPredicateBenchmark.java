@@ -0,0 +1,112 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import orderly.BigDecimalRowKey;
+import orderly.FieldPredicate;
+import orderly.LongRowKey;
+import orderly.StringRowKey;
+import orderly.StructBuilder;
+import orderly.StructIndex;
+import orderly.StructRowKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks filtering (region, price, id) row keys on 
+ * <code>region == "EU" AND price &gt; 100.00</code>. The 
+ * <code>predicate</code> benchmark evaluates {@link FieldPredicate} objects 
+ * over the batch of serialized row keys, comparing bytes, while the 
+ * <code>deserialize</code> benchmark deserializes both fields with a 
+ * {@link StructIndex} and compares the values. Results are per row key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldPredicateBenchmark
+{
+  private static final int NUM_VALUES = RowKeyBenchmark.NUM_VALUES;
+  private static final String[] REGIONS = { "AP", "EU", "SA", "US" };
+  private static final BigDecimal PRICE = new BigDecimal("100.00");
+
+  @Param("0")
+  public long seed;
+
+  private byte[][] serialized;
+  private boolean[] results;
+  private StructIndex index;
+  private FieldPredicate region, price;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    StructRowKey key = new StructBuilder().add(new StringRowKey())
+      .add(new BigDecimalRowKey()).add(new LongRowKey()).toRowKey();
+
+    Random r = new Random(seed);
+    serialized = new byte[NUM_VALUES][];
+    for (int i = 0; i < NUM_VALUES; i++)
+      serialized[i] = key.serialize(new Object[] { 
+        REGIONS[r.nextInt(REGIONS.length)], 
+        BigDecimal.valueOf(r.nextInt(40000), 2), r.nextLong() });
+
+    results = new boolean[NUM_VALUES];
+    index = new StructIndex(key);
+    region = FieldPredicate.eq(key, 0, "EU");
+    price = FieldPredicate.gt(key, 1, PRICE);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_VALUES)
+  public int predicate() throws IOException {
+    return FieldPredicate.evaluate(serialized, results, region, price);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_VALUES)
+  public int deserialize() throws IOException {
+    int n = 0;
+    for (int i = 0; i < NUM_VALUES; i++) {
+      index.setBytes(serialized[i]);
+      boolean match = "EU".equals(index.deserialize(0)) && 
+        ((BigDecimal) index.deserialize(1)).compareTo(PRICE) > 0;
+      results[i] = match;
+      if (match)
+        n++;
+    }
+    return n;
+  }
+}
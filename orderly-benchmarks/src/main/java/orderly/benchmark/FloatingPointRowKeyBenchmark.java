@@ -0,0 +1,52 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.benchmark;
+
+import java.util.Random;
+
+import orderly.RowKey;
+
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.openjdk.jmh.annotations.Param;
+
+/** Benchmarks the single and double precision floating point row keys. */
+public class FloatingPointRowKeyBenchmark extends RowKeyBenchmark
+{
+  @Param({"FloatWritableRowKey", "FloatRowKey", "DoubleWritableRowKey", 
+    "DoubleRowKey"})
+  public String type;
+
+  @Override
+  protected RowKey createRowKey() { return newRowKey(type); }
+
+  @Override
+  protected Object createValue(Random r) {
+    double d = (r.nextDouble() - 0.5) * Math.pow(10, r.nextInt(32) - 16);
+    Class<?> c = key.getSerializedClass();
+
+    if (c == Float.class)
+      return Float.valueOf((float) d);
+    else if (c == FloatWritable.class)
+      return new FloatWritable((float) d);
+    else if (c == Double.class)
+      return Double.valueOf(d);
+    return new DoubleWritable(d);
+  }
+}
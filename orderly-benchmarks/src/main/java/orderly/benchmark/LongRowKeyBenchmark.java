@@ -0,0 +1,53 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.benchmark;
+
+import java.util.Random;
+
+import orderly.RowKey;
+
+import org.apache.hadoop.io.LongWritable;
+import org.openjdk.jmh.annotations.Param;
+
+/** Benchmarks the variable-length and fixed-width 64-bit integer row keys. 
+ *
+ * <p>Small values fit into a single byte variable-length encoding, large values 
+ * are uniformly distributed over all 64-bit integers.</p>
+ */
+public class LongRowKeyBenchmark extends RowKeyBenchmark
+{
+  @Param({"LongWritableRowKey", "LongRowKey", "UnsignedLongWritableRowKey", 
+    "UnsignedLongRowKey", "FixedLongWritableRowKey", "FixedLongRowKey", 
+    "FixedUnsignedLongWritableRowKey", "FixedUnsignedLongRowKey"})
+  public String type;
+
+  @Param({"small", "large"})
+  public String distribution;
+
+  @Override
+  protected RowKey createRowKey() { return newRowKey(type); }
+
+  @Override
+  protected Object createValue(Random r) {
+    long l = "small".equals(distribution) ? r.nextInt(64) : r.nextLong();
+    if (key.getSerializedClass() == Long.class)
+      return Long.valueOf(l);
+    return new LongWritable(l);
+  }
+}
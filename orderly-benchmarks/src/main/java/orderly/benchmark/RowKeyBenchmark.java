@@ -0,0 +1,165 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import orderly.Order;
+import orderly.RowKey;
+import orderly.RowKeyComparator;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Base class for benchmarking a single {@link RowKey} type.
+ *
+ * <p>Each benchmark pre-generates a fixed set of values (and their 
+ * serialized bytes) during setup, and then cycles through these values in 
+ * every invocation of the <code>getSerializedLength</code>, 
+ * <code>serialize</code>, <code>serializeToArray</code>, 
+ * <code>deserialize</code>, <code>skip</code> and <code>compare</code>
+ * benchmarks. Cycling through many values keeps the branch predictor honest
+ * for variable-length encodings. Subclasses choose the row key under test and
+ * the distribution of the generated values, usually through additional 
+ * {@link Param} fields.</p>
+ *
+ * <p>The <code>serialize</code> benchmark writes into a pre-allocated buffer,
+ * so the allocation rate reported by the GC profiler (see 
+ * {@link BenchmarkRunner}) is the allocation performed by the row key itself.
+ * The <code>serializeToArray</code> benchmark also includes sizing and 
+ * allocating the returned byte array.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class RowKeyBenchmark
+{
+  /** Number of distinct values cycled through, must be a power of two. */
+  protected static final int NUM_VALUES = 1024;
+
+  @Param({"ASCENDING", "DESCENDING"})
+  public Order order;
+
+  @Param("0")
+  public long seed;
+
+  protected RowKey key;
+  protected Object[] values;
+  protected byte[][] serialized;
+
+  private byte[] buffer;
+  private ImmutableBytesWritable w;
+  private int pos;
+
+  /** Creates the row key under test. The sort order is set by the caller. */
+  protected abstract RowKey createRowKey();
+
+  /** Returns the row key to benchmark, given the row key under test with its
+   * sort order set. Returns key by default.
+   */
+  protected RowKey finishRowKey(RowKey key) { return key; }
+
+  /** Creates a random value to serialize using the row key under test. */
+  protected abstract Object createValue(Random r);
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Random r = new Random(seed);
+    int maxLength = 0;
+
+    key = finishRowKey(createRowKey().setOrder(order));
+    values = new Object[NUM_VALUES];
+    serialized = new byte[NUM_VALUES][];
+    for (int i = 0; i < NUM_VALUES; i++) {
+      values[i] = createValue(r);
+      serialized[i] = key.serialize(values[i]);
+      maxLength = Math.max(maxLength, serialized[i].length);
+    }
+
+    buffer = new byte[maxLength];
+    w = new ImmutableBytesWritable();
+  }
+
+  private int next() { return pos = (pos + 1) & (NUM_VALUES - 1); }
+
+  @Benchmark
+  public int getSerializedLength() throws IOException {
+    return key.getSerializedLength(values[next()]);
+  }
+
+  @Benchmark
+  public int serialize() throws IOException {
+    w.set(buffer);
+    key.serialize(values[next()], w);
+    return w.getOffset();
+  }
+
+  @Benchmark
+  public byte[] serializeToArray() throws IOException {
+    return key.serialize(values[next()]);
+  }
+
+  @Benchmark
+  public Object deserialize() throws IOException {
+    w.set(serialized[next()]);
+    return key.deserialize(w);
+  }
+
+  @Benchmark
+  public int skip() throws IOException {
+    w.set(serialized[next()]);
+    key.skip(w);
+    return w.getOffset();
+  }
+
+  @Benchmark
+  public int compare() {
+    int i = next();
+    return RowKeyComparator.INSTANCE.compare(serialized[i], 
+        serialized[(i + 1) & (NUM_VALUES - 1)]);
+  }
+
+  /** Instantiates a row key class from the <code>orderly</code> package 
+   * using its no-argument constructor.
+   * @param type simple class name of the row key
+   */
+  protected static RowKey newRowKey(String type) {
+    try {
+      return (RowKey) Class.forName("orderly." + type).newInstance();
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Unknown row key type " + type, e);
+    }
+  }
+}
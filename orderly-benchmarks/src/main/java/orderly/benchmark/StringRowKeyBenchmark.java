@@ -0,0 +1,100 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+
+import orderly.RowKey;
+import orderly.UTF8RowKey;
+import orderly.UTF8View;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/** Benchmarks the character string row keys.
+ *
+ * <p>The <code>short</code> distribution generates ASCII strings of 4-16 
+ * characters (typical of user names or codes), <code>long</code> generates 
+ * ASCII strings of 128-512 characters, and <code>unicode</code> generates
+ * 16-64 characters drawn from the Basic Multilingual Plane.</p>
+ *
+ * <p>The <code>deserializeView</code> benchmark reads each string as a 
+ * {@link UTF8View} instead of deserializing it.</p>
+ */
+public class StringRowKeyBenchmark extends RowKeyBenchmark
+{
+  @Param({"UTF8RowKey", "StringRowKey", "TextRowKey"})
+  public String type;
+
+  @Param({"short", "long", "unicode"})
+  public String distribution;
+
+  private final ImmutableBytesWritable view = new ImmutableBytesWritable();
+  private int viewPos;
+
+  @Override
+  protected RowKey createRowKey() { return newRowKey(type); }
+
+  @Override
+  protected Object createValue(Random r) {
+    String s = createString(r, distribution);
+    Class<?> c = key.getSerializedClass();
+
+    if (c == String.class)
+      return s;
+    else if (c == Text.class)
+      return new Text(s);
+    return Bytes.toBytes(s);
+  }
+
+  @Benchmark
+  public UTF8View deserializeView() throws IOException {
+    view.set(serialized[viewPos = (viewPos + 1) & (NUM_VALUES - 1)]);
+    return ((UTF8RowKey) key).deserializeView(view);
+  }
+
+  /** Creates a random string using the named distribution. */
+  static String createString(Random r, String distribution) {
+    int length;
+    char base, range;
+
+    if ("short".equals(distribution)) {
+      length = 4 + r.nextInt(13);
+      base = 'a';
+      range = 26;
+    } else if ("long".equals(distribution)) {
+      length = 128 + r.nextInt(385);
+      base = 'a';
+      range = 26;
+    } else {
+      length = 16 + r.nextInt(49);
+      base = ' ';
+      range = '\ud7ff' - ' ';
+    }
+
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++)
+      sb.append((char) (base + r.nextInt(range)));
+    return sb.toString();
+  }
+}
@@ -0,0 +1,134 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import orderly.LazyStruct;
+import orderly.RowKey;
+import orderly.StructIndex;
+import orderly.StructIterator;
+import orderly.StructRowKey;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks reading a few trailing fields of the <code>wide</code> struct
+ * (see {@link StructRowKeyBenchmark}), in the order a caller might access 
+ * them: fields 5, 7 and 6. The <code>iterator</code> benchmark uses a 
+ * {@link StructIterator}, skipping from the first field for each field read, 
+ * the <code>index</code> benchmark uses a {@link StructIndex}, and the 
+ * <code>lazy</code> benchmark uses a {@link LazyStruct}. The 
+ * <code>deserialize</code> benchmark deserializes the entire struct, for 
+ * comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructIndexBenchmark
+{
+  private static final int NUM_VALUES = RowKeyBenchmark.NUM_VALUES;
+  private static final int[] READ_FIELDS = { 5, 7, 6 };
+
+  @Param("0")
+  public long seed;
+
+  private byte[][] serialized;
+  private StructRowKey key;
+  private StructIterator iterator;
+  private StructIndex index;
+  private ImmutableBytesWritable w;
+  private int pos;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    StructRowKeyBenchmark b = new StructRowKeyBenchmark();
+    b.shape = "wide";
+    key = (StructRowKey) b.createRowKey();
+
+    Random r = new Random(seed);
+    serialized = new byte[NUM_VALUES][];
+    for (int i = 0; i < NUM_VALUES; i++)
+      serialized[i] = key.serialize(b.createValue(r));
+
+    iterator = new StructIterator(key);
+    index = new StructIndex(key);
+    w = new ImmutableBytesWritable();
+  }
+
+  private byte[] next() { 
+    return serialized[pos = (pos + 1) & (NUM_VALUES - 1)]; 
+  }
+
+  @Benchmark
+  public Object iterator() throws IOException {
+    byte[] b = next();
+    RowKey[] fields = key.getFields();
+    Object o = null;
+    for (int f : READ_FIELDS) {
+      w.set(b);
+      iterator.setBytes(w);
+      for (int i = 0; i < f; i++)
+        iterator.skip();
+      o = fields[f].deserialize(iterator.getBytes());
+    }
+    return o;
+  }
+
+  @Benchmark
+  public Object index() throws IOException {
+    index.setBytes(next());
+    Object o = null;
+    for (int f : READ_FIELDS)
+      o = index.deserialize(f);
+    return o;
+  }
+
+  @Benchmark
+  public Object lazy() throws IOException {
+    w.set(next());
+    LazyStruct s = key.deserializeLazy(w);
+    Object o = null;
+    for (int f : READ_FIELDS)
+      o = s.get(f);
+    return o;
+  }
+
+  @Benchmark
+  public Object deserialize() throws IOException {
+    w.set(next());
+    return key.deserialize(w);
+  }
+}
@@ -0,0 +1,133 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import orderly.BigDecimalRowKey;
+import orderly.DoubleRowKey;
+import orderly.FixedLongRowKey;
+import orderly.IntegerRowKey;
+import orderly.LongRowKey;
+import orderly.Order;
+import orderly.RowKey;
+import orderly.StringRowKey;
+import orderly.StructBuilder;
+import orderly.StructRowKey;
+import orderly.StructRowKeyCompiler;
+import orderly.VariableLengthByteArrayRowKey;
+
+import org.openjdk.jmh.annotations.Param;
+
+/** Benchmarks struct row keys composed of several field row keys.
+ *
+ * <p>The <code>shape</code> parameter selects the struct schema:</p>
+ * <ul>
+ * <li><code>int_string</code>: an integer followed by a string</li>
+ * <li><code>desc_long_string_double</code>: a descending long, a string and a 
+ * double</li>
+ * <li><code>wide</code>: eight fields of mixed types, including two 
+ * variable-length strings, a BigDecimal and a byte array</li>
+ * <li><code>nested</code>: a long followed by an <code>int_string</code> 
+ * struct and a trailing string</li>
+ * <li><code>decimal</code>: a long followed by three BigDecimals, such as an 
+ * account id with a price, quantity and amount</li>
+ * </ul>
+ *
+ * <p>When <code>compiled</code> is true, the struct is compiled into a 
+ * specialized class using {@link StructRowKeyCompiler}.</p>
+ */
+public class StructRowKeyBenchmark extends RowKeyBenchmark
+{
+  @Param({"int_string", "desc_long_string_double", "wide", "nested", 
+    "decimal"})
+  public String shape;
+
+  @Param({"false", "true"})
+  public boolean compiled;
+
+  @Override
+  protected RowKey createRowKey() {
+    StructBuilder b = new StructBuilder();
+
+    if ("int_string".equals(shape)) {
+      b.add(new IntegerRowKey()).add(new StringRowKey());
+    } else if ("desc_long_string_double".equals(shape)) {
+      b.add(new LongRowKey().setOrder(Order.DESCENDING))
+       .add(new StringRowKey())
+       .add(new DoubleRowKey());
+    } else if ("wide".equals(shape)) {
+      b.add(new IntegerRowKey())
+       .add(new LongRowKey())
+       .add(new StringRowKey())
+       .add(new BigDecimalRowKey())
+       .add(new DoubleRowKey())
+       .add(new FixedLongRowKey())
+       .add(new StringRowKey())
+       .add(new VariableLengthByteArrayRowKey());
+    } else if ("nested".equals(shape)) {
+      b.add(new LongRowKey())
+       .add(new StructBuilder().add(new IntegerRowKey())
+                               .add(new StringRowKey()).toRowKey())
+       .add(new StringRowKey());
+    } else if ("decimal".equals(shape)) {
+      b.add(new LongRowKey())
+       .add(new BigDecimalRowKey())
+       .add(new BigDecimalRowKey())
+       .add(new BigDecimalRowKey());
+    } else {
+      throw new IllegalArgumentException("Unknown struct shape " + shape);
+    }
+
+    return b.toRowKey();
+  }
+
+  @Override
+  protected RowKey finishRowKey(RowKey key) {
+    return compiled ? StructRowKeyCompiler.compile((StructRowKey) key) : key;
+  }
+
+  @Override
+  protected Object createValue(Random r) {
+    if ("int_string".equals(shape)) {
+      return new Object[] { r.nextInt(), shortString(r) };
+    } else if ("desc_long_string_double".equals(shape)) {
+      return new Object[] { r.nextLong(), shortString(r), r.nextDouble() };
+    } else if ("wide".equals(shape)) {
+      byte[] bytes = new byte[16];
+      r.nextBytes(bytes);
+      return new Object[] { r.nextInt(), r.nextLong(), shortString(r),
+        BigDecimal.valueOf(r.nextInt(200000000) - 100000000, 2),
+        r.nextDouble(), r.nextLong(), shortString(r), bytes };
+    } else if ("decimal".equals(shape)) {
+      return new Object[] { r.nextLong(),
+        BigDecimal.valueOf(r.nextInt(100000000), 4),
+        BigDecimal.valueOf(r.nextInt(1000000) - 500000, 3),
+        BigDecimal.valueOf(r.nextLong() % 1000000000000000L, 2) };
+    }
+
+    return new Object[] { r.nextLong(), 
+      new Object[] { r.nextInt(), shortString(r) }, shortString(r) };
+  }
+
+  private static String shortString(Random r) {
+    return StringRowKeyBenchmark.createString(r, "short");
+  }
+}
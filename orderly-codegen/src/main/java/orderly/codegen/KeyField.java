@@ -0,0 +1,83 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.codegen;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import orderly.Order;
+import orderly.RowKey;
+
+/** Marks a field of a class as a field of the class's struct row key. 
+ *
+ * <p>For every class with annotated fields, {@link KeyFieldProcessor} 
+ * generates a codec class named <code><i>Class</i>RowKeyCodec</code> in the 
+ * same package. The codec serializes the annotated fields in 
+ * {@link #position} order, producing the same bytes as a struct row key 
+ * built with {@link orderly.StructBuilder} from the same field row keys, and 
+ * deserializes into new or existing instances of the class.</p>
+ *
+ * <p>Annotated fields must not be private, static or final. The class must
+ * have a non-private no-argument constructor.</p>
+ *
+ * <h1> Usage </h1>
+ * <pre>
+ * public class Trade {
+ *   &#64;KeyField(position = 0) String symbol;
+ *   &#64;KeyField(position = 1, order = Order.DESCENDING) long timestamp;
+ *   &#64;KeyField(position = 2, type = UnsignedIntegerRowKey.class) 
+ *   Integer venue;
+ * }
+ *
+ * TradeRowKeyCodec codec = new TradeRowKeyCodec();
+ * byte[] row = codec.serialize(trade);
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface KeyField
+{
+  /** Position of the field within the struct row key, starting at zero. 
+   * Positions must be unique within a class, but need not be contiguous.
+   */
+  int position();
+
+  /** Sort order of the field row key. */
+  Order order() default Order.ASCENDING;
+
+  /** Class of the field row key, which must have a public no-argument 
+   * constructor. By default, the row key is chosen from the type of the 
+   * field: <code>IntegerRowKey</code> for <code>int</code> and 
+   * <code>Integer</code>, <code>LongRowKey</code> for <code>long</code> and
+   * <code>Long</code>, <code>FloatRowKey</code>, <code>DoubleRowKey</code>,
+   * <code>StringRowKey</code>, <code>BigDecimalRowKey</code>, 
+   * <code>VariableLengthByteArrayRowKey</code> for <code>byte[]</code>, and 
+   * the Writable row key for each Writable type.
+   *
+   * <p>Fields of primitive type are serialized without boxing, and require
+   * a row key with primitive methods for the type (for example, 
+   * <code>getSerializedLength(int)</code>, <code>serializeInt</code> and 
+   * <code>deserializeInt</code> for <code>int</code>).</p>
+   */
+  Class<? extends RowKey> type() default RowKey.class;
+}
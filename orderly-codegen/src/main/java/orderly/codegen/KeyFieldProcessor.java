@@ -0,0 +1,632 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.codegen;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import orderly.Order;
+
+/** Generates a row key codec for each class with {@link KeyField} fields.
+ *
+ * <p>The generated codec is plain Java source with one statement per field, 
+ * reading and writing the fields of the object directly. Fields of primitive
+ * type use the primitive methods of their row keys, so neither the object 
+ * array used by {@link orderly.StructRowKey} nor boxed values are allocated.
+ * </p>
+ *
+ * <p>The codec holds a terminated and a trailing row key for each field, 
+ * exactly as a frozen struct row key does, and chooses between them in the 
+ * same way: a field is terminated if any later field has a non-zero 
+ * serialized length. Wherever the choice can be made from the schema alone, 
+ * it is made when generating the codec. A primitive field is never empty, so
+ * only the reference fields after the last primitive field are checked at 
+ * run-time, and for the row keys in <code>orderly</code> a NULL check 
+ * replaces computing the serialized length.</p>
+ *
+ * <p>Like a row key, a generated codec re-uses objects (such as Writables) 
+ * returned by its field row keys during deserialization, and must only be 
+ * used by one thread at a time.</p>
+ */
+@SupportedAnnotationTypes("orderly.codegen.KeyField")
+public class KeyFieldProcessor extends AbstractProcessor
+{
+  private static final String CODEC_SUFFIX = "RowKeyCodec";
+  private static final String ROW_KEY = "orderly.RowKey";
+
+  /* Default row keys by field type */
+  private static final Map<String, String> DEFAULT_KEYS = 
+    new HashMap<String, String>();
+
+  /* Row keys serializing NULL to zero bytes and all other values to at 
+   * least one byte when implicitly terminated. Subclasses of these row keys
+   * are checked for emptiness using a NULL check.
+   */
+  private static final String[] NULL_EMPTY_KEYS = { 
+    "orderly.AbstractVarIntRowKey", "orderly.BigDecimalRowKey", 
+    "orderly.DoubleWritableRowKey", "orderly.FloatWritableRowKey", 
+    "orderly.UTF8RowKey", "orderly.VariableLengthBytesWritableRowKey" 
+  };
+
+  static {
+    DEFAULT_KEYS.put("int", "orderly.IntegerRowKey");
+    DEFAULT_KEYS.put("java.lang.Integer", "orderly.IntegerRowKey");
+    DEFAULT_KEYS.put("long", "orderly.LongRowKey");
+    DEFAULT_KEYS.put("java.lang.Long", "orderly.LongRowKey");
+    DEFAULT_KEYS.put("float", "orderly.FloatRowKey");
+    DEFAULT_KEYS.put("java.lang.Float", "orderly.FloatRowKey");
+    DEFAULT_KEYS.put("double", "orderly.DoubleRowKey");
+    DEFAULT_KEYS.put("java.lang.Double", "orderly.DoubleRowKey");
+    DEFAULT_KEYS.put("java.lang.String", "orderly.StringRowKey");
+    DEFAULT_KEYS.put("java.math.BigDecimal", "orderly.BigDecimalRowKey");
+    DEFAULT_KEYS.put("byte[]", "orderly.VariableLengthByteArrayRowKey");
+    DEFAULT_KEYS.put("org.apache.hadoop.io.IntWritable", 
+        "orderly.IntWritableRowKey");
+    DEFAULT_KEYS.put("org.apache.hadoop.io.LongWritable", 
+        "orderly.LongWritableRowKey");
+    DEFAULT_KEYS.put("org.apache.hadoop.io.FloatWritable", 
+        "orderly.FloatWritableRowKey");
+    DEFAULT_KEYS.put("org.apache.hadoop.io.DoubleWritable", 
+        "orderly.DoubleWritableRowKey");
+    DEFAULT_KEYS.put("org.apache.hadoop.io.Text", "orderly.TextRowKey");
+    DEFAULT_KEYS.put("org.apache.hadoop.io.BytesWritable", 
+        "orderly.VariableLengthBytesWritableRowKey");
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, 
+      RoundEnvironment env) 
+  {
+    Map<TypeElement, List<VariableElement>> classes = 
+      new LinkedHashMap<TypeElement, List<VariableElement>>();
+    for (Element e : env.getElementsAnnotatedWith(KeyField.class)) {
+      TypeElement c = (TypeElement) e.getEnclosingElement();
+      List<VariableElement> fields = classes.get(c);
+      if (fields == null)
+        classes.put(c, fields = new ArrayList<VariableElement>());
+      fields.add((VariableElement) e);
+    }
+
+    for (Map.Entry<TypeElement, List<VariableElement>> e : classes.entrySet()) 
+    {
+      List<Field> fields = getFields(e.getKey(), e.getValue());
+      if (fields == null)
+        continue;
+      try {
+        generate(e.getKey(), fields);
+      } catch (IOException ex) {
+        error(e.getKey(), "Cannot write row key codec: " + ex);
+      }
+    }
+    return true;
+  }
+
+  /** An annotated field and its row key. */
+  private static class Field 
+  {
+    VariableElement element;
+    String name, type, keyType;
+    int position;
+    Order order;
+    /* Primitive method suffix (such as "Int"), or null for reference fields */
+    String primitive;
+    /* True if NULL is the only value serialized to zero bytes */
+    boolean nullEmpty;
+
+    /** Returns true if the terminated and trailing row keys of this field 
+     * serialize all values of the field to the same bytes. 
+     */
+    boolean isTerminationFree() {
+      return primitive != null || (nullEmpty && order == Order.DESCENDING);
+    }
+
+    /** Returns true if this field never has a zero serialized length. */
+    boolean isNeverEmpty() { return isTerminationFree(); }
+  }
+
+  /** Validates the annotated fields of a class, returning the fields sorted 
+   * by position or null if any errors were reported.
+   */
+  private List<Field> getFields(TypeElement c, List<VariableElement> elems) {
+    boolean valid = checkClass(c);
+    List<Field> fields = new ArrayList<Field>();
+    Map<Integer, VariableElement> positions = 
+      new HashMap<Integer, VariableElement>();
+
+    for (VariableElement e : elems) {
+      KeyField a = e.getAnnotation(KeyField.class);
+      Field f = new Field();
+      f.element = e;
+      f.name = e.getSimpleName().toString();
+      f.type = e.asType().toString();
+      f.position = a.position();
+      f.order = a.order();
+
+      Set<Modifier> mods = e.getModifiers();
+      if (mods.contains(Modifier.PRIVATE) || mods.contains(Modifier.STATIC) 
+          || mods.contains(Modifier.FINAL)) 
+      {
+        error(e, "@KeyField fields must not be private, static or final");
+        valid = false;
+      }
+
+      if (positions.put(f.position, e) != null) {
+        error(e, "Duplicate @KeyField position " + f.position);
+        valid = false;
+      }
+
+      TypeElement key = getKeyType(e, a);
+      if (key == null) {
+        valid = false;
+        continue;
+      }
+      f.keyType = key.getQualifiedName().toString();
+      f.nullEmpty = isSubtype(key, NULL_EMPTY_KEYS);
+
+      TypeMirror t = e.asType();
+      if (t.getKind().isPrimitive()) {
+        f.primitive = getPrimitiveSuffix(t.getKind());
+        if (f.primitive == null || !hasPrimitiveMethods(key, t, f.primitive)) 
+        {
+          error(e, f.keyType + " cannot serialize a primitive " + t);
+          valid = false;
+        }
+      }
+      fields.add(f);
+    }
+
+    Collections.sort(fields, new Comparator<Field>() {
+      public int compare(Field a, Field b) { 
+        return a.position < b.position ? -1 : 
+          (a.position == b.position ? 0 : 1);
+      }
+    });
+    return valid ? fields : null;
+  }
+
+  private boolean checkClass(TypeElement c) {
+    if (c.getKind() != ElementKind.CLASS 
+        || c.getModifiers().contains(Modifier.PRIVATE)
+        || c.getModifiers().contains(Modifier.ABSTRACT)
+        || (c.getNestingKind() != NestingKind.TOP_LEVEL 
+          && !c.getModifiers().contains(Modifier.STATIC)))
+    {
+      error(c, "@KeyField classes must be concrete, non-private classes " +
+          "(static if nested)");
+      return false;
+    }
+
+    for (ExecutableElement m : 
+        ElementFilter.constructorsIn(c.getEnclosedElements())) 
+    {
+      if (m.getParameters().isEmpty() 
+          && !m.getModifiers().contains(Modifier.PRIVATE))
+        return true;
+    }
+    error(c, "@KeyField classes must have a non-private no-argument " +
+        "constructor");
+    return false;
+  }
+
+  /** Gets the row key class of a field, or null if an error was reported. */
+  private TypeElement getKeyType(VariableElement e, KeyField a) {
+    TypeMirror t;
+    try {
+      a.type();
+      throw new IllegalStateException("KeyField.type() is not mirrored");
+    } catch (MirroredTypeException ex) {
+      t = ex.getTypeMirror();
+    }
+
+    TypeElement key = (TypeElement) processingEnv.getTypeUtils().asElement(t);
+    if (key.getQualifiedName().contentEquals(ROW_KEY)) {
+      String name = DEFAULT_KEYS.get(e.asType().toString());
+      if (name == null) {
+        error(e, "No default row key for " + e.asType() + 
+            ", specify @KeyField(type = ...)");
+        return null;
+      }
+      key = processingEnv.getElementUtils().getTypeElement(name);
+    }
+
+    if (!key.getModifiers().contains(Modifier.PUBLIC) 
+        || key.getModifiers().contains(Modifier.ABSTRACT)
+        || !hasPublicConstructor(key))
+    {
+      error(e, key + " must be a public, concrete class with a public " +
+          "no-argument constructor");
+      return null;
+    }
+    return key;
+  }
+
+  private static boolean hasPublicConstructor(TypeElement c) {
+    for (ExecutableElement m : 
+        ElementFilter.constructorsIn(c.getEnclosedElements())) 
+    {
+      if (m.getParameters().isEmpty() 
+          && m.getModifiers().contains(Modifier.PUBLIC))
+        return true;
+    }
+    return false;
+  }
+
+  private boolean isSubtype(TypeElement c, String[] names) {
+    for (String name : names) {
+      TypeElement e = processingEnv.getElementUtils().getTypeElement(name);
+      if (e != null && processingEnv.getTypeUtils().isSubtype(c.asType(), 
+            processingEnv.getTypeUtils().erasure(e.asType())))
+        return true;
+    }
+    return false;
+  }
+
+  private static String getPrimitiveSuffix(TypeKind kind) {
+    switch (kind) {
+      case INT: return "Int";
+      case LONG: return "Long";
+      case FLOAT: return "Float";
+      case DOUBLE: return "Double";
+      default: return null;
+    }
+  }
+
+  /** Returns true if a row key class has public getSerializedLength(t), 
+   * serialize<i>Suffix</i>(t, ImmutableBytesWritable) and 
+   * deserialize<i>Suffix</i>(ImmutableBytesWritable) methods.
+   */
+  private boolean hasPrimitiveMethods(TypeElement key, TypeMirror t, 
+      String suffix) 
+  {
+    boolean length = false, serialize = false, deserialize = false;
+    for (ExecutableElement m : ElementFilter.methodsIn(
+          processingEnv.getElementUtils().getAllMembers(key))) 
+    {
+      if (!m.getModifiers().contains(Modifier.PUBLIC))
+        continue;
+      String name = m.getSimpleName().toString();
+      List<? extends VariableElement> params = m.getParameters();
+      boolean primitiveParam = !params.isEmpty() && 
+        processingEnv.getTypeUtils().isSameType(params.get(0).asType(), t);
+
+      if (name.equals("getSerializedLength") && params.size() == 1)
+        length |= primitiveParam;
+      else if (name.equals("serialize" + suffix) && params.size() == 2)
+        serialize |= primitiveParam;
+      else if (name.equals("deserialize" + suffix) && params.size() == 1)
+        deserialize |= processingEnv.getTypeUtils().isSameType(
+            m.getReturnType(), t);
+    }
+    return length && serialize && deserialize;
+  }
+
+  private void error(Element e, String msg) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, e);
+  }
+
+  /* Code generation */
+
+  private void generate(TypeElement c, List<Field> fields) throws IOException
+  {
+    String pkg = ((PackageElement) getPackage(c)).getQualifiedName()
+      .toString(),
+           type = c.getQualifiedName().toString(),
+           codec = getCodecName(c);
+    PrintWriter out = new PrintWriter(processingEnv.getFiler()
+        .createSourceFile(pkg.length() == 0 ? codec : pkg + "." + codec, c)
+        .openWriter());
+    try {
+      new CodecWriter(out, pkg, type, codec, fields).write();
+    } finally {
+      out.close();
+    }
+  }
+
+  private static Element getPackage(Element e) {
+    while (e.getKind() != ElementKind.PACKAGE)
+      e = e.getEnclosingElement();
+    return e;
+  }
+
+  /** Gets the simple name of the codec, such as <code>Outer_InnerRowKeyCodec
+   * </code> for a nested class <code>Outer.Inner</code>.
+   */
+  private static String getCodecName(TypeElement c) {
+    String name = c.getSimpleName().toString();
+    for (Element e = c.getEnclosingElement(); 
+        e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement())
+      name = e.getSimpleName() + "_" + name;
+    return name + CODEC_SUFFIX;
+  }
+
+  /** Writes the source of a generated codec. */
+  private static class CodecWriter
+  {
+    private final PrintWriter out;
+    private final String pkg, type, codec;
+    private final List<Field> fields;
+    private final int n;
+    /* Index of the last field that is never empty, or -1 */
+    private final int lastNeverEmpty;
+    /* True if the trailing index must be computed at run-time */
+    private final boolean needsTrailingIndex;
+
+    CodecWriter(PrintWriter out, String pkg, String type, String codec, 
+        List<Field> fields) 
+    {
+      this.out = out;
+      this.pkg = pkg;
+      this.type = type;
+      this.codec = codec;
+      this.fields = fields;
+      this.n = fields.size();
+
+      int k = -1;
+      for (int i = 0; i < n; i++)
+        if (fields.get(i).isNeverEmpty())
+          k = i;
+      this.lastNeverEmpty = k;
+
+      boolean b = false;
+      for (int i = Math.max(k, 0); i < n - 1; i++)
+        b |= !fields.get(i).isTerminationFree();
+      this.needsTrailingIndex = b;
+    }
+
+    void write() {
+      if (pkg.length() > 0) {
+        out.println("package " + pkg + ";");
+        out.println();
+      }
+      out.println("import java.io.IOException;");
+      out.println();
+      out.println("import orderly.Order;");
+      out.println("import orderly.RowKey;");
+      out.println("import orderly.StructBuilder;");
+      out.println("import orderly.StructRowKey;");
+      out.println("import orderly.Termination;");
+      out.println();
+      out.println("import org.apache.hadoop.hbase.io.ImmutableBytesWritable;");
+      out.println();
+      out.println("/** Serializes and deserializes {@link " + type + 
+          "} objects using a struct");
+      out.println(" * row key. Generated by " + 
+          KeyFieldProcessor.class.getName() + ", do not edit.");
+      out.println(" */");
+      out.println("public final class " + codec);
+      out.println("{");
+
+      for (int i = 0; i < n; i++) {
+        Field f = fields.get(i);
+        out.println("  private final " + f.keyType + " t" + i + 
+            " = newRowKey(new " + f.keyType + "(), Order." + f.order + 
+            ", Termination.MUST);");
+        if (hasTrailing(i))
+          out.println("  private final " + f.keyType + " r" + i + 
+              " = newRowKey(new " + f.keyType + "(), Order." + f.order + 
+              ", Termination.AUTO);");
+      }
+      out.println();
+
+      writeNewRowKey();
+      writeGetRowKey();
+      writeGetSerializedLength();
+      writeSerialize();
+      writeSkip();
+      writeDeserialize();
+      if (needsTrailingIndex)
+        writeGetTrailingIndex();
+      out.println("}");
+    }
+
+    /* The last field always uses its trailing row key. Other fields only 
+     * need one if it may serialize differently. 
+     */
+    private boolean hasTrailing(int i) { 
+      return !fields.get(i).isTerminationFree() && i >= lastNeverEmpty;
+    }
+
+    private void writeNewRowKey() {
+      out.println("  private static <T extends RowKey> T newRowKey(T key, " +
+          "Order order, ");
+      out.println("      Termination termination)");
+      out.println("  {");
+      out.println("    key.setOrder(order).setTermination(termination);");
+      out.println("    return key;");
+      out.println("  }");
+      out.println();
+    }
+
+    private void writeGetRowKey() {
+      out.println("  /** Creates a struct row key serializing the same bytes " 
+          + "as this codec. */");
+      out.println("  public StructRowKey getRowKey() {");
+      out.println("    return new StructBuilder()");
+      for (Field f : fields)
+        out.println("      .add(new " + f.keyType + "().setOrder(Order." + 
+            f.order + "))");
+      out.println("      .toRowKey();");
+      out.println("  }");
+      out.println();
+
+      out.println("  /** Gets the values of the key fields of o, in the order " 
+          + "of the struct row key. */");
+      out.println("  public Object[] toValues(" + type + " o) {");
+      out.print("    return new Object[] {");
+      for (int i = 0; i < n; i++)
+        out.print((i > 0 ? ", " : " ") + "o." + fields.get(i).name);
+      out.println(" };");
+      out.println("  }");
+      out.println();
+    }
+
+    /** Gets the row key used to serialize field i, given the name of the 
+     * trailing index variable.
+     */
+    private String getKey(int i, String t) {
+      if (!hasTrailing(i))
+        return "t" + i;
+      if (i == n - 1)
+        return "r" + i;
+      return "(" + i + " < " + t + " ? t" + i + " : r" + i + ")";
+    }
+
+    private void writeTrailingIndex() {
+      if (needsTrailingIndex)
+        out.println("    int t = getTrailingIndex(o);");
+    }
+
+    private void writeGetSerializedLength() {
+      out.println("  public int getSerializedLength(" + type + " o) " + 
+          "throws IOException {");
+      writeTrailingIndex();
+      out.println("    int len = 0;");
+      for (int i = 0; i < n; i++)
+        out.println("    len += " + getKey(i, "t") + ".getSerializedLength(o." 
+            + fields.get(i).name + ");");
+      out.println("    return len;");
+      out.println("  }");
+      out.println();
+    }
+
+    private void writeSerialize() {
+      out.println("  public void serialize(" + type + 
+          " o, ImmutableBytesWritable w) ");
+      out.println("    throws IOException");
+      out.println("  {");
+      writeTrailingIndex();
+      for (int i = 0; i < n; i++) {
+        Field f = fields.get(i);
+        if (f.primitive != null)
+          out.println("    " + getKey(i, "t") + ".serialize" + f.primitive + 
+              "(o." + f.name + ", w);");
+        else
+          out.println("    " + getKey(i, "t") + ".serialize(o." + f.name + 
+              ", w);");
+      }
+      out.println("  }");
+      out.println();
+
+      out.println("  public byte[] serialize(" + type + " o) " + 
+          "throws IOException {");
+      out.println("    byte[] b = new byte[getSerializedLength(o)];");
+      out.println("    serialize(o, new ImmutableBytesWritable(b));");
+      out.println("    return b;");
+      out.println("  }");
+      out.println();
+    }
+
+    private void writeSkip() {
+      out.println("  public void skip(ImmutableBytesWritable w) " + 
+          "throws IOException {");
+      for (int i = 0; i < n; i++)
+        out.println("    t" + i + ".skip(w);");
+      out.println("  }");
+      out.println();
+    }
+
+    private void writeDeserialize() {
+      out.println("  /** Deserializes the key fields into an existing " +
+          "object. Fields not in the");
+      out.println("   * row key are not modified.");
+      out.println("   */");
+      out.println("  public " + type + " deserialize(ImmutableBytesWritable " +
+          "w, " + type + " o) ");
+      out.println("    throws IOException");
+      out.println("  {");
+      for (int i = 0; i < n; i++) {
+        Field f = fields.get(i);
+        if (f.primitive != null)
+          out.println("    o." + f.name + " = t" + i + ".deserialize" + 
+              f.primitive + "(w);");
+        else
+          out.println("    o." + f.name + " = (" + f.type + ") t" + i + 
+              ".deserialize(w);");
+      }
+      out.println("    return o;");
+      out.println("  }");
+      out.println();
+
+      out.println("  public " + type + " deserialize(ImmutableBytesWritable " 
+          + "w) throws IOException {");
+      out.println("    return deserialize(w, new " + type + "());");
+      out.println("  }");
+      out.println();
+
+      out.println("  public " + type + " deserialize(byte[] b) " + 
+          "throws IOException {");
+      out.println("    return deserialize(new ImmutableBytesWritable(b));");
+      out.println("  }");
+      out.println();
+    }
+
+    /* Index of the last field with a non-zero serialized length using its
+     * trailing row key, or zero if there is no such field. The scan stops 
+     * at the last field that is never empty.
+     */
+    private void writeGetTrailingIndex() {
+      out.println("  private int getTrailingIndex(" + type + " o) " + 
+          "throws IOException {");
+      int stop = Math.max(lastNeverEmpty, 0);
+      for (int i = n - 1; i > stop; i--) {
+        Field f = fields.get(i);
+        String key = hasTrailing(i) ? "r" + i : "t" + i;
+        if (f.nullEmpty)
+          out.println("    if (o." + f.name + " != null) return " + i + ";");
+        else
+          out.println("    if (" + key + ".getSerializedLength(o." + f.name + 
+              ") != 0) return " + i + ";");
+      }
+      out.println("    return " + stop + ";");
+      out.println("  }");
+      out.println();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.codegen;
+
+import java.math.BigDecimal;
+
+import orderly.Order;
+import orderly.UnsignedIntegerRowKey;
+
+import org.apache.hadoop.io.Text;
+
+/** Key with primitive, nullable and descending fields. */
+public class SampleKey
+{
+  @KeyField(position = 0) String symbol;
+  @KeyField(position = 1, order = Order.DESCENDING) long timestamp;
+  @KeyField(position = 3) int count;
+  @KeyField(position = 2, type = UnsignedIntegerRowKey.class) Integer venue;
+  @KeyField(position = 4) BigDecimal price;
+  @KeyField(position = 5, order = Order.DESCENDING) Text note;
+  @KeyField(position = 6) byte[] payload;
+
+  /* Not part of the row key */
+  String comment;
+
+  /** Key ending in nullable fields, which are terminated at run-time. */
+  public static class Nullable
+  {
+    @KeyField(position = 0) double score;
+    @KeyField(position = 1) String name;
+    @KeyField(position = 2) Long id;
+    @KeyField(position = 3) String tag;
+  }
+}
@@ -0,0 +1,139 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly.codegen;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Random;
+
+import orderly.StructRowKey;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestKeyFieldProcessor
+{
+  protected Random r;
+  protected int numTests;
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+  }
+
+  private String randString() {
+    if (r.nextInt(4) == 0)
+      return null;
+    char[] c = new char[r.nextInt(8)];
+    for (int i = 0; i < c.length; i++)
+      c[i] = (char) (r.nextBoolean() ? 'a' + r.nextInt(26) : r.nextInt(0xd800));
+    return new String(c);
+  }
+
+  private SampleKey randSampleKey() {
+    SampleKey o = new SampleKey();
+    o.symbol = randString();
+    o.timestamp = r.nextLong();
+    o.count = r.nextInt() >> r.nextInt(32);
+    o.venue = r.nextInt(4) == 0 ? null : Integer.valueOf(r.nextInt() >>> 1);
+    o.price = r.nextInt(4) == 0 ? null : 
+      BigDecimal.valueOf(r.nextLong() >> r.nextInt(64), r.nextInt(20) - 10);
+    String note = randString();
+    o.note = note == null ? null : new Text(note);
+    if (r.nextInt(4) != 0) {
+      o.payload = new byte[r.nextInt(8)];
+      r.nextBytes(o.payload);
+    }
+    return o;
+  }
+
+  private SampleKey.Nullable randNullable() {
+    SampleKey.Nullable o = new SampleKey.Nullable();
+    o.score = r.nextDouble() * r.nextInt();
+    o.name = randString();
+    o.id = r.nextInt(2) == 0 ? null : Long.valueOf(r.nextLong());
+    o.tag = randString();
+    return o;
+  }
+
+  @Test
+  public void testSampleKey() throws IOException {
+    SampleKeyRowKeyCodec codec = new SampleKeyRowKeyCodec();
+    StructRowKey struct = codec.getRowKey();
+
+    for (int i = 0; i < numTests; i++) {
+      SampleKey o = randSampleKey();
+      byte[] expected = struct.serialize(codec.toValues(o));
+      assertEquals(expected.length, codec.getSerializedLength(o));
+      byte[] b = codec.serialize(o);
+      assertArrayEquals(expected, b);
+
+      ImmutableBytesWritable w = new ImmutableBytesWritable(b);
+      codec.skip(w);
+      assertEquals(b.length, w.getOffset());
+      assertEquals(0, w.getLength());
+
+      SampleKey d = codec.deserialize(b);
+      assertArrayEquals(expected, codec.serialize(d));
+      assertEquals(o.timestamp, d.timestamp);
+      assertEquals(o.count, d.count);
+      assertEquals(o.venue, d.venue);
+      assertEquals(o.symbol, d.symbol);
+    }
+  }
+
+  @Test
+  public void testNullable() throws IOException {
+    SampleKey_NullableRowKeyCodec codec = new SampleKey_NullableRowKeyCodec();
+    StructRowKey struct = codec.getRowKey();
+
+    for (int i = 0; i < numTests; i++) {
+      SampleKey.Nullable o = randNullable();
+      byte[] expected = struct.serialize(codec.toValues(o));
+      assertArrayEquals(expected, codec.serialize(o));
+
+      SampleKey.Nullable d = codec.deserialize(expected);
+      assertEquals(o.score, d.score, 0.0);
+      assertEquals(o.name, d.name);
+      assertEquals(o.id, d.id);
+      assertEquals(o.tag, d.tag);
+    }
+  }
+
+  @Test
+  public void testReuse() throws IOException {
+    SampleKeyRowKeyCodec codec = new SampleKeyRowKeyCodec();
+    SampleKey o = randSampleKey(), reuse = new SampleKey();
+    reuse.comment = "unchanged";
+
+    byte[] b = codec.serialize(o);
+    assertSame(reuse, codec.deserialize(new ImmutableBytesWritable(b), reuse));
+    assertEquals("unchanged", reuse.comment);
+    assertArrayEquals(b, codec.serialize(reuse));
+  }
+}
@@ -19,6 +19,8 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -126,6 +128,13 @@ public abstract class AbstractVarIntRowKey extends RowKey
     this.HEADER_EXT_DATA_BITS = headerExtDataBits;
   }
 
+  @Override
+  public AbstractVarIntRowKey clone() {
+    AbstractVarIntRowKey k = (AbstractVarIntRowKey) super.clone();
+    k.lw = null;
+    return k;
+  }
+
   /** Creates a writable object for serializing long integers. */
   abstract Writable createWritable();
 
@@ -220,18 +229,31 @@ public abstract class AbstractVarIntRowKey extends RowKey
       return x | (((long)b & 0xff) << (byteOffset * 8));
   }
 
+  /** Gets the long integer value of a non-NULL object. Subclasses serializing
+   * objects other than the Writable returned by {@link #createWritable} 
+   * override this method to avoid converting each object to a Writable.
+   */
+  long getLong(Object o) { return getWritable((Writable)o); }
+
   @Override
   public int getSerializedLength(Object o) throws IOException {
     if (o == null)
       return terminate() ? 1 : 0;
+    return getSerializedLength(getLong(o));
+  }
 
+  /** Gets the serialized length of a non-NULL long integer. 
+   * @param x long integer to serialize
+   * @return serialized length of x (in bytes)
+   * @see #serializeLong
+   */
+  public int getSerializedLength(long x) {
   /* Compute the number of bits we must store in our variable-length integer
    * serialization. This is the bit position + 1 of the most significant bit 
    * that differs from the sign bit, or zero if all bits are equal to the sign.
    * Reference: Hacker's Delight, 5.3 "Relation to the Log Function", bitsize(x)
    */
-    long x = getWritable((Writable)o),
-         diffBits = x ^ (getSign(x) >> Long.SIZE - 1);
+    long diffBits = x ^ (getSign(x) >> Long.SIZE - 1);
     int numBits = Long.SIZE - Long.numberOfLeadingZeros(diffBits);    
 
     if (numBits <=  HEADER_SINGLE_DATA_BITS - reservedBits)
@@ -322,24 +344,57 @@ public abstract class AbstractVarIntRowKey extends RowKey
   public void serialize(Object o, ImmutableBytesWritable w) 
     throws IOException
   {
+    if (o == null) 
+      serializeNull(w);
+    else
+      serializeLong(getLong(o), w);
+  }
+
+  /** Serializes a non-NULL long integer without allocating or boxing. This 
+   * produces exactly the same bytes as {@link #serialize(Object, 
+   * ImmutableBytesWritable)} for the equivalent object, and the writable 
+   * position is advanced past the serialized bytes.
+   * @param x long integer to serialize
+   * @param w writable to serialize into
+   */
+  public void serializeLong(long x, ImmutableBytesWritable w) {
     byte[] b = w.get();
-    int offset = w.getOffset();
+    int offset = w.getOffset(),
+        length = getSerializedLength(x);
+    
+    b[offset] = toHeader(getSign(x) != 0, length, readByte(x, length - 1));
+    for (int i = 1; i < length; i++)  
+      b[offset + i] = mask(readByte(x, length - i - 1));
+    RowKeyUtils.seek(w, length);
+  }
+
+  /** Serializes a NULL value. Nothing is written if NULL is implicitly 
+   * terminated (see {@link RowKey}).
+   * @param w writable to serialize into
+   */
+  public void serializeNull(ImmutableBytesWritable w) {
+    if (terminate()) {
+      w.get()[w.getOffset()] = getNull();
+      RowKeyUtils.seek(w, 1);
+    }
+  }
 
+  @Override
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
     if (o == null) {
-      if (terminate()) {
-        b[offset] = getNull();
-        RowKeyUtils.seek(w, 1);
-      }
+      if (terminate())
+        b.put(getNull());
       return;
     }
 
-    long x = getWritable((Writable)o);
-    int length = getSerializedLength((Writable)o);
-    
-    b[offset] = toHeader(getSign(x) != 0, length, readByte(x, length - 1));
+    long x = getLong(o);
+    int length = getSerializedLength(x);
+    if (b.remaining() < length)
+      throw new BufferOverflowException();
+
+    b.put(toHeader(getSign(x) != 0, length, readByte(x, length - 1)));
     for (int i = 1; i < length; i++)  
-      b[offset + i] = mask(readByte(x, length - i - 1));
-    RowKeyUtils.seek(w, length);
+      b.put(mask(readByte(x, length - i - 1)));
   }
 
   /** Gets the sign of a header byte. The returned value will have the 
@@ -391,17 +446,63 @@ public abstract class AbstractVarIntRowKey extends RowKey
     }
   }
 
+  @Override
+  protected void skipDirect(ByteBuffer b) throws IOException {
+    if (!b.hasRemaining())
+      return;
+
+    byte h = b.get(b.position());
+    if (isNull(h)) {
+      b.position(b.position() + 1);
+    } else {
+      h = deserializeNonNullHeader(mask(h));
+      b.position(b.position() + getVarIntLength((byte) (h << reservedBits)));
+    }
+  }
+
+  /** Returns true if the next serialized value in the writable is NULL. The
+   * writable position is not modified. An empty writable is an implicitly 
+   * terminated NULL. 
+   */
+  public boolean isNull(ImmutableBytesWritable w) {
+    return w.getLength() <= 0 || isNull(w.get()[w.getOffset()]);
+  }
+
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    byte[] b = w.get();
-    int offset = w.getOffset();
-    if (w.getLength() <= 0)
+    if (isNull(w)) {
+      skip(w);
       return null;
+    }
 
-    if (isNull(b[offset])) {
-      RowKeyUtils.seek(w, 1);
-      return null;
+    Writable lw = reuse ? this.lw : null;
+    if (lw == null) {
+      lw = createWritable();
+      if (reuse)
+        this.lw = lw;
     }
+    setWritable(readLong(w), lw);
+    return lw;
+  }
+
+  /** Deserializes a non-NULL long integer without allocating or boxing. 
+   * Callers should test for NULL values using 
+   * {@link #isNull(ImmutableBytesWritable)} if the serialized value may be 
+   * NULL. The writable position is advanced past the serialized bytes.
+   * @param w writable to deserialize from
+   * @return deserialized long integer
+   * @throws NullPointerException if the serialized value is NULL
+   */
+  public long deserializeLong(ImmutableBytesWritable w) {
+    if (isNull(w))
+      throw new NullPointerException("Cannot deserialize NULL as a long");
+    return readLong(w);
+  }
+
+  /** Reads a non-NULL variable-length integer. */
+  private long readLong(ImmutableBytesWritable w) {
+    byte[] b = w.get();
+    int offset = w.getOffset();
 
     byte h = (byte) (deserializeNonNullHeader(mask(b[offset])) << reservedBits);
     int length = getVarIntLength(h);
@@ -414,10 +515,6 @@ public abstract class AbstractVarIntRowKey extends RowKey
     for (int i = 1; i < length; i++) 
       x = writeByte(mask(b[offset + i]), x, length - i - 1);
     RowKeyUtils.seek(w, length);
-
-    if (lw == null)
-      lw = createWritable();
-    setWritable(x, lw);
-    return lw;
+    return x;
   }
 }
@@ -21,6 +21,8 @@ package orderly;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.LongWritable;
@@ -145,6 +147,11 @@ import org.apache.hadoop.io.Writable;
  * <h1> Usage </h1>
  * This is the second fastest class for storing <code>BigDecimal</code> objects.
  * Two copies are performed during serialization and three for deserialization. 
+ * Values with at most {@link #MAX_LONG_PRECISION} significant digits take a 
+ * faster path: the digits of the unscaled value are extracted arithmetically
+ * from a <code>long</code> and packed two at a time from a lookup table, and
+ * are decoded back into a <code>long</code> without any intermediate String. 
+ * The serialization format is identical for both paths.
  * Unfortunately, as <code>BigDecimal</code> objects are immutable, they cannot
  * be re-used during deserialization. Each deserialization must allocate a new 
  * <code>BigDecimal</code>. There is currently no available mutable 
@@ -161,29 +168,68 @@ public class BigDecimalRowKey extends RowKey
   /* Number of header bits */
   protected static final int HEADER_BITS = 0x2;
 
-  protected LongWritable lw;
-  protected ExponentRowKey expKey;
-  protected byte signMask;
+  /** Maximum number of significant digits encoded and decoded via a long */
+  protected static final int MAX_LONG_PRECISION = 18;
+
+  /* Packed BCD byte for each pair of decimal digits 00-99 */
+  private static final byte[] BCD_PAIRS = new byte[100];
+
+  /* Value 0-99 of each packed BCD byte holding two digits, or -1 if either
+   * nibble is a terminator (or otherwise not a digit) */
+  private static final byte[] BCD_VALUES = new byte[256];
+
+  static {
+    Arrays.fill(BCD_VALUES, (byte) -1);
+    for (int i = 0; i < BCD_PAIRS.length; i++) {
+      BCD_PAIRS[i] = (byte) ((i / 10 + 1) << 4 | (i % 10 + 1));
+      BCD_VALUES[BCD_PAIRS[i] & 0xff] = (byte) i;
+    }
+  }
+
+  /* Exponent row keys, indexed by header type. Each exponent row key has its 
+   * header stored as the reserved value, and its bits inverted if the header
+   * is negative, so that no state is modified during serialization.
+   */
+  protected ExponentRowKey[] expKeys;
 
   public BigDecimalRowKey() {
-    expKey = new ExponentRowKey();
-    expKey.setReservedBits(HEADER_BITS).setTermination(Termination.MUST);
+    expKeys = new ExponentRowKey[HEADER_POSITIVE + 1];
+    for (int h = 0; h < expKeys.length; h++) {
+      expKeys[h] = new ExponentRowKey(getSignMask((byte)h));
+      expKeys[h].setReservedBits(HEADER_BITS).setTermination(Termination.MUST);
+    }
+    setOrder(Order.ASCENDING);
   }
 
   @Override
   public RowKey setOrder(Order order) {
-    expKey.setOrder(order);
-    return super.setOrder(order);
+    super.setOrder(order);
+    for (int h = 0; h < expKeys.length; h++) {
+      expKeys[h].setOrder(order);
+      expKeys[h].setReservedValue(mask((byte)h));
+    }
+    return this;
   }
 
-  protected byte getSignMask() { return signMask; }
-
-  protected void resetSignMask() { setSignMask((byte)0); }
+  @Override
+  public BigDecimalRowKey clone() {
+    BigDecimalRowKey k = (BigDecimalRowKey) super.clone();
+    k.expKeys = new ExponentRowKey[expKeys.length];
+    for (int h = 0; h < expKeys.length; h++)
+      k.expKeys[h] = expKeys[h].clone();
+    return k;
+  }
 
-  protected void setSignMask(byte signMask) { this.signMask = signMask; }
+  /** Gets the mask applied to all serialized bits (other than the header) for
+   * the specified header type. Returns -1 if the header is 
+   * {@link #HEADER_NEGATIVE}, 0 otherwise.
+   */
+  protected static byte getSignMask(byte header) { 
+    return (byte) (header == HEADER_NEGATIVE ? -1 : 0);
+  }
 
-  @Override
-  protected byte mask(byte b) {
+  /** Masks byte b using both the sort order and the sign mask. */
+  protected byte mask(byte b, byte signMask) {
     return (byte) (b ^ order.mask() ^ signMask);
   }
 
@@ -196,16 +242,26 @@ public class BigDecimalRowKey extends RowKey
    * terminator nibble if terminate() is true.
    */
   protected int getSerializedLength(String s) { 
-    return (s.length() + (terminate() ? 2 : 1)) >>> 1; 
+    return getBCDLength(s.length());
+  }
+
+  /** Gets the length of a BCD serialization with the specified number of 
+   * digits. 
+   */
+  protected int getBCDLength(int digits) {
+    return (digits + (terminate() ? 2 : 1)) >>> 1; 
   }
 
   /** Serializes a decimal String s into packed, zero nibble-terminated BCD 
    * format.  After this operation completes, the position (length) of the byte 
    * buffer is incremented (decremented) by the number of bytes written.
    * @param s unsigned decimal string to convert to BCD
+   * @param signMask sign mask of the BigDecimal header
    * @param w byte buffer to store the BCD bytes
    */
-  protected void serializeBCD(String s, ImmutableBytesWritable w) {
+  protected void serializeBCD(String s, byte signMask, 
+      ImmutableBytesWritable w) 
+  {
     byte[] b = w.get();
     int offset = w.getOffset(),
         strLength = s.length(),
@@ -218,7 +274,43 @@ public class BigDecimalRowKey extends RowKey
         bcd = (byte) (1 + Character.digit(s.charAt(strPos), 10) << 4);
       if (++strPos < strLength)
         bcd |= (byte) (1 + Character.digit(s.charAt(strPos), 10));
-      b[offset + i] = mask(bcd);
+      b[offset + i] = mask(bcd, signMask);
+    }
+
+    RowKeyUtils.seek(w, bcdLength);
+  }
+
+  /** Serializes the decimal digits of a non-negative long into packed, zero 
+   * nibble-terminated BCD format. The output is identical to 
+   * {@link #serializeBCD(String, byte, ImmutableBytesWritable)} applied to
+   * the decimal string of <code>u</code>. After this operation completes, the
+   * position (length) of the byte buffer is incremented (decremented) by the 
+   * number of bytes written.
+   * @param u non-negative value to convert to BCD
+   * @param precision number of decimal digits in u
+   * @param signMask sign mask of the BigDecimal header
+   * @param w byte buffer to store the BCD bytes
+   */
+  protected void serializeBCD(long u, int precision, byte signMask,
+      ImmutableBytesWritable w)
+  {
+    byte[] b = w.get();
+    int offset = w.getOffset(),
+        bcdLength = getBCDLength(precision),
+        i = precision >>> 1;
+
+    /* Last byte holds the final digit of an odd-length value, or the 
+     * terminator of an even-length value if one is required */
+    if ((precision & 1) != 0) {
+      b[offset + i] = mask((byte) ((u % 10 + 1) << 4), signMask);
+      u /= 10;
+    } else if (i < bcdLength) {
+      b[offset + i] = mask((byte) 0, signMask);
+    }
+
+    while (--i >= 0) {
+      b[offset + i] = mask(BCD_PAIRS[(int) (u % 100)], signMask);
+      u /= 100;
     }
 
     RowKeyUtils.seek(w, bcdLength);
@@ -231,59 +323,109 @@ public class BigDecimalRowKey extends RowKey
   }
 
   @Override
-  public int getSerializedLength(Object o) throws IOException {
+  protected Object prepare(Object o) throws IOException {
     if (o == null)
-      return terminate() ? expKey.getSerializedLength(null) : 0;
+      return null;
+
+    BigDecimal d = (BigDecimal)o;
+    if (d.precision() <= MAX_LONG_PRECISION) {
+      PreparedDecimal x = prepareLong(d);
+      if (x != null)
+        return x;
+    }
 
-    BigDecimal d = ((BigDecimal)o).stripTrailingZeros();
+    d = d.stripTrailingZeros();
     BigInteger i = d.unscaledValue();
-    if (i.signum() == 0) 
-      return expKey.getSerializedLength(null);
+    if (i.signum() == 0)
+      return PreparedDecimal.ZERO;
 
     String s = getDecimalString(i);
-    if (lw == null)
-      lw = new LongWritable();
-    lw.set((long)s.length() + -d.scale() -1L);
+    /* Adjusted exponent = precision + scale - 1 */
+    long precision = s.length(),
+         exp = precision + -d.scale() -1L;
+    return new PreparedDecimal(i.signum() < 0 ? HEADER_NEGATIVE : 
+        HEADER_POSITIVE, exp, s);
+  }
+
+  /** Prepares a BigDecimal whose unscaled value has at most 
+   * {@link #MAX_LONG_PRECISION} digits, stripping its trailing zeros 
+   * arithmetically. Returns null if the stripped scale would overflow an int, 
+   * leaving that case to {@link BigDecimal#stripTrailingZeros}.
+   */
+  protected PreparedDecimal prepareLong(BigDecimal d) {
+    long u = d.unscaledValue().longValue();
+    if (u == 0)
+      return PreparedDecimal.ZERO;
+
+    long scale = d.scale();
+    int precision = d.precision();
+    while ((u & 1) == 0 && u % 10 == 0) {
+      u /= 10;
+      scale--;
+      precision--;
+    }
+    if (scale < Integer.MIN_VALUE)
+      return null;
+
+    /* Adjusted exponent = precision + scale - 1 */
+    return new PreparedDecimal(u < 0 ? HEADER_NEGATIVE : HEADER_POSITIVE,
+        precision - scale - 1L, Math.abs(u), precision);
+  }
 
-    return expKey.getSerializedLength(lw) + getSerializedLength(s);
+  @Override
+  protected int getPreparedLength(Object p) throws IOException {
+    if (p == null)
+      return terminate() ? expKeys[HEADER_NULL].getSerializedLength(null) : 0;
+
+    PreparedDecimal x = (PreparedDecimal) p;
+    if (x.header == HEADER_ZERO)
+      return expKeys[HEADER_ZERO].getSerializedLength(null);
+    return expKeys[x.header].getSerializedLength(x.exp) 
+      + getBCDLength(x.precision);
   }
 
   @Override
-  public void serialize(Object o, ImmutableBytesWritable w) 
+  protected void serializePrepared(Object p, ImmutableBytesWritable w) 
     throws IOException
   {
-    resetSignMask();
-
-    if (o == null) {
-      if (terminate()) {
-        expKey.setReservedValue(mask(HEADER_NULL));
-        expKey.serialize(null, w);
-      }
+    if (p == null) {
+      if (terminate()) 
+        expKeys[HEADER_NULL].serializeNull(w);
       return;
     }
 
-    BigDecimal d = ((BigDecimal)o).stripTrailingZeros();
-    BigInteger i = d.unscaledValue();
-    if (i.signum() == 0) {
-      expKey.setReservedValue(mask(HEADER_ZERO));
-      expKey.serialize(null, w);
+    PreparedDecimal x = (PreparedDecimal) p;
+    if (x.header == HEADER_ZERO) {
+      expKeys[HEADER_ZERO].serializeNull(w);
       return;
     }
 
-    byte header = i.signum() < 0 ? HEADER_NEGATIVE : HEADER_POSITIVE;
-    expKey.setReservedValue(mask(header));
+    expKeys[x.header].serializeLong(x.exp, w);
+    if (x.digits == null)
+      serializeBCD(x.unscaled, x.precision, getSignMask(x.header), w);
+    else
+      serializeBCD(x.digits, getSignMask(x.header), w);
+  }
 
-    String s = getDecimalString(i);
-    /* Adjusted exponent = precision + scale - 1 */
-    long precision = s.length(),
-         exp = precision + -d.scale() -1L;
-    if (lw == null)
-      lw = new LongWritable();
-    lw.set(exp);
+  @Override
+  protected void serializePreparedDirect(Object p, ByteBuffer b)
+    throws IOException
+  {
+    byte[] t = new byte[getPreparedLength(p)];
+    serializePrepared(p, new ImmutableBytesWritable(t));
+    b.put(t);
+  }
 
-    setSignMask((byte) (i.signum() >> Integer.SIZE - 1));
-    expKey.serialize(lw, w);
-    serializeBCD(s, w);
+  @Override
+  public int getSerializedLength(Object o) throws IOException {
+    return getPreparedLength(prepare(o));
+  }
+
+  @Override
+  public void serialize(Object o, ImmutableBytesWritable w) 
+    throws IOException
+  {
+    serializePrepared(prepare(o), w);
   }
 
   /** Decodes a Binary Coded Decimal digit and adds it to a string. Returns 
@@ -300,7 +442,7 @@ public class BigDecimalRowKey extends RowKey
   /** Converts a packed, zero nibble-terminated BCD byte array into an unsigned 
    * decimal String. 
    */
-  protected String deserializeBCD(ImmutableBytesWritable w) {
+  protected String deserializeBCD(ImmutableBytesWritable w, byte signMask) {
     byte[] b = w.get();
     int offset = w.getOffset(),
         len = w.getLength(),
@@ -308,7 +450,7 @@ public class BigDecimalRowKey extends RowKey
 
     StringBuilder sb = new StringBuilder();
     while(i < len) {
-      byte c = mask(b[offset + i++]);
+      byte c = mask(b[offset + i++], signMask);
       if (addDigit((byte) ((c >>> 4) & 0xf), sb)
           || addDigit((byte) (c & 0xf), sb))
         break;
@@ -318,31 +460,21 @@ public class BigDecimalRowKey extends RowKey
     return sb.toString();
   }
 
-  protected int getBCDEncodedLength(ImmutableBytesWritable w) {
+  protected int getBCDEncodedLength(ImmutableBytesWritable w, byte signMask) {
     byte[] b = w.get();
     int offset = w.getOffset(),
         len = w.getLength(),
-        i = 0;
-
-    while (i < len) {
-      byte c = mask(b[offset + i++]);
-      if (((c & 0xf0) == 0) || ((c & 0x0f) == 0))
-        break;
-    }
-
-    return i;
+        i = ByteScanner.indexOfZeroNibble(b, offset, len, mask((byte)0, 
+              signMask));
+    return i < len ? i + 1 : len;
   }
 
-  /** Deserializes BigDecimal header from exponent byte. This method will set
-   * sign mask to -1 if header is {@link #HEADER_NEGATIVE}, 0 otherwise.
+  /** Deserializes BigDecimal header from exponent byte. 
    * @param b most significant byte of exponent (header byte)
    * @return the BigDecimal header stored in byte b
    */
   protected byte deserializeHeader(byte b) {
-    resetSignMask();
-    byte h = (byte) ((mask(b) & 0xff) >>> Byte.SIZE - HEADER_BITS);
-    setSignMask((byte) (h == HEADER_NEGATIVE ? -1 : 0));
-    return h;
+    return (byte) ((mask(b) & 0xff) >>> Byte.SIZE - HEADER_BITS);
   }
 
   @Override
@@ -350,12 +482,33 @@ public class BigDecimalRowKey extends RowKey
     if (w.getLength() <= 0)
       return;
 
-    byte b = w.get()[w.getOffset()];
-    deserializeHeader(b);
+    byte b = w.get()[w.getOffset()],
+         h = deserializeHeader(b);
+    ExponentRowKey expKey = expKeys[h];
     expKey.skip(w);
     if (expKey.isNull(b))
       return;
-    RowKeyUtils.seek(w, getBCDEncodedLength(w));
+    RowKeyUtils.seek(w, getBCDEncodedLength(w, getSignMask(h)));
+  }
+
+  @Override
+  protected void skipDirect(ByteBuffer b) throws IOException {
+    if (b.remaining() <= 0)
+      return;
+
+    byte x = b.get(b.position()),
+         h = deserializeHeader(x);
+    ExponentRowKey expKey = expKeys[h];
+    expKey.skip(b);
+    if (expKey.isNull(x))
+      return;
+
+    byte signMask = getSignMask(h);
+    while (b.hasRemaining()) {
+      byte c = mask(b.get(), signMask);
+      if (((c & 0xf0) == 0) || ((c & 0x0f) == 0))
+        break;
+    }
   }
     
   @Override
@@ -367,12 +520,48 @@ public class BigDecimalRowKey extends RowKey
       return null;
 
     byte h = deserializeHeader(b[offset]);
-    LongWritable o = (LongWritable) expKey.deserialize(w);
-    if (o == null) 
+    ExponentRowKey expKey = expKeys[h];
+    if (expKey.isNull(w)) {
+      expKey.skip(w);
       return h == HEADER_NULL ? null : BigDecimal.ZERO;
+    }
+
+    long exp = expKey.deserializeLong(w);
+    byte signMask = getSignMask(h);
+    int bcdLength = getBCDEncodedLength(w, signMask);
+    b = w.get();
+    offset = w.getOffset();
+
+    /* At most MAX_LONG_PRECISION digits, possibly followed by a terminator
+     * byte when the digit count is even */
+    int maxLength = MAX_LONG_PRECISION >>> 1;
+    if (bcdLength <= maxLength || (bcdLength == maxLength + 1 
+          && mask(b[offset + maxLength], signMask) == 0)) 
+    {
+      long u = 0;
+      int precision = 0;
+
+      for (int i = 0; i < bcdLength; i++) {
+        byte c = mask(b[offset + i], signMask);
+        int pair = BCD_VALUES[c & 0xff];
+        if (pair < 0) {
+          int hi = (c >>> 4) & 0xf;
+          if (hi != 0) {
+            u = u * 10 + hi - 1;
+            precision++;
+          }
+          break;
+        }
+        u = u * 100 + pair;
+        precision += 2;
+      }
 
-    long exp = o.get();
-    String s = deserializeBCD(w);
+      RowKeyUtils.seek(w, bcdLength);
+      int scale = (int) (exp - precision + 1L);
+      return BigDecimal.valueOf(h == HEADER_POSITIVE ? u : -u, -scale);
+    }
+
+    String s = deserializeBCD(w, signMask);
 
     int precision = s.length(),
         scale = (int) (exp - precision + 1L); 
@@ -381,7 +570,40 @@ public class BigDecimalRowKey extends RowKey
     return new BigDecimal(i, -scale);
   }
 
-  protected class ExponentRowKey extends IntWritableRowKey {
+  /** A non-NULL BigDecimal with its trailing zeros stripped, split into its
+   * header, adjusted exponent and unsigned decimal digits. The digits are
+   * held either as a String or, on the fast path, as a long.
+   */
+  protected static class PreparedDecimal {
+    static final PreparedDecimal ZERO = 
+      new PreparedDecimal(HEADER_ZERO, 0, null);
+
+    final byte header;
+    final long exp;
+    final String digits;
+    final long unscaled;
+    final int precision;
+
+    PreparedDecimal(byte header, long exp, String digits) {
+      this.header = header;
+      this.exp = exp;
+      this.digits = digits;
+      this.unscaled = 0;
+      this.precision = digits == null ? 0 : digits.length();
+    }
+
+    /* Decimal with an unsigned unscaled value of at most MAX_LONG_PRECISION
+     * digits and no trailing zeros, kept as a long rather than a String */
+    PreparedDecimal(byte header, long exp, long unscaled, int precision) {
+      this.header = header;
+      this.exp = exp;
+      this.digits = null;
+      this.unscaled = unscaled;
+      this.precision = precision;
+    }
+  }
+
+  protected static class ExponentRowKey extends IntWritableRowKey {
     /* The maximum value that can be stored by IntWritableRowKey's serialization
      * format (excluding the sign bit) is a 35-bit value, which is enough to 
      * store the 33-bit adjusted exponent + two reserved bits. We override the 
@@ -389,6 +611,13 @@ public class BigDecimalRowKey extends RowKey
      * in memory, while continuing to use IntWritableRowKey's serialization 
      * format for byte serialization/deserialization.
      */
+    private final byte signMask;
+
+    public ExponentRowKey(byte signMask) { this.signMask = signMask; }
+
+    @Override
+    public ExponentRowKey clone() { return (ExponentRowKey) super.clone(); }
+
     @Override
     public Class<?> getSerializedClass() { return LongWritable.class; }
 
@@ -403,7 +632,7 @@ public class BigDecimalRowKey extends RowKey
 
     @Override
     protected byte mask(byte b) {
-      return (byte) (b ^ order.mask() ^ getSignMask());
+      return (byte) (b ^ order.mask() ^ signMask);
     }
   }
 }
@@ -0,0 +1,119 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** Finds terminator bytes and nibbles in serialized row keys eight bytes at a
+ * time, using SIMD-within-a-register (SWAR) tests on 64-bit words.
+ *
+ * <p>Each scan XORs a word of serialized bytes with a repeated pattern (such
+ * as the terminator byte, or a sort order mask), so that the bytes or 
+ * nibbles being searched for become zero, and then finds the first zero 
+ * lane. The zero lane tests are exact: a lane is flagged if and only if it 
+ * is zero, so the first flagged lane is the first match. Words are read in
+ * little-endian order, so the first byte of the array is the least 
+ * significant byte of the word and the first match is found with 
+ * {@link Long#numberOfTrailingZeros}. Bytes at the end of the range that do
+ * not fill a whole word are scanned one at a time.</p>
+ *
+ * <p>Words are read through a little-endian <code>ByteBuffer</code> wrapping
+ * the array. Current JVMs compile each read to a single (unaligned) load, and
+ * eliminate the wrapper object using escape analysis, so no objects are 
+ * allocated per scan. Assembling words from individual bytes instead is 
+ * slower than scanning one byte at a time.</p>
+ *
+ * <p>All methods return the number of bytes before the first match, or the 
+ * length of the range if there is no match.</p>
+ */
+final class ByteScanner
+{
+  private static final long ONES = 0x0101010101010101L,
+                            LOW_7_BITS = 0x7f7f7f7f7f7f7f7fL,
+                            LOW_3_BITS = 0x7777777777777777L,
+                            HIGH_NIBBLES = 0xf0f0f0f0f0f0f0f0L;
+
+  private ByteScanner() { }
+
+  /** Returns a word with the high bit of each zero byte of x set. */
+  static long zeroBytes(long x) {
+    return ~(((x & LOW_7_BITS) + LOW_7_BITS) | x | LOW_7_BITS);
+  }
+
+  /** Returns a word with the high bit of each zero nibble of x set. */
+  static long zeroNibbles(long x) {
+    return ~(((x & LOW_3_BITS) + LOW_3_BITS) | x | LOW_3_BITS);
+  }
+
+  /** Finds the first byte equal to v. */
+  static int indexOf(byte[] b, int offset, int len, byte v) {
+    long pattern = (v & 0xffL) * ONES;
+    int i = 0;
+    ByteBuffer bb = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+    for (; i <= len - 8; i += 8) {
+      long z = zeroBytes(bb.getLong(offset + i) ^ pattern);
+      if (z != 0)
+        return i + (Long.numberOfTrailingZeros(z) >>> 3);
+    }
+    for (; i < len; i++)
+      if (b[offset + i] == v)
+        return i;
+    return len;
+  }
+
+  /** Finds the first byte with a zero nibble, after XOR with a mask. */
+  static int indexOfZeroNibble(byte[] b, int offset, int len, byte mask) {
+    long pattern = (mask & 0xffL) * ONES;
+    int i = 0;
+    ByteBuffer bb = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+    for (; i <= len - 8; i += 8) {
+      long z = zeroNibbles(bb.getLong(offset + i) ^ pattern);
+      if (z != 0)
+        return i + (Long.numberOfTrailingZeros(z) >>> 3);
+    }
+    for (; i < len; i++) {
+      int c = b[offset + i] ^ mask;
+      if ((c & 0xf0) == 0 || (c & 0x0f) == 0)
+        return i;
+    }
+    return len;
+  }
+
+  /** Finds the first byte whose low nibble is equal to v, after XOR with a
+   * mask. 
+   */
+  static int indexOfLowNibble(byte[] b, int offset, int len, byte mask, 
+      int v) 
+  {
+    /* Setting every high nibble makes only the low nibbles eligible */
+    long pattern = ((mask ^ v) & 0xffL) * ONES;
+    int i = 0;
+    ByteBuffer bb = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+    for (; i <= len - 8; i += 8) {
+      long z = zeroNibbles((bb.getLong(offset + i) ^ pattern) | HIGH_NIBBLES);
+      if (z != 0)
+        return i + (Long.numberOfTrailingZeros(z) >>> 3);
+    }
+    for (; i < len; i++)
+      if (((b[offset + i] ^ mask) & 0x0f) == v)
+        return i;
+    return len;
+  }
+}
@@ -0,0 +1,151 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+/** Base class of the struct row keys generated by {@link StructRowKeyCompiler}.
+ *
+ * <p>A compiled struct row key produces exactly the same bytes as the 
+ * {@link StructRowKey} it was compiled from, and deserializes the same 
+ * values. The generated subclass replaces the loops over the field row keys 
+ * with straight-line code for each field, calling each field row key through
+ * its concrete class rather than through {@link RowKey}. The termination of 
+ * each field is decided when the struct is compiled: fields whose 
+ * termination cannot depend on the trailing values are serialized without 
+ * any run-time checks.</p>
+ *
+ * <p>The schema of a compiled struct row key is fixed. Its sort order and
+ * termination cannot be changed (compile a new row key instead), and later 
+ * changes to the struct or field row keys it was compiled from have no 
+ * effect. Like <code>StructRowKey</code>, a compiled struct row key re-uses
+ * objects during deserialization and must only be used by one thread at a 
+ * time. Use {@link RowKeyCodec} to share it between threads.</p>
+ */
+public abstract class CompiledStructRowKey extends RowKey 
+{
+  /* Frozen copy of the source struct. Its terminated and trailing field row 
+   * keys are the row keys called by the generated subclass.
+   */
+  protected final StructRowKey struct;
+  protected final RowKey[] terminated, trailing;
+  protected Object[] v;
+
+  /** Creates a compiled struct row key. Called only by generated subclasses.
+   * @param struct a frozen struct row key, owned by this object
+   */
+  protected CompiledStructRowKey(StructRowKey struct) {
+    this.struct = struct;
+    this.order = struct.getOrder();
+    this.termination = struct.getTermination();
+    this.reuse = struct.getReuse();
+    this.terminated = struct.getTerminatedFields();
+    this.trailing = struct.getTrailingFields();
+  }
+
+  /** Gets a copy of the struct row key this row key was compiled from. */
+  public StructRowKey getStructRowKey() { 
+    return (StructRowKey) struct.clone(); 
+  }
+
+  /** Throws <code>UnsupportedOperationException</code>, as the sort order 
+   * of a compiled struct row key is fixed.
+   */
+  @Override
+  public RowKey setOrder(Order order) {
+    throw new UnsupportedOperationException("Cannot change the sort order "
+        + "of a compiled struct row key");
+  }
+
+  /** Throws <code>UnsupportedOperationException</code>, as the termination
+   * of a compiled struct row key is fixed.
+   */
+  @Override
+  public RowKey setTermination(Termination termination) {
+    throw new UnsupportedOperationException("Cannot change the termination "
+        + "of a compiled struct row key");
+  }
+
+  @Override
+  public Class<?> getSerializedClass() { return Object[].class; }
+
+  /** Returns a new instance of the same generated class, using a copy of 
+   * the field row keys. 
+   */
+  @Override
+  public CompiledStructRowKey clone() {
+    return StructRowKeyCompiler.newInstance(getClass(), 
+        (StructRowKey) struct.clone());
+  }
+
+  /** Casts a serialized object to an array of field values, checking the 
+   * number of values. Called by generated subclasses.
+   */
+  protected Object[] toValues(Object obj) {
+    Object[] o = (Object[]) obj;
+    if (o.length != terminated.length)
+      throw new IndexOutOfBoundsException("Expected " + terminated.length 
+         + " values but got " + o.length + " values");
+    return o;
+  }
+
+  /* Called by generated subclasses, which cannot call the protected 
+   * methods of field row keys directly.
+   */
+
+  protected static Object prepareField(RowKey key, Object o) 
+    throws IOException 
+  {
+    return key.prepare(o);
+  }
+
+  protected static int getPreparedFieldLength(RowKey key, Object p) 
+    throws IOException 
+  {
+    return key.getPreparedLength(p);
+  }
+
+  protected static void serializePreparedField(RowKey key, Object p, 
+      ImmutableBytesWritable w) throws IOException 
+  {
+    key.serializePrepared(p, w);
+  }
+
+  @Override
+  public RowKey setReuse(boolean reuse) {
+    struct.setReuse(reuse);
+    return super.setReuse(reuse);
+  }
+
+  /** Gets the array used to return deserialized field values. The array is
+   * re-used across calls, unless re-use is disabled by {@link #setReuse}. 
+   * Called by generated subclasses.
+   */
+  protected Object[] getValues() {
+    Object[] v = reuse ? this.v : null;
+    if (v == null) {
+      v = new Object[terminated.length];
+      if (reuse)
+        this.v = v;
+    }
+    return v;
+  }
+}
@@ -40,36 +40,23 @@ import org.apache.hadoop.io.DoubleWritable;
  */
 public class DoubleRowKey extends DoubleWritableRowKey 
 {
-  private DoubleWritable dw;
-
   @Override
   public Class<?> getSerializedClass() { return Double.class; }
 
-  protected Object toDoubleWritable(Object o) {
-    if (o == null || o instanceof DoubleWritable)
-      return o;
-    if (dw == null)
-      dw = new DoubleWritable();
-    dw.set((Double)o);
-    return dw;
-  }
-
-  @Override
-  public int getSerializedLength(Object o) throws IOException {
-    return super.getSerializedLength(toDoubleWritable(o));
-  }
-
   @Override
-  public void serialize(Object o, ImmutableBytesWritable w) throws IOException {
-    super.serialize(toDoubleWritable(o), w);
+  double getDouble(Object o) {
+    if (o instanceof DoubleWritable)
+      return super.getDouble(o);
+    return (Double)o;
   }
 
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    DoubleWritable dw = (DoubleWritable) super.deserialize(w);
-    if (dw == null)
-      return dw;
+    if (isNull(w)) {
+      skip(w);
+      return null;
+    }
 
-    return Double.valueOf(dw.get());
+    return Double.valueOf(deserializeDouble(w));
   }
 }
@@ -19,6 +19,7 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -103,6 +104,13 @@ public class DoubleWritableRowKey extends RowKey
   private static final long NULL = 0;
   private DoubleWritable dw;
 
+  @Override
+  public DoubleWritableRowKey clone() {
+    DoubleWritableRowKey k = (DoubleWritableRowKey) super.clone();
+    k.dw = null;
+    return k;
+  }
+
   @Override
   public Class<?> getSerializedClass() { return DoubleWritable.class; }
 
@@ -113,27 +121,62 @@ public class DoubleWritableRowKey extends RowKey
     return Bytes.SIZEOF_LONG;
   }
 
+  /** Gets the double value of a non-NULL object. Subclasses serializing 
+   * objects other than DoubleWritable override this method.
+   */
+  double getDouble(Object o) { return ((DoubleWritable)o).get(); }
+
   @Override
   public void serialize(Object o, ImmutableBytesWritable w) 
     throws IOException
   {
-    byte[] b = w.get();
-    int offset = w.getOffset();
-    long l;
-
-    if (o == null) {
-      if (!terminate())
-        return;
-      l = NULL;
-    } else {
-      l = Double.doubleToLongBits(((DoubleWritable)o).get());
-      l = (l ^ ((l >> Long.SIZE - 1) | Long.MIN_VALUE)) + 1; 
-    }
-   
-    Bytes.putLong(b, offset, l ^ order.mask()); 
+    if (o == null)
+      serializeNull(w);
+    else
+      serializeDouble(getDouble(o), w);
+  }
+
+  /** Gets the serialized length of a non-NULL double, which is always 8 bytes. 
+   * @see #serializeDouble
+   */
+  public int getSerializedLength(double d) { return Bytes.SIZEOF_LONG; }
+
+  /** Serializes a non-NULL double without allocating or boxing. The 
+   * serialized bytes are identical to those produced by serializing the 
+   * equivalent object.
+   * @param d double to serialize
+   * @param w writable to serialize into
+   */
+  public void serializeDouble(double d, ImmutableBytesWritable w) {
+    Bytes.putLong(w.get(), w.getOffset(), encode(d));
     RowKeyUtils.seek(w, Bytes.SIZEOF_LONG);
   }
 
+  /** Serializes a NULL value. Nothing is written if NULL is implicitly 
+   * terminated (see {@link RowKey}).
+   * @param w writable to serialize into
+   */
+  public void serializeNull(ImmutableBytesWritable w) {
+    if (!terminate())
+      return;
+    Bytes.putLong(w.get(), w.getOffset(), NULL ^ order.mask());
+    RowKeyUtils.seek(w, Bytes.SIZEOF_LONG);
+  }
+
+  private long encode(double d) {
+    long l = Double.doubleToLongBits(d);
+    l = (l ^ ((l >> Long.SIZE - 1) | Long.MIN_VALUE)) + 1; 
+    return l ^ order.mask();
+  }
+
+  @Override
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+    if (o != null)
+      RowKeyUtils.putLong(b, encode(getDouble(o)));
+    else if (terminate())
+      RowKeyUtils.putLong(b, NULL ^ order.mask());
+  }
+
   @Override
   public void skip(ImmutableBytesWritable w) throws IOException {
     if (w.getLength() <= 0)
@@ -141,27 +184,56 @@ public class DoubleWritableRowKey extends RowKey
     RowKeyUtils.seek(w, Bytes.SIZEOF_LONG);
   }
 
+  @Override
+  protected void skipDirect(ByteBuffer b) throws IOException {
+    if (b.remaining() > 0)
+      b.position(b.position() + Bytes.SIZEOF_LONG);
+  }
+
+  /** Returns true if the next serialized value in the writable is NULL. The
+   * writable position is not modified. An empty writable is an implicitly 
+   * terminated NULL. 
+   */
+  public boolean isNull(ImmutableBytesWritable w) {
+    return w.getLength() <= 0 
+      || (Bytes.toLong(w.get(), w.getOffset()) ^ order.mask()) == NULL;
+  }
+
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    byte[] s = w.get();
-    int offset = w.getOffset();
-    if (w.getLength() <= 0)
+    if (isNull(w)) {
+      skip(w);
       return null;
+    }
 
-    try {
-      long l = Bytes.toLong(s, offset) ^ order.mask();
-      if (l == NULL)
-        return null;
+    DoubleWritable dw = reuse ? this.dw : null;
+    if (dw == null) {
+      dw = new DoubleWritable();
+      if (reuse)
+        this.dw = dw;
+    }
+    dw.set(deserializeDouble(w));
+    return dw;
+  }
 
-      if (dw == null)
-        dw = new DoubleWritable();
+  /** Deserializes a non-NULL double without allocating or boxing. Callers
+   * should test for NULL values using {@link #isNull} if the serialized 
+   * value may be NULL.
+   * @param w writable to deserialize from
+   * @return deserialized double
+   * @throws NullPointerException if the serialized value is NULL
+   */
+  public double deserializeDouble(ImmutableBytesWritable w) {
+    if (w.getLength() <= 0)
+      throw new NullPointerException("Cannot deserialize NULL as a double");
 
-      l--;
-      l ^= (~l >> Long.SIZE - 1) | Long.MIN_VALUE;
-      dw.set(Double.longBitsToDouble(l));
-      return dw;
-    } finally {
-      RowKeyUtils.seek(w, Bytes.SIZEOF_LONG);
-    }
+    long l = Bytes.toLong(w.get(), w.getOffset()) ^ order.mask();
+    if (l == NULL)
+      throw new NullPointerException("Cannot deserialize NULL as a double");
+    RowKeyUtils.seek(w, Bytes.SIZEOF_LONG);
+
+    l--;
+    l ^= (~l >> Long.SIZE - 1) | Long.MIN_VALUE;
+    return Double.longBitsToDouble(l);
   }
 }
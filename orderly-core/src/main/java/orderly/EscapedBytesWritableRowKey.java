@@ -0,0 +1,284 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * Serializes and deserializes BytesWritable into a dense sortable variable length representation with an optional
+ * fixed length prefix (on which no encoding will be applied).
+ *
+ * <h1>Serialization Format</h1>
+ * <p/>
+ * {@link VariableLengthBytesWritableRowKey} encodes every byte as three BCD nibbles, which uses 1.5 bytes per input
+ * byte. This class instead writes the input bytes as is, escaping only the zero byte so that it can be used to mark the
+ * end of the byte array. Each zero byte 0x00 is written as the two bytes 0x00 0xFF, and the byte array is terminated by
+ * the two bytes 0x00 0x01. For random data this is an overhead of 1/256 of the input length plus two bytes.
+ * <p/>
+ * The escape and terminator sequences both start with the smallest byte value, and the terminator sorts before the
+ * escape. As a result a byte array that is the prefix of a longer byte array always compares less than the longer
+ * byte array: at the position where the shorter array ends, its terminator 0x00 0x01 is compared to either a non-zero
+ * byte or an escaped zero 0x00 0xFF, both of which are larger. All other bytes compare as they do in the input.
+ * <p/>
+ * To encode a NULL, we output the two bytes 0x00 0x00, which sort before any non-NULL value (including the empty byte
+ * array, which is encoded as just the terminator 0x00 0x01). Decoding is simply the reverse of the above operations.
+ * <p/>
+ * The fixed length prefix will be written as is before the variable length part. This can be useful to avoid scanning
+ * a fixed part for zero bytes (which you know will always be there anyways).
+ *
+ * <h1> Descending sort </h1>
+ * To sort in descending order we perform the same encodings as in ascending sort, except we logically invert (take
+ * the 1's complement of) each byte, including the escape, null and termination bytes.
+ *
+ * <h1> Implicit Termination </h1>
+ * If {@link #termination} is false and the sort order is ascending, we encode NULL values as a zero-length byte array,
+ * and omit the terminator for every byte array except the empty byte array. Implicit termination is discussed further
+ * in {@link RowKey}.
+ *
+ * <h1> Usage </h1>
+ * This is the most compact variable length byte array row key, and it is considerably faster than
+ * <code>VariableLengthBytesWritableRowKey</code>: runs of non-zero bytes are copied with
+ * <code>System.arraycopy</code> in ascending order. Its serialization format is not compatible with
+ * <code>VariableLengthBytesWritableRowKey</code>, and the two cannot be used interchangeably for existing data.
+ */
+public class EscapedBytesWritableRowKey extends RowKey {
+
+    private static final byte ZERO = 0x00;
+
+    private static final byte NULL = 0x00;
+
+    private static final byte TERMINATOR = 0x01;
+
+    private static final byte ESCAPE = (byte) 0xFF;
+
+    private final int fixedPrefixLength;
+
+    public EscapedBytesWritableRowKey() {
+        // no fixed part by default
+        this(0);
+    }
+
+    public EscapedBytesWritableRowKey(int fixedPrefixLength) {
+        if (fixedPrefixLength < 0)
+            throw new IllegalArgumentException("fixed prefix length can not be < 0");
+
+        this.fixedPrefixLength = fixedPrefixLength;
+    }
+
+    @Override
+    public Class<?> getSerializedClass() {
+        return BytesWritable.class;
+    }
+
+    @Override
+    public int getSerializedLength(Object o) throws IOException {
+        if (o == null)
+            return terminate() ? fixedPrefixLength + 2 : fixedPrefixLength;
+
+        final BytesWritable input = (BytesWritable) o;
+        final int length = Math.max(0, input.getLength() - fixedPrefixLength);
+        return fixedPrefixLength + length + countZeroes(input.getBytes(), fixedPrefixLength, length)
+                + (terminate() || length == 0 ? 2 : 0);
+    }
+
+    private static int countZeroes(byte[] bytes, int offset, int length) {
+        int count = 0, i = 0;
+        while ((i += ByteScanner.indexOf(bytes, offset + i, length - i, ZERO)) < length) {
+            count++;
+            i++;
+        }
+        return count;
+    }
+
+    @Override
+    public void serialize(Object o, ImmutableBytesWritable bytesWritable) throws IOException {
+        final byte[] bytes = bytesWritable.get();
+        final int offset = bytesWritable.getOffset();
+
+        if (o == null) {
+            if (fixedPrefixLength > 0)
+                throw new IllegalStateException("excepted at least " + fixedPrefixLength + " bytes to write");
+            else if (terminate()) {
+                // write two (masked) null bytes
+                bytes[offset] = mask(NULL);
+                bytes[offset + 1] = mask(NULL);
+                RowKeyUtils.seek(bytesWritable, 2);
+            }
+            return;
+        }
+
+        final BytesWritable input = (BytesWritable) o;
+        final byte[] inputBytes = input.getBytes();
+        final int inputLength = input.getLength();
+        if (fixedPrefixLength > inputLength)
+            throw new IllegalStateException("excepted at least " + fixedPrefixLength + " bytes to write");
+
+        copyMasked(inputBytes, 0, bytes, offset, fixedPrefixLength);
+        int pos = offset + fixedPrefixLength, i = fixedPrefixLength;
+
+        // copy each run of non-zero bytes, escaping the zero byte that ends it
+        while (i < inputLength) {
+            final int run = ByteScanner.indexOf(inputBytes, i, inputLength - i, ZERO);
+            copyMasked(inputBytes, i, bytes, pos, run);
+            pos += run;
+            i += run;
+            if (i < inputLength) {
+                bytes[pos++] = mask(ZERO);
+                bytes[pos++] = mask(ESCAPE);
+                i++;
+            }
+        }
+
+        if (terminate() || inputLength == fixedPrefixLength) {
+            bytes[pos++] = mask(ZERO);
+            bytes[pos++] = mask(TERMINATOR);
+        }
+
+        RowKeyUtils.seek(bytesWritable, pos - offset);
+    }
+
+    /**
+     * Copies length bytes from src to dst, applying the sort order mask.
+     */
+    private void copyMasked(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        if (order.mask() == 0) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[dstOffset + i] = mask(src[srcOffset + i]);
+            }
+        }
+    }
+
+    /**
+     * @return true if the serialized value starting at the given offset is NULL
+     */
+    private boolean isNull(byte[] bytes, int offset, int length) {
+        return fixedPrefixLength == 0 && length >= 2 && mask(bytes[offset]) == NULL
+                && mask(bytes[offset + 1]) == NULL;
+    }
+
+    /**
+     * Gets the number of decoded bytes in the escaped byte array, excluding the fixed length prefix.
+     *
+     * @param bytes  the serialized bytes
+     * @param offset offset of the variable length part
+     * @param length number of bytes available, starting at offset
+     * @return the number of decoded bytes
+     * @throws IOException if a zero byte is not followed by an escape or terminator byte
+     */
+    private int getDecodedLength(byte[] bytes, int offset, int length) throws IOException {
+        return scan(bytes, offset, length, true);
+    }
+
+    /**
+     * Gets the number of serialized bytes in the escaped byte array, excluding the fixed length prefix and including
+     * the terminator (if any).
+     */
+    private int getEncodedLength(byte[] bytes, int offset, int length) throws IOException {
+        return scan(bytes, offset, length, false);
+    }
+
+    private int scan(byte[] bytes, int offset, int length, boolean decoded) throws IOException {
+        final byte zero = mask(ZERO);
+        int i = 0, escapes = 0;
+        while ((i += ByteScanner.indexOf(bytes, offset + i, length - i, zero)) < length) {
+            if (i + 1 >= length)
+                throw new IOException("Truncated escape sequence");
+
+            final byte next = mask(bytes[offset + i + 1]);
+            if (next == TERMINATOR)
+                return decoded ? i - escapes : i + 2;
+            else if (next != ESCAPE)
+                throw new IOException("Invalid escape sequence");
+
+            escapes++;
+            i += 2;
+        }
+
+        // implicit termination
+        return decoded ? i - escapes : i;
+    }
+
+    @Override
+    public void skip(ImmutableBytesWritable bytesWritable) throws IOException {
+        final int length = bytesWritable.getLength();
+        if (length <= 0)
+            return;
+
+        final byte[] bytes = bytesWritable.get();
+        final int offset = bytesWritable.getOffset();
+
+        if (isNull(bytes, offset, length)) {
+            RowKeyUtils.seek(bytesWritable, 2);
+            return;
+        }
+
+        RowKeyUtils.seek(bytesWritable, fixedPrefixLength
+                + getEncodedLength(bytes, offset + fixedPrefixLength, length - fixedPrefixLength));
+    }
+
+    @Override
+    public Object deserialize(ImmutableBytesWritable bytesWritable) throws IOException {
+        final int length = bytesWritable.getLength();
+
+        if (length <= 0 && fixedPrefixLength == 0)
+            return null;
+
+        final byte[] bytes = bytesWritable.get();
+        final int offset = bytesWritable.getOffset();
+
+        if (isNull(bytes, offset, length)) {
+            RowKeyUtils.seek(bytesWritable, 2);
+            return null;
+        }
+
+        final int variableLengthSuffixOffset = offset + fixedPrefixLength;
+        final int variableLengthSuffixLength = length - fixedPrefixLength;
+        final byte[] result = new byte[fixedPrefixLength
+                + getDecodedLength(bytes, variableLengthSuffixOffset, variableLengthSuffixLength)];
+
+        copyMasked(bytes, offset, result, 0, fixedPrefixLength);
+
+        // copy each run of non-zero bytes, unescaping the zero byte that ends it
+        final byte zero = mask(ZERO);
+        int pos = variableLengthSuffixOffset, i = fixedPrefixLength;
+        while (i < result.length) {
+            final int run = Math.min(ByteScanner.indexOf(bytes, pos, length - (pos - offset), zero),
+                    result.length - i);
+            copyMasked(bytes, pos, result, i, run);
+            pos += run;
+            i += run;
+            if (i < result.length) {
+                result[i++] = ZERO;
+                pos += 2;
+            }
+        }
+
+        // skip the terminator, if any
+        if (pos - offset < length && bytes[pos] == zero)
+            pos += 2;
+
+        RowKeyUtils.seek(bytesWritable, pos - offset);
+        return new BytesWritable(result);
+    }
+}
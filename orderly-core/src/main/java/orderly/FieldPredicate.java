@@ -0,0 +1,370 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+/** A predicate on a single field of a serialized {@link StructRowKey}, 
+ * evaluated by comparing serialized bytes without deserializing the field.
+ *
+ * <p>As every row key serialization preserves the sort order of its values,
+ * a comparison such as <code>price &gt; 100.00</code> can be evaluated by 
+ * serializing the literal <code>100.00</code> once, when the predicate is
+ * created, and comparing it with the serialized bytes of the field in each 
+ * row key. The field is located using a {@link StructIndex}, which skips the
+ * preceding fields without creating any objects, and the comparison is a 
+ * byte array comparison. No field of the row key is deserialized.</p>
+ *
+ * <p>Predicates are created using the static factory methods, for example
+ * <code>FieldPredicate.gt(key, 1, new BigDecimal("100.00"))</code> for the 
+ * row keys whose field 1 is greater than 100.00. Values are compared in the 
+ * natural order of the field's values, as for {@link FieldRange}: NULL 
+ * compares less than any non-NULL value, and descending fields are handled 
+ * by reversing the byte comparison. The supported predicates are 
+ * comparisons ({@link #eq}, {@link #lt}, {@link #le}, {@link #gt}, 
+ * {@link #ge}), intervals ({@link #between}, {@link #range}), IN-lists 
+ * ({@link #in}) and string prefixes ({@link #prefix}).</p>
+ *
+ * <h1> Termination </h1>
+ * A field is serialized with a terminator when it is followed by a non-empty 
+ * field, and with the termination of the struct (which may omit the 
+ * terminator) when it is followed only by zero-length fields, as described in
+ * {@link StructRowKey}. Each literal is therefore serialized in both forms,
+ * and a field is compared with the form matching its position: the trailing
+ * form if the field ends at the end of the row key, and the terminated form
+ * otherwise. Within each form serialized bytes sort in the order of their
+ * values, so both comparisons are exact.
+ *
+ * <h1> Batch Evaluation </h1>
+ * {@link #evaluate(byte[][], boolean[])} evaluates a predicate over an array 
+ * of serialized row keys, and 
+ * {@link #evaluate(byte[][], boolean[], FieldPredicate...)} evaluates a 
+ * conjunction of predicates on fields of the same struct, locating the fields
+ * of each row key once for all predicates and evaluating the remaining 
+ * predicates only while a row key still matches. 
+ *
+ * <h1> Usage </h1>
+ * Predicates copy the struct row key, so later changes to it do not affect
+ * the predicate. A predicate re-uses a struct index across row keys, so a 
+ * predicate object may not be used by several threads at once.
+ */
+public abstract class FieldPredicate
+{
+  /* Index of the serialized forms of a literal */
+  private static final int TERMINATED = 0, TRAILING = 1;
+
+  protected final StructRowKey key;
+  protected final int field;
+  protected final boolean descending;
+
+  private final StructIndex index;
+  private final ImmutableBytesWritable w = new ImmutableBytesWritable();
+
+  protected FieldPredicate(StructRowKey key, int field) {
+    if (field < 0 || field >= key.getFields().length)
+      throw new IndexOutOfBoundsException("Field " + field + " of " + 
+          key.getFields().length);
+    this.key = key.clone().freeze();
+    this.field = field;
+    this.descending = key.getFields()[field].getOrder() == Order.DESCENDING;
+    this.index = new StructIndex(this.key);
+  }
+
+  /** Gets the index of the field tested by this predicate. */
+  public int getField() { return field; }
+
+  /** Serializes a value of the field in the terminated and trailing forms. 
+   * @return the serialized forms, indexed by <code>TERMINATED</code> and 
+   *         <code>TRAILING</code>
+   */
+  protected byte[][] serializeLiteral(Object value) throws IOException {
+    return new byte[][] { 
+      key.getTerminatedFields()[field].serialize(value), 
+      key.getTrailingFields()[field].serialize(value) };
+  }
+
+  /** Tests the serialized bytes of the field.
+   * @param b array containing the serialized field
+   * @param offset offset of the serialized field
+   * @param length length of the serialized field
+   * @param form <code>TRAILING</code> if the field ends the row key, and 
+   *             <code>TERMINATED</code> otherwise
+   */
+  protected abstract boolean matches(byte[] b, int offset, int length, 
+      int form);
+
+  /** Tests the row key indexed by a struct index. The index may be shared 
+   * by several predicates on fields of the same struct.
+   */
+  public boolean matches(StructIndex index) throws IOException {
+    index.getBytes(field, w);
+    int end = w.getOffset() + w.getLength();
+    return matches(w.get(), w.getOffset(), w.getLength(), 
+        end == index.getLimit() ? TRAILING : TERMINATED);
+  }
+
+  /** Tests a serialized row key. */
+  public boolean matches(byte[] b) throws IOException {
+    return matches(b, 0, b.length);
+  }
+
+  /** Tests the serialized row key stored in the specified region of a byte 
+   * array.
+   */
+  public boolean matches(byte[] b, int offset, int length) throws IOException
+  {
+    return matches(index.setBytes(b, offset, length));
+  }
+
+  /** Tests each row key of an array of serialized row keys. 
+   * @param keys serialized row keys
+   * @param results set to the result of the predicate for each row key
+   * @return the number of matching row keys
+   */
+  public int evaluate(byte[][] keys, boolean[] results) throws IOException {
+    return evaluate(keys, results, this);
+  }
+
+  /** Tests each row key of an array of serialized row keys against a 
+   * conjunction of predicates on fields of the same struct. The predicates
+   * are evaluated in order, so the most selective predicates should come
+   * first.
+   * @param keys serialized row keys
+   * @param results set to true for each row key matching every predicate, 
+   *                and to false for every other row key
+   * @param predicates predicates to evaluate
+   * @return the number of matching row keys
+   */
+  public static int evaluate(byte[][] keys, boolean[] results, 
+      FieldPredicate... predicates) throws IOException
+  {
+    if (results.length < keys.length)
+      throw new IndexOutOfBoundsException("Expected " + keys.length + 
+          " results but got " + results.length);
+
+    StructIndex index = predicates.length > 0 ? predicates[0].index : null;
+    int n = 0;
+    for (int i = 0; i < keys.length; i++) {
+      boolean match = true;
+      if (index != null)
+        index.setBytes(keys[i]);
+      for (int j = 0; match && j < predicates.length; j++)
+        match = predicates[j].matches(index);
+      results[i] = match;
+      if (match)
+        n++;
+    }
+    return n;
+  }
+
+  /** Compares serialized field bytes with a serialized literal in the 
+   * natural order of the field's values. 
+   */
+  protected int compare(byte[] b, int offset, int length, byte[] literal) {
+    int c = RowKeyComparator.compareBytes(b, offset, length, literal, 0, 
+        literal.length);
+    return descending ? -c : c;
+  }
+
+  /** Gets the predicate field = value. */
+  public static FieldPredicate eq(StructRowKey key, int field, Object value)
+    throws IOException
+  {
+    return range(key, field, FieldRange.singleton(value));
+  }
+
+  /** Gets the predicate field &lt; value. */
+  public static FieldPredicate lt(StructRowKey key, int field, Object value)
+    throws IOException
+  {
+    return range(key, field, FieldRange.lessThan(value));
+  }
+
+  /** Gets the predicate field &le; value. */
+  public static FieldPredicate le(StructRowKey key, int field, Object value)
+    throws IOException
+  {
+    return range(key, field, FieldRange.atMost(value));
+  }
+
+  /** Gets the predicate field &gt; value. */
+  public static FieldPredicate gt(StructRowKey key, int field, Object value)
+    throws IOException
+  {
+    return range(key, field, FieldRange.greaterThan(value));
+  }
+
+  /** Gets the predicate field &ge; value. */
+  public static FieldPredicate ge(StructRowKey key, int field, Object value)
+    throws IOException
+  {
+    return range(key, field, FieldRange.atLeast(value));
+  }
+
+  /** Gets the predicate lower &le; field &le; upper. */
+  public static FieldPredicate between(StructRowKey key, int field, 
+      Object lower, Object upper) throws IOException
+  {
+    return range(key, field, FieldRange.closed(lower, upper));
+  }
+
+  /** Gets the predicate testing whether the field lies in a range of 
+   * values. 
+   */
+  public static FieldPredicate range(StructRowKey key, int field, 
+      FieldRange range) throws IOException
+  {
+    return new RangePredicate(key, field, range);
+  }
+
+  /** Gets the predicate testing whether the field is equal to any of the 
+   * specified values. 
+   */
+  public static FieldPredicate in(StructRowKey key, int field, 
+      Object... values) throws IOException
+  {
+    return new InPredicate(key, field, values);
+  }
+
+  /** Gets the predicate testing whether a string field starts with the 
+   * specified prefix. NULL values never match. The field row key must be a
+   * {@link UTF8RowKey} (such as a {@link StringRowKey} or 
+   * {@link TextRowKey}), whose serialization maps each UTF-8 byte to a single 
+   * byte, so that the serialized prefix (without its terminator) is a prefix
+   * of the serialization of every matching string.
+   * @param prefix the prefix, of the class serialized by the field row key
+   */
+  public static FieldPredicate prefix(StructRowKey key, int field, 
+      Object prefix) throws IOException
+  {
+    return new PrefixPredicate(key, field, prefix);
+  }
+
+  /* Tests whether the field lies in a range, comparing with the serialized
+   * end points of the range in byte order */
+  private static class RangePredicate extends FieldPredicate
+  {
+    private final boolean hasLower, lowerInclusive, hasUpper, upperInclusive;
+    private final byte[][] lower, upper;
+
+    RangePredicate(StructRowKey key, int field, FieldRange range) 
+      throws IOException
+    {
+      super(key, field);
+      hasLower = range.hasLowerBound();
+      lowerInclusive = range.isLowerInclusive();
+      lower = hasLower ? serializeLiteral(range.getLowerBound()) : null;
+      hasUpper = range.hasUpperBound();
+      upperInclusive = range.isUpperInclusive();
+      upper = hasUpper ? serializeLiteral(range.getUpperBound()) : null;
+    }
+
+    @Override
+    protected boolean matches(byte[] b, int offset, int length, int form) {
+      if (hasLower) {
+        int c = compare(b, offset, length, lower[form]);
+        if (c < 0 || (c == 0 && !lowerInclusive))
+          return false;
+      }
+      if (hasUpper) {
+        int c = compare(b, offset, length, upper[form]);
+        if (c > 0 || (c == 0 && !upperInclusive))
+          return false;
+      }
+      return true;
+    }
+  }
+
+  /* Tests whether the field is equal to any value of an IN-list, using a
+   * binary search of the sorted serialized values */
+  private static class InPredicate extends FieldPredicate
+  {
+    private final byte[][][] values;
+
+    InPredicate(StructRowKey key, int field, Object[] values) 
+      throws IOException
+    {
+      super(key, field);
+      this.values = new byte[2][values.length][];
+      for (int i = 0; i < values.length; i++) {
+        byte[][] literal = serializeLiteral(values[i]);
+        this.values[TERMINATED][i] = literal[TERMINATED];
+        this.values[TRAILING][i] = literal[TRAILING];
+      }
+      Arrays.sort(this.values[TERMINATED], RowKeyComparator.INSTANCE);
+      Arrays.sort(this.values[TRAILING], RowKeyComparator.INSTANCE);
+    }
+
+    @Override
+    protected boolean matches(byte[] b, int offset, int length, int form) {
+      byte[][] l = values[form];
+      int lo = 0, hi = l.length - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        int c = RowKeyComparator.compareBytes(l[mid], 0, l[mid].length, b, 
+            offset, length);
+        if (c == 0)
+          return true;
+        if (c < 0)
+          lo = mid + 1;
+        else
+          hi = mid - 1;
+      }
+      return false;
+    }
+  }
+
+  /* Tests whether a UTF-8 field starts with a prefix, by comparing the 
+   * leading bytes of the field with the serialized prefix */
+  private static class PrefixPredicate extends FieldPredicate
+  {
+    private final byte[] prefix;
+    private final byte[][] nulls;
+
+    PrefixPredicate(StructRowKey key, int field, Object prefix) 
+      throws IOException
+    {
+      super(key, field);
+      if (!(key.getFields()[field] instanceof UTF8RowKey))
+        throw new IllegalArgumentException("Prefix predicates require a " +
+            "UTF8RowKey field, but field " + field + " is a " + 
+            key.getFields()[field].getClass().getName());
+      if (prefix == null)
+        throw new IllegalArgumentException("NULL prefix");
+
+      /* Remove the terminator from the terminated serialized prefix */
+      byte[] b = serializeLiteral(prefix)[TERMINATED];
+      this.prefix = Arrays.copyOf(b, b.length - 1);
+      this.nulls = serializeLiteral(null);
+    }
+
+    @Override
+    protected boolean matches(byte[] b, int offset, int length, int form) {
+      if (length < prefix.length)
+        return false;
+      /* Only NULL serializations may start with the empty prefix */
+      if (prefix.length == 0)
+        return compare(b, offset, length, nulls[form]) != 0;
+      return RowKeyComparator.compareBytes(b, offset, prefix.length, prefix, 
+          0, prefix.length) == 0;
+    }
+  }
+}
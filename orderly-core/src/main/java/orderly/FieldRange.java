@@ -0,0 +1,140 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+/** An interval of values of a single row key field, used to restrict a scan
+ * on the field following a struct prefix. 
+ *
+ * <p>Each end point of the interval is either unbounded, or bounded by a value
+ * which may be inclusive or exclusive. Bound values are compared in the 
+ * natural order of the field's values (NULL compares less than any non-NULL
+ * value), regardless of the {@link Order} of the field row key: 
+ * {@link StructRowKey#getScanRange} maps the interval to serialized bytes, 
+ * swapping the end points of descending fields. As NULL is a valid field
+ * value, a NULL bound is distinct from an unbounded end point.</p>
+ *
+ * <p>Field ranges are immutable and are created using the static factory
+ * methods, for example <code>FieldRange.closedOpen(10, 20)</code> for all
+ * values <i>x</i> where 10 &le; <i>x</i> &lt; 20.</p>
+ *
+ * @see StructRowKey#getScanRange(Object[], FieldRange)
+ */
+public class FieldRange
+{
+  private static final FieldRange ALL = new FieldRange(false, null, false, 
+      false, null, false);
+
+  private final boolean hasLower, lowerInclusive, hasUpper, upperInclusive;
+  private final Object lower, upper;
+
+  private FieldRange(boolean hasLower, Object lower, boolean lowerInclusive, 
+      boolean hasUpper, Object upper, boolean upperInclusive) 
+  {
+    this.hasLower = hasLower;
+    this.lower = lower;
+    this.lowerInclusive = lowerInclusive;
+    this.hasUpper = hasUpper;
+    this.upper = upper;
+    this.upperInclusive = upperInclusive;
+  }
+
+  /** Gets the range of all values. */
+  public static FieldRange all() { return ALL; }
+
+  /** Gets the range containing only the specified value. */
+  public static FieldRange singleton(Object value) {
+    return closed(value, value);
+  }
+
+  /** Gets the range of values <i>x</i> where lower &le; <i>x</i> &le; 
+   * upper. 
+   */
+  public static FieldRange closed(Object lower, Object upper) {
+    return new FieldRange(true, lower, true, true, upper, true);
+  }
+
+  /** Gets the range of values <i>x</i> where lower &lt; <i>x</i> &lt; 
+   * upper. 
+   */
+  public static FieldRange open(Object lower, Object upper) {
+    return new FieldRange(true, lower, false, true, upper, false);
+  }
+
+  /** Gets the range of values <i>x</i> where lower &le; <i>x</i> &lt; 
+   * upper. 
+   */
+  public static FieldRange closedOpen(Object lower, Object upper) {
+    return new FieldRange(true, lower, true, true, upper, false);
+  }
+
+  /** Gets the range of values <i>x</i> where lower &lt; <i>x</i> &le; 
+   * upper. 
+   */
+  public static FieldRange openClosed(Object lower, Object upper) {
+    return new FieldRange(true, lower, false, true, upper, true);
+  }
+
+  /** Gets the range of values <i>x</i> where lower &le; <i>x</i>. */
+  public static FieldRange atLeast(Object lower) {
+    return new FieldRange(true, lower, true, false, null, false);
+  }
+
+  /** Gets the range of values <i>x</i> where lower &lt; <i>x</i>. */
+  public static FieldRange greaterThan(Object lower) {
+    return new FieldRange(true, lower, false, false, null, false);
+  }
+
+  /** Gets the range of values <i>x</i> where <i>x</i> &le; upper. */
+  public static FieldRange atMost(Object upper) {
+    return new FieldRange(false, null, false, true, upper, true);
+  }
+
+  /** Gets the range of values <i>x</i> where <i>x</i> &lt; upper. */
+  public static FieldRange lessThan(Object upper) {
+    return new FieldRange(false, null, false, true, upper, false);
+  }
+
+  /** Returns true if the range has a lower bound. */
+  public boolean hasLowerBound() { return hasLower; }
+
+  /** Gets the lower bound value. Only meaningful if 
+   * {@link #hasLowerBound} is true.
+   */
+  public Object getLowerBound() { return lower; }
+
+  /** Returns true if the lower bound value is included in the range. */
+  public boolean isLowerInclusive() { return lowerInclusive; }
+
+  /** Returns true if the range has an upper bound. */
+  public boolean hasUpperBound() { return hasUpper; }
+
+  /** Gets the upper bound value. Only meaningful if 
+   * {@link #hasUpperBound} is true.
+   */
+  public Object getUpperBound() { return upper; }
+
+  /** Returns true if the upper bound value is included in the range. */
+  public boolean isUpperInclusive() { return upperInclusive; }
+
+  @Override
+  public String toString() {
+    return (hasLower ? (lowerInclusive ? "[" : "(") + lower : "(-inf") + ", "
+      + (hasUpper ? upper + (upperInclusive ? "]" : ")") : "+inf)");
+  }
+}
@@ -19,6 +19,7 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.BytesWritable;
@@ -51,6 +52,11 @@ public class FixedByteArrayRowKey extends FixedBytesWritableRowKey {
         }
     }
 
+    @Override
+    protected Object prepare(Object o) throws IOException {
+        return toBytesWritable(o);
+    }
+
     @Override
     public int getSerializedLength(Object o) throws IOException {
         return super.getSerializedLength(toBytesWritable(o));
@@ -61,6 +67,11 @@ public class FixedByteArrayRowKey extends FixedBytesWritableRowKey {
         super.serialize(toBytesWritable(o), w);
     }
 
+    @Override
+    protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+        super.serializeDirect(toBytesWritable(o), b);
+    }
+
     @Override
     public Object deserialize(ImmutableBytesWritable w) throws IOException {
         BytesWritable bw = (BytesWritable) super.deserialize(w);
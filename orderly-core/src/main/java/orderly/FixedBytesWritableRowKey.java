@@ -19,6 +19,7 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -68,6 +69,18 @@ public class FixedBytesWritableRowKey extends RowKey {
         RowKeyUtils.seek(w, srcLen);
     }
 
+    @Override
+    protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+        final BytesWritable bytesWritableToWrite = (BytesWritable) o;
+        final int srcLen = bytesWritableToWrite.getLength();
+
+        if (srcLen != length)
+            throw new IllegalArgumentException(
+                    "can only serialize byte arrays of length " + length + ", not " + srcLen);
+
+        b.put(maskAll(bytesWritableToWrite.getBytes(), order, 0, srcLen), 0, srcLen);
+    }
+
     private byte[] maskAll(byte[] bytes, Order order, int offset, int length) {
         if (order.mask() == 0) {
             return bytes; // xor with zeroes has no effect anyways
@@ -85,6 +98,11 @@ public class FixedBytesWritableRowKey extends RowKey {
         RowKeyUtils.seek(w, length);
     }
 
+    @Override
+    protected void skipDirect(ByteBuffer b) throws IOException {
+        b.position(b.position() + length);
+    }
+
     @Override
     public Object deserialize(ImmutableBytesWritable w) throws IOException {
         int offset = w.getOffset();
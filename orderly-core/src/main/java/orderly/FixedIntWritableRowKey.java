@@ -19,6 +19,7 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -53,6 +54,13 @@ public class FixedIntWritableRowKey extends RowKey
 {
   private IntWritable iw;
 
+  @Override
+  public FixedIntWritableRowKey clone() {
+    FixedIntWritableRowKey k = (FixedIntWritableRowKey) super.clone();
+    k.iw = null;
+    return k;
+  }
+
   @Override
   public Class<?> getSerializedClass() { return IntWritable.class; }
 
@@ -61,34 +69,68 @@ public class FixedIntWritableRowKey extends RowKey
     return Bytes.SIZEOF_INT;
   }
 
+  /** Gets the int value of a non-NULL object. Subclasses serializing 
+   * objects other than IntWritable override this method.
+   */
+  int getInt(Object o) { return ((IntWritable)o).get(); }
+
   @Override
   public void serialize(Object o, ImmutableBytesWritable w) 
     throws IOException
   {
-    byte[] b = w.get();
-    int offset = w.getOffset();
+    serializeInt(getInt(o), w);
+  }
 
-    int i = ((IntWritable)o).get();
-    Bytes.putInt(b, offset, i ^ Integer.MIN_VALUE ^ order.mask());
+  /** Gets the serialized length of a int, which is always 4 bytes. 
+   * @see #serializeInt
+   */
+  public int getSerializedLength(int i) { return Bytes.SIZEOF_INT; }
+
+  /** Serializes an int without allocating or boxing. The serialized bytes
+   * are identical to those produced by serializing the equivalent object.
+   * @param i int to serialize
+   * @param w writable to serialize into
+   */
+  public void serializeInt(int i, ImmutableBytesWritable w) {
+    Bytes.putInt(w.get(), w.getOffset(), i ^ Integer.MIN_VALUE ^ order.mask());
     RowKeyUtils.seek(w, Bytes.SIZEOF_INT);
   }
 
+  @Override
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+    RowKeyUtils.putInt(b, getInt(o) ^ Integer.MIN_VALUE ^ order.mask());
+  }
+
   @Override
   public void skip(ImmutableBytesWritable w) throws IOException {
     RowKeyUtils.seek(w, Bytes.SIZEOF_INT);
   }
 
   @Override
-  public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    int offset = w.getOffset();
-    byte[] s = w.get();
-
-    int i = Bytes.toInt(s, offset) ^ Integer.MIN_VALUE ^ order.mask();
-    RowKeyUtils.seek(w, Bytes.SIZEOF_INT);
+  protected void skipDirect(ByteBuffer b) throws IOException {
+    b.position(b.position() + Bytes.SIZEOF_INT);
+  }
 
-    if (iw == null)
+  @Override
+  public Object deserialize(ImmutableBytesWritable w) throws IOException {
+    IntWritable iw = reuse ? this.iw : null;
+    if (iw == null) {
       iw = new IntWritable();
-    iw.set(i);
+      if (reuse)
+        this.iw = iw;
+    }
+    iw.set(deserializeInt(w));
     return iw;
   }
+
+  /** Deserializes an int without allocating or boxing.
+   * @param w writable to deserialize from
+   * @return deserialized int
+   */
+  public int deserializeInt(ImmutableBytesWritable w) {
+    int i = Bytes.toInt(w.get(), w.getOffset()) ^ Integer.MIN_VALUE 
+      ^ order.mask();
+    RowKeyUtils.seek(w, Bytes.SIZEOF_INT);
+    return i;
+  }
 }
@@ -40,36 +40,18 @@ import org.apache.hadoop.io.IntWritable;
  */
 public class FixedIntegerRowKey extends FixedIntWritableRowKey 
 {
-  private IntWritable iw;
-
   @Override
   public Class<?> getSerializedClass() { return Integer.class; }
 
-  protected Object toIntWritable(Object o) {
-    if (o == null || o instanceof IntWritable)
-      return o;
-    if (iw == null)
-      iw = new IntWritable();
-    iw.set((Integer)o);
-    return iw;
-  }
-
   @Override
-  public int getSerializedLength(Object o) throws IOException {
-    return super.getSerializedLength(toIntWritable(o));
-  }
-
-  @Override
-  public void serialize(Object o, ImmutableBytesWritable w) throws IOException {
-    super.serialize(toIntWritable(o), w);
+  int getInt(Object o) {
+    if (o instanceof IntWritable)
+      return super.getInt(o);
+    return (Integer)o;
   }
 
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    IntWritable iw = (IntWritable) super.deserialize(w);
-    if (iw == null)
-      return iw;
-
-    return Integer.valueOf(iw.get());
+    return Integer.valueOf(deserializeInt(w));
   }
 }
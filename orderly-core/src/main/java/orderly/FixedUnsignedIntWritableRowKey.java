@@ -19,9 +19,9 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
-import org.apache.hadoop.io.IntWritable;
 
 /** Serialize and deserialize unsigned integers into fixed-width, sortable 
  * byte arrays. 
@@ -38,20 +38,18 @@ import org.apache.hadoop.io.IntWritable;
  */
 public class FixedUnsignedIntWritableRowKey extends FixedIntWritableRowKey
 {
-  protected IntWritable invertSign(IntWritable iw) {
-    iw.set(iw.get() ^ Integer.MIN_VALUE);
-    return iw;
+  @Override
+  public void serializeInt(int i, ImmutableBytesWritable w) {
+    super.serializeInt(i ^ Integer.MIN_VALUE, w);
   }
 
   @Override
-  public void serialize(Object o, ImmutableBytesWritable w) throws IOException {
-    invertSign((IntWritable)o);
-    super.serialize(o, w);
-    invertSign((IntWritable)o);
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+    RowKeyUtils.putInt(b, getInt(o) ^ order.mask());
   }
 
   @Override
-  public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    return invertSign((IntWritable) super.deserialize(w));
+  public int deserializeInt(ImmutableBytesWritable w) {
+    return super.deserializeInt(w) ^ Integer.MIN_VALUE;
   }
 }
@@ -40,36 +40,18 @@ import org.apache.hadoop.io.LongWritable;
  */
 public class FixedUnsignedLongRowKey extends FixedUnsignedLongWritableRowKey 
 {
-  private LongWritable lw;
-
   @Override
   public Class<?> getSerializedClass() { return Long.class; }
 
-  protected Object toLongWritable(Object o) {
-    if (o == null || o instanceof LongWritable)
-      return o;
-    if (lw == null)
-      lw = new LongWritable();
-    lw.set((Long)o);
-    return lw;
-  }
-
   @Override
-  public int getSerializedLength(Object o) throws IOException {
-    return super.getSerializedLength(toLongWritable(o));
-  }
-
-  @Override
-  public void serialize(Object o, ImmutableBytesWritable w) throws IOException {
-    super.serialize(toLongWritable(o), w);
+  long getLong(Object o) {
+    if (o instanceof LongWritable)
+      return super.getLong(o);
+    return (Long)o;
   }
 
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    LongWritable lw = (LongWritable) super.deserialize(w);
-    if (lw == null)
-      return lw;
-
-    return Long.valueOf(lw.get());
+    return Long.valueOf(deserializeLong(w));
   }
 }
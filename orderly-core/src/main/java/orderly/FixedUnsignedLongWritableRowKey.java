@@ -19,9 +19,9 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
-import org.apache.hadoop.io.LongWritable;
 
 /** Serialize and deserialize unsigned long integers into fixed-width, sortable 
  * byte arrays. 
@@ -38,20 +38,18 @@ import org.apache.hadoop.io.LongWritable;
  */
 public class FixedUnsignedLongWritableRowKey extends FixedLongWritableRowKey
 {
-  protected LongWritable invertSign(LongWritable lw) {
-    lw.set(lw.get() ^ Long.MIN_VALUE);
-    return lw;
+  @Override
+  public void serializeLong(long l, ImmutableBytesWritable w) {
+    super.serializeLong(l ^ Long.MIN_VALUE, w);
   }
 
   @Override
-  public void serialize(Object o, ImmutableBytesWritable w) throws IOException {
-    invertSign((LongWritable)o);
-    super.serialize(o, w);
-    invertSign((LongWritable)o);
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+    RowKeyUtils.putLong(b, getLong(o) ^ order.mask());
   }
 
   @Override
-  public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    return invertSign((LongWritable) super.deserialize(w));
+  public long deserializeLong(ImmutableBytesWritable w) {
+    return super.deserializeLong(w) ^ Long.MIN_VALUE;
   }
 }
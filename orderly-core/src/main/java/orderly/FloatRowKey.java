@@ -40,36 +40,23 @@ import org.apache.hadoop.io.FloatWritable;
  */
 public class FloatRowKey extends FloatWritableRowKey 
 {
-  private FloatWritable fw;
-
   @Override
   public Class<?> getSerializedClass() { return Float.class; }
 
-  protected Object toFloatWritable(Object o) {
-    if (o == null || o instanceof FloatWritable)
-      return o;
-    if (fw == null)
-      fw = new FloatWritable();
-    fw.set((Float)o);
-    return fw;
-  }
-
-  @Override
-  public int getSerializedLength(Object o) throws IOException {
-    return super.getSerializedLength(toFloatWritable(o));
-  }
-
   @Override
-  public void serialize(Object o, ImmutableBytesWritable w) throws IOException {
-    super.serialize(toFloatWritable(o), w);
+  float getFloat(Object o) {
+    if (o instanceof FloatWritable)
+      return super.getFloat(o);
+    return (Float)o;
   }
 
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    FloatWritable fw = (FloatWritable) super.deserialize(w);
-    if (fw == null)
-      return fw;
+    if (isNull(w)) {
+      skip(w);
+      return null;
+    }
 
-    return Float.valueOf(fw.get());
+    return Float.valueOf(deserializeFloat(w));
   }
 }
@@ -19,6 +19,7 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -103,6 +104,13 @@ public class FloatWritableRowKey extends RowKey
   private static final int NULL = 0;
   private FloatWritable fw;
 
+  @Override
+  public FloatWritableRowKey clone() {
+    FloatWritableRowKey k = (FloatWritableRowKey) super.clone();
+    k.fw = null;
+    return k;
+  }
+
   @Override
   public Class<?> getSerializedClass() { return FloatWritable.class; }
 
@@ -113,27 +121,62 @@ public class FloatWritableRowKey extends RowKey
     return Bytes.SIZEOF_INT;
   }
 
+  /** Gets the float value of a non-NULL object. Subclasses serializing 
+   * objects other than FloatWritable override this method.
+   */
+  float getFloat(Object o) { return ((FloatWritable)o).get(); }
+
   @Override
   public void serialize(Object o, ImmutableBytesWritable w) 
     throws IOException
   {
-    byte[] b = w.get();
-    int offset = w.getOffset();
-    int j;
-
-    if (o == null) {
-      if (!terminate())
-        return;
-      j = NULL;
-    } else {
-      j = Float.floatToIntBits(((FloatWritable)o).get());
-      j = (j ^ ((j >> Integer.SIZE - 1) | Integer.MIN_VALUE)) + 1; 
-    }
-   
-    Bytes.putInt(b, offset, j ^ order.mask());
+    if (o == null)
+      serializeNull(w);
+    else
+      serializeFloat(getFloat(o), w);
+  }
+
+  /** Gets the serialized length of a non-NULL float, which is always 4 bytes. 
+   * @see #serializeFloat
+   */
+  public int getSerializedLength(float f) { return Bytes.SIZEOF_INT; }
+
+  /** Serializes a non-NULL float without allocating or boxing. The 
+   * serialized bytes are identical to those produced by serializing the 
+   * equivalent object.
+   * @param f float to serialize
+   * @param w writable to serialize into
+   */
+  public void serializeFloat(float f, ImmutableBytesWritable w) {
+    Bytes.putInt(w.get(), w.getOffset(), encode(f));
     RowKeyUtils.seek(w, Bytes.SIZEOF_INT);
   }
 
+  /** Serializes a NULL value. Nothing is written if NULL is implicitly 
+   * terminated (see {@link RowKey}).
+   * @param w writable to serialize into
+   */
+  public void serializeNull(ImmutableBytesWritable w) {
+    if (!terminate())
+      return;
+    Bytes.putInt(w.get(), w.getOffset(), NULL ^ order.mask());
+    RowKeyUtils.seek(w, Bytes.SIZEOF_INT);
+  }
+
+  private int encode(float f) {
+    int j = Float.floatToIntBits(f);
+    j = (j ^ ((j >> Integer.SIZE - 1) | Integer.MIN_VALUE)) + 1; 
+    return j ^ order.mask();
+  }
+
+  @Override
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+    if (o != null)
+      RowKeyUtils.putInt(b, encode(getFloat(o)));
+    else if (terminate())
+      RowKeyUtils.putInt(b, NULL ^ order.mask());
+  }
+
   @Override
   public void skip(ImmutableBytesWritable w) throws IOException {
     if (w.getLength() <= 0)
@@ -141,28 +184,56 @@ public class FloatWritableRowKey extends RowKey
     RowKeyUtils.seek(w, Bytes.SIZEOF_INT);
   }
 
+  @Override
+  protected void skipDirect(ByteBuffer b) throws IOException {
+    if (b.remaining() > 0)
+      b.position(b.position() + Bytes.SIZEOF_INT);
+  }
+
+  /** Returns true if the next serialized value in the writable is NULL. The
+   * writable position is not modified. An empty writable is an implicitly 
+   * terminated NULL. 
+   */
+  public boolean isNull(ImmutableBytesWritable w) {
+    return w.getLength() <= 0 
+      || (Bytes.toInt(w.get(), w.getOffset()) ^ order.mask()) == NULL;
+  }
+
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    byte[] s = w.get();
-    int offset = w.getOffset();
-    if (w.getLength() <= 0)
+    if (isNull(w)) {
+      skip(w);
       return null;
+    }
 
-    try {
-      int j = Bytes.toInt(s, offset) ^ order.mask();
+    FloatWritable fw = reuse ? this.fw : null;
+    if (fw == null) {
+      fw = new FloatWritable();
+      if (reuse)
+        this.fw = fw;
+    }
+    fw.set(deserializeFloat(w));
+    return fw;
+  }
 
-      if (j == NULL)
-        return null;
+  /** Deserializes a non-NULL float without allocating or boxing. Callers
+   * should test for NULL values using {@link #isNull} if the serialized 
+   * value may be NULL.
+   * @param w writable to deserialize from
+   * @return deserialized float
+   * @throws NullPointerException if the serialized value is NULL
+   */
+  public float deserializeFloat(ImmutableBytesWritable w) {
+    if (w.getLength() <= 0)
+      throw new NullPointerException("Cannot deserialize NULL as a float");
 
-      if (fw == null)
-        fw = new FloatWritable();
+    int j = Bytes.toInt(w.get(), w.getOffset()) ^ order.mask();
+    if (j == NULL)
+      throw new NullPointerException("Cannot deserialize NULL as a float");
+    RowKeyUtils.seek(w, Bytes.SIZEOF_INT);
 
-      j--;
-      j ^= (~j >> Integer.SIZE - 1) | Integer.MIN_VALUE;
-      fw.set(Float.intBitsToFloat(j));
-      return fw;
-    } finally {
-      RowKeyUtils.seek(w, Bytes.SIZEOF_INT);
-    }
+    j--;
+    j ^= (~j >> Integer.SIZE - 1) | Integer.MIN_VALUE;
+    return Float.intBitsToFloat(j);
   }
 }
@@ -0,0 +1,131 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/** A half-open interval <code>[start, stop)</code> of serialized row keys, 
+ * suitable for use as the start and stop rows of an HBase scan.
+ *
+ * <p>Following the HBase convention, a zero-length start row means the range 
+ * is unbounded below, and a zero-length stop row means the range is unbounded
+ * above. Row keys are compared as unsigned byte arrays, the same order used
+ * by HBase and {@link RowKeyComparator}. Key ranges are immutable, and do
+ * not copy the byte arrays passed to them.</p>
+ *
+ * @see StructRowKey#getScanRange
+ * @see KeyRangeSet
+ */
+public class KeyRange
+{
+  /** The range of all row keys. */
+  public static final KeyRange ALL = new KeyRange(RowKeyUtils.EMPTY, 
+      RowKeyUtils.EMPTY);
+
+  /** A range containing no row keys. */
+  public static final KeyRange NONE = new KeyRange(new byte[] { 0 }, 
+      new byte[] { 0 });
+
+  private final byte[] start, stop;
+
+  /** Creates a key range.
+   * @param start inclusive start row, or a zero-length array if unbounded
+   * @param stop exclusive stop row, or a zero-length array if unbounded
+   */
+  public KeyRange(byte[] start, byte[] stop) {
+    this.start = start;
+    this.stop = stop;
+  }
+
+  /** Gets the range of all row keys beginning with the specified prefix. */
+  public static KeyRange prefix(byte[] prefix) {
+    return new KeyRange(prefix, getPrefixEnd(prefix));
+  }
+
+  /** Gets the smallest row key greater than every row key beginning with the
+   * specified prefix. This is the prefix with its trailing 0xff bytes removed
+   * and its last remaining byte incremented. Returns a zero-length array 
+   * (unbounded) if there is no such row key, which is the case if the prefix 
+   * consists only of 0xff bytes (or is empty).
+   */
+  public static byte[] getPrefixEnd(byte[] prefix) {
+    int i = prefix.length;
+    while (i > 0 && prefix[i - 1] == (byte) 0xff)
+      i--;
+    if (i == 0)
+      return RowKeyUtils.EMPTY;
+
+    byte[] end = Arrays.copyOf(prefix, i);
+    end[i - 1]++;
+    return end;
+  }
+
+  /** Gets the inclusive start row, or a zero-length array if unbounded. */
+  public byte[] getStart() { return start; }
+
+  /** Gets the exclusive stop row, or a zero-length array if unbounded. */
+  public byte[] getStop() { return stop; }
+
+  /** Returns true if the range is unbounded below. */
+  public boolean isStartUnbounded() { return start.length == 0; }
+
+  /** Returns true if the range is unbounded above. */
+  public boolean isStopUnbounded() { return stop.length == 0; }
+
+  /** Returns true if the range contains no row keys. */
+  public boolean isEmpty() {
+    return !isStopUnbounded() && RowKeyComparator.compareBytes(start, 0, 
+        start.length, stop, 0, stop.length) >= 0;
+  }
+
+  /** Returns true if the range contains the row key b. */
+  public boolean contains(byte[] b) { return contains(b, 0, b.length); }
+
+  /** Returns true if the range contains the row key stored in the specified
+   * region of a byte array. 
+   */
+  public boolean contains(byte[] b, int offset, int length) {
+    return RowKeyComparator.compareBytes(start, 0, start.length, b, offset, 
+        length) <= 0 && (isStopUnbounded() || RowKeyComparator.compareBytes(
+            b, offset, length, stop, 0, stop.length) < 0);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof KeyRange))
+      return false;
+    KeyRange r = (KeyRange) o;
+    return Arrays.equals(start, r.start) && Arrays.equals(stop, r.stop);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(start) + Arrays.hashCode(stop);
+  }
+
+  @Override
+  public String toString() {
+    return "[" + Bytes.toStringBinary(start) + ", " 
+      + (isStopUnbounded() ? "" : Bytes.toStringBinary(stop)) + ")";
+  }
+}
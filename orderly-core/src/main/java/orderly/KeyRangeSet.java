@@ -0,0 +1,237 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/** An ordered set of disjoint {@link KeyRange} objects, used to plan a 
+ * single scan over several ranges of serialized row keys.
+ *
+ * <p>A key range set is always normalized: empty ranges are removed, and the 
+ * remaining ranges are sorted by start row and merged so that no two ranges
+ * overlap or are adjacent (the stop row of each range is strictly less than
+ * the start row of the next). The ranges of a set are therefore the minimal 
+ * ordered list of scan ranges covering the same row keys, whatever order and 
+ * overlap the ranges were added in. Key range sets are immutable; 
+ * {@link #union} and {@link #intersect} return new sets.</p>
+ *
+ * <p>Typical sets are built from IN-lists or disjunctions over the leading 
+ * fields of a struct using {@link StructRowKey#getScanRanges}, combined with
+ * <code>union</code> and <code>intersect</code>, and then scanned in order.</p>
+ *
+ * @see KeyRange
+ */
+public class KeyRangeSet implements Iterable<KeyRange>
+{
+  /** The set of all row keys. */
+  public static final KeyRangeSet ALL = 
+    new KeyRangeSet(Collections.singletonList(KeyRange.ALL));
+
+  /** The empty set. */
+  public static final KeyRangeSet NONE = 
+    new KeyRangeSet(Collections.<KeyRange>emptyList());
+
+  /* Orders ranges by start row, with an unbounded start first */
+  private static final Comparator<KeyRange> START_ORDER = 
+    new Comparator<KeyRange>() {
+      public int compare(KeyRange a, KeyRange b) {
+        return compareBytes(a.getStart(), b.getStart());
+      }
+    };
+
+  private final List<KeyRange> ranges;
+
+  private KeyRangeSet(List<KeyRange> ranges) { this.ranges = ranges; }
+
+  /** Creates the normalized set of row keys contained in any of the 
+   * specified ranges. 
+   */
+  public static KeyRangeSet of(KeyRange... ranges) {
+    return of(Arrays.asList(ranges));
+  }
+
+  /** Creates the normalized set of row keys contained in any of the 
+   * specified ranges. 
+   */
+  public static KeyRangeSet of(Collection<KeyRange> ranges) {
+    List<KeyRange> sorted = new ArrayList<KeyRange>(ranges.size());
+    for (KeyRange r : ranges)
+      if (!r.isEmpty())
+        sorted.add(r);
+    Collections.sort(sorted, START_ORDER);
+
+    List<KeyRange> merged = new ArrayList<KeyRange>(sorted.size());
+    KeyRange cur = null;
+    for (KeyRange r : sorted) {
+      if (cur == null) {
+        cur = r;
+      } else if (cur.isStopUnbounded() 
+          || compareBytes(r.getStart(), cur.getStop()) <= 0) 
+      {
+        /* Overlapping or adjacent, extend the current range */
+        if (compareStops(r.getStop(), cur.getStop()) > 0)
+          cur = new KeyRange(cur.getStart(), r.getStop());
+      } else {
+        merged.add(cur);
+        cur = r;
+      }
+    }
+    if (cur != null)
+      merged.add(cur);
+
+    return merged.isEmpty() ? NONE : 
+      new KeyRangeSet(Collections.unmodifiableList(merged));
+  }
+
+  /** Gets the set of row keys contained in this set or in s. */
+  public KeyRangeSet union(KeyRangeSet s) {
+    if (s.ranges.isEmpty())
+      return this;
+    if (ranges.isEmpty())
+      return s;
+
+    List<KeyRange> l = new ArrayList<KeyRange>(ranges.size() + s.size());
+    l.addAll(ranges);
+    l.addAll(s.ranges);
+    return of(l);
+  }
+
+  /** Gets the set of row keys contained in both this set and s. */
+  public KeyRangeSet intersect(KeyRangeSet s) {
+    List<KeyRange> l = new ArrayList<KeyRange>();
+    int i = 0, j = 0;
+
+    /* Both lists are sorted and disjoint, so sweep them in order, advancing
+     * whichever range ends first */
+    while (i < ranges.size() && j < s.ranges.size()) {
+      KeyRange a = ranges.get(i), b = s.ranges.get(j);
+      byte[] start = compareBytes(a.getStart(), b.getStart()) >= 0 ? 
+          a.getStart() : b.getStart();
+      int c = compareStops(a.getStop(), b.getStop());
+      byte[] stop = c <= 0 ? a.getStop() : b.getStop();
+
+      KeyRange r = new KeyRange(start, stop);
+      if (!r.isEmpty())
+        l.add(r);
+
+      if (c <= 0)
+        i++;
+      if (c >= 0)
+        j++;
+    }
+
+    return l.isEmpty() ? NONE : 
+      new KeyRangeSet(Collections.unmodifiableList(l));
+  }
+
+  /** Gets the ranges of this set, in increasing order of row keys. */
+  public List<KeyRange> getRanges() { return ranges; }
+
+  /** Gets the number of ranges in this set. */
+  public int size() { return ranges.size(); }
+
+  /** Returns true if this set contains no row keys. */
+  public boolean isEmpty() { return ranges.isEmpty(); }
+
+  public Iterator<KeyRange> iterator() { return ranges.iterator(); }
+
+  /** Gets the range containing the row key b, or null if no range contains
+   * b. 
+   */
+  public KeyRange getRange(byte[] b) { return getRange(b, 0, b.length); }
+
+  /** Gets the range containing the row key stored in the specified region of
+   * a byte array, or null if no range contains it. 
+   */
+  public KeyRange getRange(byte[] b, int offset, int length) {
+    int i = floorIndex(b, offset, length);
+    if (i < 0)
+      return null;
+    KeyRange r = ranges.get(i);
+    return r.contains(b, offset, length) ? r : null;
+  }
+
+  /** Gets the first range containing the row key stored in the specified 
+   * region of a byte array or starting after it, or null if every range ends
+   * at or before the row key. If the returned range does not contain the row
+   * key, its start row is the smallest row key of this set greater than the 
+   * row key, which makes this method suitable for seeking a scanner past 
+   * row keys that are not in this set.
+   */
+  public KeyRange getNextRange(byte[] b, int offset, int length) {
+    int i = floorIndex(b, offset, length);
+    if (i >= 0 && ranges.get(i).contains(b, offset, length))
+      return ranges.get(i);
+    return i + 1 < ranges.size() ? ranges.get(i + 1) : null;
+  }
+
+  /* Binary search for the last range starting at or before b, or -1 if 
+   * every range starts after b */
+  private int floorIndex(byte[] b, int offset, int length) {
+    int lo = 0, hi = ranges.size() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      byte[] start = ranges.get(mid).getStart();
+      if (RowKeyComparator.compareBytes(start, 0, start.length, b, offset, 
+            length) <= 0)
+        lo = mid + 1;
+      else
+        hi = mid - 1;
+    }
+    return hi;
+  }
+
+  /** Returns true if any range of this set contains the row key b. */
+  public boolean contains(byte[] b) { return getRange(b) != null; }
+
+  /** Returns true if any range of this set contains the row key stored in 
+   * the specified region of a byte array.
+   */
+  public boolean contains(byte[] b, int offset, int length) {
+    return getRange(b, offset, length) != null;
+  }
+
+  private static int compareBytes(byte[] a, byte[] b) {
+    return RowKeyComparator.compareBytes(a, 0, a.length, b, 0, b.length);
+  }
+
+  /** Compares two stop rows, where a zero-length stop row is unbounded. */
+  private static int compareStops(byte[] a, byte[] b) {
+    if (a.length == 0 || b.length == 0)
+      return (a.length == 0 ? 1 : 0) - (b.length == 0 ? 1 : 0);
+    return compareBytes(a, b);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof KeyRangeSet && ranges.equals(((KeyRangeSet)o).ranges);
+  }
+
+  @Override
+  public int hashCode() { return ranges.hashCode(); }
+
+  @Override
+  public String toString() { return ranges.toString(); }
+}
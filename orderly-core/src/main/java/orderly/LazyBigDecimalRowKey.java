@@ -51,6 +51,13 @@ public class LazyBigDecimalRowKey extends BigDecimalRowKey
 {
   private ImmutableBytesWritable rawBytes;
 
+  @Override
+  public LazyBigDecimalRowKey clone() {
+    LazyBigDecimalRowKey k = (LazyBigDecimalRowKey) super.clone();
+    k.rawBytes = null;
+    return k;
+  }
+
   @Override
   public Class<?> getDeserializedClass() { 
     return ImmutableBytesWritable.class; 
@@ -58,8 +65,12 @@ public class LazyBigDecimalRowKey extends BigDecimalRowKey
 
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    if (rawBytes == null)
+    ImmutableBytesWritable rawBytes = reuse ? this.rawBytes : null;
+    if (rawBytes == null) {
       rawBytes = new ImmutableBytesWritable();
+      if (reuse)
+        this.rawBytes = rawBytes;
+    }
 
     rawBytes.set(w.get(), w.getOffset(), w.getLength());
     super.skip(w);
@@ -0,0 +1,119 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+/** A lazily deserialized view of a serialized {@link StructRowKey}. 
+ *
+ * <p>A lazy struct locates and deserializes a field only when the field is 
+ * first accessed using {@link #get}, and caches the deserialized value for 
+ * later accesses. Field offsets are found using a {@link StructIndex}, so 
+ * fields after the last field accessed are never skipped, and each field is 
+ * skipped at most once. Reading one or two fields of a wide struct therefore
+ * costs far less than {@link StructRowKey#deserialize}, which deserializes 
+ * every field.</p>
+ *
+ * <p>Struct fields may themselves deserialize lazily. For example, a field 
+ * using {@link LazyUTF8RowKey} only scans for its terminator when accessed, 
+ * returning the raw bytes of the value, which are decoded by calling 
+ * {@link LazyUTF8RowKey#getUTF8}. Other lazy row keys are 
+ * {@link LazyTextRowKey}, {@link LazyVariableLengthBytesWritableRowKey} and 
+ * {@link LazyBigDecimalRowKey}.</p>
+ *
+ * <p>A lazy struct refers to the serialized bytes without copying them, and 
+ * is only valid while these bytes are unchanged. As with other deserialized
+ * objects, lazy structs returned by {@link StructRowKey#deserializeLazy} are 
+ * re-used across calls, and field values may be re-used by the field row 
+ * keys.</p>
+ */
+public class LazyStruct
+{
+  /* Marks a field that has not been deserialized */
+  private static final Object UNREAD = new Object();
+
+  private final StructIndex index;
+  private final Object[] v;
+
+  /** Creates a lazy struct view.
+   * @param rowKey the struct row key type to use for deserialization
+   */
+  public LazyStruct(StructRowKey rowKey) {
+    this.index = new StructIndex(rowKey);
+    this.v = new Object[rowKey.getFields().length];
+  }
+
+  /** Sets the serialized struct to view. Discards all previously 
+   * deserialized field values.
+   * @param w serialized struct bytes, which are not modified
+   * @return this object
+   */
+  public LazyStruct setBytes(ImmutableBytesWritable w) {
+    index.setBytes(w);
+    Arrays.fill(v, UNREAD);
+    return this;
+  }
+
+  /** Gets the struct row key used for deserialization. */
+  public StructRowKey getRowKey() { return index.getRowKey(); }
+
+  /** Gets the number of fields in the struct. */
+  public int size() { return v.length; }
+
+  /** Gets the value of field i, deserializing it if this is the first access
+   * to the field.
+   */
+  public Object get(int i) throws IOException {
+    Object o = v[i];
+    if (o == UNREAD)
+      o = v[i] = index.deserialize(i);
+    return o;
+  }
+
+  /** Returns true if field i has already been deserialized. */
+  public boolean isRead(int i) { return v[i] != UNREAD; }
+
+  /** Sets a writable to the serialized bytes of field i, without 
+   * deserializing the field.
+   * @return field
+   */
+  public ImmutableBytesWritable getBytes(int i, ImmutableBytesWritable field)
+    throws IOException
+  {
+    return index.getBytes(i, field);
+  }
+
+  /** Gets the serialized length of the struct. */
+  public int getSerializedLength() throws IOException {
+    return index.getSerializedLength();
+  }
+
+  /** Deserializes all fields not yet read, returning the values of all 
+   * fields in a new array (as returned by {@link StructRowKey#deserialize}).
+   */
+  public Object[] toArray() throws IOException {
+    Object[] o = new Object[v.length];
+    for (int i = 0; i < v.length; i++)
+      o[i] = get(i);
+    return o;
+  }
+}
@@ -0,0 +1,80 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.io.Text;
+
+/** Serializes and deserializes Hadoop Text objects into a sortable byte 
+ * array representation, deserializing lazily.
+ *
+ * <p>The serialization method is identical to {@link TextRowKey}. The 
+ * deserialization method returns an <code>ImmutableBytesWritable</code> 
+ * object referencing the raw serialized bytes of the value. A separate 
+ * method, {@link #getText} (identical to {@link TextRowKey#deserialize}) is 
+ * used to fully deserialize these bytes lazily on demand.</p>
+ *
+ * <h1> Usage </h1>
+ * Deserialization performs no object allocations or copies, so values which
+ * are never fully deserialized avoid the copy into a <code>Text</code> 
+ * object. As with <code>TextRowKey</code>, the <code>Text</code> object 
+ * returned by <code>getText</code> is re-used across calls.
+ */
+public class LazyTextRowKey extends TextRowKey 
+{
+  private ImmutableBytesWritable rawBytes;
+
+  @Override
+  public LazyTextRowKey clone() {
+    LazyTextRowKey k = (LazyTextRowKey) super.clone();
+    k.rawBytes = null;
+    return k;
+  }
+
+  @Override
+  public Class<?> getDeserializedClass() { 
+    return ImmutableBytesWritable.class; 
+  }
+
+  @Override
+  public Object deserialize(ImmutableBytesWritable w) throws IOException {
+    ImmutableBytesWritable rawBytes = reuse ? this.rawBytes : null;
+    if (rawBytes == null) {
+      rawBytes = new ImmutableBytesWritable();
+      if (reuse)
+        this.rawBytes = rawBytes;
+    }
+
+    int offset = w.getOffset();
+    super.skip(w);
+    rawBytes.set(w.get(), offset, w.getOffset() - offset);
+    return rawBytes;
+  }
+
+  /** Gets the <code>Text</code> stored in the current position of the byte 
+   * array. After this method is called, the position (length) of the byte
+   * array will be incremented (decremented) by the length of the serialized
+   * value.
+   */
+  public Text getText(ImmutableBytesWritable w) throws IOException {
+    return (Text)super.deserialize(w);
+  }
+}
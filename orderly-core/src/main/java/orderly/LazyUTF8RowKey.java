@@ -0,0 +1,83 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+/** Serializes and deserializes UTF-8 byte arrays into a sortable byte array
+ * representation, deserializing lazily.
+ *
+ * <p>The serialization method is identical to {@link UTF8RowKey}. The 
+ * deserialization method returns an <code>ImmutableBytesWritable</code> 
+ * object referencing the raw serialized bytes of the value, without decoding
+ * them. A separate method, {@link #getUTF8} (identical to 
+ * {@link UTF8RowKey#deserialize}) is used to fully deserialize these bytes 
+ * lazily on demand.</p>
+ *
+ * <h1> Usage </h1>
+ * Deserialization only scans for the terminator byte, and performs no object
+ * allocations or copies. If some values do not have to be fully deserialized
+ * (for example, fields of a struct that are not read, see 
+ * {@link StructRowKey#deserializeLazy}), then the client will not pay the 
+ * allocation and decoding costs for these values. The returned 
+ * <code>ImmutableBytesWritable</code> is re-used across calls to 
+ * <code>deserialize</code>.
+ */
+public class LazyUTF8RowKey extends UTF8RowKey 
+{
+  private ImmutableBytesWritable rawBytes;
+
+  @Override
+  public LazyUTF8RowKey clone() {
+    LazyUTF8RowKey k = (LazyUTF8RowKey) super.clone();
+    k.rawBytes = null;
+    return k;
+  }
+
+  @Override
+  public Class<?> getDeserializedClass() { 
+    return ImmutableBytesWritable.class; 
+  }
+
+  @Override
+  public Object deserialize(ImmutableBytesWritable w) throws IOException {
+    ImmutableBytesWritable rawBytes = reuse ? this.rawBytes : null;
+    if (rawBytes == null) {
+      rawBytes = new ImmutableBytesWritable();
+      if (reuse)
+        this.rawBytes = rawBytes;
+    }
+
+    int offset = w.getOffset();
+    super.skip(w);
+    rawBytes.set(w.get(), offset, w.getOffset() - offset);
+    return rawBytes;
+  }
+
+  /** Gets the UTF-8 byte array stored in the current position of the byte 
+   * array. After this method is called, the position (length) of the byte
+   * array will be incremented (decremented) by the length of the serialized
+   * value.
+   */
+  public byte[] getUTF8(ImmutableBytesWritable w) throws IOException {
+    return (byte[])super.deserialize(w);
+  }
+}
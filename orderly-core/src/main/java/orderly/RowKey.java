@@ -19,6 +19,8 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
@@ -76,11 +78,11 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
  * terminated formats, regardless of what the <code>termination</code> flag
  * is set to.</p>
  */
-public abstract class RowKey 
+public abstract class RowKey implements Cloneable
 {
   protected Order order;
   protected Termination termination = Termination.AUTO;
-  private ImmutableBytesWritable w;
+  protected boolean reuse = true;
 
   public RowKey() { this.order = Order.ASCENDING; }
 
@@ -106,6 +108,23 @@ public abstract class RowKey
     return this;
   }
 
+  /** Returns whether {@link #deserialize} may re-use the objects it returns
+   * across calls. Defaults to true.
+   */
+  public boolean getReuse() { return reuse; }
+
+  /** Sets whether {@link #deserialize} may re-use the objects it returns 
+   * across calls. If false, every deserialized object is newly allocated 
+   * and owned by the caller, and deserialization does not modify this row
+   * key, so a single row key may deserialize in any number of threads. Row
+   * keys composed of other row keys apply this setting to them.
+   * @return this object
+   */
+  public RowKey setReuse(boolean reuse) {
+    this.reuse = reuse;
+    return this;
+  }
+
   /** Returns true if termination is required */
   boolean terminate() {
     switch (termination) {
@@ -151,18 +170,106 @@ public abstract class RowKey
   }
 
   public void serialize(Object o, byte[] b, int offset) throws IOException {
-    if (w == null) 
-      w = new ImmutableBytesWritable();
-    w.set(b, offset, b.length - offset);
-    serialize(o, w);
+    serialize(o, new ImmutableBytesWritable(b, offset, b.length - offset));
   }
 
   public byte[] serialize(Object o) throws IOException {
-    byte[] b = new byte[getSerializedLength(o)];
-    serialize(o, b, 0);
+    Object p = prepare(o);
+    byte[] b = new byte[getPreparedLength(p)];
+    serializePrepared(p, new ImmutableBytesWritable(b));
     return b;
   }
 
+  /** Serializes an object o by appending it to a growable writer, without
+   * requiring the caller to size or allocate a byte array.
+   * @param o object to serialize
+   * @param w writer to append the serialized object to
+   * @see RowKeyWriter#write(RowKey, Object)
+   */
+  public void serialize(Object o, RowKeyWriter w) throws IOException {
+    w.write(this, o);
+  }
+
+  /** Prepares an object for serialization. The returned value holds any 
+   * intermediate results (such as converted values or digit strings) that 
+   * are needed both to compute the serialized length of o and to serialize o,
+   * so that callers needing both only compute them once. The prepared value
+   * must not depend on the termination of this row key, as a 
+   * {@link StructRowKey} prepares its fields before choosing their 
+   * termination. The default implementation returns o.
+   * @param o object to serialize
+   * @return prepared value for {@link #getPreparedLength} and
+   * {@link #serializePrepared}
+   */
+  protected Object prepare(Object o) throws IOException { return o; }
+
+  /** Gets the serialized length of a value returned by {@link #prepare}.
+   * @see #getSerializedLength
+   */
+  protected int getPreparedLength(Object p) throws IOException {
+    return getSerializedLength(p);
+  }
+
+  /** Serializes a value returned by {@link #prepare}. 
+   * @see #serialize(Object, ImmutableBytesWritable)
+   */
+  protected void serializePrepared(Object p, ImmutableBytesWritable w) 
+    throws IOException 
+  {
+    serialize(p, w);
+  }
+
+  /** Serializes an object o to a byte buffer. Bytes are written starting at
+   * the buffer's position, and the position is advanced by the number of 
+   * bytes used to serialize o. Buffers with an accessible backing array are 
+   * serialized in place using {@link #serialize(Object, 
+   * ImmutableBytesWritable)}. Other buffers (such as direct or memory-mapped
+   * buffers) are serialized using {@link #serializeDirect}.
+   * @param o object to serialize
+   * @param b byte buffer used to store the serialized object
+   * @throws BufferOverflowException if there are fewer bytes remaining in the
+   * buffer than the serialized length of o
+   * @throws java.nio.ReadOnlyBufferException if the buffer is read-only
+   */
+  public void serialize(Object o, ByteBuffer b) throws IOException {
+    if (!b.hasArray()) {
+      serializeDirect(o, b);
+      return;
+    }
+
+    Object p = prepare(o);
+    if (getPreparedLength(p) > b.remaining())
+      throw new BufferOverflowException();
+    ImmutableBytesWritable w = RowKeyUtils.wrap(b);
+    serializePrepared(p, w);
+    RowKeyUtils.seek(b, w);
+  }
+
+  /** Serializes an object o to a byte buffer without an accessible backing
+   * array, such as a direct, memory-mapped or read-only buffer. The default
+   * implementation serializes o to a temporary byte array, which is then 
+   * copied to the buffer. Subclasses override this method to write directly
+   * to the buffer. If there are not enough bytes remaining in the buffer, a 
+   * <code>BufferOverflowException</code> is thrown and the contents of the
+   * buffer after its position are undefined.
+   * @see #serialize(Object, ByteBuffer)
+   */
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+    b.put(serialize(o));
+  }
+
+  /** Serializes a value returned by {@link #prepare} to a byte buffer without
+   * an accessible backing array. The default implementation calls
+   * {@link #serializeDirect}, and so row keys whose prepared values are not
+   * themselves serializable objects must override this method.
+   * @see #serializeDirect
+   */
+  protected void serializePreparedDirect(Object p, ByteBuffer b)
+    throws IOException
+  {
+    serializeDirect(p, b);
+  }
+
   /** Skips over a serialized key in the byte array. When this
    * method returns, the byte array's position will be adjusted by the number of
    * bytes in the serialized key. The offset (length) of the byte array is 
@@ -182,15 +289,83 @@ public abstract class RowKey
   public abstract Object deserialize(ImmutableBytesWritable w)
     throws IOException;
 
+  /** Skips over a serialized key in a byte buffer. The position of the byte
+   * buffer is advanced by the number of bytes in the serialized key. 
+   * @param b the byte buffer containing the serialized key
+   * @see #skip(ImmutableBytesWritable)
+   */
+  public void skip(ByteBuffer b) throws IOException {
+    if (!b.hasArray()) {
+      skipDirect(b);
+      return;
+    }
+
+    ImmutableBytesWritable w = RowKeyUtils.wrap(b);
+    skip(w);
+    RowKeyUtils.seek(b, w);
+  }
+
+  /** Skips over a serialized key in a byte buffer without an accessible 
+   * backing array. The default implementation copies the remaining bytes of
+   * the buffer, so subclasses override this method to read the buffer 
+   * directly.
+   * @see #skip(ByteBuffer)
+   */
+  protected void skipDirect(ByteBuffer b) throws IOException {
+    byte[] t = new byte[b.remaining()];
+    b.duplicate().get(t);
+    ImmutableBytesWritable w = new ImmutableBytesWritable(t);
+    skip(w);
+    b.position(b.position() + w.getOffset());
+  }
+
+  /** Deserializes a key from a byte buffer. The position of the byte buffer is
+   * advanced by the number of bytes in the serialized key. Buffers with an 
+   * accessible backing array are deserialized in place using 
+   * {@link #deserialize(ImmutableBytesWritable)}. For other buffers, the 
+   * serialized key is located with {@link #skip(ByteBuffer)} and only its 
+   * bytes are copied to the heap before deserialization.
+   * @param b the byte buffer used for key deserialization
+   * @return the deserialized key from the current position in the buffer
+   */
+  public Object deserialize(ByteBuffer b) throws IOException {
+    if (b.hasArray()) {
+      ImmutableBytesWritable w = RowKeyUtils.wrap(b);
+      Object o = deserialize(w);
+      RowKeyUtils.seek(b, w);
+      return o;
+    }
+
+    ByteBuffer d = b.duplicate();
+    skip(d);
+    byte[] t = new byte[d.position() - b.position()];
+    b.get(t);
+    return deserialize(t);
+  }
+
   public Object deserialize(byte[] b) throws IOException { 
     return deserialize(b, 0);
   }
 
   public Object deserialize(byte[] b, int offset) throws IOException {
-    if (w == null)
-      w = new ImmutableBytesWritable();
-    w.set(b, offset, b.length - offset);
-    return deserialize(w);
+    return deserialize(new ImmutableBytesWritable(b, offset, b.length - offset));
+  }
+
+  /** Creates a copy of this row key with the same sort order, termination 
+   * and other settings. Subclasses that reuse objects across deserializations
+   * do not share them with the copy, and row keys composed of other row keys 
+   * (such as structs) copy their component row keys. The copy may therefore 
+   * be used by another thread, or modified, without affecting this row key.
+   * @return a copy of this row key
+   * @see RowKeyCodec
+   */
+  @Override
+  public RowKey clone() {
+    try {
+      return (RowKey) super.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError(e);
+    }
   }
 
   /** Orders serialized byte b by XOR'ing it with the sort order mask. This
@@ -0,0 +1,142 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+/** An immutable, thread-safe codec for serializing and deserializing objects 
+ * using a {@link RowKey}.
+ *
+ * <p>Row keys are mutable: they have sort order and termination setters, 
+ * re-use objects across deserializations, and struct row keys modify the
+ * termination of their fields during serialization. A row key instance may
+ * therefore only be used by one thread at a time. A codec takes a private 
+ * copy of a row key when it is created (see {@link RowKey#clone}), and is 
+ * unaffected by any later changes to the row key. A single codec may be 
+ * shared by any number of threads, for example one codec per table schema.
+ * </p>
+ *
+ * <h1> Serialization </h1>
+ * The codec produces exactly the same bytes as the row key it was created 
+ * from. Serialization, {@link #getSerializedLength} and {@link #skip} use a 
+ * copy of the row key whose struct row keys (if any) precompute their field 
+ * terminations, so that no state is modified by these methods. 
+ *
+ * <h1> Deserialization </h1>
+ * Deserialization uses a copy of the row key with object re-use disabled 
+ * (see {@link RowKey#setReuse}), so that it allocates every deserialized 
+ * object, including Writables, and never modifies the row key. Deserialized
+ * objects are never re-used and are owned by the caller.
+ *
+ * <h1> Custom row keys </h1>
+ * All row keys in this package serialize, and deserialize with object 
+ * re-use disabled, without modifying any state. User-defined row key 
+ * subclasses used with a codec must do the same, must honor 
+ * {@link RowKey#setReuse} if they re-use objects across deserializations, 
+ * and must override {@link RowKey#clone} if they re-use objects or are 
+ * composed of other row keys.
+ *
+ * @see StructBuilder#toCodec
+ */
+public class RowKeyCodec
+{
+  private final RowKey serializer, deserializer;
+  private final boolean reuse;
+
+  /** Creates a codec from a row key. The row key is copied, and may be 
+   * modified or re-used after this constructor returns.
+   * @param key the row key used for serialization
+   */
+  public RowKeyCodec(RowKey key) {
+    this.serializer = key.clone();
+    if (serializer instanceof StructRowKey)
+      ((StructRowKey)serializer).freeze();
+    this.deserializer = key.clone().setReuse(false);
+    this.reuse = key.getReuse();
+  }
+
+  /** Gets a copy of the row key used by this codec. */
+  public RowKey getRowKey() { return deserializer.clone().setReuse(reuse); }
+
+  /** Gets the sort order of the codec's row key. */
+  public Order getOrder() { return serializer.getOrder(); }
+
+  /** @see RowKey#getSerializedClass */
+  public Class<?> getSerializedClass() { 
+    return serializer.getSerializedClass(); 
+  }
+
+  /** @see RowKey#getDeserializedClass */
+  public Class<?> getDeserializedClass() { 
+    return serializer.getDeserializedClass(); 
+  }
+
+  /** @see RowKey#getSerializedLength */
+  public int getSerializedLength(Object o) throws IOException {
+    return serializer.getSerializedLength(o);
+  }
+
+  /** @see RowKey#serialize(Object, ImmutableBytesWritable) */
+  public void serialize(Object o, ImmutableBytesWritable w) 
+    throws IOException 
+  {
+    serializer.serialize(o, w);
+  }
+
+  /** @see RowKey#serialize(Object, byte[], int) */
+  public void serialize(Object o, byte[] b, int offset) throws IOException {
+    serializer.serialize(o, b, offset);
+  }
+
+  /** @see RowKey#serialize(Object) */
+  public byte[] serialize(Object o) throws IOException {
+    return serializer.serialize(o);
+  }
+
+  /** @see RowKey#serialize(Object, RowKeyWriter) */
+  public void serialize(Object o, RowKeyWriter w) throws IOException {
+    w.write(serializer, o);
+  }
+
+  /** @see RowKey#skip */
+  public void skip(ImmutableBytesWritable w) throws IOException {
+    serializer.skip(w);
+  }
+
+  /** Deserializes an object from the byte array. The returned object is never
+   * re-used by the codec.
+   * @see RowKey#deserialize(ImmutableBytesWritable)
+   */
+  public Object deserialize(ImmutableBytesWritable w) throws IOException {
+    return deserializer.deserialize(w);
+  }
+
+  /** @see RowKey#deserialize(byte[], int) */
+  public Object deserialize(byte[] b, int offset) throws IOException {
+    return deserialize(new ImmutableBytesWritable(b, offset, 
+          b.length - offset));
+  }
+
+  /** @see RowKey#deserialize(byte[]) */
+  public Object deserialize(byte[] b) throws IOException {
+    return deserialize(b, 0);
+  }
+}
@@ -0,0 +1,118 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.lang.reflect.Method;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.RawComparator;
+
+/** Compares serialized row keys using unsigned lexicographic byte order, 
+ * which is the sort order of the row key values.
+ *
+ * <p>Where the platform supports fast unaligned memory access, keys are 
+ * compared eight bytes at a time using HBase's {@link Bytes#compareTo}, which
+ * reads words from the arrays directly when <code>sun.misc.Unsafe</code> is 
+ * available. On other platforms (or if unaligned access cannot be detected), 
+ * keys are compared one byte at a time in pure Java, as unaligned word reads 
+ * are either unsupported or emulated with traps there. Both implementations 
+ * return the same results.</p>
+ *
+ * <p>This class is stateless and thread-safe. It may be used directly as a 
+ * Hadoop {@link RawComparator}, or as a {@link java.util.Comparator} for 
+ * sorting byte arrays in memory.</p>
+ */
+public class RowKeyComparator implements RawComparator<byte[]>
+{
+  /** Shared comparator instance. */
+  public static final RowKeyComparator INSTANCE = new RowKeyComparator();
+
+  /* Architectures known to support fast unaligned access */
+  private static final String[] UNALIGNED_ARCHS = { 
+    "i386", "x86", "amd64", "x86_64", "aarch64", "ppc64le" 
+  };
+
+  static final boolean UNALIGNED = isUnaligned();
+
+  public int compare(byte[] b1, byte[] b2) {
+    return compareBytes(b1, 0, b1.length, b2, 0, b2.length);
+  }
+
+  public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+    return compareBytes(b1, s1, l1, b2, s2, l2);
+  }
+
+  /** Compares the bytes referenced by two writables. */
+  public int compare(ImmutableBytesWritable w1, ImmutableBytesWritable w2) {
+    return compareBytes(w1.get(), w1.getOffset(), w1.getLength(), 
+        w2.get(), w2.getOffset(), w2.getLength());
+  }
+
+  /** Compares two byte ranges in unsigned lexicographic order. A range that
+   * is a prefix of another range sorts first.
+   * @return a negative integer, zero, or a positive integer as the first 
+   * range is less than, equal to, or greater than the second range
+   */
+  public static int compareBytes(byte[] b1, int s1, int l1, byte[] b2, 
+      int s2, int l2) 
+  {
+    if (UNALIGNED)
+      return Bytes.compareTo(b1, s1, l1, b2, s2, l2);
+    return compareBytesJava(b1, s1, l1, b2, s2, l2);
+  }
+
+  /** Byte-at-a-time comparison, used where unaligned access is slow. */
+  static int compareBytesJava(byte[] b1, int s1, int l1, byte[] b2, int s2, 
+      int l2) 
+  {
+    if (b1 == b2 && s1 == s2 && l1 == l2)
+      return 0;
+
+    int len = Math.min(l1, l2);
+    for (int i = 0; i < len; i++) {
+      int a = b1[s1 + i] & 0xff, 
+          b = b2[s2 + i] & 0xff;
+      if (a != b)
+        return a - b;
+    }
+    return l1 - l2;
+  }
+
+  /** Returns true if the platform supports fast unaligned memory access. 
+   * Uses the JDK's own check where accessible, and otherwise a list of 
+   * known architectures.
+   */
+  private static boolean isUnaligned() {
+    try {
+      Class<?> bits = Class.forName("java.nio.Bits");
+      Method m = bits.getDeclaredMethod("unaligned");
+      m.setAccessible(true);
+      return ((Boolean) m.invoke(null)).booleanValue();
+    } catch (Throwable t) {
+      /* Not accessible on this JVM, fall back to os.arch */
+    }
+
+    String arch = System.getProperty("os.arch", "");
+    for (String s : UNALIGNED_ARCHS)
+      if (s.equals(arch))
+        return true;
+    return false;
+  }
+}
@@ -18,6 +18,8 @@
 
 package orderly;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
@@ -55,6 +57,35 @@ public class RowKeyUtils
     return toBytes(t.getBytes(), 0, t.getLength());
   }
 
+  /** Gets the length of the UTF-8 encoding of a character sequence, without
+   * encoding it. Unpaired surrogates are counted as a single byte, as they 
+   * are replaced with '?' by {@link String#getBytes(String)}.
+   */
+  public static int getUTF8Length(CharSequence s) {
+    int n = s.length(),
+        len = n,
+        i = 0;
+
+    while (i < n && s.charAt(i) < 0x80)
+      i++;
+
+    for (; i < n; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80)
+        continue;
+      if (c < 0x800)
+        len += 1;
+      else if (Character.isHighSurrogate(c) && i + 1 < n 
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        /* Four bytes for two characters */
+        len += 2;
+        i++;
+      } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE)
+        len += 2;
+    }
+    return len;
+  }
+
   /** Seeks forward/backward within an ImmutableBytesWritable. After
    * seek is complete, the position (length) of the byte array is 
    * incremented (decremented) by the seek amount.
@@ -64,4 +95,38 @@ public class RowKeyUtils
   public static void seek(ImmutableBytesWritable w, int offset) {
     w.set(w.get(), w.getOffset() + offset, w.getLength() - offset);
   }
+
+  /** Wraps the remaining bytes of a byte buffer with an accessible backing 
+   * array. The returned writable shares the buffer's backing array, and its 
+   * offset (length) is the position (remaining bytes) of the buffer.
+   * @param b byte buffer for which {@link ByteBuffer#hasArray} is true
+   * @return writable wrapping the remaining bytes of b
+   */
+  public static ImmutableBytesWritable wrap(ByteBuffer b) {
+    return new ImmutableBytesWritable(b.array(), b.arrayOffset() + b.position(),
+        b.remaining());
+  }
+
+  /** Sets the position of a byte buffer to the current offset of a writable
+   * returned by {@link #wrap(ByteBuffer)}.
+   * @param b byte buffer wrapped by w
+   * @param w writable returned by <code>wrap(b)</code>
+   */
+  public static void seek(ByteBuffer b, ImmutableBytesWritable w) {
+    b.position(w.getOffset() - b.arrayOffset());
+  }
+
+  /** Writes an int to a byte buffer in big endian order, regardless of the 
+   * byte order of the buffer, and advances the position by 4 bytes. 
+   */
+  public static void putInt(ByteBuffer b, int i) {
+    b.putInt(b.order() == ByteOrder.BIG_ENDIAN ? i : Integer.reverseBytes(i));
+  }
+
+  /** Writes a long to a byte buffer in big endian order, regardless of the 
+   * byte order of the buffer, and advances the position by 8 bytes. 
+   */
+  public static void putLong(ByteBuffer b, long l) {
+    b.putLong(b.order() == ByteOrder.BIG_ENDIAN ? l : Long.reverseBytes(l));
+  }
 }
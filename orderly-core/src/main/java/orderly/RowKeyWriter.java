@@ -0,0 +1,147 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+/** A growable, reusable byte sink for serialized row keys.
+ *
+ * <p>The serialize methods of {@link RowKey} write into a byte array that the
+ * caller must size using {@link RowKey#getSerializedLength} beforehand. A 
+ * writer instead appends each serialized key to an internal buffer, growing
+ * the buffer as needed, so the caller does not size anything. Each key is
+ * measured and written from the same prepared value (see 
+ * {@link RowKey#prepare}), so no work is repeated for struct or BigDecimal
+ * keys.</p>
+ *
+ * <p>A writer is intended to be re-used: call {@link #reset} before each row
+ * and the buffer is kept for the next one. Once it has grown to fit the 
+ * largest row key, encoding does not allocate any more buffers. Finished 
+ * rows can be copied with {@link #toByteArray}, or viewed in place with 
+ * {@link #get}. Writers are not thread-safe; use one writer per thread.</p>
+ *
+ * <h1> Usage </h1>
+ * <pre>
+ * RowKeyWriter writer = new RowKeyWriter();
+ * for (Object[] row : rows) {
+ *   structKey.serialize(row, writer.reset());
+ *   put(writer.toByteArray());
+ * }
+ * </pre>
+ */
+public class RowKeyWriter
+{
+  private static final int DEFAULT_CAPACITY = 64;
+
+  private byte[] buffer;
+  private int length;
+
+  /** Creates a writer with a small initial capacity. */
+  public RowKeyWriter() { this(DEFAULT_CAPACITY); }
+
+  /** Creates a writer with the specified initial capacity (in bytes). */
+  public RowKeyWriter(int capacity) {
+    if (capacity < 0)
+      throw new IllegalArgumentException("Negative capacity " + capacity);
+    buffer = new byte[capacity];
+  }
+
+  /** Discards all written bytes. The buffer is kept for re-use. 
+   * @return this object
+   */
+  public RowKeyWriter reset() {
+    length = 0;
+    return this;
+  }
+
+  /** Gets the number of bytes written since the last reset. */
+  public int getLength() { return length; }
+
+  /** Gets the current capacity of the internal buffer. */
+  public int getCapacity() { return buffer.length; }
+
+  /** Serializes an object using a row key, appending the serialized bytes
+   * to this writer. 
+   * @param key row key used to serialize o
+   * @param o object to serialize
+   * @return this object
+   * @see RowKey#serialize(Object, RowKeyWriter)
+   */
+  public RowKeyWriter write(RowKey key, Object o) throws IOException {
+    Object p = key.prepare(o);
+    int len = key.getPreparedLength(p);
+    ensureCapacity(len);
+
+    ImmutableBytesWritable w = new ImmutableBytesWritable(buffer, length, len);
+    key.serializePrepared(p, w);
+    length = w.getOffset();
+    return this;
+  }
+
+  /** Appends raw bytes to this writer. The bytes are not encoded or masked, 
+   * which is useful for constant prefixes such as a table or salt prefix.
+   * @return this object
+   */
+  public RowKeyWriter write(byte[] b, int offset, int len) {
+    ensureCapacity(len);
+    System.arraycopy(b, offset, buffer, length, len);
+    length += len;
+    return this;
+  }
+
+  /** Appends all of the bytes in b to this writer.
+   * @see #write(byte[], int, int)
+   */
+  public RowKeyWriter write(byte[] b) { return write(b, 0, b.length); }
+
+  /** Returns a copy of the bytes written since the last reset. */
+  public byte[] toByteArray() { return Arrays.copyOf(buffer, length); }
+
+  /** Sets a writable to the bytes written since the last reset, without 
+   * copying. The writable shares this writer's buffer, and is only valid until
+   * the next call to {@link #reset} or a write method.
+   * @param w writable to set
+   * @return w
+   */
+  public ImmutableBytesWritable get(ImmutableBytesWritable w) {
+    w.set(buffer, 0, length);
+    return w;
+  }
+
+  /** Returns a new writable wrapping the bytes written since the last reset.
+   * @see #get(ImmutableBytesWritable)
+   */
+  public ImmutableBytesWritable get() { 
+    return get(new ImmutableBytesWritable()); 
+  }
+
+  /** Grows the buffer, if needed, so that len more bytes may be written. The
+   * capacity is at least doubled on each growth to amortize copying.
+   */
+  private void ensureCapacity(int len) {
+    int required = length + len;
+    if (required < 0)
+      throw new OutOfMemoryError("Row key exceeds maximum array length");
+    if (required > buffer.length)
+      buffer = Arrays.copyOf(buffer, Math.max(required, 2 * buffer.length));
+  }
+}
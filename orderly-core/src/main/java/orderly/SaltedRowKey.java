@@ -0,0 +1,360 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Hash;
+
+/** Prefixes the serialization of a row key with a bucket byte, spreading
+ * row keys with monotonically increasing leading fields (such as timestamps
+ * or sequence ids) over several regions.
+ *
+ * <p>A salted row key wraps another row key and assigns each value to one of
+ * <code>numBuckets</code> buckets (at most 256), using a hash of either the 
+ * entire serialized value or, for a {@link StructRowKey}, of chosen fields of
+ * the struct. Consecutive values are therefore written to different buckets,
+ * and as the bucket is the first byte of the row key, each bucket is a 
+ * separate range of the table which may be served by a separate region.</p>
+ *
+ * <p>Within a bucket, salted row keys sort in the order of the wrapped row
+ * key. Across buckets they do not, so a range of wrapped row keys is read by
+ * scanning the same range in every bucket and merging the results (see 
+ * {@link #getBucketRanges(KeyRange)} and {@link #compareUnsalted}). Hashing 
+ * only some fields of a struct keeps rows with equal values of those fields 
+ * together: a scan whose prefix fixes every hashed field reads a single 
+ * bucket (see {@link #getPrefixBucket}).</p>
+ *
+ * <h1> Serialization Format </h1>
+ * A single bucket byte in the range [0, numBuckets), followed by the 
+ * serialization of the wrapped row key. Buckets are computed by hashing 
+ * either the value of the wrapped row key, or the values of the hashed 
+ * fields as a struct of only those fields, serialized in a fixed format: 
+ * every row key (including the fields of nested structs) is serialized in 
+ * ascending order with {@link Termination#MUST}. The bucket of a value 
+ * therefore does not depend on the sort order or termination of the row 
+ * key, whether they are set before or after the salted row key is created,
+ * nor (when fields are hashed) on the values of the other fields. The hash
+ * function defaults to HBase's <code>MurmurHash</code>, and may be changed 
+ * with {@link #setHash}; every client of a table must use the same hash 
+ * function and number of buckets.
+ *
+ * <h1> Descending sort </h1>
+ * The sort order and termination of a salted row key are those of the 
+ * wrapped row key, and setting them sets them on the wrapped row key. The 
+ * bucket byte is never inverted.
+ *
+ * <h1> Usage </h1>
+ * Salting adds one byte to each row key, and the cost of serializing the
+ * hashed value (or fields) a second time in the fixed format and hashing 
+ * it.
+ */
+public class SaltedRowKey extends RowKey
+{
+  private static final int MAX_BUCKETS = 256;
+
+  private RowKey key;
+  private int numBuckets;
+  private int[] hashFields;
+  private RowKey hashKey;
+  private Hash hash = Hash.getInstance(Hash.MURMUR_HASH);
+
+  /** Creates a salted row key hashing the serialization of the wrapped row 
+   * key.
+   * @param key the wrapped row key
+   * @param numBuckets the number of buckets, from 1 to 256
+   */
+  public SaltedRowKey(RowKey key, int numBuckets) {
+    if (numBuckets < 1 || numBuckets > MAX_BUCKETS)
+      throw new IllegalArgumentException("Number of buckets " + numBuckets + 
+          " not in [1, " + MAX_BUCKETS + "]");
+    this.key = key;
+    this.numBuckets = numBuckets;
+    this.hashKey = toHashFormat(key);
+    super.setOrder(key.getOrder());
+    super.setTermination(key.getTermination());
+  }
+
+  /** Creates a salted struct row key hashing the values of the specified 
+   * fields of the struct. 
+   * @param key the wrapped struct row key
+   * @param numBuckets the number of buckets, from 1 to 256
+   * @param hashFields indexes of the hashed fields 
+   */
+  public SaltedRowKey(StructRowKey key, int numBuckets, int... hashFields) {
+    this(key, numBuckets);
+    RowKey[] fields = key.getFields(),
+             hashed = new RowKey[hashFields.length];
+    for (int i = 0; i < hashFields.length; i++) {
+      if (hashFields[i] < 0 || hashFields[i] >= fields.length)
+        throw new IndexOutOfBoundsException("Field " + hashFields[i] + 
+            " of " + fields.length);
+      hashed[i] = fields[hashFields[i]];
+    }
+    this.hashFields = hashFields.clone();
+    this.hashKey = toHashFormat(new StructRowKey(hashed));
+  }
+
+  /** Creates a copy of a row key serializing values in the fixed format 
+   * used for hashing: ascending order and explicit termination, including 
+   * every field of a struct. 
+   */
+  private static RowKey toHashFormat(RowKey key) {
+    if (key instanceof StructRowKey) {
+      RowKey[] fields = ((StructRowKey) key).getFields(), 
+               f = new RowKey[fields.length];
+      for (int i = 0; i < f.length; i++)
+        f[i] = toHashFormat(fields[i]);
+      return new StructRowKey(f).setTermination(Termination.MUST);
+    }
+    return key.clone().setOrder(Order.ASCENDING).setTermination(
+        Termination.MUST);
+  }
+
+  /** Gets the wrapped row key. */
+  public RowKey getRowKey() { return key; }
+
+  /** Gets the number of buckets. */
+  public int getNumBuckets() { return numBuckets; }
+
+  /** Gets the indexes of the hashed struct fields, or null if the 
+   * serialization of the wrapped row key is hashed. 
+   */
+  public int[] getHashFields() { 
+    return hashFields == null ? null : hashFields.clone(); 
+  }
+
+  /** Sets the hash function used to compute buckets. */
+  public SaltedRowKey setHash(Hash hash) { 
+    this.hash = hash; 
+    return this;
+  }
+
+  @Override
+  public RowKey setOrder(Order order) {
+    key.setOrder(order);
+    return super.setOrder(order);
+  }
+
+  @Override
+  public RowKey setTermination(Termination termination) {
+    key.setTermination(termination);
+    return super.setTermination(termination);
+  }
+
+  @Override
+  public RowKey setReuse(boolean reuse) {
+    key.setReuse(reuse);
+    return super.setReuse(reuse);
+  }
+
+  @Override
+  public SaltedRowKey clone() {
+    SaltedRowKey k = (SaltedRowKey) super.clone();
+    k.key = key.clone();
+    k.hashKey = hashKey.clone();
+    return k;
+  }
+
+  @Override
+  public Class<?> getSerializedClass() { return key.getSerializedClass(); }
+
+  @Override
+  public Class<?> getDeserializedClass() { 
+    return key.getDeserializedClass(); 
+  }
+
+  /* A value prepared by the wrapped row key, and its bucket */
+  private static class Prepared
+  {
+    final Object value;
+    final int bucket;
+
+    Prepared(Object value, int bucket) {
+      this.value = value;
+      this.bucket = bucket;
+    }
+  }
+
+  private int toBucket(int h) { return (h & Integer.MAX_VALUE) % numBuckets; }
+
+  /** Computes the bucket of a value serialized in the hash format. */
+  private int getHashBucket(Object o) throws IOException {
+    byte[] b = hashKey.serialize(o);
+    return toBucket(hash.hash(b, 0, b.length, -1));
+  }
+
+  /** Computes the bucket of a struct from the values of its hashed fields. */
+  private int getFieldBucket(Object[] values) throws IOException {
+    Object[] hashed = new Object[hashFields.length];
+    for (int i = 0; i < hashed.length; i++)
+      hashed[i] = values[hashFields[i]];
+    return getHashBucket(hashed);
+  }
+
+  /** Gets the bucket of a value of the wrapped row key. */
+  public int getBucket(Object o) throws IOException {
+    if (hashFields != null)
+      return getFieldBucket((Object[]) o);
+    return getHashBucket(o);
+  }
+
+  /** Gets the bucket of every struct whose leading fields have the 
+   * specified values, or -1 if these values do not determine the bucket (if
+   * the prefix does not include every hashed field, or if the serialization
+   * of the wrapped row key is hashed).
+   */
+  public int getPrefixBucket(Object[] prefix) throws IOException {
+    if (hashFields == null)
+      return -1;
+    for (int f : hashFields)
+      if (f >= prefix.length)
+        return -1;
+    return getFieldBucket(prefix);
+  }
+
+  /** Gets the bucket of a serialized salted row key. */
+  public static int getBucket(byte[] b, int offset) { return b[offset] & 0xff; }
+
+  @Override
+  protected Object prepare(Object o) throws IOException {
+    return new Prepared(key.prepare(o), getBucket(o));
+  }
+
+  @Override
+  protected int getPreparedLength(Object p) throws IOException {
+    return 1 + key.getPreparedLength(((Prepared)p).value);
+  }
+
+  @Override
+  protected void serializePrepared(Object p, ImmutableBytesWritable w) 
+    throws IOException
+  {
+    Prepared prepared = (Prepared) p;
+    byte[] b = w.get();
+    int offset = w.getOffset();
+    RowKeyUtils.seek(w, 1);
+    b[offset] = (byte) prepared.bucket;
+    key.serializePrepared(prepared.value, w);
+  }
+
+  @Override
+  protected void serializePreparedDirect(Object p, ByteBuffer b)
+    throws IOException
+  {
+    Prepared prepared = (Prepared) p;
+    b.put((byte) prepared.bucket);
+    key.serializePreparedDirect(prepared.value, b);
+  }
+
+  @Override
+  public int getSerializedLength(Object o) throws IOException {
+    return 1 + key.getSerializedLength(o);
+  }
+
+  @Override
+  public void serialize(Object o, ImmutableBytesWritable w) 
+    throws IOException
+  {
+    serializePrepared(prepare(o), w);
+  }
+
+  @Override
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+    serializePreparedDirect(prepare(o), b);
+  }
+
+  @Override
+  public void skip(ImmutableBytesWritable w) throws IOException {
+    RowKeyUtils.seek(w, 1);
+    key.skip(w);
+  }
+
+  @Override
+  public Object deserialize(ImmutableBytesWritable w) throws IOException {
+    RowKeyUtils.seek(w, 1);
+    return key.deserialize(w);
+  }
+
+  /** Gets the range of salted row keys in a bucket whose wrapped row keys 
+   * lie in the specified range.
+   * @param bucket the bucket
+   * @param range a range of serialized wrapped row keys
+   */
+  public KeyRange getBucketRange(int bucket, KeyRange range) {
+    if (range.isEmpty())
+      return KeyRange.NONE;
+    byte[] salt = new byte[] { (byte) bucket };
+    return new KeyRange(salt(salt, range.getStart()), 
+        range.isStopUnbounded() ? KeyRange.getPrefixEnd(salt) : 
+        salt(salt, range.getStop()));
+  }
+
+  /** Gets the range of salted row keys in each bucket whose wrapped row 
+   * keys lie in the specified range, in order of bucket. Scanning each of 
+   * these ranges and merging the results with {@link #compareUnsalted} reads
+   * the range of wrapped row keys in order.
+   * @param range a range of serialized wrapped row keys
+   */
+  public KeyRange[] getBucketRanges(KeyRange range) {
+    KeyRange[] ranges = new KeyRange[numBuckets];
+    for (int i = 0; i < numBuckets; i++)
+      ranges[i] = getBucketRange(i, range);
+    return ranges;
+  }
+
+  /** Gets the ranges of salted row keys whose wrapped struct row keys have
+   * the specified leading fields. If the prefix determines the bucket (see
+   * {@link #getPrefixBucket}), this is a single range. Otherwise, there is 
+   * one range in each bucket. 
+   * @see StructRowKey#getScanRange(Object[])
+   */
+  public KeyRange[] getBucketRanges(Object[] prefix) throws IOException {
+    KeyRange range = ((StructRowKey)key).getScanRange(prefix);
+    int bucket = getPrefixBucket(prefix);
+    return bucket < 0 ? getBucketRanges(range) : 
+      new KeyRange[] { getBucketRange(bucket, range) };
+  }
+
+  private static byte[] salt(byte[] salt, byte[] b) {
+    byte[] s = new byte[b.length + 1];
+    s[0] = salt[0];
+    System.arraycopy(b, 0, s, 1, b.length);
+    return s;
+  }
+
+  /** Compares two serialized salted row keys in the order of their wrapped
+   * row keys, ignoring their buckets.
+   */
+  public static int compareUnsalted(byte[] b1, byte[] b2) {
+    return compareUnsalted(b1, 0, b1.length, b2, 0, b2.length);
+  }
+
+  /** Compares two serialized salted row keys stored in the specified 
+   * regions of byte arrays in the order of their wrapped row keys, ignoring
+   * their buckets.
+   */
+  public static int compareUnsalted(byte[] b1, int s1, int l1, byte[] b2, 
+      int s2, int l2) 
+  {
+    return RowKeyComparator.compareBytes(b1, s1 + 1, l1 - 1, b2, s2 + 1, 
+        l2 - 1);
+  }
+}
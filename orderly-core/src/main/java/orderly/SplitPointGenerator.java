@@ -0,0 +1,182 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Computes the split keys of a pre-split table from a sample of its row 
+ * keys, so that each region receives a similar share of the sampled rows.
+ *
+ * <p>Samples are added either as values, which are serialized by the row key
+ * (typically a {@link StructRowKey} or a {@link SaltedRowKey}), or as
+ * serialized row keys. {@link #getSplitKeys} sorts the serialized samples 
+ * and places a split key between the samples at each multiple of 
+ * <i>n</i>/<i>numRegions</i>, moving it forward past duplicate samples. As 
+ * samples are compared as serialized bytes, which is the order of the rows 
+ * in the table, descending fields need no special handling. Each split key
+ * is the shortest prefix of the sample following the split that still sorts
+ * after the sample preceding it (see {@link #getSeparator}), as short keys
+ * make region boundaries (and the region names derived from them) compact.
+ * The returned keys are strictly increasing and non-empty, and may be passed
+ * directly to <code>HBaseAdmin.createTable(desc, splitKeys)</code>.</p>
+ *
+ * <h1> Salted Row Keys </h1>
+ * If the row key is a {@link SaltedRowKey}, the table is split at bucket 
+ * boundaries first, so that no region spans several buckets and writes to 
+ * each bucket go to separate regions. With fewer regions than buckets, each 
+ * region is a run of consecutive buckets. Otherwise each bucket receives an 
+ * equal number of regions (the first buckets receiving one more if the 
+ * buckets do not divide the regions), which are split using the samples of
+ * that bucket.
+ *
+ * <h1> Usage </h1>
+ * <pre>
+ * SplitPointGenerator g = new SplitPointGenerator(rowKey);
+ * for (Object[] row : sample)
+ *   g.addValue(row);
+ * admin.createTable(desc, g.getSplitKeys(64));
+ * </pre>
+ * If there are too few distinct samples, fewer split keys are returned. A few
+ * hundred samples per region are usually enough for balanced regions.
+ */
+public class SplitPointGenerator
+{
+  private final RowKey key;
+  private final List<byte[]> samples = new ArrayList<byte[]>();
+
+  /** Creates a split point generator for a row key. */
+  public SplitPointGenerator(RowKey key) { this.key = key; }
+
+  /** Gets the row key used to serialize sampled values. */
+  public RowKey getRowKey() { return key; }
+
+  /** Adds a sampled value, serialized using the row key. 
+   * @return this object
+   */
+  public SplitPointGenerator addValue(Object value) throws IOException {
+    samples.add(key.serialize(value));
+    return this;
+  }
+
+  /** Adds a sampled serialized row key.
+   * @return this object
+   */
+  public SplitPointGenerator addKey(byte[] b) {
+    samples.add(b);
+    return this;
+  }
+
+  /** Gets the number of samples added. */
+  public int getNumSamples() { return samples.size(); }
+
+  /** Gets the split keys dividing the table into the specified number of 
+   * regions. 
+   * @param numRegions number of regions
+   * @return at most <code>numRegions - 1</code> strictly increasing split 
+   * keys
+   */
+  public byte[][] getSplitKeys(int numRegions) {
+    if (numRegions < 1)
+      throw new IllegalArgumentException("Number of regions " + numRegions);
+
+    List<byte[]> sorted = new ArrayList<byte[]>(samples);
+    Collections.sort(sorted, RowKeyComparator.INSTANCE);
+
+    List<byte[]> splits = new ArrayList<byte[]>();
+    if (key instanceof SaltedRowKey)
+      addSaltedSplits(sorted, ((SaltedRowKey)key).getNumBuckets(), 
+          numRegions, splits);
+    else
+      addSplits(sorted, numRegions, splits);
+    return splits.toArray(new byte[splits.size()][]);
+  }
+
+  private static void addSaltedSplits(List<byte[]> sorted, int numBuckets, 
+      int numRegions, List<byte[]> splits)
+  {
+    if (numRegions <= numBuckets) {
+      for (int i = 1; i < numRegions; i++)
+        splits.add(new byte[] { (byte) (i * numBuckets / numRegions) });
+      return;
+    }
+
+    int start = 0;
+    for (int bucket = 0; bucket < numBuckets; bucket++) {
+      int end = start;
+      while (end < sorted.size() && 
+          SaltedRowKey.getBucket(sorted.get(end), 0) == bucket)
+        end++;
+
+      if (bucket > 0)
+        splits.add(new byte[] { (byte) bucket });
+      int regions = numRegions / numBuckets + 
+        (bucket < numRegions % numBuckets ? 1 : 0);
+      addSplits(sorted.subList(start, end), regions, splits);
+      start = end;
+    }
+  }
+
+  /** Adds the split keys dividing sorted samples into balanced regions. */
+  private static void addSplits(List<byte[]> sorted, int numRegions, 
+      List<byte[]> splits)
+  {
+    int n = sorted.size(), prev = 0;
+    for (int i = 1; i < numRegions; i++) {
+      int j = (int) ((long) i * n / numRegions);
+      if (j <= prev)
+        continue;
+
+      /* A split key cannot separate equal samples */
+      while (j < n && compare(sorted.get(j - 1), sorted.get(j)) == 0)
+        j++;
+      if (j >= n)
+        break;
+
+      splits.add(getSeparator(sorted.get(j - 1), sorted.get(j)));
+      prev = j;
+    }
+  }
+
+  /** Gets the shortest prefix of b which sorts after a. Every row key r 
+   * with a &lt; r &le; b sorts after a split at the returned key if it is 
+   * greater than or equal to it, and every row key up to a sorts before it.
+   * @param a a serialized row key
+   * @param b a serialized row key greater than a
+   */
+  public static byte[] getSeparator(byte[] a, byte[] b) {
+    if (compare(a, b) >= 0)
+      throw new IllegalArgumentException("Row keys are not increasing");
+
+    /* b differs from a at the first byte after their common prefix, or 
+     * extends a if a is its prefix */
+    int len = 0;
+    while (len < a.length && a[len] == b[len])
+      len++;
+
+    byte[] s = new byte[len + 1];
+    System.arraycopy(b, 0, s, 0, s.length);
+    return s;
+  }
+
+  private static int compare(byte[] a, byte[] b) {
+    return RowKeyComparator.INSTANCE.compare(a, b);
+  }
+}
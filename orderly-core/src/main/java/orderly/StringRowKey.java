@@ -19,6 +19,7 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -29,12 +30,15 @@ import org.apache.hadoop.hbase.util.Bytes;
  * array.
  *
  * <h1> Usage </h1>
- * This is the slowest class for storing characters and strings. One copy is 
- * made during serialization/deserialization, and furthermore the String
- * objects themselves cannot be re-used across multiple deserializations.
- * Weigh the cost of additional object instantiation
- * and copying against the benefits of being able to use all of the various 
- * handy and tidy String functions in Java.
+ * This is the slowest class for storing characters and strings. Strings (and
+ * other <code>CharSequence</code> objects) are encoded to UTF-8 directly into
+ * the serialized byte array or buffer, so no copies are made during 
+ * serialization. One copy is made during deserialization, 
+ * and furthermore the String objects themselves cannot be re-used across 
+ * multiple deserializations. Weigh the cost of additional object 
+ * instantiation and copying against the benefits of being able to use all 
+ * of the various handy and tidy String functions in Java, or read strings 
+ * without copying using {@link #deserializeView}.
  */
 public class StringRowKey extends UTF8RowKey 
 {
@@ -44,11 +48,18 @@ public class StringRowKey extends UTF8RowKey
   protected Object toUTF8(Object o) {
     if (o == null || o instanceof byte[])
       return o;
-    return Bytes.toBytes((String)o);
+    return Bytes.toBytes(o.toString());
+  }
+
+  @Override
+  protected Object prepare(Object o) throws IOException {
+    return o instanceof CharSequence ? o : toUTF8(o);
   }
 
   @Override
   public int getSerializedLength(Object o) throws IOException {
+    if (o instanceof CharSequence)
+      return getCharsSerializedLength((CharSequence)o);
     return super.getSerializedLength(toUTF8(o));
   }
 
@@ -56,7 +67,18 @@ public class StringRowKey extends UTF8RowKey
   public void serialize(Object o, ImmutableBytesWritable w) 
     throws IOException
   {
-    super.serialize(toUTF8(o), w);
+    if (o instanceof CharSequence)
+      serializeChars((CharSequence)o, w);
+    else
+      super.serialize(toUTF8(o), w);
+  }
+
+  @Override
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+    if (o instanceof CharSequence)
+      serializeCharsDirect((CharSequence)o, b);
+    else
+      super.serializeDirect(toUTF8(o), b);
   }
 
   @Override
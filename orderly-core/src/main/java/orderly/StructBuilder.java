@@ -70,6 +70,26 @@ public class StructBuilder
     return (StructRowKey) new StructRowKey(fields).setOrder(order);
   }
 
+  /** Creates an immutable, thread-safe codec for the struct. The codec is
+   * unaffected by later changes to this builder or its field row keys.
+   * @see RowKeyCodec
+   */
+  public RowKeyCodec toCodec() { 
+    RowKey[] fields = new RowKey[this.fields.size()];
+    for (int i = 0; i < fields.length; i++)
+      fields[i] = this.fields.get(i).clone();
+    return new RowKeyCodec(new StructRowKey(fields).setOrder(order));
+  }
+
+  /** Creates a struct row key compiled into a class specialized for this 
+   * struct's fields. The row key is unaffected by later changes to this 
+   * builder or its field row keys.
+   * @see StructRowKeyCompiler
+   */
+  public CompiledStructRowKey toCompiledRowKey() {
+    return StructRowKeyCompiler.compile(toRowKey());
+  }
+
   /** Resets the struct builder. Removes all fields, sets sort order to 
    * ascending.
    */
@@ -0,0 +1,204 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+/** Indexes the field offsets of a serialized {@link StructRowKey}, allowing
+ * any field to be read directly. 
+ *
+ * <p>Reading a field with {@link StructIterator} requires skipping over all 
+ * preceding fields, and reading several fields in arbitrary order (or the 
+ * same field repeatedly) repeats this work. A struct index skips each field 
+ * at most once per serialized struct, and records the offset of every field
+ * it has skipped. Offsets are computed lazily, up to the highest field 
+ * accessed so far, so reading the first fields of a long struct never skips 
+ * the trailing fields. Once the offset of a field is known, the field may be 
+ * deserialized or its bytes retrieved any number of times in constant time.
+ * </p>
+ *
+ * <p>As with <code>StructIterator</code>, the struct row key used for the 
+ * index may be any prefix of the struct row key that serialized the bytes. 
+ * The index refers to the serialized bytes without copying them, and is only
+ * valid while these bytes are unchanged. Call {@link #setBytes} to index a 
+ * different serialized struct; the index re-uses its offset table across 
+ * structs, so no objects are allocated per struct.</p>
+ *
+ * <h1> Usage </h1>
+ * <pre>
+ * StructIndex index = new StructIndex(rowKey);
+ * for (byte[] row : rows) {
+ *   index.setBytes(row);
+ *   Object price = index.deserialize(6),
+ *          volume = index.deserialize(7);
+ * }
+ * </pre>
+ */
+public class StructIndex
+{
+  private StructRowKey rowKey;
+  private RowKey[] fields;
+  private byte[] b;
+  /* offsets[i] is the offset of field i (or the end of the struct, if i is 
+   * the number of fields) for i < numIndexed, and limit is the end of the 
+   * serialized bytes
+   */
+  private int[] offsets;
+  private int numIndexed, limit;
+  private final ImmutableBytesWritable w = new ImmutableBytesWritable();
+
+  /** Creates a struct index.
+   * @param rowKey the struct row key type to use for deserialization
+   */
+  public StructIndex(StructRowKey rowKey) { setRowKey(rowKey); }
+
+  /** Creates a struct index.
+   * @param rowKey the struct row key type to use for deserialization
+   * @param bytes the serialized bytes to read from
+   */
+  public StructIndex(StructRowKey rowKey, ImmutableBytesWritable bytes) {
+    setRowKey(rowKey);
+    setBytes(bytes);
+  }
+
+  /** Sets the struct row key used for deserialization. Any serialized bytes
+   * must be set again after changing the row key.
+   */
+  public StructIndex setRowKey(StructRowKey rowKey) {
+    this.rowKey = rowKey;
+    this.fields = rowKey.getFields();
+    this.offsets = new int[fields.length + 1];
+    this.b = null;
+    this.numIndexed = 0;
+    return this;
+  }
+
+  /** Gets the struct row key used for deserialization. */
+  public StructRowKey getRowKey() { return rowKey; }
+
+  /** Sets the serialized struct to index. The offsets of the bytes are 
+   * copied, so later changes to the offset and length of the writable do not 
+   * affect this index.
+   */
+  public StructIndex setBytes(ImmutableBytesWritable bytes) {
+    return setBytes(bytes.get(), bytes.getOffset(), bytes.getLength());
+  }
+
+  /** Sets the serialized struct to index. */
+  public StructIndex setBytes(byte[] b, int offset, int length) {
+    this.b = b;
+    this.offsets[0] = offset;
+    this.limit = offset + length;
+    this.numIndexed = 1;
+    return this;
+  }
+
+  /** Sets the serialized struct to index. */
+  public StructIndex setBytes(byte[] b) { return setBytes(b, 0, b.length); }
+
+  /** Gets the offset of the end of the serialized bytes. */
+  int getLimit() { return limit; }
+
+  /** Gets the number of fields in the struct row key. */
+  public int getNumFields() { return fields.length; }
+
+  /** Computes the offsets of all fields up to and including field i. 
+   * Fields already indexed are not skipped again.
+   */
+  private void index(int i) throws IOException {
+    if (i < numIndexed)
+      return;
+    if (b == null)
+      throw new IllegalStateException("No serialized bytes to index");
+    if (i > fields.length)
+      throw new IndexOutOfBoundsException("Field " + i + " of " + 
+          fields.length);
+
+    int pos = numIndexed - 1;
+    w.set(b, offsets[pos], limit - offsets[pos]);
+    for (; pos < i; pos++) {
+      fields[pos].skip(w);
+      offsets[pos + 1] = w.getOffset();
+    }
+    numIndexed = i + 1;
+  }
+
+  /** Computes the offsets of all fields in a single pass over the 
+   * serialized bytes. Accessing any field after this call does not skip 
+   * any bytes.
+   * @return this object
+   */
+  public StructIndex indexAll() throws IOException {
+    index(fields.length);
+    return this;
+  }
+
+  /** Gets the offset of field i within the serialized byte array. 
+   * @param i the field position, or the number of fields for the offset of 
+   * the end of the struct
+   */
+  public int getOffset(int i) throws IOException {
+    index(i);
+    return offsets[i];
+  }
+
+  /** Gets the serialized length of field i. */
+  public int getLength(int i) throws IOException {
+    index(i + 1);
+    return offsets[i + 1] - offsets[i];
+  }
+
+  /** Gets the serialized length of the entire struct. This is the length of
+   * the prefix of the serialized bytes read by the struct row key, which is 
+   * less than the length of the bytes if the struct row key is a prefix of 
+   * the struct that serialized them.
+   */
+  public int getSerializedLength() throws IOException {
+    return getOffset(fields.length) - offsets[0];
+  }
+
+  /** Sets a writable to the serialized bytes of field i. 
+   * @return field
+   */
+  public ImmutableBytesWritable getBytes(int i, ImmutableBytesWritable field)
+    throws IOException
+  {
+    index(i + 1);
+    field.set(b, offsets[i], offsets[i + 1] - offsets[i]);
+    return field;
+  }
+
+  /** Deserializes field i. The deserialized object may be re-used by the 
+   * field row key, as described in {@link RowKey#deserialize}.
+   */
+  public Object deserialize(int i) throws IOException {
+    index(i);
+    w.set(b, offsets[i], limit - offsets[i]);
+    Object o = fields[i].deserialize(w);
+
+    /* Deserializing the field also finds the offset of the next field */
+    if (numIndexed == i + 1) {
+      offsets[i + 1] = w.getOffset();
+      numIndexed++;
+    }
+    return o;
+  }
+}
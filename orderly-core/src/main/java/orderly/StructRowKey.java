@@ -21,6 +21,11 @@ package orderly;
 import static orderly.Termination.SHOULD_NOT;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
@@ -78,6 +83,14 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
  * ignoring the trailing serialized float as this was not included in the 
  * struct prefix's definition.
  *
+ * <h1> Scan Ranges </h1>
+ * As all struct fields sort in declaration order, the serialized row keys
+ * whose leading fields have given values form a contiguous range. The
+ * {@link #getScanRange} methods compute the exact start and stop rows of this
+ * range, optionally restricting the next field to an interval of values. 
+ * IN-lists and disjunctions are planned as a {@link KeyRangeSet} using the
+ * {@link #getScanRanges} methods.
+ *
  * <h1> NULL </h1>
  * Structs themselves may not be NULL. However, struct fields may be NULL 
  * (so long as the underlying field row key supports NULL), so you can create a 
@@ -92,13 +105,18 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
  * sum of the costs of each of its field row keys. 
  *
  * @see StructIterator
+ * @see StructIndex
+ * @see LazyStruct
  * @see StructBuilder
+ * @see KeyRange
  */
 public class StructRowKey extends RowKey implements Iterable<Object>
 {
   private RowKey[] fields;
+  private RowKey[] terminated, trailing;
   private Object[] v;
   private StructIterator iterator;
+  private LazyStruct lazy;
   private ImmutableBytesWritable iw;
 
   /** Creates a struct row key object.
@@ -106,24 +124,43 @@ public class StructRowKey extends RowKey implements Iterable<Object>
    */
   public StructRowKey(RowKey[] fields) { setFields(fields); }
 
+  @Override
+  public RowKey setReuse(boolean reuse) {
+    super.setReuse(reuse);
+    for (RowKey[] keys : new RowKey[][] { fields, terminated, trailing })
+      if (keys != null)
+        for (RowKey key : keys)
+          key.setReuse(reuse);
+    return this;
+  }
+
   @Override
   public RowKey setOrder(Order order) {
     if (order == getOrder())
       return this;
 
     super.setOrder(order);
+    terminated = trailing = null;
     for (RowKey field : fields)
       field.setOrder(field.getOrder() == Order.ASCENDING ? Order.DESCENDING : 
           Order.ASCENDING);
     return this;
   }
 
+  @Override
+  public RowKey setTermination(Termination termination) {
+    terminated = trailing = null;
+    return super.setTermination(termination);
+  }
+
   /** Sets the field row keys.
    * @param fields the fields of the struct (in declaration order)
    * @return this object
    */
   public StructRowKey setFields(RowKey[] fields) {
     this.fields = fields; 
+    this.terminated = this.trailing = null;
+    this.lazy = null;
     return this;
   }
 
@@ -133,6 +170,76 @@ public class StructRowKey extends RowKey implements Iterable<Object>
   @Override
   public Class<?> getSerializedClass() { return Object[].class; }
 
+  @Override
+  public StructRowKey clone() {
+    StructRowKey k = (StructRowKey) super.clone();
+    k.fields = clone(fields);
+    k.terminated = clone(terminated);
+    k.trailing = clone(trailing);
+    k.v = null;
+    k.iterator = null;
+    k.lazy = null;
+    k.iw = null;
+    return k;
+  }
+
+  private static RowKey[] clone(RowKey[] keys) {
+    if (keys == null)
+      return null;
+    RowKey[] c = new RowKey[keys.length];
+    for (int i = 0; i < keys.length; i++)
+      c[i] = keys[i].clone();
+    return c;
+  }
+
+  /** Precomputes the field row keys used for serialization, so that 
+   * serialization no longer modifies the termination of the field row keys.
+   * For each field we create a terminated copy, used when the field is 
+   * followed by a non-empty serialized field, and a trailing copy with the 
+   * termination of this struct, used when the field is followed only by
+   * zero-length serialized fields. Nested structs are frozen recursively.
+   *
+   * <p>A frozen struct is safe for concurrent calls to 
+   * {@link #getSerializedLength}, {@link #serialize} and {@link #skip} if its
+   * field row keys are. Later changes to the field row keys are not seen by 
+   * the frozen copies. This method is intended for {@link RowKeyCodec}, which
+   * freezes its own private copy of a struct.</p>
+   * @return this object
+   */
+  StructRowKey freeze() {
+    terminated = new RowKey[fields.length];
+    trailing = new RowKey[fields.length];
+
+    for (int i = 0; i < fields.length; i++) {
+      /* SHOULD_NOT always wins, see setTerminateAndGetLength */
+      boolean shouldNot = fields[i].getTermination() == SHOULD_NOT;
+      terminated[i] = freeze(fields[i].clone().setTermination(shouldNot ? 
+            SHOULD_NOT : Termination.MUST));
+      trailing[i] = freeze(fields[i].clone().setTermination(shouldNot ? 
+            SHOULD_NOT : termination));
+    }
+
+    return this;
+  }
+
+  /** Gets the terminated field row keys of a frozen struct, or null if the 
+   * struct is not frozen. 
+   * @see #freeze
+   */
+  RowKey[] getTerminatedFields() { return terminated; }
+
+  /** Gets the trailing field row keys of a frozen struct, or null if the 
+   * struct is not frozen. 
+   * @see #freeze
+   */
+  RowKey[] getTrailingFields() { return trailing; }
+
+  private static RowKey freeze(RowKey key) {
+    if (key instanceof StructRowKey)
+      ((StructRowKey)key).freeze();
+    return key;
+  }
+
   private Object[] toValues(Object obj) {
     Object[] o = (Object[]) obj;
     if (o.length != fields.length)
@@ -142,22 +249,22 @@ public class StructRowKey extends RowKey implements Iterable<Object>
   }
 
   /** Initializes mustTerminate in each field row key for the 
-   * specified field values. As a side effect of this computation, the 
+   * specified prepared field values. As a side effect of this computation, the
    * serialized length of the object is computed.
-   * @param o field values 
+   * @param p prepared field values 
    * @return the serialized length of the field values
    */
-  private int setTerminateAndGetLength(Object[] o) throws IOException {
+  private int setTerminateAndGetLength(Object[] p) throws IOException {
     int len = 0;
     Termination fieldTerm = termination;
 
     /* We must terminate a field f if (i) mustTerminate is true for this
      * struct or (ii) any field after f has a non-zero deserialized length
      */
-    for (int i = o.length - 1; i >= 0; i--) {
+    for (int i = p.length - 1; i >= 0; i--) {
       if (fieldTerm == SHOULD_NOT || fields[i].getTermination() != SHOULD_NOT) // SHOULD_NOT always wins
         fields[i].setTermination(fieldTerm);
-      int objLen = fields[i].getSerializedLength(o[i]);
+      int objLen = fields[i].getPreparedLength(p[i]);
       if (objLen > 0) {
         fieldTerm = Termination.MUST;
         len += objLen;
@@ -167,19 +274,117 @@ public class StructRowKey extends RowKey implements Iterable<Object>
     return len;
   }
 
+  /* Field values prepared by the field row keys of a struct, along with the
+   * termination choice and total length last measured for them */
+  private static class Plan
+  {
+    final Object[] values;
+    StructRowKey key;
+    Termination termination;
+    int trailingIndex, length;
+
+    Plan(Object[] values) { this.values = values; }
+  }
+
+  /** Measures a plan, unless it was last measured by this row key with its
+   * current termination. For a frozen struct, the index of the last field 
+   * with a non-zero serialized length when using the trailing field row keys
+   * (or zero if there is no such field) is saved in the plan. All fields 
+   * before this index are serialized using terminated field row keys, and all
+   * remaining fields are serialized using trailing field row keys. 
+   *
+   * <p>Plans are measured lazily rather than by {@link #prepare}, as a 
+   * nested struct prepares its plan before its enclosing struct chooses its 
+   * termination.</p>
+   */
+  private Plan measure(Object prepared) throws IOException {
+    Plan plan = (Plan) prepared;
+    if (plan.key == this && plan.termination == termination)
+      return plan;
+
+    Object[] p = plan.values;
+    if (trailing == null) {
+      plan.length = setTerminateAndGetLength(p);
+    } else if (p.length == 0) {
+      plan.length = 0;
+    } else {
+      int t = p.length - 1,
+          len = trailing[t].getPreparedLength(p[t]);
+      while (t > 0 && len == 0) {
+        t--;
+        len = trailing[t].getPreparedLength(p[t]);
+      }
+      for (int i = 0; i < t; i++)
+        len += terminated[i].getPreparedLength(p[i]);
+      plan.trailingIndex = t;
+      plan.length = len;
+    }
+
+    plan.key = this;
+    plan.termination = termination;
+    return plan;
+  }
+
+  /** Gets the row key used to serialize field i of a measured plan. */
+  private RowKey getFieldKey(Plan plan, int i) {
+    if (trailing == null)
+      return fields[i];
+    return i < plan.trailingIndex ? terminated[i] : trailing[i];
+  }
+
+  /** Prepares each field value using its field row key. Field values are
+   * converted (and decimal digit strings computed) once per serialization,
+   * and the termination of each field is chosen once when the returned plan
+   * is first measured.
+   */
+  @Override
+  protected Object prepare(Object obj) throws IOException {
+    Object[] o = toValues(obj),
+             p = new Object[o.length];
+    RowKey[] keys = trailing == null ? fields : trailing;
+    for (int i = 0; i < o.length; i++)
+      p[i] = keys[i].prepare(o[i]);
+    return new Plan(p);
+  }
+
+  @Override
+  protected int getPreparedLength(Object prepared) throws IOException {
+    return measure(prepared).length;
+  }
+
+  @Override
+  protected void serializePrepared(Object prepared, ImmutableBytesWritable w)
+    throws IOException
+  {
+    Plan plan = measure(prepared);
+    for (int i = 0; i < plan.values.length; i++)
+      getFieldKey(plan, i).serializePrepared(plan.values[i], w);
+  }
+
+  @Override
+  protected void serializePreparedDirect(Object prepared, ByteBuffer b) 
+    throws IOException
+  {
+    Plan plan = measure(prepared);
+    for (int i = 0; i < plan.values.length; i++)
+      getFieldKey(plan, i).serializePreparedDirect(plan.values[i], b);
+  }
+
   @Override
   public int getSerializedLength(Object obj) throws IOException {
-    return setTerminateAndGetLength(toValues(obj));
+    return getPreparedLength(prepare(obj));
   }
 
   @Override
   public void serialize(Object obj, ImmutableBytesWritable w) 
     throws IOException
   {
-    Object[] o = toValues(obj);
-    setTerminateAndGetLength(o);
-    for (int i = 0; i < o.length; i++)
-      fields[i].serialize(o[i], w);
+    serializePrepared(prepare(obj), w);
+  }
+
+  @Override
+  protected void serializeDirect(Object obj, ByteBuffer b) throws IOException {
+    serializePreparedDirect(prepare(obj), b);
   }
 
   @Override
@@ -188,15 +393,163 @@ public class StructRowKey extends RowKey implements Iterable<Object>
       fields[i].skip(w);
   }
 
+  @Override
+  protected void skipDirect(ByteBuffer b) throws IOException {
+    for (int i = 0; i < fields.length; i++)
+      fields[i].skip(b);
+  }
+
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
-    if (v == null) 
+    Object[] v = reuse ? this.v : null;
+    if (v == null) {
       v = new Object[fields.length];
+      if (reuse)
+        this.v = v;
+    }
     for (int i = 0; i < fields.length; i++) 
       v[i] = fields[i].deserialize(w);
     return v;
   }
 
+  /** Creates a lazy view of the serialized struct at the current position of
+   * the byte array. No fields are read until they are accessed through the 
+   * view, and the position (length) of the byte array is not modified. Use 
+   * {@link LazyStruct#getSerializedLength} to find the length of the struct.
+   * Re-uses the same view object across method calls, and the view is only 
+   * valid until the next call.
+   * @see LazyStruct
+   */
+  public LazyStruct deserializeLazy(ImmutableBytesWritable w) {
+    if (lazy == null)
+      lazy = new LazyStruct(this);
+    return lazy.setBytes(w);
+  }
+
+  /** Gets the range of serialized row keys whose leading fields are equal to
+   * the specified values. Equivalent to 
+   * <code>getScanRange(prefix, null)</code>.
+   * @see #getScanRange(Object[], FieldRange)
+   */
+  public KeyRange getScanRange(Object[] prefix) throws IOException {
+    return getScanRange(prefix, null);
+  }
+
+  /** Gets the exact range of serialized row keys whose leading 
+   * <code>prefix.length</code> fields are equal to the specified values, and
+   * whose next field (if <code>range</code> is non-NULL) lies in the 
+   * specified range of values. Any remaining fields may have any value. The
+   * returned start and stop rows may be used directly as the start and stop
+   * rows of an HBase scan.
+   *
+   * <p>The range accounts for the termination of the struct: the start row
+   * is the serialization of the smallest matching row key (which may omit 
+   * terminators if the remaining fields are zero-length), while the stop row
+   * is the successor of every matching row key serialized with terminated 
+   * leading fields. Descending fields swap the end points of the value range.
+   * If no row keys can match (for example, an exclusive lower bound with no
+   * successor), the returned range is empty.</p>
+   *
+   * @param prefix values of the leading fields of the struct
+   * @param range range of values of field <code>prefix.length</code>, or 
+   *              NULL to leave the field unrestricted
+   * @return the range of matching serialized row keys
+   */
+  public KeyRange getScanRange(Object[] prefix, FieldRange range) 
+    throws IOException
+  {
+    int k = prefix.length;
+    if (k + (range == null ? 0 : 1) > fields.length)
+      throw new IndexOutOfBoundsException("Expected at most " + fields.length
+          + " fields but got " + (k + (range == null ? 0 : 1)));
+    if (range == null)
+      range = FieldRange.all();
+
+    /* Map the value range to byte order */
+    boolean desc = k < fields.length && 
+      fields[k].getOrder() == Order.DESCENDING;
+    boolean hasLow = desc ? range.hasUpperBound() : range.hasLowerBound(),
+            hasHigh = desc ? range.hasLowerBound() : range.hasUpperBound(),
+            lowInclusive = desc ? range.isUpperInclusive() : 
+              range.isLowerInclusive(),
+            highInclusive = desc ? range.isLowerInclusive() : 
+              range.isUpperInclusive();
+
+    Object[] low = prefix, high = prefix;
+    if (hasLow) {
+      low = Arrays.copyOf(prefix, k + 1);
+      low[k] = desc ? range.getUpperBound() : range.getLowerBound();
+    }
+    if (hasHigh) {
+      high = Arrays.copyOf(prefix, k + 1);
+      high[k] = desc ? range.getLowerBound() : range.getUpperBound();
+    }
+
+    byte[] start, stop;
+    if (!hasLow || lowInclusive) {
+      start = serializePrefix(low, termination);
+    } else {
+      start = KeyRange.getPrefixEnd(serializePrefix(low, Termination.MUST));
+      if (start.length == 0)
+        return KeyRange.NONE;
+    }
+
+    if (hasHigh && !highInclusive) {
+      stop = serializePrefix(high, termination);
+      /* No row key sorts before the zero-length row key */
+      if (stop.length == 0)
+        return KeyRange.NONE;
+    } else
+      stop = KeyRange.getPrefixEnd(serializePrefix(high, Termination.MUST));
+    return new KeyRange(start, stop);
+  }
+
+  /** Gets the set of serialized row keys whose leading fields are equal to 
+   * any of the specified lists of values, such as the row keys matching an 
+   * IN-list over the leading fields. The lists may have different lengths.
+   * @see #getScanRange(Object[])
+   */
+  public KeyRangeSet getScanRanges(Collection<Object[]> prefixes) 
+    throws IOException
+  {
+    List<KeyRange> l = new ArrayList<KeyRange>(prefixes.size());
+    for (Object[] prefix : prefixes)
+      l.add(getScanRange(prefix));
+    return KeyRangeSet.of(l);
+  }
+
+  /** Gets the set of serialized row keys whose leading fields are equal to 
+   * the specified values, and whose next field lies in any of the specified
+   * ranges of values, such as the row keys matching a disjunction of 
+   * predicates (or an IN-list, using closed ranges of single values) over 
+   * field <code>prefix.length</code>.
+   * @see #getScanRange(Object[], FieldRange)
+   */
+  public KeyRangeSet getScanRanges(Object[] prefix, FieldRange... ranges) 
+    throws IOException
+  {
+    List<KeyRange> l = new ArrayList<KeyRange>(ranges.length);
+    for (FieldRange range : ranges)
+      l.add(getScanRange(prefix, range));
+    return KeyRangeSet.of(l);
+  }
+
+  /** Serializes values of the leading fields of this struct, as a struct of
+   * only those fields with the specified termination. With the termination of
+   * this struct, this gives the smallest row key with these leading fields
+   * (the remaining fields being NULL or zero-length). With 
+   * {@link Termination#MUST}, every row key with these leading fields and 
+   * non-empty remaining fields begins with the result.
+   */
+  private byte[] serializePrefix(Object[] values, Termination t) 
+    throws IOException
+  {
+    RowKey[] f = new RowKey[values.length];
+    for (int i = 0; i < f.length; i++)
+      f[i] = fields[i].clone();
+    return new StructRowKey(f).setTermination(t).serialize(values);
+  }
+
   /** Sets the serialized row key to iterate over. Subsequent calls to 
    * {@link #iterator} will iterate over this row key.
    * @param iw serialized row key bytes to use for iteration
@@ -0,0 +1,578 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/** Compiles struct row keys into specialized {@link CompiledStructRowKey} 
+ * subclasses using runtime bytecode generation.
+ *
+ * <p>{@link StructRowKey} serializes each value by looping over its field 
+ * row keys, so every field is serialized through a megamorphic call to 
+ * {@link RowKey}, and the termination of every field is recomputed for each 
+ * value. The class generated for a struct contains one field per field row
+ * key, typed with the row key's concrete class, and straight-line code for 
+ * every field in <code>getSerializedLength</code>, <code>serialize</code>, 
+ * <code>skip</code> and <code>deserialize</code>. Each call site therefore 
+ * sees exactly one row key class, which the JIT compiler can inline along 
+ * with the constant sort order mask of that row key.</p>
+ *
+ * <p>Termination is resolved when the struct is compiled. A field is 
+ * serialized by its terminated row key if it is followed by a field with a 
+ * non-zero serialized length, and by its trailing row key otherwise (see 
+ * {@link StructRowKey}). For most fields both row keys produce the same bytes
+ * (for example, in a descending struct, or a struct that must terminate), 
+ * and the generated code contains no termination checks at all. Only fields
+ * that can be implicitly terminated test the index of the last non-empty 
+ * field, which is computed once per value.</p>
+ *
+ * <p>Generated classes depend only on the field row key classes and on which
+ * fields require termination checks, so structs with the same schema share a 
+ * generated class. Field row key classes that are not public, or not visible
+ * from the class loader of this library, are called through 
+ * <code>RowKey</code>. Nested structs are called through their own 
+ * (interpreted) <code>StructRowKey</code>.</p>
+ *
+ * @see StructBuilder#toCompiledRowKey
+ */
+public class StructRowKeyCompiler
+{
+  private static final String BASE = 
+    Type.getInternalName(CompiledStructRowKey.class),
+    ROW_KEY = Type.getDescriptor(RowKey[].class),
+    ROW_KEY_TYPE = Type.getDescriptor(RowKey.class),
+    STRUCT = Type.getDescriptor(StructRowKey.class),
+    OBJECT = Type.getInternalName(Object.class),
+    VALUES = Type.getDescriptor(Object[].class),
+    IBW = Type.getDescriptor(ImmutableBytesWritable.class),
+    GET_SERIALIZED_LENGTH = "(L" + OBJECT + ";)I",
+    SERIALIZE = "(L" + OBJECT + ";" + IBW + ")V",
+    SKIP = "(" + IBW + ")V",
+    DESERIALIZE = "(" + IBW + ")L" + OBJECT + ";";
+  private static final String[] THROWS_IO = { "java/io/IOException" };
+  private static final String PACKAGE = RowKey.class.getName().substring(0,
+      RowKey.class.getName().lastIndexOf('.') + 1);
+
+  /* Local variable slots */
+  private static final int THIS = 0, VALUE = 1, WRITABLE = 1;
+
+  private static final Map<List<Object>, Class<? extends CompiledStructRowKey>>
+    classes = new HashMap<List<Object>, Class<? extends CompiledStructRowKey>>();
+  private static int numClasses;
+
+  private StructRowKeyCompiler() { }
+
+  /** Compiles a struct row key. The struct is copied, and may be modified or
+   * re-used after this method returns. 
+   * @param key struct row key to compile
+   * @return compiled row key producing the same bytes as key
+   */
+  public static CompiledStructRowKey compile(StructRowKey key) {
+    StructRowKey s = ((StructRowKey) key.clone()).freeze();
+    return newInstance(getCompiledClass(s), s);
+  }
+
+  /** Creates a compiled row key using a generated class and a frozen struct
+   * row key with the same schema. 
+   */
+  static CompiledStructRowKey newInstance(
+      Class<? extends CompiledStructRowKey> c, StructRowKey s) 
+  {
+    try {
+      return c.getConstructor(StructRowKey.class).newInstance(s);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException("Cannot instantiate " + c.getName(),
+          e.getCause());
+    } catch (Exception e) {
+      throw new IllegalStateException("Cannot instantiate " + c.getName(), e);
+    }
+  }
+
+  private static synchronized Class<? extends CompiledStructRowKey> 
+    getCompiledClass(StructRowKey s) 
+  {
+    RowKey[] terminated = s.getTerminatedFields(),
+             trailing = s.getTrailingFields();
+    ClassLoader loader = CompiledStructRowKey.class.getClassLoader();
+    int n = terminated.length;
+
+    Class<?>[] types = new Class<?>[n];
+    boolean[] split = new boolean[n], 
+              prepared = new boolean[n];
+    List<Object> schema = new ArrayList<Object>();
+    for (int i = 0; i < n; i++) {
+      types[i] = getFieldType(terminated[i].getClass(), loader);
+      split[i] = i < n - 1 && !isSameTermination(terminated[i], trailing[i]);
+      prepared[i] = isPrepared(terminated[i].getClass());
+      schema.add(types[i]);
+      schema.add(split[i]);
+      schema.add(prepared[i]);
+    }
+
+    Class<? extends CompiledStructRowKey> c = classes.get(schema);
+    if (c == null) {
+      String name = PACKAGE + "generated.CompiledStructRowKey" + numClasses++;
+      byte[] b = new Generator(name.replace('.', '/'), types, split, 
+          prepared).generate();
+      c = new GeneratedClassLoader(loader).define(name, b)
+        .asSubclass(CompiledStructRowKey.class);
+      classes.put(schema, c);
+    }
+    return c;
+  }
+
+  /** Gets the most specific superclass of a row key class (including the 
+   * class itself) that may be referenced by generated code.
+   */
+  private static Class<?> getFieldType(Class<?> c, ClassLoader loader) {
+    for (; c != RowKey.class; c = c.getSuperclass()) {
+      if (Modifier.isPublic(c.getModifiers()) && isVisible(c, loader))
+        return c;
+    }
+    return c;
+  }
+
+  private static boolean isVisible(Class<?> c, ClassLoader loader) {
+    try {
+      return Class.forName(c.getName(), false, loader) == c;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /** Returns true if a row key class overrides {@link RowKey#prepare}. */
+  private static boolean isPrepared(Class<?> c) {
+    for (; c != RowKey.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod("prepare", Object.class);
+        return true;
+      } catch (NoSuchMethodException e) { }
+    }
+    return false;
+  }
+
+  /** Returns true if two copies of a row key, differing only in their 
+   * termination, are known to serialize all values to the same bytes. Row 
+   * keys in this package (other than structs, which pass their termination 
+   * on to their fields) depend only on {@link RowKey#terminate}.
+   */
+  private static boolean isSameTermination(RowKey a, RowKey b) {
+    if (a.getTermination() == b.getTermination())
+      return true;
+    return !(a instanceof StructRowKey) 
+      && a.getClass().getName().startsWith(PACKAGE)
+      && a.getClass().getName().indexOf('.', PACKAGE.length()) < 0
+      && a.terminate() == b.terminate();
+  }
+
+  private static class GeneratedClassLoader extends ClassLoader
+  {
+    GeneratedClassLoader(ClassLoader parent) { super(parent); }
+
+    Class<?> define(String name, byte[] b) {
+      return defineClass(name, b, 0, b.length);
+    }
+  }
+
+  /** Generates the bytecode of a compiled struct row key. The generated class
+   * has a field <code>t<i>i</i></code> holding the terminated row key of each 
+   * field i, and a field <code>r<i>i</i></code> holding the trailing row key 
+   * of each field that requires a termination check (and of the last field, 
+   * which is always serialized using its trailing row key).
+   */
+  private static class Generator implements Opcodes
+  {
+    private final String name;
+    private final Class<?>[] types;
+    private final boolean[] split, prepared;
+    private final int n;
+    private final boolean hasSplit;
+
+    Generator(String name, Class<?>[] types, boolean[] split, 
+        boolean[] prepared) 
+    {
+      this.name = name;
+      this.types = types;
+      this.split = split;
+      this.prepared = prepared;
+      this.n = types.length;
+
+      boolean b = false;
+      for (int i = 0; i < n; i++) 
+        b |= split[i];
+      this.hasSplit = b;
+    }
+
+    byte[] generate() {
+      ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+      cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name, null, BASE, 
+          null);
+
+      for (int i = 0; i < n; i++) {
+        cw.visitField(ACC_PRIVATE | ACC_FINAL, "t" + i, type(i), null, null)
+          .visitEnd();
+        if (hasTrailing(i))
+          cw.visitField(ACC_PRIVATE | ACC_FINAL, "r" + i, type(i), null, 
+              null).visitEnd();
+      }
+
+      generateConstructor(cw);
+      generateGetSerializedLength(cw);
+      generateSerialize(cw);
+      generateSkip(cw);
+      generateDeserialize(cw);
+      cw.visitEnd();
+      return cw.toByteArray();
+    }
+
+    private String type(int i) { return Type.getDescriptor(types[i]); }
+
+    private String owner(int i) { return Type.getInternalName(types[i]); }
+
+    private boolean hasTrailing(int i) { return split[i] || i == n - 1; }
+
+    private void generateConstructor(ClassWriter cw) {
+      MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", 
+          "(" + STRUCT + ")V", null, null);
+      mv.visitCode();
+      mv.visitVarInsn(ALOAD, THIS);
+      mv.visitVarInsn(ALOAD, 1);
+      mv.visitMethodInsn(INVOKESPECIAL, BASE, "<init>", "(" + STRUCT + ")V");
+
+      for (int i = 0; i < n; i++) {
+        initField(mv, i, "t", "terminated");
+        if (hasTrailing(i))
+          initField(mv, i, "r", "trailing");
+      }
+
+      mv.visitInsn(RETURN);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+
+    private void initField(MethodVisitor mv, int i, String prefix, 
+        String array) 
+    {
+      mv.visitVarInsn(ALOAD, THIS);
+      mv.visitVarInsn(ALOAD, THIS);
+      mv.visitFieldInsn(GETFIELD, BASE, array, ROW_KEY);
+      push(mv, i);
+      mv.visitInsn(AALOAD);
+      mv.visitTypeInsn(CHECKCAST, owner(i));
+      mv.visitFieldInsn(PUTFIELD, name, prefix + i, type(i));
+    }
+
+    /* getSerializedLength(Object obj) {
+     *   Object[] o = toValues(obj);
+     *   <scan trailing fields, see storeTrailingIndex>
+     *   int len = 0;
+     *   len += <t0 or r0>.getSerializedLength(o[0]);
+     *   len += t <= 1 ? l1 : t1.getSerializedLength(o[1]);
+     *   ...
+     *   return len;
+     * }
+     */
+    private void generateGetSerializedLength(ClassWriter cw) {
+      final int values = 2, last = 3, len = 4, locals = 5;
+      MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "getSerializedLength",
+          GET_SERIALIZED_LENGTH, null, THROWS_IO);
+      mv.visitCode();
+      loadValues(mv, values);
+      if (hasSplit)
+        storeTrailingIndex(mv, values, last, locals);
+
+      push(mv, 0);
+      mv.visitVarInsn(ISTORE, len);
+      for (int i = 0; i < n; i++) {
+        if (hasSplit && i > 0) {
+          /* Fields after the first may have been measured by the scan */
+          Label scanned = new Label(), end = new Label();
+          jumpIfTrailing(mv, i, last, scanned);
+          invokeGetSerializedLength(mv, i, "t", values);
+          mv.visitJumpInsn(GOTO, end);
+          mv.visitLabel(scanned);
+          mv.visitVarInsn(ILOAD, lengthLocal(i, locals));
+          mv.visitLabel(end);
+        } else if (split[i]) {
+          Label trailing = new Label(), end = new Label();
+          jumpIfTrailing(mv, i, last, trailing);
+          invokeGetSerializedLength(mv, i, "t", values);
+          mv.visitJumpInsn(GOTO, end);
+          mv.visitLabel(trailing);
+          invokeGetSerializedLength(mv, i, "r", values);
+          mv.visitLabel(end);
+        } else {
+          invokeGetSerializedLength(mv, i, "t", values);
+        }
+
+        mv.visitVarInsn(ILOAD, len);
+        mv.visitInsn(IADD);
+        mv.visitVarInsn(ISTORE, len);
+      }
+
+      mv.visitVarInsn(ILOAD, len);
+      mv.visitInsn(IRETURN);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+
+    /* serialize(Object obj, ImmutableBytesWritable w) {
+     *   Object[] o = toValues(obj);
+     *   <scan trailing fields, see storeTrailingIndex>
+     *   <t0 or r0>.serialize(o[0], w);
+     *   if (t <= 1) serializePrepared(r1, p1, w) else t1.serialize(o[1], w);
+     *   ...
+     * }
+     */
+    private void generateSerialize(ClassWriter cw) {
+      final int w = 2, values = 3, last = 4, locals = 5;
+      MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "serialize", SERIALIZE,
+          null, THROWS_IO);
+      mv.visitCode();
+      loadValues(mv, values);
+      if (hasSplit)
+        storeTrailingIndex(mv, values, last, locals);
+
+      for (int i = 0; i < n; i++) {
+        if (i == n - 1 && hasSplit) {
+          /* The last field is always scanned */
+          invokeSerializeScanned(mv, i, values, w, locals);
+        } else if (split[i] || (hasSplit && i > 0 && prepared[i])) {
+          Label trailing = new Label(), end = new Label();
+          jumpIfTrailing(mv, i, last, trailing);
+          invokeSerialize(mv, i, "t", values, w);
+          mv.visitJumpInsn(GOTO, end);
+          mv.visitLabel(trailing);
+          if (i > 0)
+            invokeSerializeScanned(mv, i, values, w, locals);
+          else
+            invokeSerialize(mv, i, "r", values, w);
+          mv.visitLabel(end);
+        } else {
+          invokeSerialize(mv, i, "t", values, w);
+        }
+      }
+
+      mv.visitInsn(RETURN);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+
+    /* skip(ImmutableBytesWritable w) {
+     *   t0.skip(w);
+     *   ...
+     * }
+     */
+    private void generateSkip(ClassWriter cw) {
+      MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "skip", SKIP, null, 
+          THROWS_IO);
+      mv.visitCode();
+      for (int i = 0; i < n; i++) {
+        loadField(mv, i, "t");
+        mv.visitVarInsn(ALOAD, WRITABLE);
+        mv.visitMethodInsn(INVOKEVIRTUAL, owner(i), "skip", SKIP);
+      }
+      mv.visitInsn(RETURN);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+
+    /* deserialize(ImmutableBytesWritable w) {
+     *   Object[] v = getValues();
+     *   v[0] = t0.deserialize(w);
+     *   ...
+     *   return v;
+     * }
+     */
+    private void generateDeserialize(ClassWriter cw) {
+      final int values = 2;
+      MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "deserialize", 
+          DESERIALIZE, null, THROWS_IO);
+      mv.visitCode();
+      mv.visitVarInsn(ALOAD, THIS);
+      mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "getValues", "()" + VALUES);
+      mv.visitVarInsn(ASTORE, values);
+
+      for (int i = 0; i < n; i++) {
+        mv.visitVarInsn(ALOAD, values);
+        push(mv, i);
+        loadField(mv, i, "t");
+        mv.visitVarInsn(ALOAD, WRITABLE);
+        mv.visitMethodInsn(INVOKEVIRTUAL, owner(i), "deserialize", 
+            DESERIALIZE);
+        mv.visitInsn(AASTORE);
+      }
+
+      mv.visitVarInsn(ALOAD, values);
+      mv.visitInsn(ARETURN);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+
+    /* Object[] o = toValues(obj); */
+    private void loadValues(MethodVisitor mv, int values) {
+      mv.visitVarInsn(ALOAD, THIS);
+      mv.visitVarInsn(ALOAD, VALUE);
+      mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "toValues", 
+          "(L" + OBJECT + ";)" + VALUES);
+      mv.visitVarInsn(ASTORE, values);
+    }
+
+    /* Stores the index of the last field with a non-zero serialized length
+     * using its trailing row key, or zero if there is no such field. Fields 
+     * without a trailing row key serialize the same using either row key.
+     * The length of each scanned field i (i >= t, i > 0) is stored in
+     * local li, along with its prepared value pi if the row key prepares its
+     * values, so that scanned fields are not measured twice.
+     *
+     * p1 = null; l1 = 0; ...
+     * if ((l[n-1] = <r[n-1]>.getSerializedLength(o[n-1])) != 0) t = n-1; 
+     * else if ((l[n-2] = <t or r>[n-2].getSerializedLength(o[n-2])) != 0) 
+     *   t = n-2; 
+     * ... 
+     * else t = 0;
+     */
+    private void storeTrailingIndex(MethodVisitor mv, int values, int last,
+        int locals) 
+    {
+      /* Locals must be assigned on every path for the verifier */
+      for (int i = 1; i < n; i++) {
+        if (prepared[i]) {
+          mv.visitInsn(ACONST_NULL);
+          mv.visitVarInsn(ASTORE, preparedLocal(i, locals));
+        }
+        push(mv, 0);
+        mv.visitVarInsn(ISTORE, lengthLocal(i, locals));
+      }
+
+      Label done = new Label();
+      for (int i = n - 1; i > 0; i--) {
+        Label next = new Label();
+        String prefix = hasTrailing(i) ? "r" : "t";
+        if (prepared[i]) {
+          loadField(mv, i, prefix);
+          loadValue(mv, i, values);
+          mv.visitMethodInsn(INVOKESTATIC, BASE, "prepareField", 
+              "(" + ROW_KEY_TYPE + "L" + OBJECT + ";)L" + OBJECT + ";");
+          mv.visitVarInsn(ASTORE, preparedLocal(i, locals));
+          loadField(mv, i, prefix);
+          mv.visitVarInsn(ALOAD, preparedLocal(i, locals));
+          mv.visitMethodInsn(INVOKESTATIC, BASE, "getPreparedFieldLength", 
+              "(" + ROW_KEY_TYPE + "L" + OBJECT + ";)I");
+        } else {
+          invokeGetSerializedLength(mv, i, prefix, values);
+        }
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ISTORE, lengthLocal(i, locals));
+        mv.visitJumpInsn(IFEQ, next);
+        push(mv, i);
+        mv.visitVarInsn(ISTORE, last);
+        mv.visitJumpInsn(GOTO, done);
+        mv.visitLabel(next);
+      }
+      push(mv, 0);
+      mv.visitVarInsn(ISTORE, last);
+      mv.visitLabel(done);
+    }
+
+    private int preparedLocal(int i, int locals) { return locals + i; }
+
+    private int lengthLocal(int i, int locals) { return locals + n + i; }
+
+    /* Field i uses its trailing row key if t <= i */
+    private void jumpIfTrailing(MethodVisitor mv, int i, int last, 
+        Label trailing) 
+    {
+      mv.visitVarInsn(ILOAD, last);
+      push(mv, i);
+      mv.visitJumpInsn(IF_ICMPLE, trailing);
+    }
+
+    private void invokeGetSerializedLength(MethodVisitor mv, int i, 
+        String prefix, int values) 
+    {
+      /* The last field always uses its trailing row key */
+      loadField(mv, i, i == n - 1 ? "r" : prefix);
+      loadValue(mv, i, values);
+      mv.visitMethodInsn(INVOKEVIRTUAL, owner(i), "getSerializedLength", 
+          GET_SERIALIZED_LENGTH);
+    }
+
+    private void invokeSerialize(MethodVisitor mv, int i, String prefix, 
+        int values, int w) 
+    {
+      loadField(mv, i, i == n - 1 ? "r" : prefix);
+      loadValue(mv, i, values);
+      mv.visitVarInsn(ALOAD, w);
+      mv.visitMethodInsn(INVOKEVIRTUAL, owner(i), "serialize", SERIALIZE);
+    }
+
+    /* Serializes a field i > 0 that was measured by the trailing index scan,
+     * using its prepared value if it has one.
+     */
+    private void invokeSerializeScanned(MethodVisitor mv, int i, int values,
+        int w, int locals) 
+    {
+      String prefix = hasTrailing(i) ? "r" : "t";
+      if (!prepared[i]) {
+        invokeSerialize(mv, i, prefix, values, w);
+        return;
+      }
+
+      loadField(mv, i, prefix);
+      mv.visitVarInsn(ALOAD, preparedLocal(i, locals));
+      mv.visitVarInsn(ALOAD, w);
+      mv.visitMethodInsn(INVOKESTATIC, BASE, "serializePreparedField", 
+          "(" + ROW_KEY_TYPE + "L" + OBJECT + ";" + IBW + ")V");
+    }
+
+    private void loadField(MethodVisitor mv, int i, String prefix) {
+      mv.visitVarInsn(ALOAD, THIS);
+      mv.visitFieldInsn(GETFIELD, name, prefix + i, type(i));
+    }
+
+    /* o[i] */
+    private void loadValue(MethodVisitor mv, int i, int values) {
+      mv.visitVarInsn(ALOAD, values);
+      push(mv, i);
+      mv.visitInsn(AALOAD);
+    }
+
+    private static void push(MethodVisitor mv, int i) {
+      if (i <= 5)
+        mv.visitInsn(ICONST_0 + i);
+      else if (i <= Byte.MAX_VALUE)
+        mv.visitIntInsn(BIPUSH, i);
+      else
+        mv.visitIntInsn(SIPUSH, i);
+    }
+  }
+}
@@ -19,6 +19,7 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.Text;
@@ -40,6 +41,13 @@ public class TextRowKey extends UTF8RowKey
 {
   private Text t;
 
+  @Override
+  public TextRowKey clone() {
+    TextRowKey k = (TextRowKey) super.clone();
+    k.t = null;
+    return k;
+  }
+
   @Override
   public Class<?> getSerializedClass() { return Text.class; }
 
@@ -49,6 +57,11 @@ public class TextRowKey extends UTF8RowKey
     return RowKeyUtils.toBytes((Text)o);
   }
 
+  @Override
+  protected Object prepare(Object o) throws IOException {
+    return toUTF8(o);
+  }
+
   @Override
   public int getSerializedLength(Object o) throws IOException {
     return super.getSerializedLength(toUTF8(o));
@@ -59,14 +72,23 @@ public class TextRowKey extends UTF8RowKey
     super.serialize(toUTF8(o), w);
   }
 
+  @Override
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+    super.serializeDirect(toUTF8(o), b);
+  }
+
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
     byte[] b = (byte[]) super.deserialize(w);
     if (b == null)
       return b;
 
-    if (t == null)
+    Text t = reuse ? this.t : null;
+    if (t == null) {
       t = new Text();
+      if (reuse)
+        this.t = t;
+    }
     t.set(b);
     return t;
   }
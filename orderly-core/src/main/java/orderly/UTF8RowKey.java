@@ -19,6 +19,8 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
@@ -68,12 +70,23 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
  * <h1> Usage </h1>
  * This is the fastest class for storing characters and strings. 
  * It performs no object copies during serialization or deserialization.
+ * Strings may also be read using {@link #deserializeView}, which allocates 
+ * nothing and is inherited by {@link StringRowKey} and {@link TextRowKey}.
  */
 public class UTF8RowKey extends RowKey 
 {
   private static final byte NULL       = (byte)0x00,
                             TERMINATOR = (byte)0x01;
 
+  private UTF8View view;
+
+  @Override
+  public UTF8RowKey clone() {
+    UTF8RowKey k = (UTF8RowKey) super.clone();
+    k.view = null;
+    return k;
+  }
+
   @Override
   public Class<?> getSerializedClass() { return byte[].class; }
 
@@ -110,6 +123,126 @@ public class UTF8RowKey extends RowKey
     RowKeyUtils.seek(w, len + (terminated ? 1 : 0));
   }
 
+  /** Gets the serialized length of a character sequence. This is computed 
+   * from the characters, without encoding them to UTF-8.
+   */
+  protected int getCharsSerializedLength(CharSequence s) {
+    return Math.max(RowKeyUtils.getUTF8Length(s) + (terminate() ? 1 : 0), 1);
+  }
+
+  /** Serializes a character sequence, encoding it to UTF-8 directly into the
+   * byte array. The serialized bytes are identical to those produced by 
+   * serializing the UTF-8 encoding of the sequence (as produced by 
+   * {@link String#getBytes(String)}, which replaces unpaired surrogates 
+   * with '?'). Runs of ASCII characters are encoded without any branches 
+   * other than the ASCII test.
+   */
+  protected void serializeChars(CharSequence s, ImmutableBytesWritable w) {
+    byte[] b = w.get();
+    int offset = w.getOffset(),
+        n = s.length(),
+        j = offset,
+        i = 0;
+    byte m = order.mask();
+
+    while (i < n) {
+      char c = s.charAt(i++);
+      if (c < 0x80) {
+        b[j++] = (byte) ((c + 2) ^ m);
+        continue;
+      }
+
+      if (c < 0x800) {
+        b[j++] = (byte) (((0xc0 | (c >>> 6)) + 2) ^ m);
+      } else if (Character.isHighSurrogate(c) && i < n 
+          && Character.isLowSurrogate(s.charAt(i))) {
+        int cp = Character.toCodePoint(c, s.charAt(i++));
+        b[j++] = (byte) (((0xf0 | (cp >>> 18)) + 2) ^ m);
+        b[j++] = (byte) (((0x80 | ((cp >>> 12) & 0x3f)) + 2) ^ m);
+        b[j++] = (byte) (((0x80 | ((cp >>> 6) & 0x3f)) + 2) ^ m);
+        b[j++] = (byte) (((0x80 | (cp & 0x3f)) + 2) ^ m);
+        continue;
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+      {
+        b[j++] = (byte) (('?' + 2) ^ m);
+        continue;
+      } else {
+        b[j++] = (byte) (((0xe0 | (c >>> 12)) + 2) ^ m);
+        b[j++] = (byte) (((0x80 | ((c >>> 6) & 0x3f)) + 2) ^ m);
+      }
+      b[j++] = (byte) (((0x80 | (c & 0x3f)) + 2) ^ m);
+    }
+
+    int len = j - offset;
+    boolean terminated = terminate() || len == 0;
+    if (terminated)
+      b[offset + len] = mask(TERMINATOR);
+    RowKeyUtils.seek(w, len + (terminated ? 1 : 0));
+  }
+
+  /** Serializes a character sequence to a byte buffer without an accessible
+   * backing array, encoding it to UTF-8 directly into the buffer. The
+   * serialized bytes are identical to those written by {@link #serializeChars}.
+   */
+  protected void serializeCharsDirect(CharSequence s, ByteBuffer b) {
+    if (b.remaining() < getCharsSerializedLength(s))
+      throw new BufferOverflowException();
+
+    int n = s.length(),
+        i = 0;
+    byte m = order.mask();
+
+    while (i < n) {
+      char c = s.charAt(i++);
+      if (c < 0x80) {
+        b.put((byte) ((c + 2) ^ m));
+        continue;
+      }
+
+      if (c < 0x800) {
+        b.put((byte) (((0xc0 | (c >>> 6)) + 2) ^ m));
+      } else if (Character.isHighSurrogate(c) && i < n
+          && Character.isLowSurrogate(s.charAt(i))) {
+        int cp = Character.toCodePoint(c, s.charAt(i++));
+        b.put((byte) (((0xf0 | (cp >>> 18)) + 2) ^ m));
+        b.put((byte) (((0x80 | ((cp >>> 12) & 0x3f)) + 2) ^ m));
+        b.put((byte) (((0x80 | ((cp >>> 6) & 0x3f)) + 2) ^ m));
+        b.put((byte) (((0x80 | (cp & 0x3f)) + 2) ^ m));
+        continue;
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+      {
+        b.put((byte) (('?' + 2) ^ m));
+        continue;
+      } else {
+        b.put((byte) (((0xe0 | (c >>> 12)) + 2) ^ m));
+        b.put((byte) (((0x80 | ((c >>> 6) & 0x3f)) + 2) ^ m));
+      }
+      b.put((byte) (((0x80 | (c & 0x3f)) + 2) ^ m));
+    }
+
+    if (terminate() || n == 0)
+      b.put(mask(TERMINATOR));
+  }
+
+  @Override
+  protected void serializeDirect(Object o, ByteBuffer b) throws IOException {
+    if (o == null) {
+      if (terminate())
+        b.put(mask(NULL));
+      return;
+    }
+
+    byte[] s = (byte[]) o;
+    int len = s.length;
+    if (b.remaining() < getSerializedLength(o))
+      throw new BufferOverflowException();
+
+    for (int i = 0; i < len; i++)
+      b.put(mask((byte)(s[i] + 2)));
+    if (terminate() || len == 0)
+      b.put(mask(TERMINATOR));
+  }
+
   protected int getUTF8RowKeyLength(ImmutableBytesWritable w) {
     byte[] b = w.get();
     int offset = w.getOffset(),
@@ -120,9 +253,8 @@ public class UTF8RowKey extends RowKey
     if (b[offset] == mask(NULL))
       return 1;
 
-    int i = 0;
-    while (i < len && b[offset + i++] != mask(TERMINATOR)) ;
-    return i;
+    int i = ByteScanner.indexOf(b, offset, len, mask(TERMINATOR));
+    return i < len ? i + 1 : len;
   }
 
   @Override
@@ -130,6 +262,17 @@ public class UTF8RowKey extends RowKey
     RowKeyUtils.seek(w, getUTF8RowKeyLength(w));
   }
 
+  @Override
+  protected void skipDirect(ByteBuffer b) throws IOException {
+    if (b.remaining() <= 0)
+      return;
+    if (b.get() == mask(NULL))
+      return;
+
+    b.position(b.position() - 1);
+    while (b.hasRemaining() && b.get() != mask(TERMINATOR)) ;
+  }
+
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException {
     byte[] s = w.get();
@@ -153,4 +296,38 @@ public class UTF8RowKey extends RowKey
       RowKeyUtils.seek(w, len);
     }
   }
+
+  /** Deserializes a string as a view of the serialized bytes, without 
+   * copying or decoding them. The view object is re-used across calls to 
+   * this method, unless re-use is disabled by {@link #setReuse}. After this
+   * method is called, the position (length) of the byte array will be 
+   * incremented (decremented) by the length of the serialized string.
+   * @return a view of the string, or null if the serialized value is NULL
+   * @see UTF8View
+   */
+  public UTF8View deserializeView(ImmutableBytesWritable w) throws IOException
+  {
+    byte[] s = w.get();
+    int offset = w.getOffset();
+    if (w.getLength() <= 0)
+      return null;
+
+    int len = getUTF8RowKeyLength(w);
+    try {
+      if (s[offset] == mask(NULL))
+        return null;
+
+      boolean terminated = s[offset + len - 1] == mask(TERMINATOR);
+      UTF8View view = reuse ? this.view : null;
+      if (view == null) {
+        view = new UTF8View();
+        if (reuse)
+          this.view = view;
+      }
+      return view.set(s, offset, len - (terminated ? 1 : 0), 
+          getOrder().mask());
+    } finally {
+      RowKeyUtils.seek(w, len);
+    }
+  }
 }
@@ -0,0 +1,291 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/** A read-only view of a UTF-8 string serialized by {@link UTF8RowKey}, 
+ * referencing the serialized bytes without copying or decoding them.
+ *
+ * <p>Each serialized byte is the UTF-8 byte plus two, XOR'd with the byte 
+ * mask of the sort order (see {@link UTF8RowKey}). The view records the 
+ * offset, length and mask of the serialized bytes, and undoes this 
+ * transformation one byte at a time as the bytes are read. The view never 
+ * includes NULL or terminator bytes, so an empty string is a view of length 
+ * zero.</p>
+ *
+ * <p>Views may be compared with each other or with UTF-8 literals, hashed, 
+ * and tested for prefixes without allocating any objects. They can also be 
+ * decoded into an {@link Appendable} (such as a re-used 
+ * <code>StringBuilder</code>) or a {@link CharBuffer} without materializing 
+ * a <code>String</code>. For the best performance, encode literals to UTF-8 
+ * once (for example, using {@link Bytes#toBytes(String)}) rather than using 
+ * the <code>String</code> convenience methods, which encode their argument 
+ * on every call.</p>
+ *
+ * <h1> Usage </h1>
+ * Views are returned by {@link UTF8RowKey#deserializeView}, which re-uses the 
+ * same view object across calls. A view is only valid until the next call, 
+ * and only while the serialized bytes are unchanged. Use {@link #toString} or
+ * {@link #toBytes} to keep a copy of the value.
+ */
+public class UTF8View implements Comparable<UTF8View>
+{
+  private static final char REPLACEMENT = '\ufffd';
+  private static final int SCRATCH_SIZE = 256;
+
+  private byte[] b;
+  private int offset, length;
+  private byte mask;
+  private ByteBuffer scratch;
+
+  /** Sets the serialized bytes viewed. 
+   * @param b serialized byte array
+   * @param offset offset of the first serialized UTF-8 byte
+   * @param length number of serialized UTF-8 bytes, excluding any terminator
+   * @param mask byte mask of the serialization sort order
+   */
+  UTF8View set(byte[] b, int offset, int length, byte mask) {
+    this.b = b;
+    this.offset = offset;
+    this.length = length;
+    this.mask = mask;
+    return this;
+  }
+
+  /** Gets the serialized byte array referenced by this view. */
+  public byte[] getBytes() { return b; }
+
+  /** Gets the offset of the first serialized byte within the byte array. */
+  public int getOffset() { return offset; }
+
+  /** Gets the sort order of the serialized bytes. */
+  public Order getOrder() { 
+    return mask == Order.ASCENDING.mask() ? Order.ASCENDING : 
+      Order.DESCENDING;
+  }
+
+  /** Gets the length of the string in UTF-8 bytes. */
+  public int length() { return length; }
+
+  /** Gets the UTF-8 byte at position i of the string. */
+  public byte byteAt(int i) { 
+    return (byte) ((b[offset + i] ^ mask) - 2);
+  }
+
+  /** Copies the UTF-8 bytes of the string into an array.
+   * @return the number of bytes copied, which is {@link #length}
+   */
+  public int getUTF8(byte[] dst, int dstOffset) {
+    for (int i = 0; i < length; i++)
+      dst[dstOffset + i] = (byte) ((b[offset + i] ^ mask) - 2);
+    return length;
+  }
+
+  /** Returns a copy of the UTF-8 bytes of the string. */
+  public byte[] toBytes() {
+    byte[] d = new byte[length];
+    getUTF8(d, 0);
+    return d;
+  }
+
+  /** Compares the string to a UTF-8 byte range using unsigned lexicographic
+   * byte order, which is the order of the strings by Unicode code point.
+   */
+  public int compareTo(byte[] utf8, int utf8Offset, int utf8Length) {
+    int len = Math.min(length, utf8Length);
+    for (int i = 0; i < len; i++) {
+      int x = ((b[offset + i] ^ mask) & 0xff) - 2,
+          y = utf8[utf8Offset + i] & 0xff;
+      if (x != y)
+        return x - y;
+    }
+    return length - utf8Length;
+  }
+
+  /** Compares the string to a UTF-8 byte array. */
+  public int compareTo(byte[] utf8) { 
+    return compareTo(utf8, 0, utf8.length); 
+  }
+
+  /** Compares the string to a Java string. The argument is encoded to UTF-8
+   * on every call.
+   */
+  public int compareTo(String s) { return compareTo(Bytes.toBytes(s)); }
+
+  public int compareTo(UTF8View v) {
+    int len = Math.min(length, v.length);
+    for (int i = 0; i < len; i++) {
+      int x = (b[offset + i] ^ mask) & 0xff,
+          y = (v.b[v.offset + i] ^ v.mask) & 0xff;
+      if (x != y)
+        return x - y;
+    }
+    return length - v.length;
+  }
+
+  /** Returns true if the string is equal to a UTF-8 byte array. */
+  public boolean equalsUTF8(byte[] utf8) {
+    return utf8.length == length && startsWith(utf8);
+  }
+
+  /** Returns true if the string starts with a UTF-8 byte array. */
+  public boolean startsWith(byte[] prefix) {
+    if (prefix.length > length)
+      return false;
+    for (int i = 0; i < prefix.length; i++)
+      if ((byte) ((b[offset + i] ^ mask) - 2) != prefix[i])
+        return false;
+    return true;
+  }
+
+  /** Returns true if the string starts with a Java string. The argument is 
+   * encoded to UTF-8 on every call.
+   */
+  public boolean startsWith(String prefix) {
+    return startsWith(Bytes.toBytes(prefix));
+  }
+
+  /** Returns a hash code of the UTF-8 bytes of the string. This is identical
+   * to {@link java.util.Arrays#hashCode(byte[])} of {@link #toBytes}, and 
+   * does not depend on the sort order of the serialized bytes.
+   */
+  @Override
+  public int hashCode() {
+    int h = 1;
+    for (int i = 0; i < length; i++)
+      h = 31 * h + (byte) ((b[offset + i] ^ mask) - 2);
+    return h;
+  }
+
+  /** Returns true if o is a view of the same string. */
+  @Override
+  public boolean equals(Object o) {
+    if (o == this)
+      return true;
+    if (!(o instanceof UTF8View))
+      return false;
+    UTF8View v = (UTF8View) o;
+    return v.length == length && compareTo(v) == 0;
+  }
+
+  /** Decodes the string into an <code>Appendable</code>, such as a 
+   * <code>StringBuilder</code>. Malformed UTF-8 sequences are replaced with 
+   * U+FFFD, as with {@link String#String(byte[], String)}.
+   * @return a
+   */
+  public <A extends Appendable> A writeTo(A a) throws IOException {
+    int i = 0;
+    while (i < length) {
+      int c = byteAt(i++) & 0xff;
+      if (c < 0x80) {
+        a.append((char) c);
+        continue;
+      }
+
+      int n, cp;
+      if (c >= 0xc2 && c < 0xe0) {
+        n = 1;
+        cp = c & 0x1f;
+      } else if (c >= 0xe0 && c < 0xf0) {
+        n = 2;
+        cp = c & 0x0f;
+      } else if (c >= 0xf0 && c < 0xf5) {
+        n = 3;
+        cp = c & 0x07;
+      } else {
+        a.append(REPLACEMENT);
+        continue;
+      }
+
+      int k = 0;
+      for (; k < n && i + k < length; k++) {
+        int d = byteAt(i + k) & 0xff;
+        if ((d & 0xc0) != 0x80)
+          break;
+        cp = (cp << 6) | (d & 0x3f);
+      }
+      if (k < n) {
+        /* Truncated sequence, continue at the first unexpected byte */
+        i += k;
+        a.append(REPLACEMENT);
+        continue;
+      }
+      i += n;
+
+      if ((n == 2 && (cp < 0x800 || (cp >= 0xd800 && cp <= 0xdfff))) 
+          || (n == 3 && (cp < 0x10000 || cp > 0x10ffff))) {
+        a.append(REPLACEMENT);
+      } else if (cp < 0x10000) {
+        a.append((char) cp);
+      } else {
+        cp -= 0x10000;
+        a.append((char) (0xd800 + (cp >>> 10)));
+        a.append((char) (0xdc00 + (cp & 0x3ff)));
+      }
+    }
+    return a;
+  }
+
+  /** Decodes the string into a character buffer using a charset decoder. 
+   * The decoder is reset before decoding. The bytes are unmasked into a 
+   * small scratch buffer re-used by this view, so the string is never 
+   * copied in full.
+   * @param out output buffer, which should have at least {@link #length} 
+   * characters remaining
+   * @return the result of decoding, which is an error or overflow result if 
+   * decoding was not completed
+   */
+  public CoderResult decode(CharsetDecoder decoder, CharBuffer out) {
+    if (scratch == null)
+      scratch = ByteBuffer.allocate(SCRATCH_SIZE);
+    scratch.clear();
+    decoder.reset();
+
+    int pos = 0;
+    while (true) {
+      while (scratch.hasRemaining() && pos < length)
+        scratch.put(byteAt(pos++));
+      scratch.flip();
+
+      CoderResult r = decoder.decode(scratch, out, pos == length);
+      if (r.isError() || r.isOverflow())
+        return r;
+      if (pos == length && !scratch.hasRemaining())
+        return decoder.flush(out);
+      scratch.compact();
+    }
+  }
+
+  /** Decodes the string into a new <code>String</code>. */
+  @Override
+  public String toString() {
+    try {
+      return writeTo(new StringBuilder(length)).toString();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
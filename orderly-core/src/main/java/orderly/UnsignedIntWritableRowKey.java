@@ -18,6 +18,7 @@
 
 package orderly;
 
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Writable;
 
@@ -125,6 +126,30 @@ public class UnsignedIntWritableRowKey extends AbstractVarIntRowKey
   @Override
   public Class<?> getSerializedClass() { return IntWritable.class; }
 
+  /** Gets the serialized length of a non-NULL int. 
+   * @see #serializeInt
+   */
+  public int getSerializedLength(int i) { return getSerializedLength(i & 0xffffffffL); }
+
+  /** Serializes a non-NULL int without allocating or boxing. The serialized
+   * bytes are identical to those produced by serializing the equivalent 
+   * IntWritable.
+   * @param i integer to serialize
+   * @param w writable to serialize into
+   */
+  public void serializeInt(int i, ImmutableBytesWritable w) { 
+    serializeLong(i & 0xffffffffL, w); 
+  }
+
+  /** Deserializes a non-NULL int without allocating or boxing. 
+   * @param w writable to deserialize from
+   * @return deserialized integer
+   * @throws NullPointerException if the serialized value is NULL
+   */
+  public int deserializeInt(ImmutableBytesWritable w) { 
+    return (int) deserializeLong(w); 
+  }
+
   @Override
   Writable createWritable() { return new IntWritable(); }
 
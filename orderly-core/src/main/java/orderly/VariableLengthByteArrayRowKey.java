@@ -54,6 +54,11 @@ public class VariableLengthByteArrayRowKey extends VariableLengthBytesWritableRo
         }
     }
 
+    @Override
+    protected Object prepare(Object o) throws IOException {
+        return toBytesWritable(o);
+    }
+
     @Override
     public int getSerializedLength(Object o) throws IOException {
         return super.getSerializedLength(toBytesWritable(o));
@@ -19,12 +19,11 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.BytesWritable;
 
-import com.google.common.primitives.UnsignedBytes;
-
 /**
  * Serializes and deserializes BytesWritable into a sortable variable length representation with an optional fixed
  * length prefix (on which no encoding will be applied).
@@ -130,8 +129,8 @@ public class VariableLengthBytesWritableRowKey extends RowKey {
             return terminate() ? fixedPrefixLength + 1 : fixedPrefixLength;
 
         final BytesWritable input = (BytesWritable) o;
-        return fixedPrefixLength + getSerializedLength(
-                toStringRepresentation(input.getBytes(), fixedPrefixLength, input.getLength() - fixedPrefixLength));
+        // each byte is represented by exactly 3 digits, so there is no need to build the digit string
+        return fixedPrefixLength + getSerializedLength(3 * Math.max(0, input.getLength() - fixedPrefixLength));
     }
 
     /**
@@ -141,10 +140,14 @@ public class VariableLengthBytesWritableRowKey extends RowKey {
      *         terminator nibble if terminate() is true.
      */
     private int getSerializedLength(String s) {
+        return getSerializedLength(s.length());
+    }
+
+    private int getSerializedLength(int numDigits) {
         if (terminate())
-            return (s.length() + 2) / 2;
+            return (numDigits + 2) / 2;
         else
-            return s.length() == 0 ? 1 : (s.length() + 1) / 2;
+            return numDigits == 0 ? 1 : (numDigits + 1) / 2;
     }
 
     @Override
@@ -166,9 +169,8 @@ public class VariableLengthBytesWritableRowKey extends RowKey {
                 throw new IllegalStateException("excepted at least " + fixedPrefixLength + " bytes to write");
             else {
                 encodeFixedPrefix(input.getBytes(), bytesWritable);
-                encodedCustomizedReversedPackedBcd(toStringRepresentation(input.getBytes(), fixedPrefixLength,
-                        input.getLength() - fixedPrefixLength),
-                        bytesWritable);
+                encodeCustomizedReversedPackedBcd(input.getBytes(), fixedPrefixLength,
+                        input.getLength() - fixedPrefixLength, bytesWritable);
             }
         }
     }
@@ -183,62 +185,6 @@ public class VariableLengthBytesWritableRowKey extends RowKey {
         RowKeyUtils.seek(bytesWritable, fixedPrefixLength);
     }
 
-    private String toStringRepresentation(byte[] bytes, int offset, int length) {
-        final StringBuilder result = new StringBuilder();
-        for (int i = 0; i < length; i++) {
-            byte aByte = bytes[offset + i];
-            // An unsigned byte results in max 3 decimal digits (because max value is "255") and we want to use
-            // always the max size such that if two byte arrays have the same length,
-            // the two encoded byte arrays also have the same length (such that byte sort order is remained).
-            // Therefore, we fill the gaps with a filler character.
-            result.append(prependZeroes(3, "" + UnsignedBytes.toInt(aByte)));
-        }
-
-        return result.toString();
-    }
-
-    /**
-     * Prepend a string with zeroes up to the given total length. Note that we could have used String.format("%03d",
-     * ...) here but this turned out to be a performance killer!
-     *
-     * @param totalLength length of the returned string
-     * @param string      string to prepend with zeroes
-     * @return zero prepended string
-     */
-    private String prependZeroes(int totalLength, String string) {
-        if (string.length() >= totalLength) {
-            // no need to prepend anything
-            return string;
-        } else {
-            // prepend with zeroes up to requested total length
-            final StringBuilder zeroes = new StringBuilder(totalLength - string.length());
-            for (int i = 0; i < totalLength - string.length(); i++) {
-                zeroes.append("0");
-            }
-
-            return zeroes.toString() + string;
-        }
-    }
-
-    private byte[] fromStringRepresentation(String string) {
-        // each 3 digits correspond to an encoded byte
-        final byte[] result = new byte[string.length() / 3];
-
-        // process the string per 3 digits
-        final char[] digits = string.toCharArray();
-        for (int i = 0; i < result.length; i++) {
-            int digitIdx = i * 3;
-            StringBuilder singleByteBcdString = new StringBuilder();
-            for (int j = 0; j < 3; j++) {
-                singleByteBcdString.append(digits[digitIdx + j] == FILLER ? "" : digits[digitIdx + j]);
-            }
-
-            result[i] = (byte) Integer.parseInt(singleByteBcdString.toString());
-        }
-
-        return result;
-    }
-
     @Override
     public void skip(ImmutableBytesWritable bytesWritable) throws IOException {
         if (bytesWritable.getLength() <= 0)
@@ -248,20 +194,46 @@ public class VariableLengthBytesWritableRowKey extends RowKey {
         int offset = bytesWritable.getOffset();
         int len = bytesWritable.getLength();
 
+        if (isNull(bytes[offset])) {
+            RowKeyUtils.seek(bytesWritable, 1);
+            return;
+        }
+
         RowKeyUtils.seek(bytesWritable,
                 fixedPrefixLength + getBcdEncodedLength(bytes, offset + fixedPrefixLength, len - fixedPrefixLength));
     }
 
-    protected int getBcdEncodedLength(byte[] bytes, int offset, int len) {
+    @Override
+    protected void skipDirect(ByteBuffer b) throws IOException {
+        if (b.remaining() <= 0)
+            return;
 
-        int i = 0;
-        while (i < len) {
-            byte c = mask(bytes[offset + i++]);
+        if (isNull(b.get(b.position()))) {
+            b.get();
+            return;
+        }
+
+        b.position(b.position() + fixedPrefixLength);
+        while (b.hasRemaining()) {
+            byte c = mask(b.get());
             if ((c & 0x0f) == TERMINATOR_NIBBLE)
                 break;
         }
+    }
+
+    /**
+     * @return true if the serialized value starting with byte b is NULL. A non-NULL value never starts with a NULL
+     *         nibble, as its first nibble is either a digit or the terminator.
+     */
+    private boolean isNull(byte b) {
+        return fixedPrefixLength == 0 && mask(b) == NULL;
+    }
 
-        return i;
+    protected int getBcdEncodedLength(byte[] bytes, int offset, int len) {
+
+        final int i = ByteScanner.indexOfLowNibble(bytes, offset, len, mask((byte) 0),
+                TERMINATOR_NIBBLE);
+        return i < len ? i + 1 : len;
     }
 
     @Override
@@ -271,44 +243,140 @@ public class VariableLengthBytesWritableRowKey extends RowKey {
         if (length <= 0 && fixedPrefixLength == 0)
             return null;
 
+        final byte[] bytes = bytesWritable.get();
         final int offset = bytesWritable.getOffset();
+
+        if (isNull(bytes[offset])) {
+            RowKeyUtils.seek(bytesWritable, 1);
+            return null;
+        }
+
         final int variableLengthSuffixOffset = offset + fixedPrefixLength;
         final int variableLengthSuffixLength = length - fixedPrefixLength;
+        final int encodedLength = getBcdEncodedLength(bytes, variableLengthSuffixOffset, variableLengthSuffixLength);
+
+        // count the digit nibbles before the terminator nibble(s), if any
+        int numDigits = 2 * encodedLength;
+        if (encodedLength > 0) {
+            final byte last = mask(bytes[variableLengthSuffixOffset + encodedLength - 1]);
+            if ((last & 0x0f) == TERMINATOR_NIBBLE)
+                numDigits -= ((last >>> 4) & 0x0f) == TERMINATOR_NIBBLE ? 2 : 1;
+        }
 
-        final byte[] fixedLengthPrefix = decodeFixedPrefix(bytesWritable);
-
-        final byte[] variableLengthSuffix = fromStringRepresentation(
-                decodeCustomizedReversedPackedBcd(bytesWritable, variableLengthSuffixOffset,
-                        variableLengthSuffixLength));
+        final byte[] result = new byte[fixedPrefixLength + numDigits / 3];
+        for (int i = 0; i < fixedPrefixLength; i++) {
+            result[i] = mask(bytes[offset + i]);
+        }
+        decodeCustomizedReversedPackedBcd(bytes, variableLengthSuffixOffset, result, fixedPrefixLength,
+                numDigits / 3);
 
-        return new BytesWritable(merge(fixedLengthPrefix, variableLengthSuffix));
+        RowKeyUtils.seek(bytesWritable, fixedPrefixLength + encodedLength);
+        return new BytesWritable(result);
     }
 
-    private static byte[] merge(byte[] array1, byte[] array2) {
-        byte[] merged = new byte[array1.length + array2.length];
-        System.arraycopy(array1, 0, merged, 0, array1.length);
-        System.arraycopy(array2, 0, merged, array1.length, array2.length);
-        return merged;
+    private static byte[] CUSTOMIZED_BCD_ENC_LOOKUP = new byte[]{3, 4, 5, 6, 7, 9, 10, 12, 14, 15};
+
+    // note that the value -1 means invalid
+    private static byte[] CUSTOMIZED_BCD_DEC_LOOKUP = new byte[]{-1, -1, -1, 0, 1, 2, 3, 4, -1, 5, 6, -1, 7, -1, 8, 9};
+
+    // value of an invalid nibble in the decoding tables below, chosen such that any decoded byte value using it is
+    // negative
+    private static final int INVALID_DIGIT = -1000;
+
+    // the three customized BCD nibbles of each unsigned byte value (as its zero prepended 3 decimal digits), packed
+    // into the lower 12 bits
+    private static final short[] BYTE_TO_NIBBLES = new short[256];
+
+    // the digit of each nibble, or INVALID_DIGIT
+    private static final int[] NIBBLE_TO_DIGIT = new int[16];
+
+    // the 2 digit value of each byte holding two nibbles, or INVALID_DIGIT if either nibble is not a digit
+    private static final int[] BYTE_TO_DIGITS = new int[256];
+
+    static {
+        for (int i = 0; i < BYTE_TO_NIBBLES.length; i++) {
+            BYTE_TO_NIBBLES[i] = (short) (CUSTOMIZED_BCD_ENC_LOOKUP[i / 100] << 8
+                    | CUSTOMIZED_BCD_ENC_LOOKUP[i / 10 % 10] << 4 | CUSTOMIZED_BCD_ENC_LOOKUP[i % 10]);
+        }
+
+        for (int i = 0; i < NIBBLE_TO_DIGIT.length; i++) {
+            NIBBLE_TO_DIGIT[i] = CUSTOMIZED_BCD_DEC_LOOKUP[i] < 0 ? INVALID_DIGIT : CUSTOMIZED_BCD_DEC_LOOKUP[i];
+        }
+
+        for (int i = 0; i < BYTE_TO_DIGITS.length; i++) {
+            final int hi = NIBBLE_TO_DIGIT[i >>> 4], lo = NIBBLE_TO_DIGIT[i & 0x0f];
+            BYTE_TO_DIGITS[i] = hi < 0 || lo < 0 ? INVALID_DIGIT : 10 * hi + lo;
+        }
     }
 
-    private byte[] decodeFixedPrefix(ImmutableBytesWritable input) {
-        final byte[] output = new byte[fixedPrefixLength];
+    /**
+     * Encodes bytes into a "customized reversed packed binary coded decimal" byte array, writing exactly the bytes
+     * {@link #encodedCustomizedReversedPackedBcd(String, ImmutableBytesWritable)} writes for the zero prepended 3
+     * digit decimal representation of each byte. Every two input bytes are encoded into three output bytes.
+     */
+    private void encodeCustomizedReversedPackedBcd(byte[] input, int inputOffset, int inputLength,
+            ImmutableBytesWritable bytesWritable) {
+        final byte[] bytes = bytesWritable.get();
+        final int offset = bytesWritable.getOffset();
+        int pos = offset;
+
+        int i = 0;
+        for (; i + 1 < inputLength; i += 2) {
+            final int x = BYTE_TO_NIBBLES[input[inputOffset + i] & 0xff],
+                    y = BYTE_TO_NIBBLES[input[inputOffset + i + 1] & 0xff];
+            bytes[pos++] = mask((byte) (x >>> 4));
+            bytes[pos++] = mask((byte) (x << 4 | y >>> 8));
+            bytes[pos++] = mask((byte) y);
+        }
 
-        final byte[] inputBytes = input.get();
-        final int offset = input.getOffset();
-        for (int i = 0; i < fixedPrefixLength; i++) {
-            output[i] = mask(inputBytes[offset + i]);
+        if (i < inputLength) {
+            // uneven number of digits -> write terminator nibble
+            final int x = BYTE_TO_NIBBLES[input[inputOffset + i] & 0xff];
+            bytes[pos++] = mask((byte) (x >>> 4));
+            bytes[pos++] = mask((byte) (x << 4 | TERMINATOR_NIBBLE));
+        } else if (terminate() || inputLength == 0) {
+            bytes[pos++] = mask(TWO_TERMINATOR_NIBBLES);
         }
 
-        RowKeyUtils.seek(input, fixedPrefixLength);
-        return output;
+        RowKeyUtils.seek(bytesWritable, pos - offset);
     }
 
+    /**
+     * Decodes a "customized reversed packed binary coded decimal" byte array holding 3 digit nibbles per decoded
+     * byte. Every three input bytes are decoded into two output bytes.
+     *
+     * @param bytes        the customized packed BCD encoded byte array
+     * @param offset       offset of the first encoded byte
+     * @param result       array to store the decoded bytes
+     * @param resultOffset offset of the first decoded byte in result
+     * @param resultLength number of bytes to decode
+     * @throws IOException if the encoded bytes are not a valid encoding
+     */
+    private void decodeCustomizedReversedPackedBcd(byte[] bytes, int offset, byte[] result, int resultOffset,
+            int resultLength) throws IOException {
+        int pos = offset, invalid = 0;
+
+        int i = 0;
+        for (; i + 1 < resultLength; i += 2) {
+            final int x = mask(bytes[pos++]) & 0xff, y = mask(bytes[pos++]) & 0xff, z = mask(bytes[pos++]) & 0xff;
+            final int first = 10 * BYTE_TO_DIGITS[x] + NIBBLE_TO_DIGIT[y >>> 4],
+                    second = 100 * NIBBLE_TO_DIGIT[y & 0x0f] + BYTE_TO_DIGITS[z];
+            invalid |= first | second;
+            result[resultOffset + i] = (byte) first;
+            result[resultOffset + i + 1] = (byte) second;
+        }
 
-    private static byte[] CUSTOMIZED_BCD_ENC_LOOKUP = new byte[]{3, 4, 5, 6, 7, 9, 10, 12, 14, 15};
+        if (i < resultLength) {
+            final int x = mask(bytes[pos++]) & 0xff, y = mask(bytes[pos]) & 0xff;
+            final int last = 10 * BYTE_TO_DIGITS[x] + NIBBLE_TO_DIGIT[y >>> 4];
+            invalid |= last;
+            result[resultOffset + i] = (byte) last;
+        }
 
-    // note that the value -1 means invalid
-    private static byte[] CUSTOMIZED_BCD_DEC_LOOKUP = new byte[]{-1, -1, -1, 0, 1, 2, 3, 4, -1, 5, 6, -1, 7, -1, 8, 9};
+        // every valid value is in the range 0 - 255, every invalid value is negative or larger
+        if ((invalid & ~0xff) != 0)
+            throw new IOException("Invalid customized BCD encoded bytes");
+    }
 
     /**
      * Encodes a String with digits into a "customized reversed packed binary coded decimal" byte array.
@@ -26,6 +26,7 @@ import orderly.RowKey;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public abstract class AbstractVarIntRowKeyTestCase extends RandomRowKeyTestCase
@@ -59,6 +60,33 @@ public abstract class AbstractVarIntRowKeyTestCase extends RandomRowKeyTestCase
     super.testSerialization(o, w);
     if (o != null || vi.terminate())
       verifyReserved(w);
+    testPrimitive(o);
+  }
+
+  /** Verifies the primitive long API produces the same bytes as the object 
+   * API, and deserializes the same value.
+   */
+  public void testPrimitive(Object o) throws IOException {
+    byte[] b = key.serialize(o);
+    ImmutableBytesWritable w = new ImmutableBytesWritable(new byte[b.length]);
+
+    if (o == null) {
+      vi.serializeNull(w);
+    } else {
+      assertEquals("Length mismatch", b.length, 
+          vi.getSerializedLength(vi.getLong(o)));
+      vi.serializeLong(vi.getLong(o), w);
+    }
+    assertBoundsEquals(w, b.length, 0);
+    assertArrayEquals("Primitive serialization mismatch", b, w.get());
+
+    w.set(b);
+    assertEquals("NULL mismatch", o == null, vi.isNull(w));
+    if (o != null) {
+      assertEquals("Primitive data corrupt", vi.getLong(o), 
+          vi.deserializeLong(w));
+      assertBoundsEquals(w, b.length, 0);
+    }
   }
 
   @Override
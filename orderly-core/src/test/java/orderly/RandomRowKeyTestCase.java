@@ -19,6 +19,8 @@
 package orderly;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -75,7 +77,7 @@ public abstract class RandomRowKeyTestCase extends RowKeyTestCase
     byte[] b;
     int len;
 
-    switch(r.nextInt(4)) {
+    switch(r.nextInt(6)) {
       case 0: /* serialize(Object, ImmutableBytesWritable) */
         key.serialize(o, w);
         break;
@@ -94,6 +96,22 @@ public abstract class RandomRowKeyTestCase extends RowKeyTestCase
         RowKeyUtils.seek(w, len);
         break;
 
+      case 3: /* serialize(Object, ByteBuffer) with a heap buffer */
+        ByteBuffer hb = ByteBuffer.wrap(w.get(), w.getOffset(), w.getLength());
+        key.serialize(o, hb);
+        RowKeyUtils.seek(w, hb.position() - w.getOffset());
+        break;
+
+      case 4: /* serialize(Object, ByteBuffer) with a direct buffer */
+        len = key.getSerializedLength(o);
+        ByteBuffer db = allocateDirect(len);
+        key.serialize(o, db);
+        assertEquals(0, db.remaining());
+        db.flip();
+        db.get(w.get(), w.getOffset(), len);
+        RowKeyUtils.seek(w, len);
+        break;
+
       default: /* serialize(Object, byte[], offset) */
         key.serialize(o, w.get(), w.getOffset());
         len = key.getSerializedLength(o);
@@ -107,7 +125,7 @@ public abstract class RandomRowKeyTestCase extends RowKeyTestCase
   {
     Object o;
 
-    switch(r.nextInt(3)) {
+    switch(r.nextInt(5)) {
       case 0: /* deserialize(ImmutableBytesWritable) */
         o = key.deserialize(w);
         break;
@@ -118,6 +136,22 @@ public abstract class RandomRowKeyTestCase extends RowKeyTestCase
         key.skip(w);
         break;
 
+      case 2: /* deserialize(ByteBuffer) with a heap buffer */
+        ByteBuffer hb = ByteBuffer.wrap(w.get(), w.getOffset(), w.getLength());
+        o = key.deserialize(hb);
+        RowKeyUtils.seek(w, hb.position() - w.getOffset());
+        break;
+
+      case 3: /* deserialize(ByteBuffer) with a direct or read-only buffer */
+        ByteBuffer db = r.nextBoolean() ? allocateDirect(w.getLength()) :
+          ByteBuffer.allocate(w.getLength());
+        db.put(w.get(), w.getOffset(), w.getLength()).flip();
+        if (r.nextBoolean())
+          db = db.asReadOnlyBuffer();
+        o = key.deserialize(db);
+        RowKeyUtils.seek(w, db.position());
+        break;
+
       default: /* deserialize(byte[] b, int offset) */
         o = key.deserialize(Arrays.copyOfRange(w.get(), 0, w.getOffset() + 
               w.getLength()), w.getOffset());
@@ -142,6 +176,17 @@ public abstract class RandomRowKeyTestCase extends RowKeyTestCase
   {
     super.testSkip(o, w);
     ((RedZoneImmutableBytesWritable)w).verify();
+
+    ByteBuffer b = allocateDirect(w.getLength());
+    b.put(w.get(), w.getOffset(), w.getLength()).flip();
+    key.skip(b);
+    assertEquals(key.getSerializedLength(o), b.position());
+  }
+
+  /** Allocates a direct byte buffer with a random byte order. */
+  protected ByteBuffer allocateDirect(int len) {
+    return ByteBuffer.allocateDirect(len).order(r.nextBoolean() ? 
+        ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
   }
 
   @Override
@@ -22,6 +22,7 @@ import java.io.IOException;
 
 import orderly.Order;
 import orderly.RowKey;
+import orderly.RowKeyComparator;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -118,6 +119,8 @@ public abstract class RowKeyTestCase
     if (key.getOrder() == Order.DESCENDING) 
       expectedOrder = -expectedOrder;
     assertEquals("Invalid sort order", expectedOrder, byteOrder);
+    assertEquals("Comparator mismatch", expectedOrder, 
+        Integer.signum(RowKeyComparator.INSTANCE.compare(w1, w2)));
   }
 
   @Test
@@ -0,0 +1,104 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestByteScanner
+{
+  protected Random r;
+  protected int numTests;
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+  }
+
+  /* Random bytes with a few matches of p, so that matches fall at every 
+   * position within a word 
+   */
+  private byte[] randBytes(int len, byte p, int matches) {
+    byte[] b = new byte[len];
+    r.nextBytes(b);
+    for (int i = 0; i < matches && len > 0; i++)
+      b[r.nextInt(len)] = p;
+    return b;
+  }
+
+  @Test
+  public void testIndexOf() {
+    for (int n = 0; n < numTests; n++) {
+      byte v = (byte) r.nextInt();
+      byte[] b = randBytes(r.nextInt(40), v, r.nextInt(3));
+      int offset = b.length == 0 ? 0 : r.nextInt(b.length), 
+          len = b.length - offset;
+
+      int expected = 0;
+      while (expected < len && b[offset + expected] != v) 
+        expected++;
+      assertEquals(expected, ByteScanner.indexOf(b, offset, len, v));
+    }
+  }
+
+  @Test
+  public void testIndexOfZeroNibble() {
+    for (int n = 0; n < numTests; n++) {
+      byte mask = r.nextBoolean() ? 0 : (byte) r.nextInt();
+      byte[] b = randBytes(r.nextInt(40), (byte) (mask ^ (r.nextBoolean() ? 
+              0x0f : 0xf0) & r.nextInt()), r.nextInt(3));
+      int offset = b.length == 0 ? 0 : r.nextInt(b.length), 
+          len = b.length - offset;
+
+      int expected = 0;
+      for (; expected < len; expected++) {
+        int c = b[offset + expected] ^ mask;
+        if ((c & 0xf0) == 0 || (c & 0x0f) == 0)
+          break;
+      }
+      assertEquals(expected, ByteScanner.indexOfZeroNibble(b, offset, len, 
+            mask));
+    }
+  }
+
+  @Test
+  public void testIndexOfLowNibble() {
+    for (int n = 0; n < numTests; n++) {
+      byte mask = r.nextBoolean() ? 0 : (byte) 0xff;
+      int v = r.nextInt(16);
+      byte[] b = randBytes(r.nextInt(40), (byte) ((r.nextInt() & 0xf0 | v) ^ 
+            mask), r.nextInt(3));
+      int offset = b.length == 0 ? 0 : r.nextInt(b.length), 
+          len = b.length - offset;
+
+      int expected = 0;
+      while (expected < len && ((b[offset + expected] ^ mask) & 0x0f) != v)
+        expected++;
+      assertEquals(expected, ByteScanner.indexOfLowNibble(b, offset, len, 
+            mask, v));
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import orderly.CompiledStructRowKey;
+import orderly.Order;
+import orderly.RowKey;
+import orderly.StructRowKey;
+import orderly.StructRowKeyCompiler;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TestCompiledStructRowKey extends TestStructRowKey
+{
+  protected CompiledStructRowKey compiled;
+
+  @Override
+  public RowKeyTestCase setRowKey(RowKey key) {
+    super.setRowKey(key);
+    compiled = key == null ? null : 
+      StructRowKeyCompiler.compile((StructRowKey) key);
+    return this;
+  }
+
+  @Override
+  public void serialize(Object o, ImmutableBytesWritable w) throws IOException
+  {
+    byte[] expected = key.serialize(o);
+    assertEquals("Length mismatch", expected.length, 
+        compiled.getSerializedLength(o));
+
+    int offset = w.getOffset();
+    compiled.serialize(o, w);
+    assertBoundsEquals(w, offset + expected.length, 
+        w.getLength() + w.getOffset() - offset - expected.length);
+    assertArrayEquals("Compiled serialization mismatch", expected, 
+        Arrays.copyOfRange(w.get(), offset, offset + expected.length));
+  }
+
+  @Override
+  public Object deserialize(ImmutableBytesWritable w) throws IOException {
+    ImmutableBytesWritable s = new ImmutableBytesWritable(w.get(), 
+        w.getOffset(), w.getLength());
+    compiled.skip(s);
+
+    Object o = compiled.deserialize(w);
+    assertBoundsEquals(w, s.getOffset(), s.getLength());
+    return o;
+  }
+
+  @Test
+  public void testSharedClass() throws IOException {
+    StructRowKey s = (StructRowKey) createRowKey();
+    CompiledStructRowKey c1 = StructRowKeyCompiler.compile(s),
+                         c2 = StructRowKeyCompiler.compile(s),
+                         c3 = c1.clone();
+    assertSame(c1.getClass(), c2.getClass());
+    assertSame(c1.getClass(), c3.getClass());
+
+    Object o = createObject();
+    byte[] expected = s.serialize(o);
+    assertArrayEquals(expected, c3.serialize(o));
+
+    /* The clone deserializes into its own objects */
+    assertNotSame(c1.deserialize(expected), c3.deserialize(expected));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testImmutableOrder() {
+    StructRowKeyCompiler.compile((StructRowKey) createRowKey())
+      .setOrder(Order.DESCENDING);
+  }
+}
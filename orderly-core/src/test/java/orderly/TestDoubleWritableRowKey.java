@@ -18,11 +18,17 @@
 
 package orderly;
 
+import java.io.IOException;
+
 import orderly.DoubleWritableRowKey;
 import orderly.RowKey;
 
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.DoubleWritable;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 public class TestDoubleWritableRowKey extends RandomRowKeyTestCase
 {
   @Override
@@ -88,4 +94,37 @@ public class TestDoubleWritableRowKey extends RandomRowKeyTestCase
       return (isPositiveZero(d) ? 1 : 0) - (isPositiveZero(e) ? 1 : 0);
     }
   }
+
+  @Override
+  public void testSerialization(Object o, ImmutableBytesWritable w) 
+    throws IOException 
+  {
+    super.testSerialization(o, w);
+    testPrimitive(o);
+  }
+
+  /** Verifies the primitive double API produces the same bytes as the 
+   * object API, and deserializes the same value.
+   */
+  public void testPrimitive(Object o) throws IOException {
+    DoubleWritableRowKey k = (DoubleWritableRowKey) key;
+    byte[] b = key.serialize(o);
+    ImmutableBytesWritable w = new ImmutableBytesWritable(new byte[b.length]);
+
+    if (o == null)
+      k.serializeNull(w);
+    else
+      k.serializeDouble(k.getDouble(o), w);
+    assertBoundsEquals(w, b.length, 0);
+    assertArrayEquals("Primitive serialization mismatch", b, w.get());
+
+    w.set(b);
+    assertEquals("NULL mismatch", o == null, k.isNull(w));
+    if (o != null) {
+      assertEquals("Primitive data corrupt", 
+          Double.doubleToLongBits(k.getDouble(o)),
+          Double.doubleToLongBits(k.deserializeDouble(w)));
+      assertBoundsEquals(w, b.length, 0);
+    }
+  }
 }
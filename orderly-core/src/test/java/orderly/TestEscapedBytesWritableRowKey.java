@@ -0,0 +1,98 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestEscapedBytesWritableRowKey extends RandomRowKeyTestCase {
+
+    @Override
+    public RowKey createRowKey() {
+        return new EscapedBytesWritableRowKey();
+    }
+
+    @Override
+    public Object createObject() {
+        if (r.nextInt(128) == 0)
+            return null;
+
+        final int length = r.nextInt(1000);
+        final byte[] randomBytes = new byte[length];
+        r.nextBytes(randomBytes);
+
+        // favour the escaped and terminator byte values
+        for (int i = 0; i < length; i++) {
+            switch (r.nextInt(8)) {
+                case 0:
+                    randomBytes[i] = 0x00;
+                    break;
+                case 1:
+                    randomBytes[i] = 0x01;
+                    break;
+                case 2:
+                    randomBytes[i] = (byte) 0xFF;
+                    break;
+            }
+        }
+        return new BytesWritable(randomBytes);
+    }
+
+    @Override
+    public int compareTo(Object o1, Object o2) {
+        if (o1 == null || o2 == null)
+            return (o1 != null ? 1 : 0) - (o2 != null ? 1 : 0);
+
+        BytesWritable b1 = ((BytesWritable) o1);
+        BytesWritable b2 = ((BytesWritable) o2);
+
+        final int compareTo = b1.compareTo(b2);
+
+        return compareTo < 0 ? -1 : compareTo > 0 ? 1 : 0;
+    }
+
+    // some specific tests for the escaped format
+
+    private byte[] encode(byte... bytes) throws IOException {
+        return new EscapedBytesWritableRowKey().setTermination(Termination.MUST).serialize(new BytesWritable(bytes));
+    }
+
+    @Test
+    public void testEncode() throws IOException {
+        assertArrayEquals(new byte[]{0x00, 0x00},
+                new EscapedBytesWritableRowKey().setTermination(Termination.MUST).serialize(null));
+        assertArrayEquals(new byte[]{0x00, 0x01}, encode());
+        assertArrayEquals(new byte[]{0x00, (byte) 0xFF, 0x00, 0x01}, encode((byte) 0x00));
+        assertArrayEquals(new byte[]{0x01, 0x00, 0x01}, encode((byte) 0x01));
+        assertArrayEquals(new byte[]{0x12, 0x00, (byte) 0xFF, (byte) 0xFF, 0x00, 0x01},
+                encode((byte) 0x12, (byte) 0x00, (byte) 0xFF));
+
+        // implicit termination omits the terminator of a non-empty array
+        final RowKey implicit = new EscapedBytesWritableRowKey();
+        assertEquals(0, implicit.serialize(null).length);
+        assertArrayEquals(new byte[]{0x00, 0x01}, implicit.serialize(new BytesWritable(new byte[0])));
+        assertArrayEquals(new byte[]{0x12, 0x00, (byte) 0xFF},
+                implicit.serialize(new BytesWritable(new byte[]{0x12, 0x00})));
+    }
+}
@@ -0,0 +1,239 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestFieldPredicate
+{
+  /* Small value domains, so that every combination of field values can be
+   * serialized and checked against each predicate */
+  private static final Object[][] DOMAINS = {
+    { null, -300, -1, 0, 1, 2, 300 },
+    { null, "", "a", "ab", "abc", "b", "é" },
+    { null, BigDecimal.ZERO, BigDecimal.ONE, new BigDecimal("1.5"), 
+      new BigDecimal("-1"), new BigDecimal("12") },
+    { null, -1L, 0L, 1L, Long.MAX_VALUE }
+  };
+
+  /* Index of the string domain, the only domain supporting prefixes */
+  private static final int STRING = 1;
+
+  protected Random r;
+  protected int numTests;
+
+  private int[] domains;
+  private StructRowKey key;
+  private List<Object[]> values;
+  private byte[][] rows;
+
+  /* A predicate with the expected result for each row */
+  private static class Expected
+  {
+    final FieldPredicate predicate;
+    final boolean[] results;
+
+    Expected(FieldPredicate predicate, boolean[] results) {
+      this.predicate = predicate;
+      this.results = results;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+  }
+
+  private RowKey createField(int i) {
+    switch (i) {
+      case 0: return new IntegerRowKey();
+      case 1: return new StringRowKey();
+      case 2: return new BigDecimalRowKey();
+      default: return new LongRowKey();
+    }
+  }
+
+  /* Creates a random struct, and serializes every combination of values */
+  private void createRows() throws IOException {
+    domains = new int[1 + r.nextInt(3)];
+    RowKey[] fields = new RowKey[domains.length];
+    for (int i = 0; i < fields.length; i++) {
+      domains[i] = r.nextInt(DOMAINS.length);
+      fields[i] = createField(domains[i]);
+      if (r.nextBoolean())
+        fields[i].setOrder(Order.DESCENDING);
+    }
+
+    key = new StructRowKey(fields);
+    if (r.nextInt(4) == 0)
+      key.setOrder(Order.DESCENDING);
+    key.setTermination(r.nextBoolean() ? Termination.AUTO : 
+        Termination.MUST);
+
+    values = new ArrayList<Object[]>();
+    addValues(new Object[domains.length], 0);
+    rows = new byte[values.size()][];
+    for (int i = 0; i < rows.length; i++)
+      rows[i] = key.serialize(values.get(i));
+  }
+
+  private void addValues(Object[] row, int i) {
+    if (i == row.length) {
+      values.add(row.clone());
+      return;
+    }
+    for (Object x : DOMAINS[domains[i]]) {
+      row[i] = x;
+      addValues(row, i + 1);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compare(Object o1, Object o2) {
+    if (o1 == null || o2 == null)
+      return (o1 != null ? 1 : 0) - (o2 != null ? 1 : 0);
+    return ((Comparable<Object>) o1).compareTo(o2);
+  }
+
+  private Object randValue(int field) {
+    Object[] domain = DOMAINS[domains[field]];
+    return domain[r.nextInt(domain.length)];
+  }
+
+  /* Creates a random predicate and computes its result for each row from 
+   * the deserialized values */
+  private Expected randPredicate() throws IOException {
+    int field = r.nextInt(domains.length);
+    Object x = randValue(field), y = randValue(field);
+    boolean[] results = new boolean[rows.length];
+    FieldPredicate p;
+
+    switch (r.nextInt(domains[field] == STRING ? 8 : 7)) {
+      case 0:
+        p = FieldPredicate.eq(key, field, x);
+        for (int i = 0; i < rows.length; i++)
+          results[i] = compare(values.get(i)[field], x) == 0;
+        break;
+      case 1:
+        p = FieldPredicate.lt(key, field, x);
+        for (int i = 0; i < rows.length; i++)
+          results[i] = compare(values.get(i)[field], x) < 0;
+        break;
+      case 2:
+        p = FieldPredicate.le(key, field, x);
+        for (int i = 0; i < rows.length; i++)
+          results[i] = compare(values.get(i)[field], x) <= 0;
+        break;
+      case 3:
+        p = FieldPredicate.gt(key, field, x);
+        for (int i = 0; i < rows.length; i++)
+          results[i] = compare(values.get(i)[field], x) > 0;
+        break;
+      case 4:
+        p = FieldPredicate.ge(key, field, x);
+        for (int i = 0; i < rows.length; i++)
+          results[i] = compare(values.get(i)[field], x) >= 0;
+        break;
+      case 5:
+        p = FieldPredicate.between(key, field, x, y);
+        for (int i = 0; i < rows.length; i++)
+          results[i] = compare(values.get(i)[field], x) >= 0 && 
+            compare(values.get(i)[field], y) <= 0;
+        break;
+      case 6:
+        Object[] in = new Object[r.nextInt(4)];
+        for (int j = 0; j < in.length; j++)
+          in[j] = randValue(field);
+        p = FieldPredicate.in(key, field, in);
+        for (int i = 0; i < rows.length; i++)
+          for (Object o : in)
+            results[i] |= compare(values.get(i)[field], o) == 0;
+        break;
+      default:
+        String prefix = x == null ? "" : (String) x;
+        p = FieldPredicate.prefix(key, field, prefix);
+        for (int i = 0; i < rows.length; i++) {
+          Object o = values.get(i)[field];
+          results[i] = o != null && ((String) o).startsWith(prefix);
+        }
+        break;
+    }
+    return new Expected(p, results);
+  }
+
+  @Test
+  public void testMatches() throws IOException {
+    for (int n = 0; n < numTests / 16; n++) {
+      createRows();
+      for (int m = 0; m < 4; m++) {
+        Expected e = randPredicate();
+        for (int i = 0; i < rows.length; i++)
+          assertEquals(e.results[i], e.predicate.matches(rows[i]));
+      }
+    }
+  }
+
+  @Test
+  public void testEvaluate() throws IOException {
+    for (int n = 0; n < numTests / 16; n++) {
+      createRows();
+      Expected[] e = new Expected[r.nextInt(4)];
+      FieldPredicate[] p = new FieldPredicate[e.length];
+      for (int j = 0; j < e.length; j++) {
+        e[j] = randPredicate();
+        p[j] = e[j].predicate;
+      }
+
+      boolean[] results = new boolean[rows.length];
+      int count = FieldPredicate.evaluate(rows, results, p), expectedCount = 0;
+      for (int i = 0; i < rows.length; i++) {
+        boolean expected = true;
+        for (Expected x : e)
+          expected &= x.results[i];
+        assertEquals(expected, results[i]);
+        if (expected)
+          expectedCount++;
+      }
+      assertEquals(expectedCount, count);
+
+      if (e.length == 1) {
+        assertEquals(count, p[0].evaluate(rows, results));
+        for (int i = 0; i < rows.length; i++)
+          assertEquals(e[0].results[i], results[i]);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPrefixRequiresUTF8() throws IOException {
+    StructRowKey k = new StructRowKey(new RowKey[] { new IntegerRowKey() });
+    FieldPredicate.prefix(k, 0, 1);
+  }
+}
@@ -18,11 +18,17 @@
 
 package orderly;
 
+import java.io.IOException;
+
 import orderly.FixedLongWritableRowKey;
 import orderly.RowKey;
 
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.LongWritable;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 public class TestFixedLongWritableRowKey extends RandomRowKeyTestCase
 {
   @Override
@@ -40,4 +46,30 @@ public class TestFixedLongWritableRowKey extends RandomRowKeyTestCase
 
     return ((x > y) ? 1 : 0) - ((y > x) ? 1 : 0);
   }
+
+  @Override
+  public void testSerialization(Object o, ImmutableBytesWritable w) 
+    throws IOException 
+  {
+    super.testSerialization(o, w);
+    testPrimitive(o);
+  }
+
+  /** Verifies the primitive long API produces the same bytes as the 
+   * object API, and deserializes the same value.
+   */
+  public void testPrimitive(Object o) throws IOException {
+    FixedLongWritableRowKey k = (FixedLongWritableRowKey) key;
+    byte[] b = key.serialize(o);
+    ImmutableBytesWritable w = new ImmutableBytesWritable(new byte[b.length]);
+
+    k.serializeLong(k.getLong(o), w);
+    assertBoundsEquals(w, b.length, 0);
+    assertArrayEquals("Primitive serialization mismatch", b, w.get());
+
+    w.set(b);
+    assertEquals("Primitive data corrupt", k.getLong(o), 
+        k.deserializeLong(w));
+    assertBoundsEquals(w, b.length, 0);
+  }
 }
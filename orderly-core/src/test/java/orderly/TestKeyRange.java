@@ -0,0 +1,260 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestKeyRange
+{
+  /* Small value domains, so that every combination of field values can be
+   * serialized and checked against each scan range */
+  private static final Object[][] DOMAINS = {
+    { null, -300, -1, 0, 1, 2, 300 },
+    { null, "", "a", "ab", "b", "é" },
+    { null, BigDecimal.ZERO, BigDecimal.ONE, new BigDecimal("1.5"), 
+      new BigDecimal("-1"), new BigDecimal("12") },
+    { null, -1L, 0L, 1L, Long.MAX_VALUE }
+  };
+
+  protected Random r;
+  protected int numTests;
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+  }
+
+  @Test
+  public void testPrefixEnd() {
+    assertArrayEquals(new byte[] { 1, 3 }, 
+        KeyRange.getPrefixEnd(new byte[] { 1, 2 }));
+    assertArrayEquals(new byte[] { 2 }, 
+        KeyRange.getPrefixEnd(new byte[] { 1, (byte) 0xff, (byte) 0xff }));
+    assertEquals(0, KeyRange.getPrefixEnd(new byte[] { (byte) 0xff }).length);
+    assertEquals(0, KeyRange.getPrefixEnd(new byte[0]).length);
+  }
+
+  @Test
+  public void testContains() {
+    KeyRange k = KeyRange.prefix(new byte[] { 1, 2 });
+    assertTrue(k.contains(new byte[] { 1, 2 }));
+    assertTrue(k.contains(new byte[] { 1, 2, (byte) 0xff }));
+    assertFalse(k.contains(new byte[] { 1 }));
+    assertFalse(k.contains(new byte[] { 1, 3 }));
+    assertFalse(k.isEmpty());
+
+    assertTrue(KeyRange.ALL.contains(new byte[0]));
+    assertTrue(KeyRange.ALL.contains(new byte[] { (byte) 0xff }));
+    assertFalse(KeyRange.NONE.contains(new byte[] { 0 }));
+    assertTrue(KeyRange.NONE.isEmpty());
+  }
+
+  private RowKey createField(int i) {
+    switch (i) {
+      case 0: return new IntegerRowKey();
+      case 1: return new StringRowKey();
+      case 2: return new BigDecimalRowKey();
+      default: return new LongRowKey();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compare(Object o1, Object o2) {
+    if (o1 == null || o2 == null)
+      return (o1 != null ? 1 : 0) - (o2 != null ? 1 : 0);
+    return ((Comparable<Object>) o1).compareTo(o2);
+  }
+
+  private static boolean inRange(Object x, FieldRange range) {
+    if (range.hasLowerBound()) {
+      int c = compare(x, range.getLowerBound());
+      if (c < 0 || (c == 0 && !range.isLowerInclusive()))
+        return false;
+    }
+    if (range.hasUpperBound()) {
+      int c = compare(x, range.getUpperBound());
+      if (c > 0 || (c == 0 && !range.isUpperInclusive()))
+        return false;
+    }
+    return true;
+  }
+
+  private Object randValue(int field) {
+    return DOMAINS[field][r.nextInt(DOMAINS[field].length)];
+  }
+
+  private FieldRange randRange(int field) {
+    Object lo = randValue(field), hi = randValue(field);
+    switch (r.nextInt(9)) {
+      case 0: return FieldRange.all();
+      case 1: return FieldRange.closed(lo, hi);
+      case 2: return FieldRange.open(lo, hi);
+      case 3: return FieldRange.closedOpen(lo, hi);
+      case 4: return FieldRange.openClosed(lo, hi);
+      case 5: return FieldRange.atLeast(lo);
+      case 6: return FieldRange.greaterThan(lo);
+      case 7: return FieldRange.atMost(hi);
+      default: return FieldRange.lessThan(hi);
+    }
+  }
+
+  private static void addRows(Object[] row, int i, List<Object[]> rows) {
+    if (i == row.length) {
+      rows.add(row.clone());
+      return;
+    }
+    for (Object x : DOMAINS[i]) {
+      row[i] = x;
+      addRows(row, i + 1, rows);
+    }
+  }
+
+  private static String orders(RowKey[] fields) {
+    StringBuilder sb = new StringBuilder();
+    for (RowKey f : fields)
+      sb.append(f.getOrder() == Order.ASCENDING ? 'A' : 'D');
+    return sb.toString();
+  }
+
+  private StructRowKey randStruct() {
+    RowKey[] fields = new RowKey[DOMAINS.length];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i] = createField(i);
+      if (r.nextBoolean())
+        fields[i].setOrder(Order.DESCENDING);
+    }
+    StructRowKey key = new StructRowKey(fields);
+    key.setTermination(r.nextBoolean() ? Termination.AUTO : Termination.MUST);
+    return key;
+  }
+
+  @Test
+  public void testStructScanRange() throws IOException {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    addRows(new Object[DOMAINS.length], 0, rows);
+
+    for (int n = 0; n < Math.max(1, numTests / 256); n++) {
+      StructRowKey key = randStruct();
+      RowKey[] fields = key.getFields();
+
+      List<byte[]> serialized = new ArrayList<byte[]>();
+      for (Object[] row : rows)
+        serialized.add(key.serialize(row));
+
+      for (int q = 0; q < 64; q++) {
+        int k = r.nextInt(fields.length + 1);
+        Object[] prefix = new Object[k];
+        for (int i = 0; i < k; i++)
+          prefix[i] = randValue(i);
+        FieldRange range = k < fields.length && r.nextBoolean() ? 
+          randRange(k) : null;
+
+        KeyRange scan = key.getScanRange(prefix, range);
+        for (int j = 0; j < rows.size(); j++) {
+          Object[] row = rows.get(j);
+          boolean expected = range == null || inRange(row[k], range);
+          for (int i = 0; i < k && expected; i++)
+            expected = compare(row[i], prefix[i]) == 0;
+
+          byte[] b = serialized.get(j);
+          assertEquals("Row " + Arrays.toString(row) + " " 
+              + Bytes.toStringBinary(b) + " prefix " + Arrays.toString(prefix)
+              + " range " + range + " orders " + orders(fields) + " in " 
+              + scan, 
+              expected, scan.contains(b));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testStructScanRanges() throws IOException {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    addRows(new Object[DOMAINS.length], 0, rows);
+
+    for (int n = 0; n < Math.max(1, numTests / 512); n++) {
+      StructRowKey key = randStruct();
+      List<byte[]> serialized = new ArrayList<byte[]>();
+      for (Object[] row : rows)
+        serialized.add(key.serialize(row));
+
+      for (int q = 0; q < 32; q++) {
+        /* Disjunction of ranges over the field following a random prefix */
+        int k = r.nextInt(DOMAINS.length);
+        Object[] prefix = new Object[k];
+        for (int i = 0; i < k; i++)
+          prefix[i] = randValue(i);
+        FieldRange[] ranges = new FieldRange[r.nextInt(5)];
+        for (int i = 0; i < ranges.length; i++)
+          ranges[i] = r.nextBoolean() ? randRange(k) : 
+            FieldRange.singleton(randValue(k));
+
+        /* IN-list of random prefixes */
+        List<Object[]> prefixes = new ArrayList<Object[]>();
+        for (int i = r.nextInt(5); i > 0; i--) {
+          Object[] p = new Object[r.nextInt(DOMAINS.length + 1)];
+          for (int j = 0; j < p.length; j++)
+            p[j] = randValue(j);
+          prefixes.add(p);
+        }
+
+        KeyRangeSet disjunction = key.getScanRanges(prefix, ranges),
+                    in = key.getScanRanges(prefixes);
+        for (int j = 0; j < rows.size(); j++) {
+          Object[] row = rows.get(j);
+          boolean matchesPrefix = true;
+          for (int i = 0; i < k; i++)
+            matchesPrefix &= compare(row[i], prefix[i]) == 0;
+          boolean inRanges = false;
+          for (FieldRange range : ranges)
+            inRanges |= inRange(row[k], range);
+
+          boolean inList = false;
+          for (Object[] p : prefixes) {
+            boolean m = true;
+            for (int i = 0; i < p.length; i++)
+              m &= compare(row[i], p[i]) == 0;
+            inList |= m;
+          }
+
+          byte[] b = serialized.get(j);
+          assertEquals(matchesPrefix && inRanges, disjunction.contains(b));
+          assertEquals(inList, in.contains(b));
+        }
+      }
+    }
+  }
+}
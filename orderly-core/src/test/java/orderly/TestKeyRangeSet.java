@@ -0,0 +1,179 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestKeyRangeSet
+{
+  /* Byte values that exercise the empty, minimum and maximum byte cases of
+   * range boundaries and prefix successors */
+  private static final byte[] ALPHABET = { 0x00, 0x01, 0x7f, (byte) 0xfe, 
+    (byte) 0xff };
+
+  protected Random r;
+  protected int numTests;
+  private List<byte[]> keys;
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+
+    /* Every key of up to three bytes over the alphabet */
+    keys = new ArrayList<byte[]>();
+    addKeys(new byte[0]);
+  }
+
+  private void addKeys(byte[] prefix) {
+    keys.add(prefix);
+    if (prefix.length == 3)
+      return;
+    for (byte b : ALPHABET) {
+      byte[] k = new byte[prefix.length + 1];
+      System.arraycopy(prefix, 0, k, 0, prefix.length);
+      k[prefix.length] = b;
+      addKeys(k);
+    }
+  }
+
+  private byte[] randKey() {
+    byte[] b = new byte[r.nextInt(4)];
+    for (int i = 0; i < b.length; i++)
+      b[i] = ALPHABET[r.nextInt(ALPHABET.length)];
+    return b;
+  }
+
+  private KeyRange randRange() {
+    switch (r.nextInt(8)) {
+      case 0:
+        return KeyRange.prefix(randKey());
+      case 1:
+        return KeyRange.NONE;
+      default:
+        return new KeyRange(randKey(), randKey());
+    }
+  }
+
+  private List<KeyRange> randRanges() {
+    List<KeyRange> l = new ArrayList<KeyRange>();
+    for (int i = r.nextInt(6); i > 0; i--)
+      l.add(randRange());
+    return l;
+  }
+
+  private static boolean contains(List<KeyRange> ranges, byte[] b) {
+    for (KeyRange range : ranges)
+      if (range.contains(b))
+        return true;
+    return false;
+  }
+
+  /* Checks that the set is sorted, disjoint and non-adjacent */
+  private static void assertNormalized(KeyRangeSet s) {
+    KeyRange prev = null;
+    for (KeyRange range : s) {
+      assertTrue(s.toString(), !range.isEmpty());
+      if (prev != null) {
+        assertTrue(s.toString(), !prev.isStopUnbounded());
+        assertTrue(s.toString(), RowKeyComparator.INSTANCE.compare(
+              prev.getStop(), range.getStart()) < 0);
+      }
+      prev = range;
+    }
+  }
+
+  @Test
+  public void testOf() {
+    for (int n = 0; n < numTests / 8; n++) {
+      List<KeyRange> ranges = randRanges();
+      KeyRangeSet s = KeyRangeSet.of(ranges);
+      assertNormalized(s);
+      for (byte[] key : keys) {
+        assertEquals(ranges + " " + s, contains(ranges, key), s.contains(key));
+        assertNextRange(s, key);
+      }
+    }
+  }
+
+  /* Checks that getNextRange finds the range containing the key, or else the
+   * first range starting after the key */
+  private static void assertNextRange(KeyRangeSet s, byte[] key) {
+    KeyRange expected = null;
+    for (KeyRange range : s) {
+      if (range.contains(key) || RowKeyComparator.INSTANCE.compare(
+            range.getStart(), key) > 0) 
+      {
+        expected = range;
+        break;
+      }
+    }
+    assertEquals(s + " " + Bytes.toStringBinary(key), expected, 
+        s.getNextRange(key, 0, key.length));
+  }
+
+  @Test
+  public void testUnionIntersect() {
+    for (int n = 0; n < numTests / 8; n++) {
+      List<KeyRange> a = randRanges(), b = randRanges();
+      KeyRangeSet sa = KeyRangeSet.of(a), sb = KeyRangeSet.of(b),
+                  union = sa.union(sb), intersection = sa.intersect(sb);
+      assertNormalized(union);
+      assertNormalized(intersection);
+      assertEquals(union, sb.union(sa));
+      assertEquals(intersection, sb.intersect(sa));
+
+      for (byte[] key : keys) {
+        boolean ca = contains(a, key), cb = contains(b, key);
+        assertEquals(ca || cb, union.contains(key));
+        assertEquals(ca && cb, intersection.contains(key));
+      }
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    /* Overlapping and adjacent ranges merge into a single range */
+    KeyRangeSet s = KeyRangeSet.of(
+        new KeyRange(new byte[] { 5 }, new byte[] { 7 }),
+        new KeyRange(new byte[] { 1 }, new byte[] { 3 }),
+        new KeyRange(new byte[] { 3 }, new byte[] { 4 }),
+        new KeyRange(new byte[] { 6 }, new byte[] { 9 }));
+    assertEquals(2, s.size());
+    assertEquals(new KeyRange(new byte[] { 1 }, new byte[] { 4 }), 
+        s.getRanges().get(0));
+    assertEquals(new KeyRange(new byte[] { 5 }, new byte[] { 9 }), 
+        s.getRanges().get(1));
+
+    assertEquals(KeyRangeSet.ALL, s.union(KeyRangeSet.ALL));
+    assertEquals(s, s.intersect(KeyRangeSet.ALL));
+    assertTrue(s.intersect(KeyRangeSet.NONE).isEmpty());
+  }
+}
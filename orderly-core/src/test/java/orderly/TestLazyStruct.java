@@ -0,0 +1,77 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+
+import orderly.LazyStruct;
+import orderly.StructRowKey;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestLazyStruct extends TestStructRowKey
+{
+  @Override
+  public Object deserialize(ImmutableBytesWritable w) throws IOException 
+  {
+    int offset = w.getOffset(), 
+        length = w.getLength();
+    LazyStruct s = ((StructRowKey)key).deserializeLazy(w);
+    assertEquals(offset, w.getOffset());
+    assertEquals(length, w.getLength());
+
+    /* Read a random field, which must not read any other field */
+    if (s.size() > 0) {
+      int i = r.nextInt(s.size());
+      Object o = s.get(i);
+      for (int j = 0; j < s.size(); j++)
+        assertEquals(i == j, s.isRead(j));
+      assertSame(o, s.get(i));
+    }
+
+    Object[] o = s.toArray();
+    RowKeyUtils.seek(w, s.getSerializedLength());
+    return o;
+  }
+
+  @Test
+  public void testReuse() throws IOException {
+    StructRowKey struct = (StructRowKey) createRowKey();
+    if (struct.getFields().length == 0)
+      return;
+
+    Object[] o1 = (Object[]) createObject(),
+             o2 = (Object[]) createObject();
+    LazyStruct s = struct.deserializeLazy(
+        new ImmutableBytesWritable(struct.serialize(o1)));
+    assertEquals(0, fieldTests[0].compareTo(o1[0], s.get(0)));
+    assertTrue(s.isRead(0));
+
+    assertSame(s, struct.deserializeLazy(
+          new ImmutableBytesWritable(struct.serialize(o2))));
+    assertFalse(s.isRead(0));
+    assertEquals(0, fieldTests[0].compareTo(o2[0], s.get(0)));
+  }
+}
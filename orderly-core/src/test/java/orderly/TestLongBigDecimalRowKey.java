@@ -0,0 +1,82 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/** Tests BigDecimalRowKey with values whose unscaled value fits in a long,
+ * which are serialized and deserialized without an intermediate String.
+ */
+public class TestLongBigDecimalRowKey extends TestBigDecimalRowKey
+{
+  @Override
+  public Object createObject() {
+    if (r.nextInt(128) == 0)
+      return null;
+
+    /* Up to 20 significant digits, to cover both sides of the long path */
+    int digits = 1 + r.nextInt(20);
+    BigInteger i = new BigInteger(70, r).mod(BigInteger.TEN.pow(digits));
+    if (r.nextInt(8) == 0) 
+      i = i.multiply(BigInteger.TEN.pow(r.nextInt(12)));
+    if (r.nextBoolean())
+      i = i.negate();
+
+    int scale;
+    switch (r.nextInt(4)) {
+      case 0:
+        scale = r.nextInt(Integer.MAX_VALUE);
+        if (r.nextBoolean()) scale = -scale;
+        break;
+
+      default:
+        scale = r.nextInt(40) - 20;
+    }
+    return new BigDecimal(i, scale);
+  }
+
+  @Test
+  public void testLongEncoding() throws IOException {
+    for (int n = 0; n < 1024; n++) {
+      Object o = createObject();
+      Order order = r.nextBoolean() ? Order.ASCENDING : Order.DESCENDING;
+      Termination term = r.nextBoolean() ? Termination.AUTO : 
+        Termination.MUST;
+
+      RowKey expected = new BigDecimalRowKey() {
+        @Override
+        protected PreparedDecimal prepareLong(BigDecimal d) { return null; }
+      }.setOrder(order).setTermination(term),
+             actual = new BigDecimalRowKey().setOrder(order)
+               .setTermination(term);
+
+      byte[] b = expected.serialize(o);
+      assertEquals(b.length, actual.getSerializedLength(o));
+      assertArrayEquals(b, actual.serialize(o));
+      assertEquals(0, compareTo(o, actual.deserialize(b)));
+    }
+  }
+}
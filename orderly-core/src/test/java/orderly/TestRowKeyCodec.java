@@ -0,0 +1,161 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import orderly.Order;
+import orderly.RowKey;
+import orderly.RowKeyCodec;
+import orderly.StructRowKey;
+import orderly.Termination;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestRowKeyCodec extends TestStructRowKey
+{
+  protected RowKeyCodec codec;
+
+  @Override
+  public RowKeyTestCase setRowKey(RowKey key) {
+    super.setRowKey(key);
+    codec = key == null ? null : new RowKeyCodec(key);
+    return this;
+  }
+
+  @Override
+  public void serialize(Object o, ImmutableBytesWritable w) throws IOException
+  {
+    byte[] expected = key.serialize(o);
+    assertEquals("Length mismatch", expected.length, 
+        codec.getSerializedLength(o));
+
+    int offset = w.getOffset();
+    codec.serialize(o, w);
+    assertBoundsEquals(w, offset + expected.length, 
+        w.getLength() + w.getOffset() - offset - expected.length);
+    assertArrayEquals("Codec serialization mismatch", expected, 
+        Arrays.copyOfRange(w.get(), offset, offset + expected.length));
+  }
+
+  @Override
+  public Object deserialize(ImmutableBytesWritable w) throws IOException {
+    ImmutableBytesWritable s = new ImmutableBytesWritable(w.get(), 
+        w.getOffset(), w.getLength());
+    codec.skip(s);
+
+    Object o = codec.deserialize(w);
+    assertBoundsEquals(w, s.getOffset(), s.getLength());
+    return o;
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    setRowKey(createRowKey().setOrder(r.nextBoolean() ? Order.ASCENDING :
+          Order.DESCENDING).setTermination(r.nextBoolean() ? Termination.MUST : 
+          Termination.AUTO));
+
+    final int numObjects = 128;
+    final Object[] objects = new Object[numObjects];
+    final byte[][] expected = new byte[numObjects][];
+    for (int i = 0; i < numObjects; i++) {
+      objects[i] = createObject();
+      expected[i] = key.serialize(objects[i]);
+    }
+
+    final RowKeyCodec c = codec;
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int t = 0; t < 8; t++) {
+      final int seed = t;
+      tasks.add(new Callable<Void>() {
+        public Void call() throws IOException {
+          for (int n = 0; n < 8 * numObjects; n++) {
+            int i = (n * 31 + seed) % numObjects;
+            assertArrayEquals("Concurrent serialization mismatch", 
+                expected[i], c.serialize(objects[i]));
+            assertArrayEquals("Concurrent deserialization mismatch", 
+                expected[i], c.serialize(c.deserialize(expected[i])));
+          }
+          return null;
+        }
+      });
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+    try {
+      for (Future<Void> f : pool.invokeAll(tasks))
+        f.get();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /** Asserts that no object in two deserializations of the same bytes is 
+   * shared, other than immutable objects.
+   */
+  private static void assertNotReused(Object a, Object b) {
+    if (a == null || a instanceof Number || a instanceof String || 
+        a instanceof java.math.BigDecimal)
+      return;
+    if (a instanceof byte[] && ((byte[]) a).length == 0)
+      return;
+    assertNotSame("Deserialized object re-used", a, b);
+    if (a instanceof Object[])
+      for (int i = 0; i < ((Object[]) a).length; i++)
+        assertNotReused(((Object[]) a)[i], ((Object[]) b)[i]);
+  }
+
+  @Test
+  public void testNoReuse() throws IOException {
+    for (int i = 0; i < 64; i++) {
+      setRowKey(createRowKey());
+      Object o = createObject();
+      byte[] b = codec.serialize(o);
+      assertNotReused(codec.deserialize(b), codec.deserialize(b));
+    }
+    assertTrue(codec.getRowKey().getReuse());
+  }
+
+  @Test
+  public void testImmutable() throws IOException {
+    StructRowKey s = (StructRowKey) createRowKey();
+    setRowKey(s);
+    Object o = createObject();
+    byte[] expected = s.serialize(o);
+
+    s.setOrder(s.getOrder() == Order.ASCENDING ? Order.DESCENDING : 
+        Order.ASCENDING);
+    s.setTermination(Termination.MUST);
+    assertArrayEquals("Codec modified by row key", expected, 
+        codec.serialize(o));
+  }
+}
@@ -0,0 +1,108 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import orderly.RowKeyComparator;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestRowKeyComparator
+{
+  protected Random r;
+  protected int numTests;
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+  }
+
+  /* Reference implementation */
+  private static int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, 
+      int l2) 
+  {
+    for (int i = 0; i < Math.min(l1, l2); i++) {
+      int d = (b1[s1 + i] & 0xff) - (b2[s2 + i] & 0xff);
+      if (d != 0)
+        return Integer.signum(d);
+    }
+    return Integer.signum(l1 - l2);
+  }
+
+  private byte[] randBytes(int len) {
+    byte[] b = new byte[len];
+    r.nextBytes(b);
+    return b;
+  }
+
+  @Test
+  public void testCompare() {
+    RowKeyComparator c = RowKeyComparator.INSTANCE;
+
+    for (int i = 0; i < numTests; i++) {
+      /* Share a random-length prefix, so that differences fall at every 
+       * position within (and beyond) a word. 
+       */
+      int prefix = r.nextInt(24), s1 = r.nextInt(8), s2 = r.nextInt(8);
+      byte[] common = randBytes(prefix),
+             b1 = randBytes(s1 + prefix + r.nextInt(12)),
+             b2 = randBytes(s2 + prefix + r.nextInt(12));
+      System.arraycopy(common, 0, b1, s1, prefix);
+      System.arraycopy(common, 0, b2, s2, prefix);
+      int l1 = b1.length - s1, l2 = b2.length - s2;
+
+      int expected = compare(b1, s1, l1, b2, s2, l2);
+      assertEquals(expected, Integer.signum(c.compare(b1, s1, l1, b2, s2, 
+              l2)));
+      assertEquals(expected, Integer.signum(RowKeyComparator.compareBytesJava(
+              b1, s1, l1, b2, s2, l2)));
+      assertEquals(expected, Integer.signum(c.compare(
+              new ImmutableBytesWritable(b1, s1, l1), 
+              new ImmutableBytesWritable(b2, s2, l2))));
+      assertEquals(-expected, Integer.signum(c.compare(b2, s2, l2, b1, s1, 
+              l1)));
+
+      byte[] a1 = Arrays.copyOfRange(b1, s1, b1.length),
+             a2 = Arrays.copyOfRange(b2, s2, b2.length);
+      assertEquals(expected, Integer.signum(c.compare(a1, a2)));
+      assertEquals(0, c.compare(a1, a1.clone()));
+    }
+  }
+
+  @Test
+  public void testUnsigned() {
+    byte[] lo = { 0x7f }, hi = { (byte) 0x80 };
+    assertTrue(RowKeyComparator.INSTANCE.compare(lo, hi) < 0);
+    assertTrue(RowKeyComparator.compareBytesJava(lo, 0, 1, hi, 0, 1) < 0);
+    assertTrue(RowKeyComparator.INSTANCE.compare(lo, new byte[] { 0x7f, 0 }) 
+        < 0);
+    assertEquals(0, RowKeyComparator.INSTANCE.compare(RowKeyUtils.EMPTY, 
+          new byte[0]));
+  }
+}
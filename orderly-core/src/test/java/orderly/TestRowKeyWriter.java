@@ -0,0 +1,99 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import orderly.RowKey;
+import orderly.RowKeyWriter;
+import orderly.Termination;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestRowKeyWriter extends TestStructRowKey
+{
+  protected RowKeyWriter writer;
+
+  @Override
+  public RowKeyTestCase setRowKey(RowKey key) {
+    super.setRowKey(key);
+    writer = new RowKeyWriter(r.nextInt(4));
+    return this;
+  }
+
+  @Override
+  public void serialize(Object o, ImmutableBytesWritable w) throws IOException
+  {
+    byte[] expected = key.serialize(o);
+
+    /* Start with a random prefix so the key is appended at a random offset */
+    byte[] prefix = new byte[r.nextInt(8)];
+    r.nextBytes(prefix);
+    writer.reset().write(prefix);
+    key.serialize(o, writer);
+
+    assertEquals("Length mismatch", prefix.length + expected.length, 
+        writer.getLength());
+    byte[] b = writer.toByteArray();
+    assertArrayEquals("Prefix modified", prefix, 
+        Arrays.copyOfRange(b, 0, prefix.length));
+    assertArrayEquals("Writer serialization mismatch", expected, 
+        Arrays.copyOfRange(b, prefix.length, b.length));
+
+    System.arraycopy(expected, 0, w.get(), w.getOffset(), expected.length);
+    RowKeyUtils.seek(w, expected.length);
+  }
+
+  @Test
+  public void testAppend() throws IOException {
+    /* Keys must be terminated to be skipped within the concatenated bytes */
+    setRowKey(createRowKey().setTermination(Termination.MUST));
+    RowKeyWriter writer = new RowKeyWriter(0);
+    ImmutableBytesWritable w = new ImmutableBytesWritable();
+
+    for (int n = 0; n < 16; n++) {
+      writer.reset();
+      int numKeys = r.nextInt(8), 
+          len = 0;
+      byte[][] expected = new byte[numKeys][];
+      for (int i = 0; i < numKeys; i++) {
+        Object o = createObject();
+        expected[i] = key.serialize(o);
+        writer.write(key, o);
+        len += expected[i].length;
+        assertEquals(len, writer.getLength());
+      }
+
+      writer.get(w);
+      assertEquals(0, w.getOffset());
+      assertEquals(len, w.getLength());
+      for (int i = 0; i < numKeys; i++) {
+        int offset = w.getOffset();
+        key.skip(w);
+        assertArrayEquals(expected[i], Arrays.copyOfRange(w.get(), offset, 
+              w.getOffset()));
+      }
+    }
+  }
+}
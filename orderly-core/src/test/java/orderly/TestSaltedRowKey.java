@@ -0,0 +1,133 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSaltedRowKey extends TestStructRowKey
+{
+  @Override
+  public RowKey createRowKey() {
+    StructRowKey struct = (StructRowKey) super.createRowKey();
+    int numBuckets = 1 + r.nextInt(256);
+    if (fieldTests.length == 0 || r.nextBoolean())
+      return new SaltedRowKey(struct, numBuckets);
+
+    int[] hashFields = new int[1 + r.nextInt(fieldTests.length)];
+    for (int i = 0; i < hashFields.length; i++)
+      hashFields[i] = r.nextInt(fieldTests.length);
+    return new SaltedRowKey(struct, numBuckets, hashFields);
+  }
+
+  /* Salted row keys only sort in the order of their values within a bucket,
+   * and otherwise sort by bucket */
+  @Override
+  public void testSort(Object o1, ImmutableBytesWritable w1, Object o2, 
+      ImmutableBytesWritable w2) throws IOException
+  {
+    SaltedRowKey k = (SaltedRowKey) key;
+    int b1 = SaltedRowKey.getBucket(w1.get(), w1.getOffset()),
+        b2 = SaltedRowKey.getBucket(w2.get(), w2.getOffset());
+    assertEquals(k.getBucket(o1), b1);
+    assertEquals(k.getBucket(o2), b2);
+    assertTrue(b1 < k.getNumBuckets() && b2 < k.getNumBuckets());
+
+    if (b1 == b2) {
+      super.testSort(o1, w1, o2, w2);
+    } else {
+      assertEquals(Integer.signum(b1 - b2), Integer.signum(Bytes.compareTo(
+              w1.get(), w1.getOffset(), w1.getLength(), w2.get(), 
+              w2.getOffset(), w2.getLength())));
+    }
+  }
+
+  private static StructRowKey createBucketStruct() {
+    return new StructRowKey(new RowKey[] { new LongRowKey(), 
+      new StringRowKey(), new IntegerRowKey() });
+  }
+
+  /* The bucket of a value must not depend on whether the order and 
+   * termination are set before or after the salted row key is created */
+  @Test
+  public void testBucketFormat() throws IOException {
+    for (int hashed = 0; hashed < 2; hashed++) {
+      StructRowKey s1 = createBucketStruct(), s2 = createBucketStruct();
+      s2.setOrder(Order.DESCENDING);
+      s2.setTermination(Termination.MUST);
+      s2.getFields()[1].setTermination(Termination.SHOULD_NOT);
+
+      SaltedRowKey k1 = hashed == 0 ? new SaltedRowKey(s1, 64) :
+        new SaltedRowKey(s1, 64, 1, 2),
+                   k2 = hashed == 0 ? new SaltedRowKey(s2, 64) :
+        new SaltedRowKey(s2, 64, 1, 2),
+                   k3 = k1.clone();
+      k1.setOrder(Order.DESCENDING);
+      k1.setTermination(Termination.MUST);
+      s1.getFields()[1].setTermination(Termination.SHOULD_NOT);
+
+      for (int i = 0; i < numTests / 16; i++) {
+        Object[] o = new Object[] { r.nextLong(), 
+          Integer.toString(r.nextInt(1000)), r.nextInt() };
+        int bucket = k3.getBucket(o);
+        assertEquals(bucket, k1.getBucket(o));
+        assertEquals(bucket, k2.getBucket(o));
+        assertEquals(bucket, SaltedRowKey.getBucket(k1.serialize(o), 0));
+        assertEquals(bucket, SaltedRowKey.getBucket(k2.serialize(o), 0));
+        assertEquals(bucket, SaltedRowKey.getBucket(k3.serialize(o), 0));
+        assertArrayEquals(k1.serialize(o), k2.serialize(o));
+      }
+    }
+  }
+
+  @Test
+  public void testBucketRanges() throws IOException {
+    StructRowKey struct = createBucketStruct();
+    SaltedRowKey k = new SaltedRowKey(struct, 16, 0);
+
+    for (int i = 0; i < numTests / 16; i++) {
+      Object[] o = new Object[] { r.nextLong(), 
+        Integer.toString(r.nextInt(1000)), r.nextInt() };
+      byte[] b = k.serialize(o);
+      assertEquals(struct.serialize(o).length + 1, b.length);
+
+      /* A prefix including the hashed field determines the bucket */
+      for (int n = 0; n <= o.length; n++) {
+        Object[] prefix = new Object[n];
+        System.arraycopy(o, 0, prefix, 0, n);
+        KeyRange[] ranges = k.getBucketRanges(prefix);
+        assertEquals(n == 0 ? 16 : 1, ranges.length);
+        if (n > 0)
+          assertEquals(SaltedRowKey.getBucket(b, 0), k.getPrefixBucket(prefix));
+
+        int containing = 0;
+        for (KeyRange range : ranges)
+          if (range.contains(b))
+            containing++;
+        assertEquals(1, containing);
+      }
+    }
+  }
+}
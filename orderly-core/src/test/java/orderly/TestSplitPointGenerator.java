@@ -0,0 +1,200 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSplitPointGenerator
+{
+  protected Random r;
+  protected int numTests;
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 64);
+  }
+
+  private StructRowKey createStruct() {
+    RowKey[] fields = new RowKey[] { new IntegerRowKey(), new StringRowKey(),
+      new LongRowKey() };
+    for (RowKey field : fields)
+      if (r.nextBoolean())
+        field.setOrder(Order.DESCENDING);
+    return new StructRowKey(fields);
+  }
+
+  /* Values drawn from small domains, so that samples share long prefixes 
+   * and often repeat */
+  private Object[] createValue() {
+    String[] strings = { "", "a", "ab", "abc", "b", "ba", "xyz" };
+    return new Object[] { r.nextInt(8) == 0 ? null : r.nextInt(16) - 8,
+      strings[r.nextInt(strings.length)], (long) r.nextInt(1 << r.nextInt(20))
+    };
+  }
+
+  private List<byte[]> addSamples(SplitPointGenerator g, int n) 
+    throws IOException
+  {
+    List<byte[]> sorted = new ArrayList<byte[]>();
+    for (int i = 0; i < n; i++) {
+      byte[] b = g.getRowKey().serialize(createValue());
+      g.addKey(b);
+      sorted.add(b);
+    }
+    Collections.sort(sorted, RowKeyComparator.INSTANCE);
+    return sorted;
+  }
+
+  private static int compare(byte[] a, byte[] b) {
+    return RowKeyComparator.INSTANCE.compare(a, b);
+  }
+
+  /** Verifies that split keys are increasing, non-empty and as short as 
+   * possible, and returns the number of samples in each region.
+   */
+  private static int[] verifySplits(List<byte[]> sorted, byte[][] splits) {
+    int[] counts = new int[splits.length + 1];
+    int region = 0;
+    byte[] prev = null;
+    for (byte[] b : sorted) {
+      while (region < splits.length && compare(b, splits[region]) >= 0) {
+        byte[] split = splits[region];
+        assertTrue(split.length > 0);
+        if (region > 0)
+          assertTrue(compare(splits[region - 1], split) < 0);
+
+        /* The first row of the region starts with the split key, and a 
+         * shorter prefix would not sort after the last row of the previous
+         * region */
+        if (prev != null && compare(prev, split) < 0 && 
+            split.length <= b.length)
+        {
+          byte[] shorter = Arrays.copyOf(split, split.length - 1);
+          if (Arrays.equals(shorter, Arrays.copyOf(b, shorter.length)))
+            assertTrue(compare(shorter, prev) <= 0);
+        }
+        region++;
+      }
+      counts[region]++;
+      prev = b;
+    }
+    return counts;
+  }
+
+  @Test
+  public void testSplitKeys() throws IOException {
+    for (int i = 0; i < numTests; i++) {
+      SplitPointGenerator g = new SplitPointGenerator(createStruct());
+      List<byte[]> sorted = addSamples(g, 1 + r.nextInt(4096));
+      int numRegions = 1 + r.nextInt(64);
+      byte[][] splits = g.getSplitKeys(numRegions);
+      assertTrue(splits.length < numRegions);
+
+      int[] counts = verifySplits(sorted, splits);
+      for (int region = 0; region < counts.length; region++)
+        assertTrue(counts[region] > 0);
+
+      /* Each split follows the first sample of a balanced boundary, moved 
+       * forward past its duplicates */
+      for (int j = 0, start = 0; j < splits.length; j++) {
+        start += counts[j];
+        byte[] first = sorted.get(start), last = sorted.get(start - 1);
+        assertTrue(compare(last, splits[j]) < 0);
+        assertTrue(compare(splits[j], first) <= 0);
+        assertArrayEquals(splits[j], 
+            SplitPointGenerator.getSeparator(last, first));
+      }
+    }
+  }
+
+  @Test
+  public void testBalance() throws IOException {
+    SplitPointGenerator g = new SplitPointGenerator(new LongRowKey());
+    List<byte[]> sorted = new ArrayList<byte[]>();
+    for (long i = 0; i < 1000; i++) {
+      g.addValue(i * 997 % 1000);
+      sorted.add(g.getRowKey().serialize(i));
+    }
+
+    byte[][] splits = g.getSplitKeys(8);
+    assertEquals(7, splits.length);
+    for (int count : verifySplits(sorted, splits))
+      assertEquals(125, count);
+  }
+
+  @Test
+  public void testSeparator() {
+    assertArrayEquals(new byte[] { 2 }, SplitPointGenerator.getSeparator(
+          new byte[] { 1, 5, 5 }, new byte[] { 2, 0, 0 }));
+    assertArrayEquals(new byte[] { 1, 5, 5, 0 }, 
+        SplitPointGenerator.getSeparator(new byte[] { 1, 5, 5 }, 
+          new byte[] { 1, 5, 5, 0, 7 }));
+    assertArrayEquals(new byte[] { 1, (byte) 0xff }, 
+        SplitPointGenerator.getSeparator(new byte[] { 1, 5, (byte) 0xff }, 
+          new byte[] { 1, (byte) 0xff, 0 }));
+  }
+
+  @Test
+  public void testSalted() throws IOException {
+    for (int i = 0; i < numTests; i++) {
+      int numBuckets = 1 + r.nextInt(16);
+      SaltedRowKey key = new SaltedRowKey(createStruct(), numBuckets, 0);
+      SplitPointGenerator g = new SplitPointGenerator(key);
+      List<byte[]> sorted = addSamples(g, r.nextInt(4096));
+      int numRegions = 1 + r.nextInt(64);
+      byte[][] splits = g.getSplitKeys(numRegions);
+      verifySplits(sorted, splits);
+
+      /* Every bucket boundary is a region boundary if there are enough 
+       * regions, and no region spans a bucket boundary otherwise */
+      List<Integer> bucketSplits = new ArrayList<Integer>();
+      for (int j = 0; j < splits.length; j++) {
+        if (j > 0)
+          assertTrue(compare(splits[j - 1], splits[j]) < 0);
+        if (splits[j].length == 1)
+          bucketSplits.add(SaltedRowKey.getBucket(splits[j], 0));
+        else
+          assertTrue(splits[j].length > 1);
+      }
+
+      if (numRegions <= numBuckets) {
+        assertEquals(numRegions - 1, splits.length);
+        assertEquals(numRegions - 1, bucketSplits.size());
+      } else {
+        assertEquals(numBuckets - 1, bucketSplits.size());
+        for (int bucket = 1; bucket < numBuckets; bucket++)
+          assertEquals(bucket, (int) bucketSplits.get(bucket - 1));
+      }
+    }
+  }
+}
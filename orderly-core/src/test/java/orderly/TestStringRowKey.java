@@ -18,10 +18,21 @@
 
 package orderly;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import orderly.Order;
 import orderly.RowKey;
+import orderly.RowKeyUtils;
 import orderly.StringRowKey;
+import orderly.Termination;
+import orderly.UTF8RowKey;
 
 import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 public class TestStringRowKey extends TestUTF8RowKey
 {
@@ -43,4 +54,44 @@ public class TestStringRowKey extends TestUTF8RowKey
     return super.compareTo(Bytes.toBytes((String)o1), 
         Bytes.toBytes((String)o2));
   }
+
+  /* Random characters, including unpaired surrogates */
+  private String randChars() {
+    char[] c = new char[r.nextInt(16)];
+    for (int i = 0; i < c.length; i++) {
+      switch (r.nextInt(4)) {
+        case 0: c[i] = (char) r.nextInt(0x80); break;
+        case 1: c[i] = (char) (0xd800 + r.nextInt(0x800)); break;
+        default: c[i] = (char) r.nextInt(0x10000);
+      }
+    }
+    return new String(c);
+  }
+
+  @Test
+  public void testEncoding() throws IOException {
+    for (int n = 0; n < 1024; n++) {
+      String s = randChars();
+      byte[] utf8 = Bytes.toBytes(s);
+      assertEquals(utf8.length, RowKeyUtils.getUTF8Length(s));
+
+      Order order = r.nextBoolean() ? Order.ASCENDING : Order.DESCENDING;
+      Termination term = r.nextBoolean() ? Termination.AUTO : 
+        Termination.MUST;
+      RowKey expected = new UTF8RowKey().setOrder(order).setTermination(term),
+             actual = new StringRowKey().setOrder(order).setTermination(term);
+
+      byte[] b = expected.serialize(utf8);
+      assertEquals(b.length, actual.getSerializedLength(s));
+      assertArrayEquals(b, actual.serialize(s));
+      assertArrayEquals(b, actual.serialize(new StringBuilder(s)));
+
+      ByteBuffer d = ByteBuffer.allocateDirect(b.length);
+      actual.serialize(s, d);
+      assertEquals(0, d.remaining());
+      byte[] direct = new byte[b.length];
+      ((ByteBuffer) d.flip()).get(direct);
+      assertArrayEquals(b, direct);
+    }
+  }
 }
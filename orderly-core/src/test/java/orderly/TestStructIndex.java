@@ -0,0 +1,88 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import orderly.RowKey;
+import orderly.StructIndex;
+import orderly.StructRowKey;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestStructIndex extends TestStructRowKey
+{
+  @Override
+  public Object deserialize(ImmutableBytesWritable w) throws IOException 
+  {
+    StructRowKey struct = (StructRowKey) key;
+    RowKey[] fields = struct.getFields();
+    StructIndex index = new StructIndex(struct, w);
+    if (r.nextBoolean())
+      index.indexAll();
+
+    /* Deserialize the fields in random order */
+    Object[] o = new Object[fields.length];
+    List<Integer> order = new ArrayList<Integer>();
+    for (int i = 0; i < o.length; i++)
+      order.add(i);
+    Collections.shuffle(order, r);
+    for (int i : order)
+      o[i] = index.deserialize(i);
+
+    /* Offsets match those found by skipping each field in turn */
+    ImmutableBytesWritable s = new ImmutableBytesWritable(w.get(), 
+        w.getOffset(), w.getLength()),
+                           f = new ImmutableBytesWritable();
+    for (int i = 0; i < fields.length; i++) {
+      assertEquals(s.getOffset(), index.getOffset(i));
+      fields[i].skip(s);
+      assertEquals(s.getOffset() - index.getOffset(i), index.getLength(i));
+      index.getBytes(i, f);
+      assertEquals(index.getOffset(i), f.getOffset());
+      assertEquals(index.getLength(i), f.getLength());
+    }
+    assertEquals(s.getOffset(), index.getOffset(fields.length));
+    assertEquals(s.getOffset() - w.getOffset(), index.getSerializedLength());
+
+    RowKeyUtils.seek(w, index.getSerializedLength());
+    return o;
+  }
+
+  @Test
+  public void testReuse() throws IOException {
+    StructRowKey struct = (StructRowKey) createRowKey();
+    StructIndex index = new StructIndex(struct);
+
+    for (int n = 0; n < 16; n++) {
+      Object[] o = (Object[]) createObject();
+      byte[] b = struct.serialize(o);
+      index.setBytes(b);
+      assertEquals(b.length, index.getSerializedLength());
+      for (int i = o.length - 1; i >= 0; i--)
+        assertEquals(0, fieldTests[i].compareTo(o[i], index.deserialize(i)));
+    }
+  }
+}
@@ -43,6 +43,7 @@ public class TestStructRowKey extends RandomRowKeyTestCase
     prim.add(TestBigDecimalRowKey.class);
     prim.add(TestDoubleRowKey.class);
     prim.add(TestDoubleWritableRowKey.class);
+    prim.add(TestEscapedBytesWritableRowKey.class);
     prim.add(TestFixedIntegerRowKey.class);
     prim.add(TestFixedIntWritableRowKey.class);
     prim.add(TestFixedLongRowKey.class);
@@ -56,6 +57,8 @@ public class TestStructRowKey extends RandomRowKeyTestCase
     prim.add(TestIntegerRowKey.class);
     prim.add(TestIntWritableRowKey.class);
     prim.add(TestLazyBigDecimalRowKey.class);
+    prim.add(TestLazyTextRowKey.class);
+    prim.add(TestLazyUTF8RowKey.class);
     prim.add(TestLongRowKey.class);
     prim.add(TestLongWritableRowKey.class);
     prim.add(TestStringRowKey.class);
@@ -149,7 +152,7 @@ public class TestStructRowKey extends RandomRowKeyTestCase
   @Override
   public Object deserialize(ImmutableBytesWritable w) throws IOException 
   {
-    if (r.nextInt(64) != 0) 
+    if (r.nextInt(64) != 0 || !(key instanceof StructRowKey)) 
       return super.deserialize(w);
 
     Object[] o = new Object[fieldTests.length];
@@ -0,0 +1,128 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package orderly;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+
+import orderly.Order;
+import orderly.StringRowKey;
+import orderly.UTF8View;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestUTF8View extends TestStringRowKey
+{
+  @Override
+  public Object deserialize(ImmutableBytesWritable w) throws IOException {
+    UTF8View v = ((StringRowKey)key).deserializeView(w);
+    if (v == null)
+      return null;
+
+    String s = v.toString();
+    byte[] utf8 = Bytes.toBytes(s);
+    assertEquals(utf8.length, v.length());
+    assertEquals(Arrays.hashCode(utf8), v.hashCode());
+    assertTrue(v.equalsUTF8(utf8));
+    assertEquals(0, v.compareTo(utf8));
+
+    CharBuffer c = CharBuffer.allocate(v.length());
+    CoderResult r = v.decode(Charset.forName("UTF-8").newDecoder(), c);
+    assertFalse(r.isError() || r.isOverflow());
+    c.flip();
+    assertEquals(s, c.toString());
+    return s;
+  }
+
+
+  @Test
+  public void testCompare() throws IOException {
+    StringRowKey k1 = new StringRowKey(),
+                 k2 = new StringRowKey();
+    for (int n = 0; n < 256; n++) {
+      String s1 = (String) createObject(), 
+             s2 = (String) createObject();
+      if (s1 == null || s2 == null)
+        continue;
+
+      k1.setOrder(r.nextBoolean() ? Order.ASCENDING : Order.DESCENDING);
+      k2.setOrder(r.nextBoolean() ? Order.ASCENDING : Order.DESCENDING);
+      byte[] u1 = Bytes.toBytes(s1), 
+             u2 = Bytes.toBytes(s2);
+      UTF8View v1 = k1.deserializeView(new ImmutableBytesWritable(
+            k1.serialize(s1))),
+               v2 = k2.deserializeView(new ImmutableBytesWritable(
+            k2.serialize(s2)));
+
+      int expected = Integer.signum(Bytes.compareTo(u1, u2));
+      assertEquals(expected, Integer.signum(v1.compareTo(u2)));
+      assertEquals(expected, Integer.signum(v1.compareTo(s2)));
+      assertEquals(expected, Integer.signum(v1.compareTo(v2)));
+      assertEquals(expected == 0, v1.equals(v2));
+
+      int p = r.nextInt(u2.length + 1);
+      assertEquals(Bytes.startsWith(u1, Arrays.copyOf(u2, p)), 
+          v1.startsWith(Arrays.copyOf(u2, p)));
+      assertTrue(v1.startsWith(Arrays.copyOf(u1, r.nextInt(u1.length + 1))));
+    }
+  }
+
+  @Test
+  public void testNullAndEmpty() throws IOException {
+    StringRowKey k = new StringRowKey();
+    assertNull(k.deserializeView(new ImmutableBytesWritable(
+            k.serialize(null))));
+    k.setOrder(Order.DESCENDING);
+    assertNull(k.deserializeView(new ImmutableBytesWritable(
+            k.serialize(null))));
+
+    UTF8View v = k.deserializeView(new ImmutableBytesWritable(
+          k.serialize("")));
+    assertEquals(0, v.length());
+    assertEquals("", v.toString());
+    assertTrue(v.startsWith(""));
+    assertTrue(v.compareTo("a") < 0);
+  }
+
+  @Test
+  public void testMalformed() throws IOException {
+    byte[][] malformed = { {(byte)0x80}, {(byte)0xc3}, {(byte)0xc0, 
+      (byte)0x80}, {(byte)0xe0, (byte)0x80, (byte)0x80}, {'a', (byte)0xed,
+      (byte)0xa0, (byte)0x80, 'b'}, {(byte)0xf4, (byte)0x90, (byte)0x80, 
+      (byte)0x80}, {(byte)0xf0, (byte)0x9f, 'x'} };
+    UTF8RowKey k = new UTF8RowKey();
+
+    for (byte[] b : malformed) {
+      UTF8View v = k.deserializeView(new ImmutableBytesWritable(
+            k.serialize(b)));
+      assertEquals(b.length, v.length());
+      assertTrue(v.toString().indexOf('\ufffd') >= 0);
+    }
+  }
+}
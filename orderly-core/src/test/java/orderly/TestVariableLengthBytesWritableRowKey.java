@@ -18,6 +18,8 @@
 
 package orderly;
 
+import java.io.IOException;
+
 import orderly.RowKey;
 import orderly.VariableLengthBytesWritableRowKey;
 
@@ -37,6 +39,9 @@ public class TestVariableLengthBytesWritableRowKey extends RandomRowKeyTestCase
 
     @Override
     public Object createObject() {
+        if (r.nextInt(128) == 0)
+            return null;
+
         final int length = r.nextInt(1000);
         final byte[] randomBytes = new byte[length];
         r.nextBytes(randomBytes);
@@ -116,4 +121,22 @@ public class TestVariableLengthBytesWritableRowKey extends RandomRowKeyTestCase
         assertEquals("123", decode(new byte[]{0x45, 0x61, 0x00})); // stuff after termination nibble (0x01) is ignored
     }
 
+    @Test
+    public void testEncodeBytes() throws IOException {
+        // the byte encoder must match the BCD encoding of the 3 digit decimal representation of each byte
+        for (int i = 0; i < 256; i++) {
+            final byte[] bytes = new byte[i % 8];
+            r.nextBytes(bytes);
+            final StringBuilder digits = new StringBuilder();
+            for (byte b : bytes) {
+                digits.append(String.format("%03d", b & 0xff));
+            }
+
+            final RowKey key = new VariableLengthBytesWritableRowKey();
+            final BytesWritable value = new BytesWritable(bytes);
+            final byte[] expected = encode(digits.toString(), key.getSerializedLength(value));
+            assertArrayEquals(expected, key.serialize(value));
+        }
+    }
+
 }
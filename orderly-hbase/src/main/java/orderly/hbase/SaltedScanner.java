@@ -0,0 +1,291 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.hbase;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import orderly.KeyRange;
+import orderly.SaltedRowKey;
+
+/** Scans a range of {@link SaltedRowKey} values in the order of the wrapped
+ * row key, by scanning the range in every bucket in parallel and merging the
+ * results.
+ *
+ * <p>A range of wrapped row keys is split into one range per bucket with
+ * {@link SaltedRowKey#getBucketRanges(KeyRange)}. Each bucket range is 
+ * scanned by tasks run by an <code>Executor</code>, which read results from
+ * a {@link Source} into a buffer of at most <code>bufferSize</code> results.
+ * The scanner performs a k-way merge of the buffers, returning results in 
+ * the order of their wrapped row keys (see 
+ * {@link SaltedRowKey#compareUnsalted}), so callers see a single ordered 
+ * scan while the bucket scans proceed concurrently.</p>
+ *
+ * <p>Bucket tasks never block: a task returns once its buffer is full, and 
+ * the scanner submits another task for the bucket when the merge has taken 
+ * half of the buffer. Any number of buckets may therefore share an executor
+ * with a few threads, or with other scanners.</p>
+ *
+ * <p>Results are read through a source, which opens an iterator over the 
+ * results of a range of salted row keys (for example, an HBase 
+ * <code>ResultScanner</code> on a table opened for the bucket) and gets the 
+ * row key of a result. Iterators implementing <code>Closeable</code> are 
+ * closed when their bucket scan ends, or when the scanner is closed. An 
+ * exception thrown by a source is rethrown by the scanner, wrapped in a 
+ * <code>RuntimeException</code>.</p>
+ *
+ * <h1> Usage </h1>
+ * <pre>
+ * SaltedScanner&lt;Result&gt; s = new SaltedScanner&lt;Result&gt;(source, 
+ *     executor, key.getBucketRanges(range));
+ * try {
+ *   while (s.hasNext())
+ *     process(s.next());
+ * } finally {
+ *   s.close();
+ * }
+ * </pre>
+ * A scanner may only be read by one thread at a time.
+ */
+public class SaltedScanner<T> implements Iterator<T>, Closeable
+{
+  /** The default number of results buffered for each bucket. */
+  public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+  /** Reads the results in a range of salted row keys. */
+  public interface Source<T>
+  {
+    /** Opens an iterator over the results whose row keys lie in the 
+     * specified range, in the order of their row keys. Called concurrently 
+     * from the tasks scanning each bucket.
+     */
+    Iterator<T> scan(KeyRange range) throws IOException;
+
+    /** Gets the serialized salted row key of a result. */
+    byte[] getRow(T result);
+  }
+
+  /* Marks the end of a bucket scan */
+  private static final Object END = new Object();
+
+  /* Wraps an exception thrown by a bucket scan */
+  private static class Failure
+  {
+    final Throwable cause;
+
+    Failure(Throwable cause) { this.cause = cause; }
+  }
+
+  /* The scan of a bucket range. At most one task runs for a bucket at a 
+   * time, which is ensured by setting running before submitting a task */
+  private class Bucket implements Runnable
+  {
+    final int index;
+    final KeyRange range;
+    final BlockingQueue<Object> buffer = new LinkedBlockingQueue<Object>();
+    final AtomicBoolean running = new AtomicBoolean(true);
+    Iterator<T> it;
+
+    Bucket(int index, KeyRange range) {
+      this.index = index;
+      this.range = range;
+    }
+
+    public void run() {
+      try {
+        if (it == null)
+          it = range.isEmpty() ? new ArrayList<T>().iterator() : 
+            source.scan(range);
+
+        while (!closed) {
+          while (buffer.size() < bufferSize && it.hasNext())
+            buffer.add(it.next());
+          if (!it.hasNext()) {
+            buffer.add(END);
+            closeIterator();
+            return;
+          }
+
+          /* Pause until the merge resumes this bucket, unless the merge took
+           * results before it could see that this task was ending */
+          running.set(false);
+          if (buffer.size() >= bufferSize || !running.compareAndSet(false, 
+                true))
+          {
+            /* A close while this task was running left the iterator to it */
+            if (closed && running.compareAndSet(false, true))
+              closeIterator();
+            return;
+          }
+        }
+        closeIterator();
+      } catch (Throwable t) {
+        buffer.add(new Failure(t));
+        closeIterator();
+      }
+    }
+
+    /* Resumes a paused bucket scan */
+    void resume() {
+      if (!running.get() && running.compareAndSet(false, true))
+        executor.execute(this);
+    }
+
+    void closeIterator() {
+      if (it instanceof Closeable) {
+        try {
+          ((Closeable)it).close();
+        } catch (IOException e) {
+          /* Ignore failures to close a scan we no longer read */
+        }
+      }
+      it = null;
+    }
+  }
+
+  /* The next result of a bucket, ordered by unsalted row key and then by 
+   * bucket */
+  private class Head implements Comparable<Head>
+  {
+    final Bucket bucket;
+    final T result;
+    final byte[] row;
+
+    Head(Bucket bucket, T result) {
+      this.bucket = bucket;
+      this.result = result;
+      this.row = source.getRow(result);
+    }
+
+    public int compareTo(Head o) {
+      int c = SaltedRowKey.compareUnsalted(row, o.row);
+      return c != 0 ? c : bucket.index - o.bucket.index;
+    }
+  }
+
+  private final Source<T> source;
+  private final Executor executor;
+  private final int bufferSize;
+  private final List<Bucket> buckets;
+  private final PriorityQueue<Head> heads;
+  private volatile boolean closed;
+  private boolean started;
+
+  /** Starts scanning each range of salted row keys, with the default 
+   * buffer size.
+   * @param source source of the results of each range
+   * @param executor executor running the scan of each range
+   * @param ranges ranges of salted row keys, usually one per bucket
+   */
+  public SaltedScanner(Source<T> source, Executor executor, 
+      KeyRange... ranges) 
+  {
+    this(source, executor, DEFAULT_BUFFER_SIZE, ranges);
+  }
+
+  /** Starts scanning each range of salted row keys.
+   * @param source source of the results of each range
+   * @param executor executor running the scan of each range
+   * @param bufferSize maximum number of results buffered for each range
+   * @param ranges ranges of salted row keys, usually one per bucket
+   */
+  public SaltedScanner(Source<T> source, Executor executor, int bufferSize,
+      KeyRange... ranges)
+  {
+    if (bufferSize < 1)
+      throw new IllegalArgumentException("Buffer size " + bufferSize);
+    this.source = source;
+    this.executor = executor;
+    this.bufferSize = bufferSize;
+    this.buckets = new ArrayList<Bucket>(ranges.length);
+    this.heads = new PriorityQueue<Head>(Math.max(1, ranges.length));
+
+    for (int i = 0; i < ranges.length; i++) {
+      Bucket b = new Bucket(i, ranges[i]);
+      buckets.add(b);
+      executor.execute(b);
+    }
+  }
+
+  /* Takes the next result of a bucket into the heads, unless the bucket 
+   * scan has ended */
+  @SuppressWarnings("unchecked")
+  private void advance(Bucket b) {
+    Object o;
+    try {
+      o = b.buffer.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+
+    if (o instanceof Failure) {
+      close();
+      throw new RuntimeException(((Failure)o).cause);
+    }
+    if (o == END)
+      return;
+
+    heads.add(new Head(b, (T) o));
+    if (b.buffer.size() <= bufferSize / 2)
+      b.resume();
+  }
+
+  public boolean hasNext() {
+    if (closed)
+      return false;
+    if (!started) {
+      started = true;
+      for (Bucket b : buckets)
+        advance(b);
+    }
+    return !heads.isEmpty();
+  }
+
+  public T next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    Head h = heads.poll();
+    advance(h.bucket);
+    return h.result;
+  }
+
+  public void remove() { throw new UnsupportedOperationException(); }
+
+  /** Stops the bucket scans, closing their iterators. */
+  public void close() {
+    if (closed)
+      return;
+    closed = true;
+    heads.clear();
+
+    /* Running tasks close their own iterators when they see closed */
+    for (Bucket b : buckets)
+      if (b.running.compareAndSet(false, true))
+        b.closeIterator();
+  }
+}
@@ -0,0 +1,376 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.hbase;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import orderly.FieldRange;
+import orderly.KeyRange;
+import orderly.KeyRangeSet;
+import orderly.Order;
+import orderly.RowKey;
+import orderly.StructRowKey;
+import orderly.Termination;
+
+/** A filter returning the rows whose struct row key fields lie in specified
+ * sets of values, which seeks past non-matching rows instead of reading them.
+ *
+ * <p>The filter is configured with a {@link StructRowKey} schema and, for any
+ * subset of its fields, a list of allowed values ({@link #setValues}) or
+ * ranges of values ({@link #setRanges}). A row matches if every restricted 
+ * field lies in one of its allowed ranges. Restricted fields need not be
+ * leading fields of the struct: unrestricted fields before them may have any
+ * value.</p>
+ *
+ * <h1> Seeking </h1>
+ * Each row is checked by deserializing its fields in order, up to the last
+ * restricted field. For restricted field <i>i</i>, the values of fields 0 to
+ * <i>i</i>-1 read from the row and the allowed ranges of field <i>i</i> 
+ * define an exact set of serialized row keys, computed with 
+ * {@link StructRowKey#getScanRanges(Object[], FieldRange...)}. If the row lies
+ * outside this set, no row between it and the next range of the set can 
+ * match, and the filter returns <code>SEEK_NEXT_USING_HINT</code> with the 
+ * start of that range as the hint. If there is no next range, the hint is 
+ * the first row after every row sharing the values of fields 0 to 
+ * <i>i</i>-1, and once no row can match the filter ends the scan. The set of
+ * ranges is cached while consecutive rows share the same serialized prefix,
+ * so in a skip scan each set is usually computed once per distinct prefix 
+ * rather than once per row.
+ *
+ * <p>For example, with a struct of (region, time) and the regions "EU" and 
+ * "US" restricted, a scan of all rows reads the first row of each region, 
+ * seeking directly from the end of "EU" to the start of "US" and ending the 
+ * scan after "US". Restricting the time of each region to an interval seeks
+ * from the first row of each region to the start of its interval, and from 
+ * the end of its interval to the next region.</p>
+ *
+ * <h1> Serialization </h1>
+ * The filter is a <code>Writable</code>, and is sent to the region servers 
+ * along with the scan. The struct schema is recreated on the region server 
+ * from the class, order and termination of each field row key (nested structs
+ * are recreated field by field), so every field row key must have a public 
+ * no-argument constructor and no other configuration. Allowed values are 
+ * serialized using their field row keys, and must be objects that the field 
+ * row key deserializes to and serializes again, as with any non-lazy row
+ * key. 
+ *
+ * <h1> Usage </h1>
+ * The filter copies the struct row key, and reuses objects across rows, so a
+ * filter object may not be used by several threads at once. Filters are 
+ * evaluated against row keys only; the cells of a matching row are all 
+ * included.
+ */
+public class StructSkipScanFilter extends FilterBase
+{
+  private StructRowKey key;
+  private RowKey[] fields;
+  private FieldRange[][] ranges;
+
+  /* Index of the last restricted field, or -1 if no field is restricted */
+  private int last = -1;
+
+  /* Per restricted field, the serialized prefix the ranges were computed for,
+   * the set of row keys matching the prefix and field ranges, and the end 
+   * of the row keys with the prefix */
+  private byte[][] prefixes;
+  private KeyRangeSet[] sets;
+  private byte[][] prefixEnds;
+
+  private Object[] values;
+  private ImmutableBytesWritable w = new ImmutableBytesWritable();
+
+  /* The last row checked, and its hint (null if the row matched) */
+  private byte[] row, hint;
+  private boolean done;
+
+  /** Creates an empty filter. Used when deserializing the filter. */
+  public StructSkipScanFilter() { }
+
+  /** Creates a filter matching every row key of the specified struct. Fields
+   * are restricted using {@link #setValues} and {@link #setRanges}. 
+   */
+  public StructSkipScanFilter(StructRowKey key) { init(key); }
+
+  private void init(StructRowKey key) {
+    this.key = (StructRowKey) key.clone();
+    this.fields = this.key.getFields();
+    this.ranges = new FieldRange[fields.length][];
+    this.last = -1;
+    reinit();
+  }
+
+  /* Clears the state computed from the field restrictions */
+  private void reinit() {
+    prefixes = new byte[fields.length][];
+    sets = new KeyRangeSet[fields.length];
+    prefixEnds = new byte[fields.length][];
+    values = new Object[fields.length];
+    row = hint = null;
+    done = false;
+  }
+
+  /** Gets the struct row key of this filter. */
+  public StructRowKey getRowKey() { return key; }
+
+  /** Restricts a field to the specified values. Replaces any previous 
+   * restriction of the field. 
+   * @param field index of the field in the struct
+   * @param values allowed values of the field
+   * @return this object
+   */
+  public StructSkipScanFilter setValues(int field, Object... values) {
+    FieldRange[] r = new FieldRange[values.length];
+    for (int i = 0; i < r.length; i++)
+      r[i] = FieldRange.singleton(values[i]);
+    return setRanges(field, r);
+  }
+
+  /** Restricts a field to the specified ranges of values. Replaces any 
+   * previous restriction of the field. A field restricted to no ranges 
+   * matches no rows.
+   * @param field index of the field in the struct
+   * @param ranges allowed ranges of values of the field
+   * @return this object
+   */
+  public StructSkipScanFilter setRanges(int field, FieldRange... ranges) {
+    this.ranges[field] = ranges.clone();
+    last = Math.max(last, field);
+    reinit();
+    return this;
+  }
+
+  /** Gets the allowed ranges of values of a field, or null if the field is 
+   * not restricted. 
+   */
+  public FieldRange[] getRanges(int field) { return ranges[field]; }
+
+  @Override
+  public boolean filterAllRemaining() { return done; }
+
+  @Override
+  public ReturnCode filterKeyValue(KeyValue kv) {
+    byte[] b = kv.getBuffer();
+    int offset = kv.getRowOffset();
+    short length = kv.getRowLength();
+
+    /* Rows are only checked once, on their first cell */
+    if (row == null || Bytes.compareTo(row, 0, row.length, b, offset, length)
+        != 0)
+    {
+      row = Arrays.copyOfRange(b, offset, offset + length);
+      try {
+        hint = getHint(b, offset, length);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    if (hint == null)
+      return ReturnCode.INCLUDE;
+    if (hint.length == 0) {
+      done = true;
+      return ReturnCode.NEXT_ROW;
+    }
+    return ReturnCode.SEEK_NEXT_USING_HINT;
+  }
+
+  @Override
+  public KeyValue getNextKeyHint(KeyValue kv) {
+    return KeyValue.createFirstOnRow(hint);
+  }
+
+  /** Checks a serialized row key stored in the specified region of a byte 
+   * array. 
+   * @return null if the row key matches this filter, or else the smallest 
+   * row key greater than the row key that may match this filter, or a 
+   * zero-length array if no greater row key may match
+   */
+  byte[] getHint(byte[] b, int offset, int length) throws IOException {
+    w.set(b, offset, length);
+    for (int i = 0; i <= last; i++) {
+      if (ranges[i] != null) {
+        int prefixLength = w.getOffset() - offset;
+        if (prefixes[i] == null || Bytes.compareTo(prefixes[i], 0, 
+              prefixes[i].length, b, offset, prefixLength) != 0)
+          setPrefix(i, Arrays.copyOfRange(b, offset, offset + prefixLength));
+
+        KeyRange r = sets[i].getNextRange(b, offset, length);
+        if (r == null)
+          return prefixEnds[i];
+        if (!r.contains(b, offset, length))
+          return r.getStart();
+      }
+
+      if (i < last)
+        values[i] = fields[i].deserialize(w);
+    }
+    return null;
+  }
+
+  /* Computes the row keys matching restricted field i, for the values of 
+   * the preceding fields deserialized from the specified prefix */
+  private void setPrefix(int i, byte[] prefix) throws IOException {
+    Object[] p = Arrays.copyOf(values, i);
+    prefixes[i] = prefix;
+    sets[i] = key.getScanRanges(p, ranges[i]);
+    prefixEnds[i] = key.getScanRange(p).getStop();
+  }
+
+  public void write(DataOutput out) throws IOException {
+    writeRowKey(out, key);
+    for (int i = 0; i < fields.length; i++) {
+      FieldRange[] r = ranges[i];
+      WritableUtils.writeVInt(out, r == null ? -1 : r.length);
+      if (r == null)
+        continue;
+
+      RowKey k = fields[i].clone().setTermination(Termination.MUST);
+      for (FieldRange range : r) {
+        out.writeBoolean(range.hasLowerBound());
+        if (range.hasLowerBound()) {
+          out.writeBoolean(range.isLowerInclusive());
+          Bytes.writeByteArray(out, k.serialize(range.getLowerBound()));
+        }
+        out.writeBoolean(range.hasUpperBound());
+        if (range.hasUpperBound()) {
+          out.writeBoolean(range.isUpperInclusive());
+          Bytes.writeByteArray(out, k.serialize(range.getUpperBound()));
+        }
+      }
+    }
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    init((StructRowKey) readRowKey(in));
+    for (int i = 0; i < fields.length; i++) {
+      int n = WritableUtils.readVInt(in);
+      if (n < 0)
+        continue;
+
+      RowKey k = fields[i];
+      FieldRange[] r = new FieldRange[n];
+      for (int j = 0; j < n; j++) {
+        boolean hasLower = in.readBoolean(), lowerInclusive = false;
+        Object lower = null, upper = null;
+        if (hasLower) {
+          lowerInclusive = in.readBoolean();
+          lower = readValue(in, k);
+        }
+        boolean hasUpper = in.readBoolean(), upperInclusive = false;
+        if (hasUpper) {
+          upperInclusive = in.readBoolean();
+          upper = readValue(in, k);
+        }
+        r[j] = createRange(hasLower, lower, lowerInclusive, hasUpper, upper, 
+            upperInclusive);
+      }
+      setRanges(i, r);
+    }
+  }
+
+  /* Deserializes a value using a copy of the field row key, as row keys 
+   * may reuse the deserialized object */
+  private static Object readValue(DataInput in, RowKey k) throws IOException {
+    return k.clone().deserialize(Bytes.readByteArray(in));
+  }
+
+  private static FieldRange createRange(boolean hasLower, Object lower, 
+      boolean lowerInclusive, boolean hasUpper, Object upper, 
+      boolean upperInclusive)
+  {
+    if (!hasLower && !hasUpper)
+      return FieldRange.all();
+    if (!hasUpper)
+      return lowerInclusive ? FieldRange.atLeast(lower) : 
+        FieldRange.greaterThan(lower);
+    if (!hasLower)
+      return upperInclusive ? FieldRange.atMost(upper) : 
+        FieldRange.lessThan(upper);
+    if (lowerInclusive)
+      return upperInclusive ? FieldRange.closed(lower, upper) : 
+        FieldRange.closedOpen(lower, upper);
+    return upperInclusive ? FieldRange.openClosed(lower, upper) : 
+      FieldRange.open(lower, upper);
+  }
+
+  /** Writes the schema of a row key. Structs are written field by field, and
+   * other row keys by class name.
+   */
+  private static void writeRowKey(DataOutput out, RowKey k) 
+    throws IOException 
+  {
+    boolean struct = k instanceof StructRowKey;
+    out.writeBoolean(struct);
+    if (struct) {
+      RowKey[] f = ((StructRowKey)k).getFields();
+      WritableUtils.writeVInt(out, f.length);
+      for (RowKey field : f)
+        writeRowKey(out, field);
+    } else {
+      try {
+        k.getClass().getConstructor();
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException("Cannot recreate " + 
+            k.getClass().getName() + ", it has no public no-argument " +
+            "constructor");
+      }
+      Text.writeString(out, k.getClass().getName());
+    }
+    WritableUtils.writeEnum(out, k.getOrder());
+    WritableUtils.writeEnum(out, k.getTermination());
+  }
+
+  private static RowKey readRowKey(DataInput in) throws IOException {
+    RowKey k;
+    if (in.readBoolean()) {
+      RowKey[] f = new RowKey[WritableUtils.readVInt(in)];
+      for (int i = 0; i < f.length; i++)
+        f[i] = readRowKey(in);
+      k = new StructRowKey(f);
+      Order order = WritableUtils.readEnum(in, Order.class);
+
+      /* Setting the order of a struct inverts its fields, so restore them */
+      if (order != k.getOrder()) {
+        k.setOrder(order);
+        for (RowKey field : f)
+          field.setOrder(field.getOrder() == Order.ASCENDING ? 
+              Order.DESCENDING : Order.ASCENDING);
+      }
+    } else {
+      String name = Text.readString(in);
+      try {
+        k = (RowKey) Class.forName(name).newInstance();
+      } catch (Exception e) {
+        throw new IllegalStateException("Cannot instantiate " + name, e);
+      }
+      k.setOrder(WritableUtils.readEnum(in, Order.class));
+    }
+    k.setTermination(WritableUtils.readEnum(in, Termination.class));
+    return k;
+  }
+}
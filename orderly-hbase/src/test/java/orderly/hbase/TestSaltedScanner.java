@@ -0,0 +1,278 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.hbase;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import orderly.FieldRange;
+import orderly.KeyRange;
+import orderly.LongRowKey;
+import orderly.Order;
+import orderly.RowKey;
+import orderly.RowKeyComparator;
+import orderly.SaltedRowKey;
+import orderly.StringRowKey;
+import orderly.StructRowKey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestSaltedScanner
+{
+  protected Random r;
+  protected int numTests;
+  private ExecutorService executor;
+
+  /* An in-memory table of sorted salted row keys */
+  private static class Table implements SaltedScanner.Source<byte[]>
+  {
+    final List<byte[]> rows = new ArrayList<byte[]>();
+
+    void sort() { Collections.sort(rows, RowKeyComparator.INSTANCE); }
+
+    public Iterator<byte[]> scan(KeyRange range) {
+      List<byte[]> l = new ArrayList<byte[]>();
+      for (byte[] row : rows)
+        if (range.contains(row))
+          l.add(row);
+      return l.iterator();
+    }
+
+    public byte[] getRow(byte[] result) { return result; }
+  }
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    executor.shutdownNow();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  private StructRowKey createStruct() {
+    StructRowKey k = new StructRowKey(new RowKey[] { new LongRowKey(), 
+      new StringRowKey() });
+    if (r.nextBoolean())
+      k.getFields()[0].setOrder(Order.DESCENDING);
+    return k;
+  }
+
+  private SaltedRowKey createSalted(StructRowKey struct) {
+    int numBuckets = 1 + r.nextInt(16);
+    return r.nextBoolean() ? new SaltedRowKey(struct, numBuckets) : 
+      new SaltedRowKey(struct, numBuckets, 0);
+  }
+
+  private Table createTable(SaltedRowKey key, int numRows) 
+    throws IOException 
+  {
+    Table t = new Table();
+    for (int i = 0; i < numRows; i++) 
+      t.rows.add(key.serialize(new Object[] { (long) r.nextInt(1000), 
+        Integer.toString(r.nextInt(100)) }));
+    t.sort();
+    return t;
+  }
+
+  private static List<byte[]> unsalt(List<byte[]> rows) {
+    List<byte[]> l = new ArrayList<byte[]>(rows.size());
+    for (byte[] row : rows) {
+      byte[] b = new byte[row.length - 1];
+      System.arraycopy(row, 1, b, 0, b.length);
+      l.add(b);
+    }
+    return l;
+  }
+
+  private static void assertRowsEqual(List<byte[]> expected, 
+      List<byte[]> actual) 
+  {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++)
+      assertEquals(0, RowKeyComparator.INSTANCE.compare(expected.get(i), 
+            actual.get(i)));
+  }
+
+  @Test
+  public void testMerge() throws IOException {
+    for (int n = 0; n < numTests / 128; n++) {
+      StructRowKey struct = createStruct();
+      SaltedRowKey key = createSalted(struct);
+      Table t = createTable(key, r.nextInt(500));
+
+      long lo = r.nextInt(1000), hi = lo + r.nextInt(200);
+      KeyRange range = struct.getScanRange(new Object[0], 
+          FieldRange.closed(lo, hi));
+
+      /* The rows in the range, in the order of the wrapped struct */
+      List<byte[]> expected = new ArrayList<byte[]>();
+      for (byte[] row : unsalt(t.rows))
+        if (range.contains(row))
+          expected.add(row);
+      Collections.sort(expected, RowKeyComparator.INSTANCE);
+
+      List<byte[]> actual = new ArrayList<byte[]>();
+      SaltedScanner<byte[]> s = new SaltedScanner<byte[]>(t, executor, 
+          1 + r.nextInt(4), key.getBucketRanges(range));
+      try {
+        while (s.hasNext())
+          actual.add(s.next());
+      } finally {
+        s.close();
+      }
+      assertRowsEqual(expected, unsalt(actual));
+    }
+  }
+
+  @Test
+  public void testClose() throws IOException, InterruptedException {
+    StructRowKey struct = createStruct();
+    SaltedRowKey key = new SaltedRowKey(struct, 8);
+    Table t = createTable(key, 1000);
+
+    /* Paused bucket scans end when the scanner closes */
+    SaltedScanner<byte[]> s = new SaltedScanner<byte[]>(t, executor, 1, 
+        key.getBucketRanges(KeyRange.ALL));
+    for (int i = 0; i < 10; i++)
+      s.next();
+    s.close();
+    assertFalse(s.hasNext());
+
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  /* An endless scan which blocks once its bucket buffer is about to fill */
+  private static class BlockingScan implements Iterator<byte[]>, Closeable
+  {
+    final int blockAt;
+    final CountDownLatch filling, release;
+    final AtomicInteger numClosed;
+    int n;
+
+    BlockingScan(int blockAt, CountDownLatch filling, CountDownLatch release,
+        AtomicInteger numClosed)
+    {
+      this.blockAt = blockAt;
+      this.filling = filling;
+      this.release = release;
+      this.numClosed = numClosed;
+    }
+
+    public boolean hasNext() { return true; }
+
+    public byte[] next() {
+      if (++n == blockAt) {
+        filling.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return new byte[] { 0, (byte) n };
+    }
+
+    public void remove() { throw new UnsupportedOperationException(); }
+
+    public void close() { numClosed.incrementAndGet(); }
+  }
+
+  @Test
+  public void testCloseWhileFilling() throws InterruptedException {
+    final int numBuckets = 4, bufferSize = 8;
+    final CountDownLatch filling = new CountDownLatch(numBuckets), 
+                         release = new CountDownLatch(1);
+    final AtomicInteger numClosed = new AtomicInteger();
+    SaltedScanner.Source<byte[]> source = new SaltedScanner.Source<byte[]>() {
+      public Iterator<byte[]> scan(KeyRange range) {
+        return new BlockingScan(bufferSize, filling, release, numClosed);
+      }
+
+      public byte[] getRow(byte[] result) { return result; }
+    };
+
+    KeyRange[] ranges = new KeyRange[numBuckets];
+    for (int i = 0; i < numBuckets; i++)
+      ranges[i] = KeyRange.ALL;
+    SaltedScanner<byte[]> s = new SaltedScanner<byte[]>(source, executor, 
+        bufferSize, ranges);
+
+    /* Every task is running and fills its buffer after the close */
+    assertTrue(filling.await(10, TimeUnit.SECONDS));
+    s.close();
+    release.countDown();
+
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(numBuckets, numClosed.get());
+  }
+
+  @Test
+  public void testFailure() throws IOException {
+    StructRowKey struct = createStruct();
+    final SaltedRowKey key = new SaltedRowKey(struct, 4);
+    final Table t = createTable(key, 100);
+
+    SaltedScanner.Source<byte[]> source = new SaltedScanner.Source<byte[]>() {
+      public Iterator<byte[]> scan(KeyRange range) throws IOException {
+        if (range.equals(key.getBucketRange(2, KeyRange.ALL)))
+          throw new IOException("region unavailable");
+        return t.scan(range);
+      }
+
+      public byte[] getRow(byte[] result) { return result; }
+    };
+
+    SaltedScanner<byte[]> s = new SaltedScanner<byte[]>(source, executor, 
+        key.getBucketRanges(KeyRange.ALL));
+    try {
+      while (s.hasNext())
+        s.next();
+      fail("Expected the failure of bucket 2");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    } finally {
+      s.close();
+    }
+  }
+}
@@ -0,0 +1,321 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.hbase;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Writables;
+import org.junit.Before;
+import org.junit.Test;
+
+import orderly.BigDecimalRowKey;
+import orderly.FieldRange;
+import orderly.IntegerRowKey;
+import orderly.LongRowKey;
+import orderly.Order;
+import orderly.RowKey;
+import orderly.RowKeyComparator;
+import orderly.StringRowKey;
+import orderly.StructRowKey;
+import orderly.Termination;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestStructSkipScanFilter
+{
+  /* Small value domains, so that every combination of field values can be
+   * serialized into a table of rows */
+  private static final Object[][] DOMAINS = {
+    { null, -300, -1, 0, 1, 2, 300 },
+    { null, "", "a", "ab", "b", "é" },
+    { null, BigDecimal.ZERO, BigDecimal.ONE, new BigDecimal("1.5"), 
+      new BigDecimal("-1"), new BigDecimal("12") },
+    { null, -1L, 0L, 1L, Long.MAX_VALUE }
+  };
+
+  private static final byte[] FAMILY = Bytes.toBytes("f"),
+    QUALIFIER_A = Bytes.toBytes("a"), QUALIFIER_B = Bytes.toBytes("b");
+
+  protected Random r;
+  protected int numTests;
+
+  /* Schema and sorted rows of the current table */
+  private int[] domains;
+  private StructRowKey key;
+  private List<Row> rows;
+
+  private static class Row implements Comparable<Row>
+  {
+    final byte[] bytes;
+    final Object[] values;
+
+    Row(byte[] bytes, Object[] values) {
+      this.bytes = bytes;
+      this.values = values;
+    }
+
+    public int compareTo(Row o) {
+      return RowKeyComparator.INSTANCE.compare(bytes, o.bytes);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+  }
+
+  private RowKey createField(int i) {
+    switch (i) {
+      case 0: return new IntegerRowKey();
+      case 1: return new StringRowKey();
+      case 2: return new BigDecimalRowKey();
+      default: return new LongRowKey();
+    }
+  }
+
+  /* Creates a random struct schema, and a table of every combination of 
+   * field values */
+  private void createTable() throws IOException {
+    domains = new int[2 + r.nextInt(2)];
+    RowKey[] fields = new RowKey[domains.length];
+    for (int i = 0; i < fields.length; i++) {
+      domains[i] = r.nextInt(DOMAINS.length);
+      fields[i] = createField(domains[i]);
+      if (r.nextBoolean())
+        fields[i].setOrder(Order.DESCENDING);
+    }
+
+    key = new StructRowKey(fields);
+    if (r.nextInt(4) == 0)
+      key.setOrder(Order.DESCENDING);
+    key.setTermination(r.nextBoolean() ? Termination.AUTO : 
+        Termination.MUST);
+
+    rows = new ArrayList<Row>();
+    addRows(new Object[domains.length], 0);
+    Collections.sort(rows);
+    for (int i = 1; i < rows.size(); i++)
+      assertTrue(rows.get(i - 1).compareTo(rows.get(i)) < 0);
+  }
+
+  private void addRows(Object[] values, int i) throws IOException {
+    if (i == values.length) {
+      byte[] b = key.serialize(values);
+      /* HBase row keys are never empty */
+      if (b.length > 0)
+        rows.add(new Row(b, values.clone()));
+      return;
+    }
+    for (Object x : DOMAINS[domains[i]]) {
+      values[i] = x;
+      addRows(values, i + 1);
+    }
+  }
+
+  private Object randValue(int field) {
+    Object[] domain = DOMAINS[domains[field]];
+    return domain[r.nextInt(domain.length)];
+  }
+
+  private FieldRange randRange(int field) {
+    Object lo = randValue(field), hi = randValue(field);
+    switch (r.nextInt(9)) {
+      case 0: return FieldRange.all();
+      case 1: return FieldRange.closed(lo, hi);
+      case 2: return FieldRange.open(lo, hi);
+      case 3: return FieldRange.closedOpen(lo, hi);
+      case 4: return FieldRange.openClosed(lo, hi);
+      case 5: return FieldRange.atLeast(lo);
+      case 6: return FieldRange.greaterThan(lo);
+      case 7: return FieldRange.atMost(hi);
+      default: return FieldRange.lessThan(hi);
+    }
+  }
+
+  private StructSkipScanFilter randFilter() {
+    StructSkipScanFilter f = new StructSkipScanFilter(key);
+    for (int i = 0; i < domains.length; i++) {
+      switch (r.nextInt(4)) {
+        case 0:
+          Object[] values = new Object[1 + r.nextInt(3)];
+          for (int j = 0; j < values.length; j++)
+            values[j] = randValue(i);
+          f.setValues(i, values);
+          break;
+        case 1:
+          FieldRange[] ranges = new FieldRange[1 + r.nextInt(2)];
+          for (int j = 0; j < ranges.length; j++)
+            ranges[j] = randRange(i);
+          f.setRanges(i, ranges);
+          break;
+      }
+    }
+    return f;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compare(Object o1, Object o2) {
+    if (o1 == null || o2 == null)
+      return (o1 != null ? 1 : 0) - (o2 != null ? 1 : 0);
+    return ((Comparable<Object>) o1).compareTo(o2);
+  }
+
+  private static boolean inRange(Object x, FieldRange range) {
+    if (range.hasLowerBound()) {
+      int c = compare(x, range.getLowerBound());
+      if (c < 0 || (c == 0 && !range.isLowerInclusive()))
+        return false;
+    }
+    if (range.hasUpperBound()) {
+      int c = compare(x, range.getUpperBound());
+      if (c > 0 || (c == 0 && !range.isUpperInclusive()))
+        return false;
+    }
+    return true;
+  }
+
+  private static boolean matches(StructSkipScanFilter f, Row row) {
+    for (int i = 0; i < row.values.length; i++) {
+      FieldRange[] ranges = f.getRanges(i);
+      if (ranges == null)
+        continue;
+      boolean found = false;
+      for (FieldRange range : ranges)
+        found |= inRange(row.values[i], range);
+      if (!found)
+        return false;
+    }
+    return true;
+  }
+
+  /* Gets the index of the first row greater than or equal to b */
+  private int ceiling(byte[] b) {
+    int i = Collections.binarySearch(rows, new Row(b, null));
+    return i >= 0 ? i : -(i + 1);
+  }
+
+  /** Scans the table as a region server would, seeking when the filter 
+   * returns a hint. Each row has two cells.
+   * @return the number of rows read
+   */
+  private int scan(StructSkipScanFilter f, List<Row> result) {
+    int i = 0, reads = 0;
+    while (i < rows.size() && !f.filterAllRemaining()) {
+      Row row = rows.get(i);
+      reads++;
+
+      KeyValue kv = new KeyValue(row.bytes, FAMILY, QUALIFIER_A);
+      ReturnCode rc = f.filterKeyValue(kv);
+      switch (rc) {
+        case INCLUDE:
+          assertEquals(ReturnCode.INCLUDE, f.filterKeyValue(new KeyValue(
+                  row.bytes, FAMILY, QUALIFIER_B)));
+          result.add(row);
+          i++;
+          break;
+        case NEXT_ROW:
+          i++;
+          break;
+        case SEEK_NEXT_USING_HINT:
+          byte[] hint = f.getNextKeyHint(kv).getRow();
+          assertTrue(Bytes.toStringBinary(hint), 
+              RowKeyComparator.INSTANCE.compare(hint, row.bytes) > 0);
+          i = ceiling(hint);
+          break;
+        default:
+          throw new AssertionError("Unexpected return code " + rc);
+      }
+    }
+    return reads;
+  }
+
+  private void assertScan(StructSkipScanFilter f) {
+    List<Row> expected = new ArrayList<Row>(), actual = new ArrayList<Row>();
+    for (Row row : rows)
+      if (matches(f, row))
+        expected.add(row);
+
+    int reads = scan(f, actual);
+    assertEquals(expected, actual);
+    /* Every read row either matches, or seeks past a run of rows */
+    assertTrue(reads <= rows.size());
+  }
+
+  @Test
+  public void testFilter() throws IOException {
+    for (int n = 0; n < numTests / 128; n++) {
+      createTable();
+      for (int m = 0; m < 8; m++)
+        assertScan(randFilter());
+    }
+  }
+
+  @Test
+  public void testWritable() throws IOException {
+    for (int n = 0; n < numTests / 128; n++) {
+      createTable();
+      StructSkipScanFilter f = randFilter(), 
+        g = (StructSkipScanFilter) Writables.getWritable(
+            Writables.getBytes(f), new StructSkipScanFilter());
+
+      List<Row> expected = new ArrayList<Row>(), actual = new ArrayList<Row>();
+      scan(f, expected);
+      scan(g, actual);
+      assertEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    StructRowKey k = new StructRowKey(new RowKey[] { new StringRowKey(), 
+      new IntegerRowKey() });
+    key = k;
+    domains = new int[] { 1, 0 };
+    rows = new ArrayList<Row>();
+    for (String region : new String[] { "AP", "EU", "SA", "US", "ZA" }) {
+      for (int time = 0; time < 1000; time++) {
+        Object[] values = new Object[] { region, time };
+        rows.add(new Row(k.serialize(values), values));
+      }
+    }
+    Collections.sort(rows);
+
+    /* Two regions and an interval of time: the matching rows, plus one read
+     * of the first row of each region and of the row ending each interval */
+    StructSkipScanFilter f = new StructSkipScanFilter(k)
+      .setValues(0, "EU", "US")
+      .setRanges(1, FieldRange.closedOpen(100, 110));
+    List<Row> result = new ArrayList<Row>();
+    int reads = scan(f, result);
+    assertEquals(20, result.size());
+    assertEquals(20 + 5 + 2, reads);
+    assertTrue(f.filterAllRemaining());
+  }
+}
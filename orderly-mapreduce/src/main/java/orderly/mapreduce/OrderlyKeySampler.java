@@ -0,0 +1,246 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.mapreduce;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+
+import orderly.RowKey;
+import orderly.SplitPointGenerator;
+
+/** Samples serialized row keys and computes the partition keys of a 
+ * globally sorted job for {@link OrderlyPartitioner}.
+ *
+ * <p>A sampler draws its samples in one of two modes. A random sampler 
+ * selects each key with probability <code>freq</code>, and keeps a uniform
+ * random sample of at most <code>maxSamples</code> of the selected keys 
+ * (reservoir sampling). An interval sampler selects keys at regular 
+ * intervals, so that about <code>freq</code> of the keys are kept, until 
+ * <code>maxSamples</code> keys are kept. Interval sampling is deterministic
+ * and suits inputs in random order, while random sampling suits inputs that
+ * are partially sorted or clustered.</p>
+ *
+ * <p>Keys are added to the sampler one at a time (for example while 
+ * scanning a table, or from the map output keys of a sampling job), as 
+ * values serialized by the row key, or by {@link #sample} which reads the 
+ * keys of some splits of an input format. The partition keys are computed 
+ * by {@link SplitPointGenerator}: each partition receives a similar share 
+ * of the samples, partitions are split at bucket boundaries for salted row 
+ * keys, and each partition key is truncated to the shortest prefix that 
+ * separates its partitions.</p>
+ *
+ * <h1> Usage </h1>
+ * <pre>
+ * OrderlyKeySampler sampler = OrderlyKeySampler.random(0.01, 100000)
+ *   .setRowKey(rowKey);
+ * sampler.sample(inputFormat, job, 10);
+ * sampler.writePartitionFile(job.getConfiguration(), numReduceTasks);
+ * </pre>
+ */
+public class OrderlyKeySampler
+{
+  private final boolean random;
+  private final double freq;
+  private final int maxSamples;
+  private RowKey key;
+  private Random r = new Random();
+
+  private final List<byte[]> samples = new ArrayList<byte[]>();
+  private long numKeys, numSelected;
+
+  private OrderlyKeySampler(boolean random, double freq, int maxSamples) {
+    if (freq <= 0 || freq > 1)
+      throw new IllegalArgumentException("Sampling frequency " + freq);
+    if (maxSamples < 1)
+      throw new IllegalArgumentException("Maximum samples " + maxSamples);
+    this.random = random;
+    this.freq = freq;
+    this.maxSamples = maxSamples;
+  }
+
+  /** Creates a random sampler.
+   * @param freq probability with which each key is selected
+   * @param maxSamples maximum number of samples kept
+   */
+  public static OrderlyKeySampler random(double freq, int maxSamples) {
+    return new OrderlyKeySampler(true, freq, maxSamples);
+  }
+
+  /** Creates an interval sampler.
+   * @param freq fraction of the keys kept
+   * @param maxSamples maximum number of samples kept
+   */
+  public static OrderlyKeySampler interval(double freq, int maxSamples) {
+    return new OrderlyKeySampler(false, freq, maxSamples);
+  }
+
+  /** Sets the row key serializing added values. If the row key is a salted
+   * row key, the partition keys are aligned to its buckets.
+   * @return this object
+   */
+  public OrderlyKeySampler setRowKey(RowKey key) {
+    this.key = key;
+    return this;
+  }
+
+  /** Gets the row key serializing added values. */
+  public RowKey getRowKey() { return key; }
+
+  /** Sets the random number generator of a random sampler. 
+   * @return this object
+   */
+  public OrderlyKeySampler setRandom(Random r) {
+    this.r = r;
+    return this;
+  }
+
+  /** Offers a serialized row key to the sampler. The bytes are copied if 
+   * the key is kept.
+   * @return this object
+   */
+  public OrderlyKeySampler add(byte[] b, int offset, int length) {
+    numKeys++;
+    int i;
+    if (random) {
+      if (r.nextDouble() >= freq)
+        return this;
+      numSelected++;
+      i = numSelected <= maxSamples ? samples.size() : 
+        (int) (r.nextDouble() * numSelected);
+    } else {
+      if (samples.size() >= maxSamples || samples.size() >= freq * numKeys)
+        return this;
+      i = samples.size();
+    }
+
+    if (i < maxSamples) {
+      byte[] s = new byte[length];
+      System.arraycopy(b, offset, s, 0, length);
+      if (i == samples.size())
+        samples.add(s);
+      else
+        samples.set(i, s);
+    }
+    return this;
+  }
+
+  /** Offers a serialized row key to the sampler.
+   * @return this object
+   */
+  public OrderlyKeySampler add(OrderlyKeyWritable w) {
+    return add(w.get(), w.getOffset(), w.getLength());
+  }
+
+  /** Offers a value serialized by the row key to the sampler.
+   * @return this object
+   */
+  public OrderlyKeySampler addValue(Object o) throws IOException {
+    if (key == null)
+      throw new IllegalStateException("No row key set");
+    byte[] b = key.serialize(o);
+    return add(b, 0, b.length);
+  }
+
+  /** Offers the keys of some of the splits of an input format to the 
+   * sampler. The splits read are spread evenly over the list of splits.
+   * @param format an input format whose keys are serialized row keys
+   * @param job the job configuring the input format
+   * @param maxSplits the maximum number of splits read
+   * @return this object
+   */
+  public OrderlyKeySampler sample(
+      InputFormat<? extends OrderlyKeyWritable, ?> format, JobContext job, 
+      int maxSplits) throws IOException, InterruptedException
+  {
+    List<InputSplit> splits = format.getSplits(job);
+    int numSplits = Math.min(maxSplits, splits.size());
+    for (int i = 0; i < numSplits; i++) {
+      InputSplit split = splits.get((int) ((long) i * splits.size() / 
+            numSplits));
+      TaskAttemptContext context = new TaskAttemptContext(
+          job.getConfiguration(), new TaskAttemptID());
+      RecordReader<? extends OrderlyKeyWritable, ?> reader = 
+        format.createRecordReader(split, context);
+      try {
+        reader.initialize(split, context);
+        while (reader.nextKeyValue())
+          add(reader.getCurrentKey());
+      } finally {
+        reader.close();
+      }
+    }
+    return this;
+  }
+
+  /** Gets the number of keys offered to the sampler. */
+  public long getNumKeys() { return numKeys; }
+
+  /** Gets the sampled serialized row keys, in sampling order. */
+  public List<byte[]> getSamples() { return samples; }
+
+  /** Gets the partition keys dividing the samples into balanced partitions.
+   * @param numPartitions the number of partitions (reduce tasks)
+   * @return at most <code>numPartitions - 1</code> strictly increasing 
+   * partition keys
+   */
+  public byte[][] getPartitionKeys(int numPartitions) {
+    SplitPointGenerator g = new SplitPointGenerator(key);
+    for (byte[] b : samples)
+      g.addKey(b);
+    return g.getSplitKeys(numPartitions);
+  }
+
+  /** Writes the partition keys to the partition file of a job, as set by 
+   * {@link OrderlyPartitioner#setPartitionFile}. An existing partition file
+   * is replaced.
+   * @param conf the job configuration
+   * @param numPartitions the number of partitions (reduce tasks)
+   */
+  public void writePartitionFile(Configuration conf, int numPartitions) 
+    throws IOException
+  {
+    Path p = OrderlyPartitioner.getPartitionFile(conf);
+    FileSystem fs = p.getFileSystem(conf);
+    if (fs.exists(p))
+      fs.delete(p, false);
+
+    SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, p, 
+        OrderlyKeyWritable.class, NullWritable.class);
+    try {
+      OrderlyKeyWritable w = new OrderlyKeyWritable();
+      for (byte[] b : getPartitionKeys(numPartitions))
+        writer.append(w.set(b), NullWritable.get());
+    } finally {
+      writer.close();
+    }
+  }
+}
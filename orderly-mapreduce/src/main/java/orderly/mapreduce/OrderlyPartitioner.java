@@ -0,0 +1,255 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.mapreduce;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+import orderly.RowKeyComparator;
+
+/** Partitions {@link OrderlyKeyWritable} keys into ranges of serialized row
+ * keys, so that the concatenated output of the reducers is globally sorted.
+ *
+ * <p>The partitioner reads the sorted partition keys from a sequence file of
+ * <code>OrderlyKeyWritable</code> keys and <code>NullWritable</code> values,
+ * as written by {@link OrderlyKeySampler#writePartitionFile} (this is also 
+ * the format of Hadoop's <code>TotalOrderPartitioner</code>). A key belongs
+ * to partition <i>i</i> if exactly <i>i</i> partition keys are less than or 
+ * equal to it. There may be fewer than <code>numPartitions - 1</code> 
+ * partition keys, in which case the last partitions receive no keys.</p>
+ *
+ * <p>Partitions are found without deserializing keys, using a trie over the 
+ * leading bytes of the partition keys. Each inner node of the trie indexes 
+ * the partition keys sharing a prefix by their next byte, and the remaining
+ * partition keys sharing the prefix of a leaf are binary searched. The trie 
+ * has at most {@link #TRIE_DEPTH_KEY} levels of inner nodes (256 references 
+ * each), and only indexes prefixes shared by more than a few partition 
+ * keys. With row keys whose leading bytes vary (such as salted row keys or
+ * leading integer fields), most keys are partitioned with one or two array 
+ * lookups and a few byte comparisons.</p>
+ *
+ * <h1> Usage </h1>
+ * <pre>
+ * OrderlyPartitioner.setPartitionFile(conf, new Path(dir, "_partitions"));
+ * sampler.writePartitionFile(conf, numReduceTasks);
+ * job.setPartitionerClass(OrderlyPartitioner.class);
+ * </pre>
+ */
+public class OrderlyPartitioner<V> extends Partitioner<OrderlyKeyWritable, V>
+  implements Configurable
+{
+  /** Configuration key of the path of the partition file. */
+  public static final String PATH_KEY = "orderly.partitioner.path";
+  /** Default path of the partition file, relative to the working 
+   * directory.
+   */
+  public static final String DEFAULT_PATH = "_partition.lst";
+  /** Configuration key of the maximum number of inner trie levels. */
+  public static final String TRIE_DEPTH_KEY = 
+    "orderly.partitioner.trie.depth";
+  public static final int DEFAULT_TRIE_DEPTH = 2;
+
+  /* Largest number of partition keys searched without a trie node */
+  private static final int LEAF_SIZE = 4;
+
+  private Configuration conf;
+  private byte[][] keys;
+  private int trieDepth = DEFAULT_TRIE_DEPTH;
+  private Node root;
+
+  /** Sets the path of the partition file in a job configuration. */
+  public static void setPartitionFile(Configuration conf, Path p) {
+    conf.set(PATH_KEY, p.toString());
+  }
+
+  /** Gets the path of the partition file from a job configuration. */
+  public static Path getPartitionFile(Configuration conf) {
+    return new Path(conf.get(PATH_KEY, DEFAULT_PATH));
+  }
+
+  public Configuration getConf() { return conf; }
+
+  /** Reads the partition keys from the partition file. */
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    trieDepth = conf.getInt(TRIE_DEPTH_KEY, DEFAULT_TRIE_DEPTH);
+
+    byte[][] keys;
+    try {
+      keys = readPartitionFile(conf, getPartitionFile(conf));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    int numReduceTasks = conf.getInt("mapred.reduce.tasks", 1);
+    if (keys.length >= numReduceTasks)
+      throw new IllegalArgumentException(keys.length + 
+          " partition keys for " + numReduceTasks + " reduce tasks");
+    setPartitionKeys(keys);
+  }
+
+  /** Reads the partition keys from a partition file. */
+  public static byte[][] readPartitionFile(Configuration conf, Path p) 
+    throws IOException
+  {
+    FileSystem fs = p.getFileSystem(conf);
+    SequenceFile.Reader reader = new SequenceFile.Reader(fs, p, conf);
+    List<byte[]> keys = new ArrayList<byte[]>();
+    try {
+      OrderlyKeyWritable key = new OrderlyKeyWritable();
+      NullWritable value = NullWritable.get();
+      while (reader.next(key, value)) {
+        byte[] b = new byte[key.getLength()];
+        System.arraycopy(key.get(), key.getOffset(), b, 0, b.length);
+        keys.add(b);
+      }
+    } finally {
+      reader.close();
+    }
+    return keys.toArray(new byte[keys.size()][]);
+  }
+
+  /** Sets the partition keys and builds the trie searching them.
+   * @param keys strictly increasing serialized row keys 
+   * @return this object
+   */
+  public OrderlyPartitioner<V> setPartitionKeys(byte[][] keys) {
+    for (int i = 1; i < keys.length; i++)
+      if (RowKeyComparator.INSTANCE.compare(keys[i - 1], keys[i]) >= 0)
+        throw new IllegalArgumentException("Partition keys are not " +
+            "strictly increasing");
+
+    this.keys = keys;
+    this.root = build(0, keys.length, 0);
+    return this;
+  }
+
+  /** Gets the partition keys. */
+  public byte[][] getPartitionKeys() { return keys; }
+
+  /** Sets the maximum number of inner trie levels used by later calls to 
+   * {@link #setPartitionKeys}. A depth of 0 binary searches all partition
+   * keys.
+   * @return this object
+   */
+  public OrderlyPartitioner<V> setTrieDepth(int trieDepth) {
+    this.trieDepth = trieDepth;
+    return this;
+  }
+
+  /** Gets the partition of a key.
+   * @throws IllegalArgumentException if there are too many partition keys 
+   * for the number of partitions
+   */
+  @Override
+  public int getPartition(OrderlyKeyWritable key, V value, int numPartitions)
+  {
+    if (keys.length >= numPartitions)
+      throw new IllegalArgumentException(keys.length + 
+          " partition keys for " + numPartitions + " partitions");
+    return getPartition(key.get(), key.getOffset(), key.getLength());
+  }
+
+  /** Gets the partition of a serialized row key. This is the number of 
+   * partition keys less than or equal to the row key.
+   */
+  public int getPartition(byte[] b, int offset, int length) {
+    return root.find(b, offset, length, 0);
+  }
+
+  /** Builds the trie node of the partition keys [lo, hi), which share their
+   * first depth bytes.
+   */
+  private Node build(int lo, int hi, int depth) {
+    if (depth >= trieDepth || hi - lo <= LEAF_SIZE)
+      return new SearchNode(lo, hi);
+
+    /* A partition key equal to the prefix sorts before the others */
+    TrieNode node = new TrieNode();
+    while (lo < hi && keys[lo].length == depth)
+      lo++;
+    node.prefixEnd = lo;
+
+    for (int c = 0; c < node.children.length; c++) {
+      int end = lo;
+      while (end < hi && (keys[end][depth] & 0xff) == c)
+        end++;
+      node.children[c] = build(lo, end, depth + 1);
+      lo = end;
+    }
+    return node;
+  }
+
+  private abstract static class Node
+  {
+    /** Gets the number of partition keys less than or equal to a row key
+     * whose first depth bytes are the prefix of this node.
+     */
+    abstract int find(byte[] b, int offset, int length, int depth);
+  }
+
+  private static class TrieNode extends Node
+  {
+    int prefixEnd;
+    final Node[] children = new Node[256];
+
+    @Override
+    int find(byte[] b, int offset, int length, int depth) {
+      if (length <= depth)
+        return prefixEnd;
+      return children[b[offset + depth] & 0xff].find(b, offset, length, 
+          depth + 1);
+    }
+  }
+
+  private class SearchNode extends Node
+  {
+    final int lo, hi;
+
+    SearchNode(int lo, int hi) {
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    int find(byte[] b, int offset, int length, int depth) {
+      /* Partition keys in [lo, hi) share the first depth bytes of the row 
+       * key, so only the remaining bytes are compared */
+      int low = lo, high = hi;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        byte[] k = keys[mid];
+        if (RowKeyComparator.compareBytes(k, depth, k.length - depth, b, 
+              offset + depth, length - depth) <= 0)
+          low = mid + 1;
+        else
+          high = mid;
+      }
+      return low;
+    }
+  }
+}
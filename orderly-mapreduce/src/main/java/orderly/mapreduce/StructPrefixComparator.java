@@ -0,0 +1,201 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import orderly.RowKey;
+import orderly.RowKeyComparator;
+import orderly.StructIndex;
+import orderly.StructRowKey;
+import orderly.Termination;
+
+/** Compares {@link OrderlyKeyWritable} keys holding serialized struct row 
+ * keys by their first <i>k</i> fields only. Used as the grouping comparator 
+ * of a job, a reducer receives all keys with the same leading fields in a 
+ * single call, sorted by the remaining fields (a secondary sort).
+ *
+ * <p>The comparator does not deserialize fields. It locates the end of 
+ * field <i>k</i> in each key with a {@link StructIndex}, which skips over 
+ * the serialized bytes of the leading fields, and compares the serialized 
+ * bytes of the leading fields of both keys. This is exact whenever a 
+ * non-empty field follows the leading fields, as these are then serialized
+ * with explicit termination in every key. A key whose remaining fields are 
+ * all empty (ascending NULL values with implicit termination) may serialize 
+ * its last leading fields without terminators, so its leading fields are 
+ * deserialized and serialized again with explicit termination before they
+ * are compared. Keys with at least <i>k</i> + 1 fields set never take this
+ * slower path.</p>
+ *
+ * <p>The struct schema and <i>k</i> are passed to the constructor, or, for 
+ * comparators created by the framework, read from the job configuration set 
+ * by {@link #setGroupingFields}. The schema is then a subclass of 
+ * {@link StructRowKey} with a public no-argument constructor. Like 
+ * <code>StructRowKey</code>, a comparator must only be used by one thread 
+ * at a time.</p>
+ *
+ * <h1> Usage </h1>
+ * <pre>
+ * StructPrefixComparator.setGroupingFields(job.getConfiguration(), 
+ *     MyStructRowKey.class, 2);
+ * job.setGroupingComparatorClass(StructPrefixComparator.class);
+ * </pre>
+ */
+public class StructPrefixComparator extends WritableComparator 
+  implements Configurable
+{
+  /** Configuration key of the class of the struct row key schema. */
+  public static final String SCHEMA_CLASS_KEY = 
+    "orderly.grouping.schema.class";
+  /** Configuration key of the number of leading fields to compare. */
+  public static final String NUM_FIELDS_KEY = "orderly.grouping.fields";
+
+  private Configuration conf;
+  private int numFields;
+  private StructIndex index1, index2;
+  private StructRowKey prefix;
+  private Object[] values;
+
+  /** Creates a comparator configured by {@link #setConf}. */
+  public StructPrefixComparator() { super(OrderlyKeyWritable.class); }
+
+  /** Creates a comparator of the first fields of a struct row key. 
+   * @param key the struct row key serializing the compared keys
+   * @param numFields the number of leading fields to compare
+   */
+  public StructPrefixComparator(StructRowKey key, int numFields) {
+    this();
+    init(key, numFields);
+  }
+
+  private void init(StructRowKey key, int numFields) {
+    RowKey[] fields = key.getFields();
+    if (numFields < 0 || numFields > fields.length)
+      throw new IllegalArgumentException("Number of fields " + numFields + 
+          " of " + fields.length);
+
+    this.numFields = numFields;
+    this.index1 = new StructIndex(key);
+    this.index2 = new StructIndex(key);
+
+    RowKey[] f = new RowKey[numFields];
+    for (int i = 0; i < f.length; i++)
+      f[i] = fields[i].clone();
+    this.prefix = (StructRowKey) new StructRowKey(f).setTermination(
+        Termination.MUST);
+    this.values = new Object[numFields];
+  }
+
+  /** Sets the schema and number of leading fields of comparators created 
+   * by the framework in a job configuration.
+   */
+  public static void setGroupingFields(Configuration conf, 
+      Class<? extends StructRowKey> schema, int numFields)
+  {
+    conf.setClass(SCHEMA_CLASS_KEY, schema, StructRowKey.class);
+    conf.setInt(NUM_FIELDS_KEY, numFields);
+  }
+
+  public Configuration getConf() { return conf; }
+
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    Class<? extends StructRowKey> schema = conf.getClass(SCHEMA_CLASS_KEY, 
+        null, StructRowKey.class);
+    if (schema == null)
+      return;
+
+    StructRowKey key;
+    try {
+      key = schema.newInstance();
+    } catch (Exception e) {
+      throw new IllegalStateException("Cannot instantiate " + 
+          schema.getName(), e);
+    }
+    init(key, conf.getInt(NUM_FIELDS_KEY, key.getFields().length));
+  }
+
+  /** Gets the number of leading fields compared. */
+  public int getNumFields() { return numFields; }
+
+  @Override
+  public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+    int n1 = WritableUtils.decodeVIntSize(b1[s1]), 
+        n2 = WritableUtils.decodeVIntSize(b2[s2]);
+    return comparePrefix(b1, s1 + n1, l1 - n1, b2, s2 + n2, l2 - n2);
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public int compare(WritableComparable a, WritableComparable b) {
+    OrderlyKeyWritable w1 = (OrderlyKeyWritable) a, 
+                       w2 = (OrderlyKeyWritable) b;
+    return comparePrefix(w1.get(), w1.getOffset(), w1.getLength(), 
+        w2.get(), w2.getOffset(), w2.getLength());
+  }
+
+  /** Compares the leading fields of two serialized struct row keys. */
+  public int comparePrefix(byte[] b1, int s1, int l1, byte[] b2, int s2, 
+      int l2) 
+  {
+    if (prefix == null)
+      throw new IllegalStateException("No struct row key schema set");
+
+    try {
+      index1.setBytes(b1, s1, l1);
+      index2.setBytes(b2, s2, l2);
+      int e1 = index1.getOffset(numFields), e2 = index2.getOffset(numFields);
+
+      /* If a non-empty field follows, the leading fields are terminated */
+      byte[] t1 = e1 < s1 + l1 || numFields == 0 ? null : 
+        serializePrefix(index1);
+      byte[] t2 = e2 < s2 + l2 || numFields == 0 ? null : 
+        serializePrefix(index2);
+      if (t1 != null) {
+        b1 = t1;
+        s1 = 0;
+        e1 = t1.length;
+      }
+      if (t2 != null) {
+        b2 = t2;
+        s2 = 0;
+        e2 = t2.length;
+      }
+
+      return RowKeyComparator.compareBytes(b1, s1, e1 - s1, b2, s2, 
+          e2 - s2);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Serializes the leading fields of an indexed key with explicit 
+   * termination. 
+   */
+  private byte[] serializePrefix(StructIndex index) throws IOException {
+    for (int i = 0; i < numFields; i++)
+      values[i] = index.deserialize(i);
+    return prefix.serialize(values);
+  }
+}
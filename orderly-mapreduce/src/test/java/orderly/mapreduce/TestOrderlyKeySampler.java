@@ -0,0 +1,214 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.mapreduce;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import orderly.IntegerRowKey;
+import orderly.Order;
+import orderly.RowKey;
+import orderly.SaltedRowKey;
+import orderly.StringRowKey;
+import orderly.StructRowKey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestOrderlyKeySampler
+{
+  protected Random r;
+
+  /** Input format generating the serialized integers of each split */
+  public static class IntegerInputFormat 
+    extends InputFormat<OrderlyKeyWritable, NullWritable>
+  {
+    static final int NUM_SPLITS = 16, SPLIT_SIZE = 1000;
+    static final RowKey KEY = new IntegerRowKey();
+
+    static class Split extends InputSplit implements Writable
+    {
+      int start;
+
+      Split(int start) { this.start = start; }
+
+      @Override
+      public long getLength() { return SPLIT_SIZE; }
+
+      @Override
+      public String[] getLocations() { return new String[0]; }
+
+      public void write(DataOutput out) throws IOException { 
+        out.writeInt(start); 
+      }
+
+      public void readFields(DataInput in) throws IOException { 
+        start = in.readInt(); 
+      }
+    }
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) {
+      List<InputSplit> splits = new ArrayList<InputSplit>();
+      for (int i = 0; i < NUM_SPLITS; i++)
+        splits.add(new Split(i * SPLIT_SIZE));
+      return splits;
+    }
+
+    @Override
+    public RecordReader<OrderlyKeyWritable, NullWritable> createRecordReader(
+        final InputSplit split, TaskAttemptContext context) 
+    {
+      return new RecordReader<OrderlyKeyWritable, NullWritable>() {
+        int i = -1;
+        OrderlyKeyWritable key = new OrderlyKeyWritable();
+
+        @Override
+        public void initialize(InputSplit s, TaskAttemptContext c) { }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+          if (++i >= SPLIT_SIZE)
+            return false;
+          key.set(KEY, ((Split) split).start + i);
+          return true;
+        }
+
+        @Override
+        public OrderlyKeyWritable getCurrentKey() { return key; }
+
+        @Override
+        public NullWritable getCurrentValue() { return NullWritable.get(); }
+
+        @Override
+        public float getProgress() { return (float) i / SPLIT_SIZE; }
+
+        @Override
+        public void close() { }
+      };
+    }
+  }
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+  }
+
+  @Test
+  public void testInterval() throws IOException {
+    OrderlyKeySampler sampler = OrderlyKeySampler.interval(0.1, 50)
+      .setRowKey(new IntegerRowKey());
+    for (int i = 0; i < 1000; i++)
+      sampler.addValue(i);
+    assertEquals(1000, sampler.getNumKeys());
+    assertEquals(50, sampler.getSamples().size());
+
+    /* The first 500 keys are sampled at regular intervals */
+    RowKey key = sampler.getRowKey();
+    for (int i = 0; i < 50; i++)
+      assertEquals(10 * i, key.deserialize(sampler.getSamples().get(i)));
+  }
+
+  @Test
+  public void testRandom() throws IOException {
+    RowKey key = new IntegerRowKey();
+    OrderlyKeySampler sampler = OrderlyKeySampler.random(0.5, 1000)
+      .setRowKey(key).setRandom(r);
+    for (int i = 0; i < 100000; i++)
+      sampler.addValue(i);
+    assertEquals(1000, sampler.getSamples().size());
+
+    /* A uniform sample of all keys has about 100 keys in each tenth */
+    int[] counts = new int[10];
+    for (byte[] b : sampler.getSamples())
+      counts[(Integer) key.deserialize(b) / 10000]++;
+    for (int count : counts)
+      assertTrue(count + " samples", count > 50 && count < 150);
+  }
+
+  @Test
+  public void testSample() throws IOException, InterruptedException {
+    JobContext job = new JobContext(new Configuration(false), new JobID());
+    OrderlyKeySampler sampler = OrderlyKeySampler.interval(1, 
+        Integer.MAX_VALUE);
+    sampler.sample(new IntegerInputFormat(), job, 4);
+    assertEquals(4 * IntegerInputFormat.SPLIT_SIZE, sampler.getNumKeys());
+
+    /* Splits 0, 4, 8 and 12 are read, so each balanced partition holds 
+     * the keys of one split read, and the keys of the splits not read 
+     * between them */
+    byte[][] keys = sampler.getPartitionKeys(4);
+    assertEquals(3, keys.length);
+    OrderlyPartitioner<Object> p = new OrderlyPartitioner<Object>()
+      .setPartitionKeys(keys);
+    OrderlyKeyWritable w = new OrderlyKeyWritable();
+    int prev = 0;
+    for (int v = 0; v < IntegerInputFormat.NUM_SPLITS * 
+        IntegerInputFormat.SPLIT_SIZE; v++)
+    {
+      int partition = p.getPartition(w.set(IntegerInputFormat.KEY, v), null,
+          4);
+      assertTrue(partition >= prev);
+      if (v / IntegerInputFormat.SPLIT_SIZE % 4 == 0)
+        assertEquals(v / IntegerInputFormat.SPLIT_SIZE / 4, partition);
+      prev = partition;
+    }
+  }
+
+  @Test
+  public void testSalted() throws IOException {
+    StructRowKey struct = new StructRowKey(new RowKey[] { 
+      new IntegerRowKey(), new StringRowKey().setOrder(Order.DESCENDING) });
+    SaltedRowKey key = new SaltedRowKey(struct, 4, 0);
+    OrderlyKeySampler sampler = OrderlyKeySampler.random(1, 10000)
+      .setRowKey(key).setRandom(r);
+    for (int i = 0; i < 10000; i++)
+      sampler.addValue(new Object[] { r.nextInt(), "s" + r.nextInt(100) });
+
+    /* Every bucket is split into two partitions */
+    byte[][] keys = sampler.getPartitionKeys(8);
+    assertEquals(7, keys.length);
+    for (int i = 1; i < keys.length; i += 2)
+      assertEquals((i + 1) / 2, SaltedRowKey.getBucket(keys[i], 0));
+    OrderlyPartitioner<Object> p = new OrderlyPartitioner<Object>()
+      .setPartitionKeys(keys);
+    int[] counts = new int[8];
+    for (byte[] b : sampler.getSamples())
+      counts[p.getPartition(b, 0, b.length)]++;
+    for (int count : counts)
+      assertTrue(count + " samples", Math.abs(count - 1250) < 250);
+  }
+}
@@ -0,0 +1,112 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.mapreduce;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Before;
+import org.junit.Test;
+
+import orderly.LongRowKey;
+import orderly.Order;
+import orderly.RowKey;
+import orderly.RowKeyComparator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestOrderlyKeyWritable
+{
+  protected Random r;
+  protected int numTests;
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+  }
+
+  private static byte[] write(OrderlyKeyWritable w) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    w.write(out);
+    byte[] b = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, b, 0, b.length);
+    return b;
+  }
+
+  private byte[] randomBytes() {
+    byte[] b = new byte[r.nextInt(r.nextBoolean() ? 8 : 256)];
+    r.nextBytes(b);
+    return b;
+  }
+
+  @Test
+  public void testRegistered() {
+    assertTrue(WritableComparator.get(OrderlyKeyWritable.class) instanceof
+        OrderlyKeyWritable.Comparator);
+  }
+
+  @Test
+  public void testCompare() throws IOException {
+    WritableComparator c = WritableComparator.get(OrderlyKeyWritable.class);
+    for (int i = 0; i < numTests; i++) {
+      byte[] a = randomBytes(), b = r.nextInt(4) == 0 ? a.clone() : 
+        randomBytes();
+
+      /* Serialize into a larger buffer to test offsets */
+      int pad = r.nextInt(4);
+      OrderlyKeyWritable wa = new OrderlyKeyWritable(new byte[a.length + 
+          2 * pad], pad, a.length);
+      System.arraycopy(a, 0, wa.get(), pad, a.length);
+      OrderlyKeyWritable wb = new OrderlyKeyWritable(b);
+
+      int expected = Integer.signum(RowKeyComparator.INSTANCE.compare(a, b));
+      assertEquals(expected, Integer.signum(wa.compareTo(wb)));
+      assertEquals(expected == 0, wa.equals(wb));
+      if (expected == 0)
+        assertEquals(wa.hashCode(), wb.hashCode());
+
+      byte[] ra = write(wa), rb = write(wb);
+      assertEquals(expected, Integer.signum(c.compare(ra, 0, ra.length, rb, 
+              0, rb.length)));
+    }
+  }
+
+  @Test
+  public void testReadFields() throws IOException {
+    RowKey key = new LongRowKey();
+    OrderlyKeyWritable w = new OrderlyKeyWritable();
+    for (int i = 0; i < numTests; i++) {
+      key.setOrder(r.nextBoolean() ? Order.ASCENDING : Order.DESCENDING);
+      Long l = r.nextInt(8) == 0 ? null : r.nextLong();
+      byte[] b = write(new OrderlyKeyWritable().set(key, l));
+
+      DataInputBuffer in = new DataInputBuffer();
+      in.reset(b, b.length);
+      w.readFields(in);
+      assertEquals(b.length, in.getPosition());
+      assertEquals(l, w.get(key));
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.mapreduce;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import orderly.RowKeyComparator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestOrderlyPartitioner
+{
+  protected Random r;
+  protected int numTests;
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+  }
+
+  /* Short keys over a small alphabet, so that keys share prefixes and 
+   * partition keys are often prefixes of each other */
+  private byte[] randomKey() {
+    byte[] b = new byte[r.nextInt(6)];
+    for (int i = 0; i < b.length; i++)
+      b[i] = (byte) (r.nextBoolean() ? r.nextInt(4) : r.nextInt(256));
+    return b;
+  }
+
+  private byte[][] randomPartitionKeys() {
+    TreeSet<byte[]> keys = new TreeSet<byte[]>(RowKeyComparator.INSTANCE);
+    int n = r.nextInt(r.nextBoolean() ? 8 : 512);
+    for (int i = 0; i < n; i++)
+      keys.add(randomKey());
+    keys.remove(new byte[0]);
+    return keys.toArray(new byte[keys.size()][]);
+  }
+
+  private static int expectedPartition(byte[][] keys, byte[] b) {
+    int i = 0;
+    while (i < keys.length && RowKeyComparator.INSTANCE.compare(keys[i], b) 
+        <= 0)
+      i++;
+    return i;
+  }
+
+  @Test
+  public void testGetPartition() {
+    for (int i = 0; i < 64; i++) {
+      byte[][] keys = randomPartitionKeys();
+      OrderlyPartitioner<Object> p = new OrderlyPartitioner<Object>()
+        .setTrieDepth(r.nextInt(5)).setPartitionKeys(keys);
+
+      for (int j = 0; j < numTests / 64; j++) {
+        byte[] b = r.nextInt(4) == 0 && keys.length > 0 ? 
+          keys[r.nextInt(keys.length)] : randomKey();
+
+        /* Embed the key in a larger array to test offsets */
+        int pad = r.nextInt(3);
+        byte[] padded = new byte[b.length + 2 * pad];
+        Arrays.fill(padded, (byte) r.nextInt(256));
+        System.arraycopy(b, 0, padded, pad, b.length);
+        OrderlyKeyWritable w = new OrderlyKeyWritable(padded, pad, b.length);
+        assertEquals(expectedPartition(keys, b), 
+            p.getPartition(w, null, keys.length + 1));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsorted() {
+    new OrderlyPartitioner<Object>().setPartitionKeys(new byte[][] { 
+      { 1, 2 }, { 1 } });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooManyKeys() {
+    new OrderlyPartitioner<Object>().setPartitionKeys(new byte[][] { 
+      { 1 }, { 2 } }).getPartition(new OrderlyKeyWritable(new byte[] { 3 }),
+        null, 2);
+  }
+
+  @Test
+  public void testPartitionFile() throws IOException {
+    File dir = new File(System.getProperty("java.io.tmpdir"), 
+        "TestOrderlyPartitioner-" + System.nanoTime());
+    Configuration conf = new Configuration();
+    conf.set("fs.default.name", "file:///");
+    OrderlyPartitioner.setPartitionFile(conf, new Path(dir.toURI().toString(),
+          "_partitions"));
+    conf.setInt("mapred.reduce.tasks", 8);
+
+    try {
+      OrderlyKeySampler sampler = OrderlyKeySampler.interval(1, 1000);
+      for (int i = 0; i < 1000; i++)
+        sampler.add(new OrderlyKeyWritable(randomKey()));
+      sampler.writePartitionFile(conf, 8);
+      byte[][] keys = sampler.getPartitionKeys(8);
+
+      @SuppressWarnings("unchecked")
+      OrderlyPartitioner<Object> p = ReflectionUtils.newInstance(
+          OrderlyPartitioner.class, conf);
+      assertEquals(keys.length, p.getPartitionKeys().length);
+      for (int i = 0; i < keys.length; i++)
+        assertArrayEquals(keys[i], p.getPartitionKeys()[i]);
+
+      conf.setInt("mapred.reduce.tasks", keys.length);
+      try {
+        ReflectionUtils.newInstance(OrderlyPartitioner.class, conf);
+        throw new AssertionError("Too many partition keys accepted");
+      } catch (IllegalArgumentException e) {
+      }
+    } finally {
+      FileUtil.fullyDelete(dir);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package orderly.mapreduce;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import orderly.IntegerRowKey;
+import orderly.LongRowKey;
+import orderly.Order;
+import orderly.RowKey;
+import orderly.RowKeyComparator;
+import orderly.StringRowKey;
+import orderly.StructRowKey;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestStructPrefixComparator
+{
+  protected Random r;
+  protected int numTests;
+
+  /** Schema instantiated from the job configuration */
+  public static class Schema extends StructRowKey
+  {
+    public Schema() { 
+      super(new RowKey[] { new StringRowKey(), new IntegerRowKey() }); 
+    }
+  }
+
+  @Before
+  public void setUp() {
+    long seed = Long.getLong("test.random.seed", System.nanoTime());
+    System.out.println("Random seed: " + seed);
+    r = new Random(seed);
+    numTests = Integer.getInteger("test.random.count", 8192);
+  }
+
+  private StructRowKey createStruct() {
+    RowKey[] fields = new RowKey[1 + r.nextInt(4)];
+    for (int i = 0; i < fields.length; i++) {
+      switch (r.nextInt(3)) {
+        case 0: fields[i] = new StringRowKey(); break;
+        case 1: fields[i] = new IntegerRowKey(); break;
+        default: fields[i] = new LongRowKey(); break;
+      }
+      if (r.nextInt(4) == 0)
+        fields[i].setOrder(Order.DESCENDING);
+    }
+    return new StructRowKey(fields);
+  }
+
+  /* Values from small domains, often NULL, so that keys share prefixes and 
+   * many keys have trailing NULL fields */
+  private Object[] createValue(StructRowKey key) {
+    RowKey[] fields = key.getFields();
+    Object[] o = new Object[fields.length];
+    for (int i = 0; i < o.length; i++) {
+      if (r.nextInt(3) == 0)
+        continue;
+      int v = r.nextInt(4);
+      if (fields[i] instanceof StringRowKey)
+        o[i] = "ab".substring(0, v % 3);
+      else if (fields[i] instanceof IntegerRowKey)
+        o[i] = v;
+      else
+        o[i] = (long) v;
+    }
+    return o;
+  }
+
+  private static byte[] write(byte[] b) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    new OrderlyKeyWritable(b).write(out);
+    byte[] w = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, w, 0, w.length);
+    return w;
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  private void verify(RawComparator<?> c, StructRowKey key, int numFields, 
+      Object[] a, Object[] b) throws IOException
+  {
+    byte[] sa = key.serialize(a), sb = key.serialize(b);
+    int expected = 0;
+    for (int i = 0; i < numFields && expected == 0; i++)
+      if (!equal(a[i], b[i]))
+        expected = Integer.signum(RowKeyComparator.INSTANCE.compare(sa, sb));
+
+    byte[] wa = write(sa), wb = write(sb);
+    assertEquals(expected, Integer.signum(c.compare(wa, 0, wa.length, wb, 0,
+            wb.length)));
+    assertEquals(-expected, Integer.signum(c.compare(wb, 0, wb.length, wa, 0,
+            wa.length)));
+  }
+
+  @Test
+  public void testCompare() throws IOException {
+    for (int i = 0; i < numTests; i++) {
+      StructRowKey key = createStruct();
+      if (r.nextBoolean())
+        key.setOrder(Order.DESCENDING);
+      int numFields = r.nextInt(key.getFields().length + 1);
+      StructPrefixComparator c = new StructPrefixComparator(key, numFields);
+
+      Object[] a = createValue(key), b = createValue(key);
+      if (r.nextBoolean())
+        System.arraycopy(a, 0, b, 0, numFields);
+      verify(c, key, numFields, a, b);
+    }
+  }
+
+  @Test
+  public void testConf() throws IOException {
+    Configuration conf = new Configuration(false);
+    StructPrefixComparator.setGroupingFields(conf, Schema.class, 1);
+    StructPrefixComparator c = ReflectionUtils.newInstance(
+        StructPrefixComparator.class, conf);
+    assertEquals(1, c.getNumFields());
+
+    StructRowKey key = new Schema();
+    verify(c, key, 1, new Object[] { "a", null }, new Object[] { "a", 5 });
+    verify(c, key, 1, new Object[] { "a", 5 }, new Object[] { "ab", 5 });
+    verify(c, key, 1, new Object[] { null, null }, new Object[] { null, 1 });
+    verify(c, key, 1, new Object[] { "", null }, new Object[] { null, 1 });
+  }
+}